@@ -0,0 +1,149 @@
+package com.robertroman.store_admin_backend.config;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Limita la concurrencia de un carril: N ejecuciones simultáneas y una cola de espera acotada
+public class Bulkhead {
+
+    private final Carril carril;
+    private final int maxConcurrentes;
+    private final int maxEnCola;
+    private final long esperaMaximaMs;
+    private final Semaphore permisos;
+
+    // Métricas
+    private final AtomicInteger enCola = new AtomicInteger();
+    private final LongAdder aceptadas = new LongAdder();
+    private final LongAdder rechazadas = new LongAdder();
+    private final LongAdder completadas = new LongAdder();
+    private final LongAdder tiempoEsperaTotalNanos = new LongAdder();
+    private final AtomicLong tiempoEsperaMaximoNanos = new AtomicLong();
+
+    public Bulkhead(Carril carril, int maxConcurrentes, int maxEnCola, long esperaMaximaMs) {
+        this.carril = carril;
+        this.maxConcurrentes = maxConcurrentes;
+        this.maxEnCola = maxEnCola;
+        this.esperaMaximaMs = esperaMaximaMs;
+        this.permisos = new Semaphore(maxConcurrentes, true);
+    }
+
+    // Obtener un permiso o fallar rápido si la cola está llena o se agota la espera
+    public void adquirir() {
+        if (permisos.tryAcquire()) {
+            aceptadas.increment();
+            return;
+        }
+
+        if (enCola.incrementAndGet() > maxEnCola) {
+            enCola.decrementAndGet();
+            rechazadas.increment();
+            throw new CarrilSaturadoException(carril,
+                    "Servicio ocupado (" + carril + "): cola de espera llena, intente nuevamente", reintentarEnSegundos());
+        }
+
+        long inicio = System.nanoTime();
+        boolean obtenido;
+        try {
+            obtenido = permisos.tryAcquire(esperaMaximaMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            obtenido = false;
+        } finally {
+            enCola.decrementAndGet();
+        }
+
+        long espera = System.nanoTime() - inicio;
+        tiempoEsperaTotalNanos.add(espera);
+        tiempoEsperaMaximoNanos.accumulateAndGet(espera, Math::max);
+
+        if (!obtenido) {
+            rechazadas.increment();
+            throw new CarrilSaturadoException(carril,
+                    "Servicio ocupado (" + carril + "): tiempo de espera agotado, intente nuevamente", reintentarEnSegundos());
+        }
+        aceptadas.increment();
+    }
+
+    // Sugerencia para el cliente: lo que puede tardar en liberarse un lugar en la cola
+    private long reintentarEnSegundos() {
+        return Math.max(1, (esperaMaximaMs + 999) / 1000);
+    }
+
+    public void liberar() {
+        completadas.increment();
+        permisos.release();
+    }
+
+    // Foto de las métricas actuales
+    public Metricas obtenerMetricas() {
+        Metricas metricas = new Metricas();
+        metricas.setCarril(carril);
+        metricas.setMaxConcurrentes(maxConcurrentes);
+        metricas.setMaxEnCola(maxEnCola);
+        metricas.setEsperaMaximaMs(esperaMaximaMs);
+        metricas.setActivas(maxConcurrentes - permisos.availablePermits());
+        metricas.setEnCola(enCola.get());
+        metricas.setAceptadas(aceptadas.sum());
+        metricas.setRechazadas(rechazadas.sum());
+        metricas.setCompletadas(completadas.sum());
+        long totalAceptadas = aceptadas.sum();
+        metricas.setEsperaPromedioMs(totalAceptadas > 0
+                ? tiempoEsperaTotalNanos.sum() / totalAceptadas / 1_000_000.0 : 0.0);
+        metricas.setEsperaMaximaObservadaMs(tiempoEsperaMaximoNanos.get() / 1_000_000.0);
+        return metricas;
+    }
+
+    public Carril getCarril() { return carril; }
+
+    public static class Metricas {
+        private Carril carril;
+        private int maxConcurrentes;
+        private int maxEnCola;
+        private long esperaMaximaMs;
+        private int activas;
+        private int enCola;
+        private long aceptadas;
+        private long rechazadas;
+        private long completadas;
+        private double esperaPromedioMs;
+        private double esperaMaximaObservadaMs;
+
+        // Getters y Setters
+        public Carril getCarril() { return carril; }
+        public void setCarril(Carril carril) { this.carril = carril; }
+
+        public int getMaxConcurrentes() { return maxConcurrentes; }
+        public void setMaxConcurrentes(int maxConcurrentes) { this.maxConcurrentes = maxConcurrentes; }
+
+        public int getMaxEnCola() { return maxEnCola; }
+        public void setMaxEnCola(int maxEnCola) { this.maxEnCola = maxEnCola; }
+
+        public long getEsperaMaximaMs() { return esperaMaximaMs; }
+        public void setEsperaMaximaMs(long esperaMaximaMs) { this.esperaMaximaMs = esperaMaximaMs; }
+
+        public int getActivas() { return activas; }
+        public void setActivas(int activas) { this.activas = activas; }
+
+        public int getEnCola() { return enCola; }
+        public void setEnCola(int enCola) { this.enCola = enCola; }
+
+        public long getAceptadas() { return aceptadas; }
+        public void setAceptadas(long aceptadas) { this.aceptadas = aceptadas; }
+
+        public long getRechazadas() { return rechazadas; }
+        public void setRechazadas(long rechazadas) { this.rechazadas = rechazadas; }
+
+        public long getCompletadas() { return completadas; }
+        public void setCompletadas(long completadas) { this.completadas = completadas; }
+
+        public double getEsperaPromedioMs() { return esperaPromedioMs; }
+        public void setEsperaPromedioMs(double esperaPromedioMs) { this.esperaPromedioMs = esperaPromedioMs; }
+
+        public double getEsperaMaximaObservadaMs() { return esperaMaximaObservadaMs; }
+        public void setEsperaMaximaObservadaMs(double esperaMaximaObservadaMs) { this.esperaMaximaObservadaMs = esperaMaximaObservadaMs; }
+    }
+}
@@ -0,0 +1,9 @@
+package com.robertroman.store_admin_backend.config;
+
+// Carriles de ejecución (bulkheads) que separan la carga de trabajo
+public enum Carril {
+    // Escrituras de ventas y stock: deben mantener latencia baja
+    TRANSACCIONAL,
+    // Reportes y dashboard de solo lectura: pueden esperar
+    ANALITICO
+}
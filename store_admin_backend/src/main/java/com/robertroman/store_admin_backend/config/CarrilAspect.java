@@ -0,0 +1,53 @@
+package com.robertroman.store_admin_backend.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+// Ejecuta los servicios anotados con @CarrilEjecucion dentro de su bulkhead.
+// Corre antes que @Transactional para que el DataSource vea el carril al pedir la conexión.
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class CarrilAspect {
+
+    @Autowired
+    private CarrilesEjecucion carriles;
+
+    @Around("@within(com.robertroman.store_admin_backend.config.CarrilEjecucion) || " +
+            "@annotation(com.robertroman.store_admin_backend.config.CarrilEjecucion)")
+    public Object ejecutarEnCarril(ProceedingJoinPoint joinPoint) throws Throwable {
+        // Llamadas anidadas reutilizan el carril (y el permiso) de la llamada externa
+        if (CarrilContexto.obtener() != null) {
+            return joinPoint.proceed();
+        }
+
+        Carril carril = resolverCarril(joinPoint);
+        Bulkhead bulkhead = carriles.obtener(carril);
+
+        bulkhead.adquirir();
+        CarrilContexto.establecer(carril);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            CarrilContexto.limpiar();
+            bulkhead.liberar();
+        }
+    }
+
+    // La anotación del método tiene prioridad sobre la de la clase
+    private Carril resolverCarril(ProceedingJoinPoint joinPoint) {
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        CarrilEjecucion anotacion = AnnotatedElementUtils.findMergedAnnotation(signature.getMethod(), CarrilEjecucion.class);
+        if (anotacion == null) {
+            anotacion = AnnotatedElementUtils.findMergedAnnotation(joinPoint.getTarget().getClass(), CarrilEjecucion.class);
+        }
+        return anotacion != null ? anotacion.value() : Carril.TRANSACCIONAL;
+    }
+}
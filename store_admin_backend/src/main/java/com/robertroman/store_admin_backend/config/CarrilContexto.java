@@ -0,0 +1,21 @@
+package com.robertroman.store_admin_backend.config;
+
+// Carril asociado al hilo actual (lo usa el DataSource para elegir el pool de conexiones)
+public final class CarrilContexto {
+
+    private static final ThreadLocal<Carril> CARRIL_ACTUAL = new ThreadLocal<>();
+
+    private CarrilContexto() {}
+
+    public static Carril obtener() {
+        return CARRIL_ACTUAL.get();
+    }
+
+    public static void establecer(Carril carril) {
+        CARRIL_ACTUAL.set(carril);
+    }
+
+    public static void limpiar() {
+        CARRIL_ACTUAL.remove();
+    }
+}
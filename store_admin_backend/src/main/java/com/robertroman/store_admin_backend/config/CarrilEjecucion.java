@@ -0,0 +1,14 @@
+package com.robertroman.store_admin_backend.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Marca un servicio (o método) para que se ejecute dentro de un carril con límites propios
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CarrilEjecucion {
+
+    Carril value();
+}
@@ -0,0 +1,47 @@
+package com.robertroman.store_admin_backend.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+
+// Elige el pool de conexiones según el carril del hilo actual.
+// Las transacciones de solo lectura van a una réplica sana si hay alguna configurada.
+public class CarrilRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final ReplicaRouter replicaRouter;
+
+    public CarrilRoutingDataSource(ReplicaRouter replicaRouter) {
+        this.replicaRouter = replicaRouter;
+    }
+
+    @Override
+    protected DataSource determineTargetDataSource() {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                if (!replicaRouter.usuarioActualDentroDeVentana()) {
+                    DataSource replica = replicaRouter.elegirReplica();
+                    if (replica != null) {
+                        return replica;
+                    }
+                }
+            } else if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                // Recordar la escritura para la ventana de lectura propia una vez confirmada
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        replicaRouter.registrarEscrituraUsuarioActual();
+                    }
+                });
+            }
+        }
+        return super.determineTargetDataSource();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Carril carril = CarrilContexto.obtener();
+        return carril != null ? carril : Carril.TRANSACCIONAL;
+    }
+}
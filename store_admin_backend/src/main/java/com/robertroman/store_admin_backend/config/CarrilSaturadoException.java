@@ -0,0 +1,21 @@
+package com.robertroman.store_admin_backend.config;
+
+// Se lanza cuando un carril no tiene capacidad ni lugar en la cola de espera.
+// Los controladores la dejan pasar para que ManejadorCarrilSaturado responda 503 con Retry-After.
+public class CarrilSaturadoException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Carril carril;
+    private final long reintentarEnSegundos;
+
+    public CarrilSaturadoException(Carril carril, String message, long reintentarEnSegundos) {
+        super(message);
+        this.carril = carril;
+        this.reintentarEnSegundos = reintentarEnSegundos;
+    }
+
+    public Carril getCarril() { return carril; }
+
+    public long getReintentarEnSegundos() { return reintentarEnSegundos; }
+}
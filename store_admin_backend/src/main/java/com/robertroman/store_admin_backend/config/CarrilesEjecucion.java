@@ -0,0 +1,54 @@
+package com.robertroman.store_admin_backend.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+// Registro de los bulkheads de cada carril con sus límites configurados.
+// Un carril no admite más ejecuciones simultáneas que conexiones tiene su pool: el resto quedaría
+// esperando en Hikari en lugar de en la cola acotada del carril.
+@Component
+public class CarrilesEjecucion {
+
+    private static final Logger log = LoggerFactory.getLogger(CarrilesEjecucion.class);
+
+    private final Map<Carril, Bulkhead> bulkheads = new EnumMap<>(Carril.class);
+
+    public CarrilesEjecucion(
+            @Value("${app.carriles.transaccional.max-concurrentes:20}") int transaccionalMaxConcurrentes,
+            @Value("${app.carriles.transaccional.max-en-cola:100}") int transaccionalMaxEnCola,
+            @Value("${app.carriles.transaccional.espera-maxima-ms:2000}") long transaccionalEsperaMaximaMs,
+            @Value("${app.carriles.analitico.max-concurrentes:4}") int analiticoMaxConcurrentes,
+            @Value("${app.carriles.analitico.max-en-cola:8}") int analiticoMaxEnCola,
+            @Value("${app.carriles.analitico.espera-maxima-ms:10000}") long analiticoEsperaMaximaMs,
+            @Value("${app.datasource.transaccional.maximum-pool-size:10}") int transaccionalPool,
+            @Value("${app.datasource.analitico.maximum-pool-size:10}") int analiticoPool) {
+        bulkheads.put(Carril.TRANSACCIONAL, new Bulkhead(Carril.TRANSACCIONAL,
+                limitar(Carril.TRANSACCIONAL, transaccionalMaxConcurrentes, transaccionalPool),
+                transaccionalMaxEnCola, transaccionalEsperaMaximaMs));
+        bulkheads.put(Carril.ANALITICO, new Bulkhead(Carril.ANALITICO,
+                limitar(Carril.ANALITICO, analiticoMaxConcurrentes, analiticoPool),
+                analiticoMaxEnCola, analiticoEsperaMaximaMs));
+    }
+
+    private static int limitar(Carril carril, int maxConcurrentes, int tamanoPool) {
+        if (maxConcurrentes > tamanoPool) {
+            log.warn("Carril {}: max-concurrentes {} supera el pool de {} conexiones; se usa {}",
+                    carril, maxConcurrentes, tamanoPool, tamanoPool);
+            return tamanoPool;
+        }
+        return maxConcurrentes;
+    }
+
+    public Bulkhead obtener(Carril carril) {
+        return bulkheads.get(carril);
+    }
+
+    public Map<Carril, Bulkhead> obtenerTodos() {
+        return bulkheads;
+    }
+}
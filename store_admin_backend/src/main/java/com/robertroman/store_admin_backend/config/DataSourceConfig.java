@@ -0,0 +1,51 @@
+package com.robertroman.store_admin_backend.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+// Un pool de conexiones por carril, ambos contra la misma base configurada en spring.datasource.*,
+// más las réplicas de lectura opcionales que administra ReplicaRouter
+@Configuration
+public class DataSourceConfig {
+
+    @Bean(defaultCandidate = false)
+    @ConfigurationProperties("app.datasource.transaccional")
+    public HikariDataSource transaccionalDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean(defaultCandidate = false)
+    @ConfigurationProperties("app.datasource.analitico")
+    public HikariDataSource analiticoDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    // DataSource que usa JPA: enruta por carril y pide la conexión real recién en la primera sentencia,
+    // cuando el aspecto de carriles ya dejó marcado el hilo
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("transaccionalDataSource") HikariDataSource transaccional,
+                                 @Qualifier("analiticoDataSource") HikariDataSource analitico,
+                                 ReplicaRouter replicaRouter) {
+        Map<Object, Object> destinos = new HashMap<>();
+        destinos.put(Carril.TRANSACCIONAL, transaccional);
+        destinos.put(Carril.ANALITICO, analitico);
+
+        CarrilRoutingDataSource routing = new CarrilRoutingDataSource(replicaRouter);
+        routing.setTargetDataSources(destinos);
+        routing.setDefaultTargetDataSource(transaccional);
+        routing.afterPropertiesSet();
+
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+}
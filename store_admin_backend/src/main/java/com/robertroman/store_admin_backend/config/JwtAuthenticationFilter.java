@@ -1,6 +1,8 @@
 package com.robertroman.store_admin_backend.config;
 
+import com.robertroman.store_admin_backend.service.EventosLocalService;
 import com.robertroman.store_admin_backend.service.JwtService;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -16,13 +18,23 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    // Usuario autenticado con un ticket de eventos (para el controlador)
+    public static final String ATRIBUTO_USUARIO_TICKET = "eventos.usuarioId";
+
+    private static final Pattern RUTA_EVENTOS = Pattern.compile("/api/dashboard/local/(\\d+)/eventos$");
+
     @Autowired
     private JwtService jwtService;
 
+    @Autowired
+    private EventosLocalService eventosLocalService;
+
     @Autowired
     private UserDetailsService userDetailsService;
 
@@ -38,14 +50,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         final String username;
 
         // Verificar si hay header Authorization y si comienza con "Bearer "
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            // Extraer el token (remover "Bearer ")
+            jwt = authHeader.substring(7);
+        } else if (authHeader == null && request.getParameter("ticket") != null
+                && request.getDispatcherType() == DispatcherType.REQUEST) {
+            // Flujos de eventos (EventSource no permite enviar headers): solo un ticket de un uso
+            autenticarConTicket(request);
+            filterChain.doFilter(request, response);
+            return;
+        } else {
             filterChain.doFilter(request, response);
             return;
         }
 
-        // Extraer el token (remover "Bearer ")
-        jwt = authHeader.substring(7);
-
         try {
             // Extraer username del token
             username = jwtService.extractUsername(jwt);
@@ -80,4 +98,36 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         filterChain.doFilter(request, response);
     }
+
+    // También en el despacho asíncrono (SSE, exportaciones): la solicitud se vuelve a autorizar
+    // con el mismo header, sin permitir todos los despachos asíncronos
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    private void autenticarConTicket(HttpServletRequest request) {
+        Matcher ruta = RUTA_EVENTOS.matcher(request.getRequestURI());
+        if (!ruta.find() || SecurityContextHolder.getContext().getAuthentication() != null) {
+            return;
+        }
+        try {
+            EventosLocalService.TicketEventos ticket =
+                    eventosLocalService.canjearTicket(request.getParameter("ticket"), Long.valueOf(ruta.group(1)));
+            if (ticket == null) {
+                return;
+            }
+            UserDetails userDetails = this.userDetailsService.loadUserByUsername(ticket.getUsername());
+            UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                    userDetails,
+                    null,
+                    userDetails.getAuthorities()
+            );
+            authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+            SecurityContextHolder.getContext().setAuthentication(authToken);
+            request.setAttribute(ATRIBUTO_USUARIO_TICKET, ticket.getUsuarioId());
+        } catch (Exception e) {
+            logger.debug("Error processing event ticket: " + e.getMessage());
+        }
+    }
 }
\ No newline at end of file
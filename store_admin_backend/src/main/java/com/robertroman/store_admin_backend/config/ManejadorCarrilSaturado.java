@@ -0,0 +1,35 @@
+package com.robertroman.store_admin_backend.config;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+// Carril saturado: 503 con Retry-After, para que el cliente distinga sobrecarga de un dato inválido
+@RestControllerAdvice
+public class ManejadorCarrilSaturado {
+
+    @ExceptionHandler(CarrilSaturadoException.class)
+    public ResponseEntity<ErrorResponse> carrilSaturado(CarrilSaturadoException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getReintentarEnSegundos()))
+                .body(new ErrorResponse(e.getMessage()));
+    }
+
+    public static class ErrorResponse {
+        private String message;
+        private long timestamp;
+
+        public ErrorResponse(String message) {
+            this.message = message;
+            this.timestamp = System.currentTimeMillis();
+        }
+
+        public String getMessage() { return message; }
+        public void setMessage(String message) { this.message = message; }
+
+        public long getTimestamp() { return timestamp; }
+        public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+    }
+}
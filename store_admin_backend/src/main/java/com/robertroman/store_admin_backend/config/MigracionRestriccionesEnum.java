@@ -0,0 +1,87 @@
+package com.robertroman.store_admin_backend.config;
+
+import com.robertroman.store_admin_backend.entity.EventoOutbox;
+import com.robertroman.store_admin_backend.entity.MovimientoInventario;
+import com.robertroman.store_admin_backend.entity.Venta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Hibernate crea cada columna @Enumerated(STRING) con CHECK (columna IN (...)) y ddl-auto=update
+// nunca vuelve a tocar ese CHECK: un valor agregado al enum después (DEVUELTA, motivos del libro de
+// inventario, ...) es rechazado por las bases existentes. Al arrancar, una vez que Hibernate actualizó
+// el esquema y antes de atender pedidos, se rehace el CHECK de las columnas que no admiten todos los
+// valores actuales del enum. Si la columna no tiene CHECK no se agrega ninguno.
+@Component
+@DependsOn("entityManagerFactory")
+public class MigracionRestriccionesEnum implements InitializingBean {
+
+    private static final Logger log = LoggerFactory.getLogger(MigracionRestriccionesEnum.class);
+
+    // CHECK de la columna (o de la tabla que la nombra) con su definición normalizada por SQL Server
+    private static final String SQL_RESTRICCIONES =
+            "SELECT cc.name, cc.definition FROM sys.check_constraints cc " +
+            "JOIN sys.columns c ON c.object_id = cc.parent_object_id " +
+            "WHERE cc.parent_object_id = OBJECT_ID(?) AND c.name = ? " +
+            "AND (cc.parent_column_id = c.column_id " +
+            "OR (cc.parent_column_id = 0 AND cc.definition LIKE '%[[]' + c.name + ']%'))";
+
+    private static final List<ColumnaEnum> COLUMNAS = List.of(
+            new ColumnaEnum("ventas", "estado", Venta.EstadoVenta.class),
+            new ColumnaEnum("ventas", "metodo_pago", Venta.MetodoPago.class),
+            new ColumnaEnum("movimientos_inventario", "motivo", MovimientoInventario.Motivo.class),
+            new ColumnaEnum("eventos_outbox", "tipo", EventoOutbox.Tipo.class),
+            new ColumnaEnum("eventos_outbox", "estado", EventoOutbox.Estado.class)
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public MigracionRestriccionesEnum(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        COLUMNAS.forEach(this::migrar);
+    }
+
+    private void migrar(ColumnaEnum columna) {
+        List<String[]> restricciones = jdbcTemplate.query(SQL_RESTRICCIONES,
+                (rs, rowNum) -> new String[]{rs.getString("name"), rs.getString("definition")},
+                columna.tabla(), columna.columna());
+        if (restricciones.isEmpty()) {
+            return;
+        }
+
+        List<String> valores = Arrays.stream(columna.tipo().getEnumConstants()).map(Enum::name).toList();
+        boolean admiteTodos = restricciones.stream()
+                .allMatch(r -> valores.stream().allMatch(valor -> r[1].contains("'" + valor + "'")));
+        if (admiteTodos) {
+            return;
+        }
+
+        // Todo en un lote y en una transacción: la columna nunca queda sin restricción a medias
+        StringBuilder sql = new StringBuilder("SET XACT_ABORT ON; BEGIN TRANSACTION; ");
+        for (String[] restriccion : restricciones) {
+            sql.append("ALTER TABLE ").append(columna.tabla())
+                    .append(" DROP CONSTRAINT [").append(restriccion[0]).append("]; ");
+        }
+        sql.append("ALTER TABLE ").append(columna.tabla())
+                .append(" ADD CONSTRAINT ck_").append(columna.tabla()).append('_').append(columna.columna())
+                .append(" CHECK (").append(columna.columna()).append(" IN (")
+                .append(valores.stream().map(valor -> "'" + valor + "'").collect(Collectors.joining(",")))
+                .append(")); COMMIT TRANSACTION;");
+        jdbcTemplate.execute(sql.toString());
+
+        log.info("Restricción de {}.{} actualizada a los valores {}", columna.tabla(), columna.columna(), valores);
+    }
+
+    private record ColumnaEnum(String tabla, String columna, Class<? extends Enum<?>> tipo) {}
+}
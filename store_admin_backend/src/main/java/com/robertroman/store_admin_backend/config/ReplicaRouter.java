@@ -0,0 +1,167 @@
+package com.robertroman.store_admin_backend.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Administra las réplicas de lectura: salud, balanceo round-robin y ventana de lectura propia
+@Component
+@EnableConfigurationProperties(ReplicasProperties.class)
+public class ReplicaRouter implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRouter.class);
+
+    private final ReplicasProperties properties;
+    private final List<Replica> replicas;
+    private final AtomicInteger siguiente = new AtomicInteger();
+
+    // Última escritura confirmada por usuario (epoch ms)
+    private final Map<String, Long> ultimaEscrituraPorUsuario = new ConcurrentHashMap<>();
+
+    public ReplicaRouter(ReplicasProperties properties, DataSourceProperties dataSourceProperties) {
+        this.properties = properties;
+
+        List<Replica> lista = new ArrayList<>();
+        int indice = 1;
+        for (ReplicasProperties.Fuente fuente : properties.getFuentes()) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName(fuente.getNombre() != null ? fuente.getNombre() : "replica-" + indice);
+            dataSource.setJdbcUrl(fuente.getUrl());
+            dataSource.setUsername(fuente.getUsername() != null ? fuente.getUsername() : dataSourceProperties.getUsername());
+            dataSource.setPassword(fuente.getPassword() != null ? fuente.getPassword() : dataSourceProperties.getPassword());
+            dataSource.setDriverClassName(dataSourceProperties.getDriverClassName());
+            dataSource.setMaximumPoolSize(fuente.getMaximumPoolSize());
+            dataSource.setReadOnly(true);
+            // No bloquear el arranque si una réplica está caída: la marca el chequeo de salud
+            dataSource.setInitializationFailTimeout(-1);
+            lista.add(new Replica(dataSource));
+            indice++;
+        }
+        this.replicas = Collections.unmodifiableList(lista);
+    }
+
+    // Réplica sana siguiente (round-robin), o null si no hay ninguna disponible
+    public DataSource elegirReplica() {
+        int total = replicas.size();
+        if (total == 0) {
+            return null;
+        }
+        int inicio = Math.floorMod(siguiente.getAndIncrement(), total);
+        for (int i = 0; i < total; i++) {
+            Replica replica = replicas.get((inicio + i) % total);
+            if (replica.sana) {
+                return replica.dataSource;
+            }
+        }
+        return null;
+    }
+
+    // Marcar que el usuario actual acaba de confirmar una escritura
+    public void registrarEscrituraUsuarioActual() {
+        if (properties.getVentanaLecturaPropiaMs() <= 0) {
+            return;
+        }
+        String usuario = usuarioActual();
+        if (usuario != null) {
+            ultimaEscrituraPorUsuario.put(usuario, System.currentTimeMillis());
+        }
+    }
+
+    // ¿El usuario actual escribió hace poco y debe leer de la base principal?
+    public boolean usuarioActualDentroDeVentana() {
+        if (properties.getVentanaLecturaPropiaMs() <= 0) {
+            return false;
+        }
+        String usuario = usuarioActual();
+        if (usuario == null) {
+            return false;
+        }
+        Long ultimaEscritura = ultimaEscrituraPorUsuario.get(usuario);
+        return ultimaEscritura != null
+                && System.currentTimeMillis() - ultimaEscritura < properties.getVentanaLecturaPropiaMs();
+    }
+
+    public boolean hayReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    // Chequeo de salud periódico
+    @Scheduled(fixedDelayString = "${app.replicas.intervalo-salud-ms:10000}")
+    public void verificarSalud() {
+        for (Replica replica : replicas) {
+            boolean sana;
+            try (Connection connection = replica.dataSource.getConnection()) {
+                sana = connection.isValid(properties.getTimeoutValidacionSegundos());
+            } catch (Exception e) {
+                sana = false;
+            }
+            if (sana != replica.sana) {
+                log.warn("Réplica {} ahora está {}", replica.dataSource.getPoolName(), sana ? "SANA" : "CAÍDA");
+            }
+            replica.sana = sana;
+        }
+
+        // Limpiar escrituras fuera de ventana
+        long limite = System.currentTimeMillis() - properties.getVentanaLecturaPropiaMs();
+        ultimaEscrituraPorUsuario.values().removeIf(instante -> instante < limite);
+    }
+
+    public List<EstadoReplica> obtenerEstado() {
+        List<EstadoReplica> estados = new ArrayList<>();
+        for (Replica replica : replicas) {
+            EstadoReplica estado = new EstadoReplica();
+            estado.setNombre(replica.dataSource.getPoolName());
+            estado.setSana(replica.sana);
+            estados.add(estado);
+        }
+        return estados;
+    }
+
+    @Override
+    public void destroy() {
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    // Método auxiliar
+    private String usuarioActual() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : null;
+    }
+
+    private static class Replica {
+        private final HikariDataSource dataSource;
+        // Arranca como no sana hasta el primer chequeo
+        private volatile boolean sana = false;
+
+        private Replica(HikariDataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+    }
+
+    public static class EstadoReplica {
+        private String nombre;
+        private boolean sana;
+
+        public String getNombre() { return nombre; }
+        public void setNombre(String nombre) { this.nombre = nombre; }
+
+        public boolean isSana() { return sana; }
+        public void setSana(boolean sana) { this.sana = sana; }
+    }
+}
@@ -0,0 +1,60 @@
+package com.robertroman.store_admin_backend.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Réplicas de solo lectura para las transacciones @Transactional(readOnly = true)
+@ConfigurationProperties("app.replicas")
+public class ReplicasProperties {
+
+    // Si no hay fuentes configuradas todo va a la base principal
+    private List<Fuente> fuentes = new ArrayList<>();
+
+    // Cada cuánto se verifica la salud de las réplicas
+    private long intervaloSaludMs = 10000;
+
+    // Tiempo máximo para validar una conexión de réplica
+    private int timeoutValidacionSegundos = 2;
+
+    // Después de una escritura propia, el usuario lee de la principal durante esta ventana (0 = desactivado)
+    private long ventanaLecturaPropiaMs = 0;
+
+    // Getters y Setters
+    public List<Fuente> getFuentes() { return fuentes; }
+    public void setFuentes(List<Fuente> fuentes) { this.fuentes = fuentes; }
+
+    public long getIntervaloSaludMs() { return intervaloSaludMs; }
+    public void setIntervaloSaludMs(long intervaloSaludMs) { this.intervaloSaludMs = intervaloSaludMs; }
+
+    public int getTimeoutValidacionSegundos() { return timeoutValidacionSegundos; }
+    public void setTimeoutValidacionSegundos(int timeoutValidacionSegundos) { this.timeoutValidacionSegundos = timeoutValidacionSegundos; }
+
+    public long getVentanaLecturaPropiaMs() { return ventanaLecturaPropiaMs; }
+    public void setVentanaLecturaPropiaMs(long ventanaLecturaPropiaMs) { this.ventanaLecturaPropiaMs = ventanaLecturaPropiaMs; }
+
+    public static class Fuente {
+        private String nombre;
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 10;
+
+        // Getters y Setters
+        public String getNombre() { return nombre; }
+        public void setNombre(String nombre) { this.nombre = nombre; }
+
+        public String getUrl() { return url; }
+        public void setUrl(String url) { this.url = url; }
+
+        public String getUsername() { return username; }
+        public void setUsername(String username) { this.username = username; }
+
+        public String getPassword() { return password; }
+        public void setPassword(String password) { this.password = password; }
+
+        public int getMaximumPoolSize() { return maximumPoolSize; }
+        public void setMaximumPoolSize(int maximumPoolSize) { this.maximumPoolSize = maximumPoolSize; }
+    }
+}
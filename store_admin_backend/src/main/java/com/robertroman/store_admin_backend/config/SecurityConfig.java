@@ -1,8 +1,11 @@
 package com.robertroman.store_admin_backend.config;
 
+import com.robertroman.store_admin_backend.service.CustomUserDetailsService;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -11,6 +14,9 @@ import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+import org.springframework.security.web.util.matcher.DispatcherTypeRequestMatcher;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -37,6 +43,15 @@ public class SecurityConfig {
                         .requestMatchers("/api/auth/**").permitAll() // Permitir endpoints de autenticación
                         .requestMatchers("/test").permitAll() // Permitir endpoint de test
                         .requestMatchers("/error").permitAll() // Permitir endpoint de error
+                        // Sistema (carriles, réplicas, cache, outbox): datos de todos los locales, solo operadores
+                        .requestMatchers("/api/sistema/**").hasAuthority(CustomUserDetailsService.AUTORIDAD_OPERADOR)
+                        // Despacho asíncrono del flujo de eventos: la solicitud original ya se autorizó
+                        // (JWT o ticket de un uso, que no se puede volver a canjear). El resto de los
+                        // despachos asíncronos se vuelve a autorizar con el header JWT.
+                        .requestMatchers(new AndRequestMatcher(
+                                new DispatcherTypeRequestMatcher(DispatcherType.ASYNC),
+                                PathPatternRequestMatcher.withDefaults().matcher(HttpMethod.GET, "/api/dashboard/local/*/eventos")))
+                        .permitAll()
                         .anyRequest().authenticated() // Proteger todo lo demás
                 )
                 // Agregar el filtro JWT antes del filtro de autenticación por defecto
@@ -62,7 +77,7 @@ public class SecurityConfig {
         configuration.setAllowCredentials(true);
 
         // Exponer headers de respuesta al frontend
-        configuration.setExposedHeaders(Arrays.asList("Authorization", "Content-Type"));
+        configuration.setExposedHeaders(Arrays.asList("Authorization", "Content-Type", "ETag", "Last-Modified"));
 
         // Configurar para todas las rutas
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
@@ -0,0 +1,64 @@
+package com.robertroman.store_admin_backend.controller;
+
+import com.robertroman.store_admin_backend.service.CatalogoService;
+import com.robertroman.store_admin_backend.service.JwtService;
+import com.robertroman.store_admin_backend.service.UsuarioService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/catalogo")
+@CrossOrigin(origins = "*")
+public class CatalogoController {
+
+    @Autowired
+    private CatalogoService catalogoService;
+
+    @Autowired
+    private UsuarioService usuarioService;
+
+    @Autowired
+    private JwtService jwtService;
+
+    // Catálogo de un local para terminales POS: completo sin "since", o solo los cambios desde esa versión
+    @GetMapping("/local/{localId}")
+    public ResponseEntity<?> obtenerCatalogo(@PathVariable Long localId,
+                                             @RequestParam(required = false) Long since,
+                                             @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            CatalogoService.CatalogoLocal catalogo = catalogoService.obtenerCatalogo(localId, since, usuarioId);
+            return ResponseEntity.ok(catalogo);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Método auxiliar
+    private Long obtenerUsuarioIdDelToken(String token) {
+        String tokenLimpio = token.replace("Bearer ", "");
+        String username = jwtService.extractUsername(tokenLimpio);
+
+        return usuarioService.buscarPorUsername(username)
+                .orElseThrow(() -> new RuntimeException("Usuario no encontrado"))
+                .getId();
+    }
+
+    // Clases de respuesta comunes
+    public static class ErrorResponse {
+        private String message;
+        private long timestamp;
+
+        public ErrorResponse(String message) {
+            this.message = message;
+            this.timestamp = System.currentTimeMillis();
+        }
+
+        public String getMessage() { return message; }
+        public void setMessage(String message) { this.message = message; }
+
+        public long getTimestamp() { return timestamp; }
+        public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+    }
+}
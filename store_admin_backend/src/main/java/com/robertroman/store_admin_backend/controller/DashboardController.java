@@ -1,13 +1,25 @@
 package com.robertroman.store_admin_backend.controller;
 
+import com.robertroman.store_admin_backend.config.CarrilSaturadoException;
+import com.robertroman.store_admin_backend.config.JwtAuthenticationFilter;
+import com.robertroman.store_admin_backend.service.CanastaService;
 import com.robertroman.store_admin_backend.service.DashboardService;
+import com.robertroman.store_admin_backend.service.EventosLocalService;
 import com.robertroman.store_admin_backend.service.JwtService;
+import com.robertroman.store_admin_backend.service.LocalService;
+import com.robertroman.store_admin_backend.service.MasVendidosEnVivoService;
+import com.robertroman.store_admin_backend.service.ReportesSurtidoService;
+import com.robertroman.store_admin_backend.service.SerieVentasService;
 import com.robertroman.store_admin_backend.service.UsuarioService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -19,6 +31,24 @@ public class DashboardController {
     @Autowired
     private DashboardService dashboardService;
 
+    @Autowired
+    private EventosLocalService eventosLocalService;
+
+    @Autowired
+    private MasVendidosEnVivoService masVendidosEnVivoService;
+
+    @Autowired
+    private SerieVentasService serieVentasService;
+
+    @Autowired
+    private CanastaService canastaService;
+
+    @Autowired
+    private ReportesSurtidoService reportesSurtidoService;
+
+    @Autowired
+    private LocalService localService;
+
     @Autowired
     private UsuarioService usuarioService;
 
@@ -37,6 +67,8 @@ public class DashboardController {
             DashboardService.DashboardData dashboard = dashboardService.obtenerDashboardCompleto(
                     localId, usuarioId, fechaInicio, fechaFin);
             return ResponseEntity.ok(dashboard);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -55,6 +87,8 @@ public class DashboardController {
             DashboardService.DashboardData dashboard = dashboardService.obtenerDashboardCompleto(
                     localId, usuarioId, inicioDia, finDia);
             return ResponseEntity.ok(dashboard);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -74,20 +108,186 @@ public class DashboardController {
             DashboardService.DashboardData dashboard = dashboardService.obtenerDashboardCompleto(
                     localId, usuarioId, inicioMes, finMes);
             return ResponseEntity.ok(dashboard);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
     }
 
-    // Productos más vendidos
+    // Productos más vendidos en un período (por defecto, los últimos 30 días)
     @GetMapping("/local/{localId}/productos-mas-vendidos")
-    public ResponseEntity<?> obtenerProductosMasVendidos(@PathVariable Long localId,
-                                                         @RequestHeader("Authorization") String token) {
+    public ResponseEntity<?> obtenerProductosMasVendidos(
+            @PathVariable Long localId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fechaInicio,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fechaFin,
+            @RequestParam(defaultValue = "10") int limite,
+            @RequestHeader("Authorization") String token) {
         try {
             Long usuarioId = obtenerUsuarioIdDelToken(token);
+            LocalDateTime fin = fechaFin != null ? fechaFin : LocalDateTime.now();
+            LocalDateTime inicio = fechaInicio != null ? fechaInicio : fin.minusDays(30);
             // Validar acceso (se hace internamente en el servicio)
-            List<DashboardService.ProductoVendido> productos = dashboardService.obtenerProductosMasVendidos(localId);
+            List<DashboardService.ProductoVendido> productos = dashboardService.obtenerProductosMasVendidos(
+                    localId, inicio, fin, Math.max(1, Math.min(limite, 100)), usuarioId);
+            return ResponseEntity.ok(productos);
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Productos más vendidos hoy, desde el resumen en memoria (sin consultar ventas)
+    @GetMapping("/local/{localId}/productos-mas-vendidos/hoy")
+    public ResponseEntity<?> obtenerProductosMasVendidosHoy(@PathVariable Long localId,
+                                                            @RequestParam(defaultValue = "10") int limite,
+                                                            @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            List<MasVendidosEnVivoService.ProductoEnVivo> productos = masVendidosEnVivoService.obtenerMasVendidosHoy(
+                    localId, Math.max(1, Math.min(limite, 100)), usuarioId);
             return ResponseEntity.ok(productos);
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Serie de ventas para gráficos (HORA, DIA, SEMANA, MES u HORA_SEMANA)
+    @GetMapping("/local/{localId}/serie")
+    public ResponseEntity<?> obtenerSerieVentas(
+            @PathVariable Long localId,
+            @RequestParam(defaultValue = "DIA") SerieVentasService.Granularidad granularidad,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fechaInicio,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fechaFin,
+            @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            LocalDateTime fin = fechaFin != null ? fechaFin : LocalDateTime.now();
+            LocalDateTime inicio = fechaInicio != null ? fechaInicio : switch (granularidad) {
+                case HORA -> fin.minusHours(24);
+                case DIA -> fin.minusDays(30);
+                case SEMANA -> fin.minusWeeks(12);
+                case MES -> fin.minusMonths(12);
+                case HORA_SEMANA -> fin.minusDays(28);
+            };
+            SerieVentasService.SerieVentas serie = serieVentasService.obtenerSerie(
+                    localId, granularidad, inicio, fin, usuarioId);
+            return ResponseEntity.ok(serie);
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Productos que se compran junto con uno dado (análisis de canasta, actualizado periódicamente)
+    @GetMapping("/local/{localId}/comprados-juntos")
+    public ResponseEntity<?> obtenerCompradosJuntos(@PathVariable Long localId,
+                                                    @RequestParam Long productoLocalId,
+                                                    @RequestParam(defaultValue = "10") int limite,
+                                                    @RequestParam(defaultValue = "2") int minimoVentas,
+                                                    @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            CanastaService.CompradosJuntos compradosJuntos = canastaService.obtenerCompradosJuntos(
+                    localId, productoLocalId, Math.max(1, Math.min(limite, 100)), Math.max(1, minimoVentas), usuarioId);
+            return ResponseEntity.ok(compradosJuntos);
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Productos activos sin ventas en los últimos N días (paginado)
+    @GetMapping("/local/{localId}/sin-ventas")
+    public ResponseEntity<?> obtenerProductosSinVentas(@PathVariable Long localId,
+                                                       @RequestParam(defaultValue = "90") int dias,
+                                                       @RequestParam(defaultValue = "0") int pagina,
+                                                       @RequestParam(defaultValue = "100") int tamano,
+                                                       @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            return ResponseEntity.ok(reportesSurtidoService.obtenerSinVentas(
+                    localId, dias, Math.max(0, pagina), Math.max(1, Math.min(tamano, 1000)), usuarioId));
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Mismo reporte completo en CSV (se escribe a medida que se lee)
+    @GetMapping("/local/{localId}/sin-ventas/csv")
+    public ResponseEntity<?> exportarProductosSinVentas(@PathVariable Long localId,
+                                                        @RequestParam(defaultValue = "90") int dias,
+                                                        @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            // Validar antes de empezar a escribir: después ya no se puede responder un error
+            localService.validarAccesoLocal(localId, usuarioId);
+            if (dias < 1) {
+                throw new RuntimeException("La cantidad de días debe ser mayor a 0");
+            }
+            StreamingResponseBody cuerpo = salida -> reportesSurtidoService.exportarSinVentas(localId, dias, salida);
+            return csv("sin-ventas-" + localId + ".csv", cuerpo);
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Clasificación ABC por ingresos del período (por defecto, los últimos 90 días)
+    @GetMapping("/local/{localId}/abc")
+    public ResponseEntity<?> obtenerClasificacionAbc(
+            @PathVariable Long localId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fechaInicio,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fechaFin,
+            @RequestParam(defaultValue = "80") int porcentajeA,
+            @RequestParam(defaultValue = "95") int porcentajeB,
+            @RequestParam(required = false) String clase,
+            @RequestParam(defaultValue = "0") int pagina,
+            @RequestParam(defaultValue = "100") int tamano,
+            @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            LocalDateTime fin = fechaFin != null ? fechaFin : LocalDateTime.now();
+            LocalDateTime inicio = fechaInicio != null ? fechaInicio : fin.minusDays(90);
+            return ResponseEntity.ok(reportesSurtidoService.obtenerClasificacionAbc(localId, inicio, fin,
+                    porcentajeA, porcentajeB, clase, Math.max(0, pagina), Math.max(1, Math.min(tamano, 1000)), usuarioId));
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Clasificación ABC completa en CSV (se escribe a medida que se lee)
+    @GetMapping("/local/{localId}/abc/csv")
+    public ResponseEntity<?> exportarClasificacionAbc(
+            @PathVariable Long localId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fechaInicio,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fechaFin,
+            @RequestParam(defaultValue = "80") int porcentajeA,
+            @RequestParam(defaultValue = "95") int porcentajeB,
+            @RequestParam(required = false) String clase,
+            @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            LocalDateTime fin = fechaFin != null ? fechaFin : LocalDateTime.now();
+            LocalDateTime inicio = fechaInicio != null ? fechaInicio : fin.minusDays(90);
+            // Validar antes de empezar a escribir: después ya no se puede responder un error
+            localService.validarAccesoLocal(localId, usuarioId);
+            ReportesSurtidoService.validarParametrosAbc(inicio, fin, porcentajeA, porcentajeB, clase);
+            StreamingResponseBody cuerpo = salida -> reportesSurtidoService.exportarClasificacionAbc(
+                    localId, inicio, fin, porcentajeA, porcentajeB, clase, salida);
+            return csv("abc-" + localId + ".csv", cuerpo);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -105,6 +305,8 @@ public class DashboardController {
             List<DashboardService.VentaCategoria> ventasPorCategoria = dashboardService.obtenerVentasPorCategoria(
                     localId, fechaInicio, fechaFin);
             return ResponseEntity.ok(ventasPorCategoria);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -118,6 +320,8 @@ public class DashboardController {
             Long usuarioId = obtenerUsuarioIdDelToken(token);
             List<DashboardService.AlertaStock> alertas = dashboardService.obtenerAlertasStock(localId, usuarioId);
             return ResponseEntity.ok(alertas);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -137,6 +341,8 @@ public class DashboardController {
             DashboardService.ComparacionVentas comparacion = dashboardService.compararVentas(
                     localId, usuarioId, periodo1Inicio, periodo1Fin, periodo2Inicio, periodo2Fin);
             return ResponseEntity.ok(comparacion);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -154,6 +360,8 @@ public class DashboardController {
             List<DashboardService.RentabilidadProducto> rentabilidad = dashboardService.obtenerRentabilidadProductos(
                     localId, usuarioId, fechaInicio, fechaFin);
             return ResponseEntity.ok(rentabilidad);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -183,6 +391,45 @@ public class DashboardController {
             resumen.setProductosSinStock(dashboard.getProductosSinStock());
 
             return ResponseEntity.ok(resumen);
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Ticket de un solo uso para abrir el flujo de eventos del local desde EventSource
+    @PostMapping("/local/{localId}/eventos/ticket")
+    public ResponseEntity<?> emitirTicketEventos(@PathVariable Long localId,
+                                                 @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            String username = jwtService.extractUsername(token.replace("Bearer ", ""));
+            EventosLocalService.TicketEventos ticket = eventosLocalService.emitirTicket(localId, usuarioId, username);
+            return ResponseEntity.ok(new TicketEventosResponse(ticket.getTicket(), ticket.getVenceEn()));
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Eventos en vivo del local (ventas, cambios de stock, stock bajo) por Server-Sent Events.
+    // EventSource no permite headers: en la URL solo se acepta el ticket ("ticket"), que valida
+    // el filtro JWT, nunca el token.
+    @GetMapping("/local/{localId}/eventos")
+    public Object suscribirEventos(@PathVariable Long localId,
+                                   @RequestHeader(value = "Authorization", required = false) String token,
+                                   @RequestAttribute(value = JwtAuthenticationFilter.ATRIBUTO_USUARIO_TICKET,
+                                           required = false) Long usuarioTicket) {
+        try {
+            Long usuarioId = token != null ? obtenerUsuarioIdDelToken(token) : usuarioTicket;
+            if (usuarioId == null) {
+                throw new RuntimeException("Falta el token o el ticket de eventos");
+            }
+            return eventosLocalService.suscribir(localId, usuarioId);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -208,11 +455,21 @@ public class DashboardController {
                     localId, usuarioId, inicioMesActual, finMesActual, inicioMesAnterior, finMesAnterior);
 
             return ResponseEntity.ok(comparacion);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
     }
 
+    // Respuesta CSV para descargar
+    private ResponseEntity<StreamingResponseBody> csv(String archivo, StreamingResponseBody cuerpo) {
+        return ResponseEntity.ok()
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + archivo + "\"")
+                .body(cuerpo);
+    }
+
     // Método auxiliar
     private Long obtenerUsuarioIdDelToken(String token) {
         String tokenLimpio = token.replace("Bearer ", "");
@@ -252,6 +509,23 @@ public class DashboardController {
         public void setProductosSinStock(Integer productosSinStock) { this.productosSinStock = productosSinStock; }
     }
 
+    public static class TicketEventosResponse {
+        private String ticket;
+        private long venceEn;
+
+        public TicketEventosResponse(String ticket, long venceEn) {
+            this.ticket = ticket;
+            this.venceEn = venceEn;
+        }
+
+        // Getters y Setters
+        public String getTicket() { return ticket; }
+        public void setTicket(String ticket) { this.ticket = ticket; }
+
+        public long getVenceEn() { return venceEn; }
+        public void setVenceEn(long venceEn) { this.venceEn = venceEn; }
+    }
+
     public static class ErrorResponse {
         private String message;
         private long timestamp;
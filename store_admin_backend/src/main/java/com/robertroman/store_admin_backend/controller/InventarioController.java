@@ -0,0 +1,101 @@
+package com.robertroman.store_admin_backend.controller;
+
+import com.robertroman.store_admin_backend.service.JwtService;
+import com.robertroman.store_admin_backend.service.LibroInventarioService;
+import com.robertroman.store_admin_backend.service.UsuarioService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDateTime;
+
+@RestController
+@RequestMapping("/api/inventario")
+@CrossOrigin(origins = "*")
+public class InventarioController {
+
+    @Autowired
+    private LibroInventarioService libroInventarioService;
+
+    @Autowired
+    private UsuarioService usuarioService;
+
+    @Autowired
+    private JwtService jwtService;
+
+    // Stock de todos los productos de un local a una fecha
+    @GetMapping("/local/{localId}/stock")
+    public ResponseEntity<?> obtenerStockAFecha(
+            @PathVariable Long localId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fecha,
+            @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            return ResponseEntity.ok(libroInventarioService.stockAFecha(localId, fecha, usuarioId));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Stock de un producto en un local a una fecha
+    @GetMapping("/local/{localId}/producto/{productoId}/stock")
+    public ResponseEntity<?> obtenerStockProductoAFecha(
+            @PathVariable Long localId,
+            @PathVariable Long productoId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fecha,
+            @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            return ResponseEntity.ok(libroInventarioService.stockAFecha(localId, productoId, fecha, usuarioId));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Movimientos de inventario de un local en un período (paginados)
+    @GetMapping("/local/{localId}/movimientos")
+    public ResponseEntity<?> obtenerMovimientos(
+            @PathVariable Long localId,
+            @RequestParam(required = false) Long productoId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fechaInicio,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fechaFin,
+            @RequestParam(defaultValue = "0") int pagina,
+            @RequestParam(defaultValue = "100") int tamano,
+            @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            return ResponseEntity.ok(libroInventarioService.movimientos(
+                    localId, productoId, fechaInicio, fechaFin, pagina, Math.min(tamano, 1000), usuarioId));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Método auxiliar
+    private Long obtenerUsuarioIdDelToken(String token) {
+        String tokenLimpio = token.replace("Bearer ", "");
+        String username = jwtService.extractUsername(tokenLimpio);
+
+        return usuarioService.buscarPorUsername(username)
+                .orElseThrow(() -> new RuntimeException("Usuario no encontrado"))
+                .getId();
+    }
+
+    // Clases de respuesta comunes
+    public static class ErrorResponse {
+        private String message;
+        private long timestamp;
+
+        public ErrorResponse(String message) {
+            this.message = message;
+            this.timestamp = System.currentTimeMillis();
+        }
+
+        public String getMessage() { return message; }
+        public void setMessage(String message) { this.message = message; }
+
+        public long getTimestamp() { return timestamp; }
+        public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+    }
+}
@@ -1,5 +1,6 @@
 package com.robertroman.store_admin_backend.controller;
 
+import com.robertroman.store_admin_backend.dto.VersionRecurso;
 import com.robertroman.store_admin_backend.entity.Local;
 import com.robertroman.store_admin_backend.service.JwtService;
 import com.robertroman.store_admin_backend.service.LocalService;
@@ -8,6 +9,7 @@ import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 import java.util.Optional;
@@ -44,9 +46,17 @@ public class LocalController {
 
     // Obtener locales del usuario autenticado
     @GetMapping("/mis-locales")
-    public ResponseEntity<?> obtenerMisLocales(@RequestHeader("Authorization") String token) {
+    public ResponseEntity<?> obtenerMisLocales(@RequestHeader("Authorization") String token,
+                                               WebRequest webRequest) {
         try {
             Long usuarioId = obtenerUsuarioIdDelToken(token);
+
+            // GET condicional: si nada cambió se responde 304 sin consultar la lista
+            VersionRecurso version = localService.obtenerVersionLocalesPorUsuario(usuarioId);
+            if (webRequest.checkNotModified(version.etag("locales-u" + usuarioId), version.getUltimaModificacion())) {
+                return null; // 304 Not Modified
+            }
+
             List<Local> locales = localService.obtenerLocalesPorUsuario(usuarioId);
             return ResponseEntity.ok(locales);
         } catch (RuntimeException e) {
@@ -57,13 +67,18 @@ public class LocalController {
     // Obtener local por ID (solo si el usuario es propietario)
     @GetMapping("/{id}")
     public ResponseEntity<?> obtenerLocal(@PathVariable Long id,
-                                          @RequestHeader("Authorization") String token) {
+                                          @RequestHeader("Authorization") String token,
+                                          WebRequest webRequest) {
         try {
             Long usuarioId = obtenerUsuarioIdDelToken(token);
             localService.validarAccesoLocal(id, usuarioId);
 
             Optional<Local> local = localService.obtenerPorId(id);
             if (local.isPresent()) {
+                long ultimaModificacion = VersionRecurso.aMillis(local.get().getUpdatedAt());
+                if (webRequest.checkNotModified("\"local-" + id + "-" + ultimaModificacion + "\"", ultimaModificacion)) {
+                    return null; // 304 Not Modified
+                }
                 return ResponseEntity.ok(local.get());
             }
             return ResponseEntity.notFound().build();
@@ -90,21 +105,36 @@ public class LocalController {
 
     // Buscar locales por nombre
     @GetMapping("/buscar")
-    public ResponseEntity<List<Local>> buscarLocales(@RequestParam String nombre) {
+    public ResponseEntity<List<Local>> buscarLocales(@RequestParam String nombre, WebRequest webRequest) {
+        VersionRecurso version = localService.obtenerVersionLocales();
+        if (webRequest.checkNotModified(version.etag("locales-buscar"), version.getUltimaModificacion())) {
+            return null; // 304 Not Modified
+        }
+
         List<Local> locales = localService.buscarPorNombre(nombre);
         return ResponseEntity.ok(locales);
     }
 
     // Obtener locales por ciudad
     @GetMapping("/ciudad/{ciudad}")
-    public ResponseEntity<List<Local>> obtenerPorCiudad(@PathVariable String ciudad) {
+    public ResponseEntity<List<Local>> obtenerPorCiudad(@PathVariable String ciudad, WebRequest webRequest) {
+        VersionRecurso version = localService.obtenerVersionLocales();
+        if (webRequest.checkNotModified(version.etag("locales-ciudad"), version.getUltimaModificacion())) {
+            return null; // 304 Not Modified
+        }
+
         List<Local> locales = localService.obtenerPorCiudad(ciudad);
         return ResponseEntity.ok(locales);
     }
 
     // Obtener todas las ciudades
     @GetMapping("/ciudades")
-    public ResponseEntity<List<String>> obtenerCiudades() {
+    public ResponseEntity<List<String>> obtenerCiudades(WebRequest webRequest) {
+        VersionRecurso version = localService.obtenerVersionLocales();
+        if (webRequest.checkNotModified(version.etag("ciudades"), version.getUltimaModificacion())) {
+            return null; // 304 Not Modified
+        }
+
         List<String> ciudades = localService.obtenerCiudades();
         return ResponseEntity.ok(ciudades);
     }
@@ -1,12 +1,16 @@
 package com.robertroman.store_admin_backend.controller;
 
+import com.robertroman.store_admin_backend.dto.VersionRecurso;
 import com.robertroman.store_admin_backend.entity.Producto;
+import com.robertroman.store_admin_backend.service.ImportacionCatalogoService;
 import com.robertroman.store_admin_backend.service.ProductoService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.InputStream;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,6 +22,9 @@ public class ProductoController {
     @Autowired
     private ProductoService productoService;
 
+    @Autowired
+    private ImportacionCatalogoService importacionCatalogoService;
+
     // Crear producto
     @PostMapping
     public ResponseEntity<?> crearProducto(@Valid @RequestBody Producto producto) {
@@ -32,18 +39,58 @@ public class ProductoController {
         }
     }
 
+    // Importar catálogo de proveedor (CSV con encabezado o un JSON por línea)
+    @PostMapping(value = "/importar", consumes = {"text/csv", "application/x-ndjson"})
+    public ResponseEntity<?> importarCatalogo(InputStream archivo,
+                                              @RequestHeader("Content-Type") String tipo,
+                                              @RequestParam(defaultValue = "false") boolean actualizarExistentes,
+                                              @RequestParam(required = false) String id) {
+        try {
+            ImportacionCatalogoService.Formato formato = tipo.startsWith("text/csv")
+                    ? ImportacionCatalogoService.Formato.CSV : ImportacionCatalogoService.Formato.JSON;
+            return ResponseEntity.ok(importacionCatalogoService.importar(archivo, formato, actualizarExistentes, id));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Avance de las importaciones en curso y recientes
+    @GetMapping("/importaciones")
+    public ResponseEntity<List<ImportacionCatalogoService.Progreso>> obtenerImportaciones() {
+        return ResponseEntity.ok(importacionCatalogoService.obtenerImportaciones());
+    }
+
+    @GetMapping("/importaciones/{id}")
+    public ResponseEntity<?> obtenerImportacion(@PathVariable String id) {
+        try {
+            return ResponseEntity.ok(importacionCatalogoService.obtenerProgreso(id));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
     // Obtener todos los productos activos
     @GetMapping
-    public ResponseEntity<List<Producto>> obtenerProductos() {
+    public ResponseEntity<List<Producto>> obtenerProductos(WebRequest webRequest) {
+        // GET condicional: si nada cambió se responde 304 sin consultar la lista
+        VersionRecurso version = productoService.obtenerVersionProductos();
+        if (webRequest.checkNotModified(version.etag("productos"), version.getUltimaModificacion())) {
+            return null; // 304 Not Modified
+        }
+
         List<Producto> productos = productoService.obtenerProductosActivos();
         return ResponseEntity.ok(productos);
     }
 
     // Obtener producto por ID
     @GetMapping("/{id}")
-    public ResponseEntity<?> obtenerProducto(@PathVariable Long id) {
+    public ResponseEntity<?> obtenerProducto(@PathVariable Long id, WebRequest webRequest) {
         Optional<Producto> producto = productoService.obtenerPorId(id);
         if (producto.isPresent()) {
+            long ultimaModificacion = VersionRecurso.aMillis(producto.get().getUpdatedAt());
+            if (webRequest.checkNotModified("\"producto-" + id + "-" + ultimaModificacion + "\"", ultimaModificacion)) {
+                return null; // 304 Not Modified
+            }
             return ResponseEntity.ok(producto.get());
         }
         return ResponseEntity.notFound().build();
@@ -66,21 +113,36 @@ public class ProductoController {
 
     // Buscar productos por nombre
     @GetMapping("/buscar")
-    public ResponseEntity<List<Producto>> buscarProductos(@RequestParam String nombre) {
+    public ResponseEntity<List<Producto>> buscarProductos(@RequestParam String nombre, WebRequest webRequest) {
+        VersionRecurso version = productoService.obtenerVersionProductos();
+        if (webRequest.checkNotModified(version.etag("productos-buscar"), version.getUltimaModificacion())) {
+            return null; // 304 Not Modified
+        }
+
         List<Producto> productos = productoService.buscarPorNombre(nombre);
         return ResponseEntity.ok(productos);
     }
 
     // Obtener productos por categoría
     @GetMapping("/categoria/{categoria}")
-    public ResponseEntity<List<Producto>> obtenerPorCategoria(@PathVariable String categoria) {
+    public ResponseEntity<List<Producto>> obtenerPorCategoria(@PathVariable String categoria, WebRequest webRequest) {
+        VersionRecurso version = productoService.obtenerVersionProductos();
+        if (webRequest.checkNotModified(version.etag("productos-categoria"), version.getUltimaModificacion())) {
+            return null; // 304 Not Modified
+        }
+
         List<Producto> productos = productoService.obtenerPorCategoria(categoria);
         return ResponseEntity.ok(productos);
     }
 
     // Obtener todas las categorías
     @GetMapping("/categorias")
-    public ResponseEntity<List<String>> obtenerCategorias() {
+    public ResponseEntity<List<String>> obtenerCategorias(WebRequest webRequest) {
+        VersionRecurso version = productoService.obtenerVersionProductos();
+        if (webRequest.checkNotModified(version.etag("categorias"), version.getUltimaModificacion())) {
+            return null; // 304 Not Modified
+        }
+
         List<String> categorias = productoService.obtenerCategorias();
         return ResponseEntity.ok(categorias);
     }
@@ -1,14 +1,24 @@
 package com.robertroman.store_admin_backend.controller;
 
+import com.robertroman.store_admin_backend.config.CarrilSaturadoException;
+import com.robertroman.store_admin_backend.dto.VersionRecurso;
 import com.robertroman.store_admin_backend.entity.ProductoLocal;
+import com.robertroman.store_admin_backend.entity.TransferenciaStock;
+import com.robertroman.store_admin_backend.service.ActualizacionMasivaService;
+import com.robertroman.store_admin_backend.service.AsignacionMasivaService;
 import com.robertroman.store_admin_backend.service.JwtService;
 import com.robertroman.store_admin_backend.service.ProductoLocalService;
+import com.robertroman.store_admin_backend.service.RemarcacionPreciosService;
+import com.robertroman.store_admin_backend.service.ReposicionService;
+import com.robertroman.store_admin_backend.service.TransferenciaStockService;
 import com.robertroman.store_admin_backend.service.UsuarioService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.InputStream;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
@@ -21,6 +31,21 @@ public class ProductoLocalController {
     @Autowired
     private ProductoLocalService productoLocalService;
 
+    @Autowired
+    private TransferenciaStockService transferenciaStockService;
+
+    @Autowired
+    private ActualizacionMasivaService actualizacionMasivaService;
+
+    @Autowired
+    private AsignacionMasivaService asignacionMasivaService;
+
+    @Autowired
+    private RemarcacionPreciosService remarcacionPreciosService;
+
+    @Autowired
+    private ReposicionService reposicionService;
+
     @Autowired
     private UsuarioService usuarioService;
 
@@ -44,6 +69,8 @@ public class ProductoLocalController {
             );
 
             return ResponseEntity.ok(productoLocal);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         } catch (Exception e) {
@@ -67,6 +94,8 @@ public class ProductoLocalController {
             );
 
             return ResponseEntity.ok(productoLocal);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -87,6 +116,183 @@ public class ProductoLocalController {
             );
 
             return ResponseEntity.ok(new MessageResponse("Stock aumentado exitosamente. Nuevo stock: " + productoLocal.getStock()));
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Activar o desactivar stock en particiones (ofertas relámpago)
+    @PatchMapping("/escrow")
+    public ResponseEntity<?> configurarEscrow(@RequestBody EscrowRequest request,
+                                              @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+
+            ProductoLocal productoLocal = productoLocalService.configurarEscrow(
+                    request.getProductoId(),
+                    request.getLocalId(),
+                    request.getParticiones(),
+                    usuarioId
+            );
+
+            return ResponseEntity.ok(productoLocal);
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Asignar todos los productos de una categoría o de una lista a uno o varios locales
+    @PostMapping("/asignar-masivo")
+    public ResponseEntity<?> asignarMasivo(@RequestBody AsignacionMasivaService.AsignacionRequest request,
+                                           @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            return ResponseEntity.ok(asignacionMasivaService.asignar(request, usuarioId));
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Vista previa de una remarcación de precios (no modifica nada)
+    @PostMapping("/remarcacion/simulacion")
+    public ResponseEntity<?> simularRemarcacion(@RequestBody RemarcacionPreciosService.RemarcacionRequest request,
+                                                @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            return ResponseEntity.ok(remarcacionPreciosService.simular(request, usuarioId));
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Remarcar precios de venta por categoría, locales o SKUs (porcentaje, monto y redondeo);
+    // un intento interrumpido se retoma reenviando la solicitud con desdeId
+    @PostMapping("/remarcacion")
+    public ResponseEntity<?> aplicarRemarcacion(@RequestBody RemarcacionPreciosService.RemarcacionRequest request,
+                                                @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            return ResponseEntity.ok(remarcacionPreciosService.aplicar(request, usuarioId));
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Stock mínimo y cantidad a reponer sugeridos según el ritmo de ventas (se recalculan cada noche)
+    @GetMapping("/local/{localId}/sugerencias-reposicion")
+    public ResponseEntity<?> obtenerSugerenciasReposicion(@PathVariable Long localId,
+                                                         @RequestParam(defaultValue = "true") boolean soloCambios,
+                                                         @RequestParam(defaultValue = "0") int pagina,
+                                                         @RequestParam(defaultValue = "100") int tamano,
+                                                         @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            return ResponseEntity.ok(reposicionService.obtenerSugerencias(
+                    localId, soloCambios, pagina, Math.min(tamano, 1000), usuarioId));
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Recalcular las sugerencias de un local sin esperar a la noche
+    @PostMapping("/local/{localId}/sugerencias-reposicion/recalcular")
+    public ResponseEntity<?> recalcularSugerenciasReposicion(@PathVariable Long localId,
+                                                             @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            int productos = reposicionService.recalcular(localId, usuarioId);
+            return ResponseEntity.ok(new MessageResponse("Sugerencias recalculadas para " + productos + " productos"));
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Aplicar el stock mínimo sugerido (las sugerencias indicadas, o todas las del local si no se envían IDs)
+    @PostMapping("/local/{localId}/sugerencias-reposicion/aplicar")
+    public ResponseEntity<?> aplicarSugerenciasReposicion(@PathVariable Long localId,
+                                                          @RequestBody(required = false) List<Long> sugerenciaIds,
+                                                          @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            int aplicadas = reposicionService.aplicar(localId, sugerenciaIds, usuarioId);
+            return ResponseEntity.ok(new MessageResponse("Stock mínimo actualizado en " + aplicadas + " productos"));
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Actualizar stock, precio y stock mínimo de muchos productos de un local (errores por línea)
+    @PostMapping("/local/{localId}/actualizacion-masiva")
+    public ResponseEntity<?> actualizacionMasiva(@PathVariable Long localId,
+                                                 @RequestBody List<ActualizacionMasivaService.LineaActualizacion> lineas,
+                                                 @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            return ResponseEntity.ok(actualizacionMasivaService.actualizar(localId, lineas, usuarioId));
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Igual, leyendo un CSV productoId,stock,precioVenta,stockMinimo a medida que llega
+    @PostMapping(value = "/local/{localId}/actualizacion-masiva/csv", consumes = "text/csv")
+    public ResponseEntity<?> actualizacionMasivaCsv(@PathVariable Long localId,
+                                                    InputStream csv,
+                                                    @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            return ResponseEntity.ok(actualizacionMasivaService.actualizarCsv(localId, csv, usuarioId));
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Transferir stock de varios productos entre dos locales en una sola operación
+    @PostMapping("/transferencias")
+    public ResponseEntity<?> transferirStock(@RequestBody TransferenciaStockService.TransferenciaRequest request,
+                                             @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            TransferenciaStock transferencia = transferenciaStockService.transferir(request, usuarioId);
+            return ResponseEntity.ok(transferencia);
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Transferencias que salen o entran a un local
+    @GetMapping("/transferencias/local/{localId}")
+    public ResponseEntity<?> obtenerTransferencias(@PathVariable Long localId,
+                                                   @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            List<TransferenciaStock> transferencias =
+                    transferenciaStockService.obtenerTransferenciasDeLocal(localId, usuarioId);
+            return ResponseEntity.ok(transferencias);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -95,11 +301,21 @@ public class ProductoLocalController {
     // Obtener productos de un local (DASHBOARD)
     @GetMapping("/local/{localId}")
     public ResponseEntity<?> obtenerProductosDeLocal(@PathVariable Long localId,
-                                                     @RequestHeader("Authorization") String token) {
+                                                     @RequestHeader("Authorization") String token,
+                                                     WebRequest webRequest) {
         try {
             Long usuarioId = obtenerUsuarioIdDelToken(token);
+
+            // GET condicional: valida el acceso y compara versiones antes de la consulta pesada
+            VersionRecurso version = productoLocalService.obtenerVersionInventario(localId, usuarioId);
+            if (webRequest.checkNotModified(version.etag("inventario-" + localId), version.getUltimaModificacion())) {
+                return null; // 304 Not Modified
+            }
+
             List<ProductoLocal> productos = productoLocalService.obtenerProductosDeLocal(localId, usuarioId);
             return ResponseEntity.ok(productos);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -119,11 +335,21 @@ public class ProductoLocalController {
     // Obtener productos con stock bajo (ALERTAS)
     @GetMapping("/local/{localId}/stock-bajo")
     public ResponseEntity<?> obtenerProductosStockBajo(@PathVariable Long localId,
-                                                       @RequestHeader("Authorization") String token) {
+                                                       @RequestHeader("Authorization") String token,
+                                                       WebRequest webRequest) {
         try {
             Long usuarioId = obtenerUsuarioIdDelToken(token);
+
+            // GET condicional: valida el acceso y compara versiones antes de la consulta pesada
+            VersionRecurso version = productoLocalService.obtenerVersionInventario(localId, usuarioId);
+            if (webRequest.checkNotModified(version.etag("stock-bajo-" + localId), version.getUltimaModificacion())) {
+                return null; // 304 Not Modified
+            }
+
             List<ProductoLocal> productos = productoLocalService.obtenerProductosStockBajo(localId, usuarioId);
             return ResponseEntity.ok(productos);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -132,11 +358,21 @@ public class ProductoLocalController {
     // Obtener productos sin stock
     @GetMapping("/local/{localId}/sin-stock")
     public ResponseEntity<?> obtenerProductosSinStock(@PathVariable Long localId,
-                                                      @RequestHeader("Authorization") String token) {
+                                                      @RequestHeader("Authorization") String token,
+                                                      WebRequest webRequest) {
         try {
             Long usuarioId = obtenerUsuarioIdDelToken(token);
+
+            // GET condicional: valida el acceso y compara versiones antes de la consulta pesada
+            VersionRecurso version = productoLocalService.obtenerVersionInventario(localId, usuarioId);
+            if (webRequest.checkNotModified(version.etag("sin-stock-" + localId), version.getUltimaModificacion())) {
+                return null; // 304 Not Modified
+            }
+
             List<ProductoLocal> productos = productoLocalService.obtenerProductosSinStock(localId, usuarioId);
             return ResponseEntity.ok(productos);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -145,14 +381,24 @@ public class ProductoLocalController {
     // Obtener valor total del inventario
     @GetMapping("/local/{localId}/valor-inventario")
     public ResponseEntity<?> obtenerValorInventario(@PathVariable Long localId,
-                                                    @RequestHeader("Authorization") String token) {
+                                                    @RequestHeader("Authorization") String token,
+                                                    WebRequest webRequest) {
         try {
             Long usuarioId = obtenerUsuarioIdDelToken(token);
+
+            // GET condicional: valida el acceso y compara versiones antes de la consulta pesada
+            VersionRecurso version = productoLocalService.obtenerVersionInventario(localId, usuarioId);
+            if (webRequest.checkNotModified(version.etag("valor-inventario-" + localId), version.getUltimaModificacion())) {
+                return null; // 304 Not Modified
+            }
+
             Optional<BigDecimal> valor = productoLocalService.obtenerValorInventario(localId, usuarioId);
             if (valor.isPresent()) {
                 return ResponseEntity.ok(new ValorInventarioResponse(valor.get()));
             }
             return ResponseEntity.ok(new ValorInventarioResponse(BigDecimal.ZERO));
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -161,11 +407,21 @@ public class ProductoLocalController {
     // Obtener resumen completo del inventario (DASHBOARD)
     @GetMapping("/local/{localId}/resumen")
     public ResponseEntity<?> obtenerResumenInventario(@PathVariable Long localId,
-                                                      @RequestHeader("Authorization") String token) {
+                                                      @RequestHeader("Authorization") String token,
+                                                      WebRequest webRequest) {
         try {
             Long usuarioId = obtenerUsuarioIdDelToken(token);
+
+            // GET condicional: valida el acceso y compara versiones antes de la consulta pesada
+            VersionRecurso version = productoLocalService.obtenerVersionInventario(localId, usuarioId);
+            if (webRequest.checkNotModified(version.etag("resumen-inventario-" + localId), version.getUltimaModificacion())) {
+                return null; // 304 Not Modified
+            }
+
             ProductoLocalService.ResumenInventario resumen = productoLocalService.obtenerResumenInventario(localId, usuarioId);
             return ResponseEntity.ok(resumen);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -186,6 +442,8 @@ public class ProductoLocalController {
             );
 
             return ResponseEntity.ok(productoLocal);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -200,6 +458,8 @@ public class ProductoLocalController {
             Long usuarioId = obtenerUsuarioIdDelToken(token);
             productoLocalService.desasignarProductoDeLocal(productoId, localId, usuarioId);
             return ResponseEntity.ok(new MessageResponse("Producto desasignado exitosamente"));
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -284,6 +544,22 @@ public class ProductoLocalController {
         public void setCantidad(Integer cantidad) { this.cantidad = cantidad; }
     }
 
+    public static class EscrowRequest {
+        private Long productoId;
+        private Long localId;
+        private Integer particiones;
+
+        // Getters y Setters
+        public Long getProductoId() { return productoId; }
+        public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+        public Long getLocalId() { return localId; }
+        public void setLocalId(Long localId) { this.localId = localId; }
+
+        public Integer getParticiones() { return particiones; }
+        public void setParticiones(Integer particiones) { this.particiones = particiones; }
+    }
+
     public static class ActualizarPrecioRequest {
         private Long productoId;
         private Long localId;
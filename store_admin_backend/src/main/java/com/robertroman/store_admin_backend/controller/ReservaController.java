@@ -0,0 +1,197 @@
+package com.robertroman.store_admin_backend.controller;
+
+import com.robertroman.store_admin_backend.config.CarrilSaturadoException;
+import com.robertroman.store_admin_backend.entity.Venta;
+import com.robertroman.store_admin_backend.service.JwtService;
+import com.robertroman.store_admin_backend.service.ReservaStockService;
+import com.robertroman.store_admin_backend.service.UsuarioService;
+import com.robertroman.store_admin_backend.service.VentaService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/reservas")
+@CrossOrigin(origins = "*")
+public class ReservaController {
+
+    @Autowired
+    private ReservaStockService reservaStockService;
+
+    @Autowired
+    private VentaService ventaService;
+
+    @Autowired
+    private UsuarioService usuarioService;
+
+    @Autowired
+    private JwtService jwtService;
+
+    // Reservar stock para un canasto en armado
+    @PostMapping
+    public ResponseEntity<?> crearReserva(@RequestBody CrearReservaRequest request,
+                                          @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            ReservaStockService.Reserva reserva = reservaStockService.crear(
+                    request.getLocalId(), request.getItems(), request.getTtlSegundos(), usuarioId);
+            return ResponseEntity.ok(reserva);
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Obtener reserva vigente
+    @GetMapping("/{codigo}")
+    public ResponseEntity<?> obtenerReserva(@PathVariable String codigo,
+                                            @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            return ResponseEntity.ok(reservaStockService.obtener(codigo, usuarioId));
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Cambiar la cantidad reservada de un producto (0 lo quita) y renovar el vencimiento
+    @PutMapping("/{codigo}/items")
+    public ResponseEntity<?> actualizarItem(@PathVariable String codigo,
+                                            @RequestBody ActualizarItemRequest request,
+                                            @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            ReservaStockService.Reserva reserva = reservaStockService.actualizarItem(
+                    codigo, request.getProductoId(), request.getCantidad(), request.getTtlSegundos(), usuarioId);
+            return ResponseEntity.ok(reserva);
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Liberar la reserva
+    @DeleteMapping("/{codigo}")
+    public ResponseEntity<?> liberarReserva(@PathVariable String codigo,
+                                            @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            reservaStockService.liberar(codigo, usuarioId);
+            return ResponseEntity.ok(new MessageResponse("Reserva liberada exitosamente"));
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Convertir la reserva en venta (usa los items reservados si no se envían otros)
+    @PostMapping("/{codigo}/confirmar")
+    public ResponseEntity<?> confirmarReserva(@PathVariable String codigo,
+                                              @RequestBody VentaService.CrearVentaRequest request,
+                                              @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            request.setCodigoReserva(codigo);
+            if (request.getLocalId() == null) {
+                request.setLocalId(reservaStockService.obtener(codigo, usuarioId).getLocalId());
+            }
+            Venta venta = ventaService.crearVenta(request, usuarioId);
+            return ResponseEntity.ok(venta);
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Stock disponible para vender (stock menos reservas vigentes)
+    @GetMapping("/disponible/{localId}/{productoId}")
+    public ResponseEntity<?> obtenerDisponibilidad(@PathVariable Long localId,
+                                                   @PathVariable Long productoId,
+                                                   @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            return ResponseEntity.ok(reservaStockService.disponibilidad(localId, productoId, usuarioId));
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Método auxiliar
+    private Long obtenerUsuarioIdDelToken(String token) {
+        String tokenLimpio = token.replace("Bearer ", "");
+        String username = jwtService.extractUsername(tokenLimpio);
+
+        return usuarioService.buscarPorUsername(username)
+                .orElseThrow(() -> new RuntimeException("Usuario no encontrado"))
+                .getId();
+    }
+
+    // DTOs
+    public static class CrearReservaRequest {
+        private Long localId;
+        private List<ReservaStockService.ItemReserva> items;
+        private Long ttlSegundos;
+
+        public Long getLocalId() { return localId; }
+        public void setLocalId(Long localId) { this.localId = localId; }
+
+        public List<ReservaStockService.ItemReserva> getItems() { return items; }
+        public void setItems(List<ReservaStockService.ItemReserva> items) { this.items = items; }
+
+        public Long getTtlSegundos() { return ttlSegundos; }
+        public void setTtlSegundos(Long ttlSegundos) { this.ttlSegundos = ttlSegundos; }
+    }
+
+    public static class ActualizarItemRequest {
+        private Long productoId;
+        private Integer cantidad;
+        private Long ttlSegundos;
+
+        public Long getProductoId() { return productoId; }
+        public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+        public Integer getCantidad() { return cantidad; }
+        public void setCantidad(Integer cantidad) { this.cantidad = cantidad; }
+
+        public Long getTtlSegundos() { return ttlSegundos; }
+        public void setTtlSegundos(Long ttlSegundos) { this.ttlSegundos = ttlSegundos; }
+    }
+
+    // Clases de respuesta comunes
+    public static class ErrorResponse {
+        private String message;
+        private long timestamp;
+
+        public ErrorResponse(String message) {
+            this.message = message;
+            this.timestamp = System.currentTimeMillis();
+        }
+
+        public String getMessage() { return message; }
+        public void setMessage(String message) { this.message = message; }
+
+        public long getTimestamp() { return timestamp; }
+        public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+    }
+
+    public static class MessageResponse {
+        private String message;
+
+        public MessageResponse(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() { return message; }
+        public void setMessage(String message) { this.message = message; }
+    }
+}
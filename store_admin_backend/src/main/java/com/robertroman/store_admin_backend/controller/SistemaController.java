@@ -0,0 +1,140 @@
+package com.robertroman.store_admin_backend.controller;
+
+import com.robertroman.store_admin_backend.config.Bulkhead;
+import com.robertroman.store_admin_backend.config.CarrilesEjecucion;
+import com.robertroman.store_admin_backend.config.ReplicaRouter;
+import com.robertroman.store_admin_backend.service.CacheCatalogoService;
+import com.robertroman.store_admin_backend.service.OutboxService;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Todo /api/sistema es solo para operadores (ver SecurityConfig y sistema.operadores)
+@RestController
+@RequestMapping("/api/sistema")
+@CrossOrigin(origins = "*")
+public class SistemaController {
+
+    @Autowired
+    private CarrilesEjecucion carriles;
+
+    @Autowired
+    private ReplicaRouter replicaRouter;
+
+    @Autowired
+    private CacheCatalogoService cacheCatalogoService;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    @Qualifier("transaccionalDataSource")
+    private HikariDataSource transaccionalDataSource;
+
+    @Autowired
+    @Qualifier("analiticoDataSource")
+    private HikariDataSource analiticoDataSource;
+
+    // Métricas de los carriles (bulkheads) y de sus pools de conexiones
+    @GetMapping("/carriles")
+    public ResponseEntity<?> obtenerMetricasCarriles() {
+        MetricasCarriles metricas = new MetricasCarriles();
+
+        List<Bulkhead.Metricas> bulkheads = new ArrayList<>();
+        carriles.obtenerTodos().values().forEach(b -> bulkheads.add(b.obtenerMetricas()));
+        metricas.setBulkheads(bulkheads);
+
+        List<MetricasPool> pools = new ArrayList<>();
+        pools.add(obtenerMetricasPool(transaccionalDataSource));
+        pools.add(obtenerMetricasPool(analiticoDataSource));
+        metricas.setPools(pools);
+
+        return ResponseEntity.ok(metricas);
+    }
+
+    // Estado de salud de las réplicas de lectura
+    @GetMapping("/replicas")
+    public ResponseEntity<List<ReplicaRouter.EstadoReplica>> obtenerEstadoReplicas() {
+        return ResponseEntity.ok(replicaRouter.obtenerEstado());
+    }
+
+    // Estadísticas del cache de segundo nivel del catálogo
+    @GetMapping("/cache")
+    public ResponseEntity<List<CacheCatalogoService.EstadisticaRegion>> obtenerEstadisticasCache() {
+        return ResponseEntity.ok(cacheCatalogoService.obtenerEstadisticas());
+    }
+
+    // Estado del outbox de eventos posteriores a las ventas
+    @GetMapping("/outbox")
+    public ResponseEntity<OutboxService.EstadoOutbox> obtenerEstadoOutbox() {
+        return ResponseEntity.ok(outboxService.obtenerEstado());
+    }
+
+    // Volver a encolar los eventos del outbox que agotaron sus reintentos
+    @PostMapping("/outbox/reintentar")
+    public ResponseEntity<Integer> reintentarOutbox() {
+        return ResponseEntity.ok(outboxService.reintentarFallidos());
+    }
+
+    // Método auxiliar
+    private MetricasPool obtenerMetricasPool(HikariDataSource dataSource) {
+        MetricasPool pool = new MetricasPool();
+        pool.setNombre(dataSource.getPoolName());
+        pool.setTamanoMaximo(dataSource.getMaximumPoolSize());
+
+        HikariPoolMXBean mxBean = dataSource.getHikariPoolMXBean();
+        if (mxBean != null) { // null hasta que el pool se inicializa
+            pool.setActivas(mxBean.getActiveConnections());
+            pool.setInactivas(mxBean.getIdleConnections());
+            pool.setTotal(mxBean.getTotalConnections());
+            pool.setHilosEsperando(mxBean.getThreadsAwaitingConnection());
+        }
+        return pool;
+    }
+
+    // DTOs
+    public static class MetricasCarriles {
+        private List<Bulkhead.Metricas> bulkheads;
+        private List<MetricasPool> pools;
+
+        public List<Bulkhead.Metricas> getBulkheads() { return bulkheads; }
+        public void setBulkheads(List<Bulkhead.Metricas> bulkheads) { this.bulkheads = bulkheads; }
+
+        public List<MetricasPool> getPools() { return pools; }
+        public void setPools(List<MetricasPool> pools) { this.pools = pools; }
+    }
+
+    public static class MetricasPool {
+        private String nombre;
+        private int tamanoMaximo;
+        private int activas;
+        private int inactivas;
+        private int total;
+        private int hilosEsperando;
+
+        // Getters y Setters
+        public String getNombre() { return nombre; }
+        public void setNombre(String nombre) { this.nombre = nombre; }
+
+        public int getTamanoMaximo() { return tamanoMaximo; }
+        public void setTamanoMaximo(int tamanoMaximo) { this.tamanoMaximo = tamanoMaximo; }
+
+        public int getActivas() { return activas; }
+        public void setActivas(int activas) { this.activas = activas; }
+
+        public int getInactivas() { return inactivas; }
+        public void setInactivas(int inactivas) { this.inactivas = inactivas; }
+
+        public int getTotal() { return total; }
+        public void setTotal(int total) { this.total = total; }
+
+        public int getHilosEsperando() { return hilosEsperando; }
+        public void setHilosEsperando(int hilosEsperando) { this.hilosEsperando = hilosEsperando; }
+    }
+}
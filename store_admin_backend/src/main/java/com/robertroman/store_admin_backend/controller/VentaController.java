@@ -1,8 +1,13 @@
 package com.robertroman.store_admin_backend.controller;
 
+import com.robertroman.store_admin_backend.config.CarrilSaturadoException;
+import com.robertroman.store_admin_backend.entity.Devolucion;
 import com.robertroman.store_admin_backend.entity.Venta;
+import com.robertroman.store_admin_backend.service.DevolucionService;
 import com.robertroman.store_admin_backend.service.JwtService;
 import com.robertroman.store_admin_backend.service.UsuarioService;
+import com.robertroman.store_admin_backend.service.VentaAgrupadaService;
+import com.robertroman.store_admin_backend.service.VentaLoteService;
 import com.robertroman.store_admin_backend.service.VentaService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,6 +27,15 @@ public class VentaController {
     @Autowired
     private VentaService ventaService;
 
+    @Autowired
+    private VentaLoteService ventaLoteService;
+
+    @Autowired
+    private VentaAgrupadaService ventaAgrupadaService;
+
+    @Autowired
+    private DevolucionService devolucionService;
+
     @Autowired
     private UsuarioService usuarioService;
 
@@ -34,8 +48,13 @@ public class VentaController {
                                         @RequestHeader("Authorization") String token) {
         try {
             Long usuarioId = obtenerUsuarioIdDelToken(token);
-            Venta nuevaVenta = ventaService.crearVenta(request, usuarioId);
+            // Con group commit activo, la venta se confirma junto a las demás de su local
+            Venta nuevaVenta = ventaAgrupadaService.estaHabilitado()
+                    ? ventaAgrupadaService.crearVenta(request, usuarioId)
+                    : ventaService.crearVenta(request, usuarioId);
             return ResponseEntity.ok(nuevaVenta);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         } catch (Exception e) {
@@ -44,6 +63,21 @@ public class VentaController {
         }
     }
 
+    // Subir ventas encoladas offline por una terminal POS (idempotente por clave)
+    @PostMapping("/lote")
+    public ResponseEntity<?> crearVentasLote(@RequestBody VentaLoteService.LoteVentasRequest request,
+                                             @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            VentaLoteService.ResultadoLote resultado = ventaLoteService.procesarLote(request, usuarioId);
+            return ResponseEntity.ok(resultado);
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
     // Obtener ventas por local
     @GetMapping("/local/{localId}")
     public ResponseEntity<?> obtenerVentasPorLocal(@PathVariable Long localId,
@@ -52,6 +86,8 @@ public class VentaController {
             Long usuarioId = obtenerUsuarioIdDelToken(token);
             List<Venta> ventas = ventaService.obtenerVentasPorLocal(localId, usuarioId);
             return ResponseEntity.ok(ventas);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -68,6 +104,8 @@ public class VentaController {
                 return ResponseEntity.ok(venta.get());
             }
             return ResponseEntity.notFound().build();
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -84,6 +122,8 @@ public class VentaController {
             Long usuarioId = obtenerUsuarioIdDelToken(token);
             List<Venta> ventas = ventaService.obtenerVentasPorPeriodo(localId, fechaInicio, fechaFin, usuarioId);
             return ResponseEntity.ok(ventas);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -97,6 +137,8 @@ public class VentaController {
             Long usuarioId = obtenerUsuarioIdDelToken(token);
             List<Venta> ventas = ventaService.obtenerVentasDelDia(localId, usuarioId);
             return ResponseEntity.ok(ventas);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -111,6 +153,39 @@ public class VentaController {
             Long usuarioId = obtenerUsuarioIdDelToken(token);
             Venta ventaCancelada = ventaService.cancelarVenta(id, usuarioId, request.getMotivo());
             return ResponseEntity.ok(ventaCancelada);
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Devolver algunas líneas o cantidades de una venta
+    @PostMapping("/{id}/devoluciones")
+    public ResponseEntity<?> registrarDevolucion(@PathVariable Long id,
+                                                 @RequestBody DevolucionService.DevolucionRequest request,
+                                                 @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            Devolucion devolucion = devolucionService.registrarDevolucion(id, request, usuarioId);
+            return ResponseEntity.ok(devolucion);
+        } catch (CarrilSaturadoException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    // Obtener devoluciones de una venta
+    @GetMapping("/{id}/devoluciones")
+    public ResponseEntity<?> obtenerDevoluciones(@PathVariable Long id,
+                                                 @RequestHeader("Authorization") String token) {
+        try {
+            Long usuarioId = obtenerUsuarioIdDelToken(token);
+            List<Devolucion> devoluciones = devolucionService.obtenerDevoluciones(id, usuarioId);
+            return ResponseEntity.ok(devoluciones);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -128,6 +203,8 @@ public class VentaController {
             VentaService.EstadisticasVentas estadisticas = ventaService.obtenerEstadisticasVentas(
                     localId, fechaInicio, fechaFin, usuarioId);
             return ResponseEntity.ok(estadisticas);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -147,6 +224,8 @@ public class VentaController {
             VentaService.EstadisticasVentas estadisticas = ventaService.obtenerEstadisticasVentas(
                     localId, inicioDia, finDia, usuarioId);
             return ResponseEntity.ok(estadisticas);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -167,6 +246,8 @@ public class VentaController {
             VentaService.EstadisticasVentas estadisticas = ventaService.obtenerEstadisticasVentas(
                     localId, inicioMes, finMes, usuarioId);
             return ResponseEntity.ok(estadisticas);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
         }
@@ -186,6 +267,8 @@ public class VentaController {
             validation.setMensaje("Venta válida para procesar");
 
             return ResponseEntity.ok(validation);
+        } catch (CarrilSaturadoException e) {
+            throw e;
         } catch (RuntimeException e) {
             VentaValidationResponse validation = new VentaValidationResponse();
             validation.setValida(false);
@@ -0,0 +1,53 @@
+package com.robertroman.store_admin_backend.dto;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+// Versión de un recurso (o de una colección) para validadores HTTP ETag / Last-Modified
+public class VersionRecurso {
+
+    // Última modificación en epoch ms (0 si no hay filas)
+    private long ultimaModificacion;
+    // Cantidad de filas: detecta altas y bajas que no mueven la fecha máxima
+    private long cantidad;
+    // Suma de las versiones de fila (rowversion), 0 si el recurso no las tiene: cambia cuando una
+    // transacción confirma, aunque haya fechado sus filas antes que otra que confirmó primero
+    private long huella;
+
+    // Constructores
+    public VersionRecurso() {}
+
+    public VersionRecurso(long ultimaModificacion, long cantidad) {
+        this.ultimaModificacion = ultimaModificacion;
+        this.cantidad = cantidad;
+    }
+
+    // Versión con la fecha más reciente entre varios MAX(updatedAt)
+    public static VersionRecurso desdeAgregados(LocalDateTime... fechas) {
+        long maximo = 0L;
+        for (LocalDateTime fecha : fechas) {
+            maximo = Math.max(maximo, aMillis(fecha));
+        }
+        return new VersionRecurso(maximo, 0L);
+    }
+
+    public static long aMillis(LocalDateTime fecha) {
+        return fecha != null ? fecha.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : 0L;
+    }
+
+    // ETag fuerte: cambia con cualquier modificación, alta o baja del recurso. Con huella es el
+    // validador confiable; Last-Modified sale de updated_at y solo lo usa quien no manda If-None-Match
+    public String etag(String prefijo) {
+        return "\"" + prefijo + "-" + cantidad + "-" + ultimaModificacion + (huella != 0 ? "-" + huella : "") + "\"";
+    }
+
+    // Getters y Setters
+    public long getUltimaModificacion() { return ultimaModificacion; }
+    public void setUltimaModificacion(long ultimaModificacion) { this.ultimaModificacion = ultimaModificacion; }
+
+    public long getCantidad() { return cantidad; }
+    public void setCantidad(long cantidad) { this.cantidad = cantidad; }
+
+    public long getHuella() { return huella; }
+    public void setHuella(long huella) { this.huella = huella; }
+}
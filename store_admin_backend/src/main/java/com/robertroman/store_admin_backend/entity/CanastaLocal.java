@@ -0,0 +1,64 @@
+package com.robertroman.store_admin_backend.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+// Avance del análisis de canasta de un local: hasta qué venta se contaron los pares de productos
+@Entity
+@Table(name = "canasta_locales")
+public class CanastaLocal {
+
+    @Id
+    @Column(name = "local_id")
+    private Long localId;
+
+    @Column(name = "ultima_venta_id", nullable = false)
+    private Long ultimaVentaId;
+
+    // Ventas contadas hasta ahora (base del lift)
+    @Column(name = "ventas_procesadas", nullable = false)
+    private Long ventasProcesadas;
+
+    @Column(name = "fecha_actualizacion", nullable = false)
+    private LocalDateTime fechaActualizacion;
+
+    // Constructores
+    public CanastaLocal() {}
+
+    // Getters y Setters
+    public Long getLocalId() { return localId; }
+    public void setLocalId(Long localId) { this.localId = localId; }
+
+    public Long getUltimaVentaId() { return ultimaVentaId; }
+    public void setUltimaVentaId(Long ultimaVentaId) { this.ultimaVentaId = ultimaVentaId; }
+
+    public Long getVentasProcesadas() { return ventasProcesadas; }
+    public void setVentasProcesadas(Long ventasProcesadas) { this.ventasProcesadas = ventasProcesadas; }
+
+    public LocalDateTime getFechaActualizacion() { return fechaActualizacion; }
+    public void setFechaActualizacion(LocalDateTime fechaActualizacion) { this.fechaActualizacion = fechaActualizacion; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CanastaLocal that = (CanastaLocal) o;
+        return Objects.equals(localId, that.localId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(localId);
+    }
+
+    @Override
+    public String toString() {
+        return "CanastaLocal{" +
+                "localId=" + localId +
+                ", ultimaVentaId=" + ultimaVentaId +
+                ", ventasProcesadas=" + ventasProcesadas +
+                '}';
+    }
+}
@@ -0,0 +1,89 @@
+package com.robertroman.store_admin_backend.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+// Línea de una devolución: cantidad devuelta de un detalle de la venta
+@Entity
+@Table(name = "detalles_devolucion",
+        indexes = @Index(name = "ix_detalles_devolucion_detalle_venta", columnList = "detalle_venta_id"))
+public class DetalleDevolucion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "devolucion_id", nullable = false)
+    private Devolucion devolucion;
+
+    @Column(name = "detalle_venta_id", nullable = false)
+    private Long detalleVentaId;
+
+    @Column(name = "producto_local_id", nullable = false)
+    private Long productoLocalId;
+
+    @Column(name = "cantidad", nullable = false)
+    private Integer cantidad;
+
+    @Column(name = "monto", nullable = false, precision = 12, scale = 2)
+    private BigDecimal monto;
+
+    // Constructores
+    public DetalleDevolucion() {}
+
+    public DetalleDevolucion(Devolucion devolucion, Long detalleVentaId, Long productoLocalId,
+                             Integer cantidad, BigDecimal monto) {
+        this.devolucion = devolucion;
+        this.detalleVentaId = detalleVentaId;
+        this.productoLocalId = productoLocalId;
+        this.cantidad = cantidad;
+        this.monto = monto;
+    }
+
+    // Getters y Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Devolucion getDevolucion() { return devolucion; }
+    public void setDevolucion(Devolucion devolucion) { this.devolucion = devolucion; }
+
+    public Long getDetalleVentaId() { return detalleVentaId; }
+    public void setDetalleVentaId(Long detalleVentaId) { this.detalleVentaId = detalleVentaId; }
+
+    public Long getProductoLocalId() { return productoLocalId; }
+    public void setProductoLocalId(Long productoLocalId) { this.productoLocalId = productoLocalId; }
+
+    public Integer getCantidad() { return cantidad; }
+    public void setCantidad(Integer cantidad) { this.cantidad = cantidad; }
+
+    public BigDecimal getMonto() { return monto; }
+    public void setMonto(BigDecimal monto) { this.monto = monto; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DetalleDevolucion that = (DetalleDevolucion) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "DetalleDevolucion{" +
+                "id=" + id +
+                ", detalleVentaId=" + detalleVentaId +
+                ", cantidad=" + cantidad +
+                ", monto=" + monto +
+                '}';
+    }
+}
@@ -0,0 +1,71 @@
+package com.robertroman.store_admin_backend.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+
+import java.util.Objects;
+
+// Línea de una transferencia de stock
+@Entity
+@Table(name = "detalles_transferencia")
+public class DetalleTransferencia {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "transferencia_id", nullable = false)
+    private TransferenciaStock transferencia;
+
+    @Column(name = "producto_id", nullable = false)
+    private Long productoId;
+
+    @Column(name = "cantidad", nullable = false)
+    private Integer cantidad;
+
+    // Constructores
+    public DetalleTransferencia() {}
+
+    public DetalleTransferencia(TransferenciaStock transferencia, Long productoId, Integer cantidad) {
+        this.transferencia = transferencia;
+        this.productoId = productoId;
+        this.cantidad = cantidad;
+    }
+
+    // Getters y Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public TransferenciaStock getTransferencia() { return transferencia; }
+    public void setTransferencia(TransferenciaStock transferencia) { this.transferencia = transferencia; }
+
+    public Long getProductoId() { return productoId; }
+    public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+    public Integer getCantidad() { return cantidad; }
+    public void setCantidad(Integer cantidad) { this.cantidad = cantidad; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        DetalleTransferencia that = (DetalleTransferencia) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "DetalleTransferencia{" +
+                "id=" + id +
+                ", productoId=" + productoId +
+                ", cantidad=" + cantidad +
+                '}';
+    }
+}
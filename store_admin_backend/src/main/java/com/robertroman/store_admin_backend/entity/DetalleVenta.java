@@ -7,7 +7,11 @@ import java.math.BigDecimal;
 import java.util.Objects;
 
 @Entity
-@Table(name = "detalles_venta")
+@Table(name = "detalles_venta",
+        indexes = {
+                @Index(name = "ix_detalles_venta_venta", columnList = "venta_id"),
+                @Index(name = "ix_detalles_venta_producto_local", columnList = "producto_local_id, venta_id")
+        })
 public class DetalleVenta {
 
     @Id
@@ -39,6 +43,13 @@ public class DetalleVenta {
     @Column(name = "descuento_item", precision = 10, scale = 2)
     private BigDecimal descuentoItem = BigDecimal.ZERO;
 
+    // Acumulado de devoluciones parciales (null si nunca se devolvió)
+    @Column(name = "cantidad_devuelta")
+    private Integer cantidadDevuelta;
+
+    @Column(name = "monto_devuelto", precision = 12, scale = 2)
+    private BigDecimal montoDevuelto;
+
     // Constructores
     public DetalleVenta() {}
 
@@ -81,7 +92,17 @@ public class DetalleVenta {
         this.calcularSubtotal();
     }
 
+    public Integer getCantidadDevuelta() { return cantidadDevuelta; }
+    public void setCantidadDevuelta(Integer cantidadDevuelta) { this.cantidadDevuelta = cantidadDevuelta; }
+
+    public BigDecimal getMontoDevuelto() { return montoDevuelto; }
+    public void setMontoDevuelto(BigDecimal montoDevuelto) { this.montoDevuelto = montoDevuelto; }
+
     // Métodos de utilidad
+    public int cantidadPendienteDeDevolver() {
+        return cantidad - (cantidadDevuelta != null ? cantidadDevuelta : 0);
+    }
+
     public void calcularSubtotal() {
         if (this.cantidad != null && this.precioUnitario != null) {
             BigDecimal subtotalBruto = this.precioUnitario.multiply(new BigDecimal(this.cantidad));
@@ -0,0 +1,114 @@
+package com.robertroman.store_admin_backend.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// Documento de devolución parcial o total de una venta
+@Entity
+@Table(name = "devoluciones",
+        indexes = @Index(name = "ix_devoluciones_venta", columnList = "venta_id"))
+public class Devolucion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "venta_id", nullable = false)
+    private Venta venta;
+
+    @Column(name = "local_id", nullable = false)
+    private Long localId;
+
+    @Column(name = "usuario_id", nullable = false)
+    private Long usuarioId;
+
+    @Column(name = "numero", nullable = false, unique = true, length = 60)
+    private String numero;
+
+    @Column(name = "motivo", length = 500)
+    private String motivo;
+
+    @Column(name = "total", nullable = false, precision = 12, scale = 2)
+    private BigDecimal total = BigDecimal.ZERO;
+
+    @CreationTimestamp
+    @Column(name = "fecha", nullable = false, updatable = false)
+    private LocalDateTime fecha;
+
+    // Las líneas se insertan por lote junto con la devolución
+    @OneToMany(mappedBy = "devolucion", fetch = FetchType.LAZY)
+    private List<DetalleDevolucion> detalles = new ArrayList<>();
+
+    // Constructores
+    public Devolucion() {}
+
+    public Devolucion(Venta venta, Long usuarioId, String numero, String motivo) {
+        this.venta = venta;
+        this.localId = venta.getLocal().getId();
+        this.usuarioId = usuarioId;
+        this.numero = numero;
+        this.motivo = motivo;
+    }
+
+    // Getters y Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Venta getVenta() { return venta; }
+    public void setVenta(Venta venta) { this.venta = venta; }
+
+    public Long getVentaId() { return venta != null ? venta.getId() : null; }
+
+    public Long getLocalId() { return localId; }
+    public void setLocalId(Long localId) { this.localId = localId; }
+
+    public Long getUsuarioId() { return usuarioId; }
+    public void setUsuarioId(Long usuarioId) { this.usuarioId = usuarioId; }
+
+    public String getNumero() { return numero; }
+    public void setNumero(String numero) { this.numero = numero; }
+
+    public String getMotivo() { return motivo; }
+    public void setMotivo(String motivo) { this.motivo = motivo; }
+
+    public BigDecimal getTotal() { return total; }
+    public void setTotal(BigDecimal total) { this.total = total; }
+
+    public LocalDateTime getFecha() { return fecha; }
+    public void setFecha(LocalDateTime fecha) { this.fecha = fecha; }
+
+    public List<DetalleDevolucion> getDetalles() { return detalles; }
+    public void setDetalles(List<DetalleDevolucion> detalles) { this.detalles = detalles; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Devolucion that = (Devolucion) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "Devolucion{" +
+                "id=" + id +
+                ", numero='" + numero + '\'' +
+                ", total=" + total +
+                ", fecha=" + fecha +
+                '}';
+    }
+}
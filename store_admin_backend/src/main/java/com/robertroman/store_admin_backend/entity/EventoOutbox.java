@@ -0,0 +1,139 @@
+package com.robertroman.store_admin_backend.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+// Evento pendiente de procesar después de una venta (outbox transaccional).
+// Se inserta en la misma transacción que lo originó y lo consume el despachador en orden por local,
+// reclamándolo antes para que dos instancias no lo procesen a la vez.
+@Entity
+@Table(name = "eventos_outbox",
+        indexes = {
+                @Index(name = "ix_eventos_outbox_estado_id", columnList = "estado, id"),
+                @Index(name = "ix_eventos_outbox_local_estado", columnList = "local_id, estado, id")
+        })
+public class EventoOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "local_id", nullable = false)
+    private Long localId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "tipo", nullable = false, length = 50)
+    private Tipo tipo;
+
+    // ID de la venta, devolución, etc. que originó el evento
+    @Column(name = "agregado_id")
+    private Long agregadoId;
+
+    // Datos del evento en JSON
+    @Column(name = "payload", columnDefinition = "NVARCHAR(MAX)")
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "estado", nullable = false, length = 20)
+    private Estado estado = Estado.PENDIENTE;
+
+    @Column(name = "intentos", nullable = false)
+    private Integer intentos = 0;
+
+    @Column(name = "proximo_intento", nullable = false)
+    private LocalDateTime proximoIntento;
+
+    @Column(name = "ultimo_error", length = 500)
+    private String ultimoError;
+
+    @Column(name = "fecha_creacion", nullable = false)
+    private LocalDateTime fechaCreacion;
+
+    @Column(name = "fecha_procesado")
+    private LocalDateTime fechaProcesado;
+
+    // Instancia del despachador que reclamó el evento y hasta cuándo vale el reclamo
+    @Column(name = "procesando_por", length = 64)
+    private String procesandoPor;
+
+    @Column(name = "reclamado_hasta")
+    private LocalDateTime reclamadoHasta;
+
+    // Enums
+    public enum Tipo {
+        VENTA_REGISTRADA, VENTA_CANCELADA, DEVOLUCION_REGISTRADA
+    }
+
+    public enum Estado {
+        PENDIENTE, PROCESADO, FALLIDO
+    }
+
+    // Constructores
+    public EventoOutbox() {}
+
+    // Getters y Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getLocalId() { return localId; }
+    public void setLocalId(Long localId) { this.localId = localId; }
+
+    public Tipo getTipo() { return tipo; }
+    public void setTipo(Tipo tipo) { this.tipo = tipo; }
+
+    public Long getAgregadoId() { return agregadoId; }
+    public void setAgregadoId(Long agregadoId) { this.agregadoId = agregadoId; }
+
+    public String getPayload() { return payload; }
+    public void setPayload(String payload) { this.payload = payload; }
+
+    public Estado getEstado() { return estado; }
+    public void setEstado(Estado estado) { this.estado = estado; }
+
+    public Integer getIntentos() { return intentos; }
+    public void setIntentos(Integer intentos) { this.intentos = intentos; }
+
+    public LocalDateTime getProximoIntento() { return proximoIntento; }
+    public void setProximoIntento(LocalDateTime proximoIntento) { this.proximoIntento = proximoIntento; }
+
+    public String getUltimoError() { return ultimoError; }
+    public void setUltimoError(String ultimoError) { this.ultimoError = ultimoError; }
+
+    public LocalDateTime getFechaCreacion() { return fechaCreacion; }
+    public void setFechaCreacion(LocalDateTime fechaCreacion) { this.fechaCreacion = fechaCreacion; }
+
+    public LocalDateTime getFechaProcesado() { return fechaProcesado; }
+    public void setFechaProcesado(LocalDateTime fechaProcesado) { this.fechaProcesado = fechaProcesado; }
+
+    public String getProcesandoPor() { return procesandoPor; }
+    public void setProcesandoPor(String procesandoPor) { this.procesandoPor = procesandoPor; }
+
+    public LocalDateTime getReclamadoHasta() { return reclamadoHasta; }
+    public void setReclamadoHasta(LocalDateTime reclamadoHasta) { this.reclamadoHasta = reclamadoHasta; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        EventoOutbox that = (EventoOutbox) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "EventoOutbox{" +
+                "id=" + id +
+                ", localId=" + localId +
+                ", tipo=" + tipo +
+                ", estado=" + estado +
+                ", intentos=" + intentos +
+                '}';
+    }
+}
@@ -0,0 +1,101 @@
+package com.robertroman.store_admin_backend.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+// Movimiento del libro de inventario (solo se agrega, nunca se modifica).
+// Se escribe por lotes al confirmar la transacción que movió el stock.
+@Entity
+@Table(name = "movimientos_inventario",
+        indexes = {
+                @Index(name = "ix_movimientos_inventario_pl_fecha", columnList = "producto_local_id, fecha"),
+                @Index(name = "ix_movimientos_inventario_local_fecha", columnList = "local_id, fecha")
+        })
+public class MovimientoInventario {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "producto_local_id", nullable = false)
+    private Long productoLocalId;
+
+    @Column(name = "local_id", nullable = false)
+    private Long localId;
+
+    @Column(name = "producto_id", nullable = false)
+    private Long productoId;
+
+    @Column(name = "delta", nullable = false)
+    private Integer delta;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "motivo", nullable = false, length = 30)
+    private Motivo motivo;
+
+    // Venta, documento o ajuste que originó el movimiento
+    @Column(name = "referencia", length = 100)
+    private String referencia;
+
+    @Column(name = "fecha", nullable = false)
+    private LocalDateTime fecha;
+
+    // Enums
+    public enum Motivo {
+        VENTA, CANCELACION, DEVOLUCION, AJUSTE, REPOSICION, SALIDA,
+        TRANSFERENCIA_SALIDA, TRANSFERENCIA_ENTRADA, ACTUALIZACION_MASIVA
+    }
+
+    // Constructores
+    public MovimientoInventario() {}
+
+    // Getters y Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getProductoLocalId() { return productoLocalId; }
+    public void setProductoLocalId(Long productoLocalId) { this.productoLocalId = productoLocalId; }
+
+    public Long getLocalId() { return localId; }
+    public void setLocalId(Long localId) { this.localId = localId; }
+
+    public Long getProductoId() { return productoId; }
+    public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+    public Integer getDelta() { return delta; }
+    public void setDelta(Integer delta) { this.delta = delta; }
+
+    public Motivo getMotivo() { return motivo; }
+    public void setMotivo(Motivo motivo) { this.motivo = motivo; }
+
+    public String getReferencia() { return referencia; }
+    public void setReferencia(String referencia) { this.referencia = referencia; }
+
+    public LocalDateTime getFecha() { return fecha; }
+    public void setFecha(LocalDateTime fecha) { this.fecha = fecha; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MovimientoInventario that = (MovimientoInventario) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "MovimientoInventario{" +
+                "id=" + id +
+                ", productoLocalId=" + productoLocalId +
+                ", delta=" + delta +
+                ", motivo=" + motivo +
+                '}';
+    }
+}
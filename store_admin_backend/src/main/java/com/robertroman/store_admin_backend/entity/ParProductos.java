@@ -0,0 +1,76 @@
+package com.robertroman.store_admin_backend.entity;
+
+import jakarta.persistence.*;
+
+import java.util.Objects;
+
+// Cantidad de ventas de un local en las que aparecieron juntos dos productos (análisis de canasta).
+// El par se guarda una sola vez, con productoA < productoB. La fila con productoA = productoB
+// guarda en cuántas ventas apareció ese producto, para calcular confianza y lift.
+@Entity
+@Table(name = "pares_productos",
+        uniqueConstraints = @UniqueConstraint(name = "ux_pares_productos_local_par",
+                columnNames = {"local_id", "producto_a_id", "producto_b_id"}),
+        indexes = @Index(name = "ix_pares_productos_local_b", columnList = "local_id, producto_b_id"))
+public class ParProductos {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "local_id", nullable = false)
+    private Long localId;
+
+    // IDs de ProductoLocal
+    @Column(name = "producto_a_id", nullable = false)
+    private Long productoAId;
+
+    @Column(name = "producto_b_id", nullable = false)
+    private Long productoBId;
+
+    @Column(name = "ventas", nullable = false)
+    private Integer ventas;
+
+    // Constructores
+    public ParProductos() {}
+
+    // Getters y Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getLocalId() { return localId; }
+    public void setLocalId(Long localId) { this.localId = localId; }
+
+    public Long getProductoAId() { return productoAId; }
+    public void setProductoAId(Long productoAId) { this.productoAId = productoAId; }
+
+    public Long getProductoBId() { return productoBId; }
+    public void setProductoBId(Long productoBId) { this.productoBId = productoBId; }
+
+    public Integer getVentas() { return ventas; }
+    public void setVentas(Integer ventas) { this.ventas = ventas; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ParProductos that = (ParProductos) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "ParProductos{" +
+                "id=" + id +
+                ", localId=" + localId +
+                ", productoAId=" + productoAId +
+                ", productoBId=" + productoBId +
+                ", ventas=" + ventas +
+                '}';
+    }
+}
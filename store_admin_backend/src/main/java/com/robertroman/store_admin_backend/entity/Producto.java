@@ -5,7 +5,10 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Size;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.Formula;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.math.BigDecimal;
@@ -15,7 +18,10 @@ import java.util.Objects;
 import java.util.Set;
 
 @Entity
-@Table(name = "productos")
+@Table(name = "productos",
+        indexes = @Index(name = "ix_productos_updated", columnList = "updated_at"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "productos")
 public class Producto {
 
     @Id
@@ -54,6 +60,17 @@ public class Producto {
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
 
+    // Versión de fila (rowversion): SQL Server la cambia en cada escritura, por JPA o por SQL directo,
+    // con un contador de la base que sigue el orden de las escrituras y no el reloj de la aplicación
+    @JsonIgnore
+    @Column(name = "version_fila", columnDefinition = "rowversion", insertable = false, updatable = false)
+    private byte[] versionFila;
+
+    // La misma versión como número, para comparar en consultas (ver CatalogoService)
+    @JsonIgnore
+    @Formula("CAST(version_fila AS BIGINT)")
+    private Long version;
+
     // Relación con ProductoLocal (muchos a muchos a través de tabla intermedia)
     @OneToMany(mappedBy = "producto", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @JsonIgnore // Evitar serialización para prevenir referencia circular
@@ -97,6 +114,8 @@ public class Producto {
     public LocalDateTime getUpdatedAt() { return updatedAt; }
     public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
 
+    public Long getVersion() { return version; }
+
     public Set<ProductoLocal> getProductoLocales() { return productoLocales; }
     public void setProductoLocales(Set<ProductoLocal> productoLocales) { this.productoLocales = productoLocales; }
 
@@ -1,9 +1,12 @@
 package com.robertroman.store_admin_backend.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.Formula;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import java.math.BigDecimal;
@@ -12,7 +15,9 @@ import java.util.Objects;
 
 @Entity
 @Table(name = "productos_locales",
-        uniqueConstraints = @UniqueConstraint(columnNames = {"producto_id", "local_id"}))
+        uniqueConstraints = @UniqueConstraint(columnNames = {"producto_id", "local_id"}),
+        indexes = @Index(name = "ix_productos_locales_local_updated", columnList = "local_id, updated_at"))
+@DynamicUpdate // Solo columnas modificadas: un cambio de precio no pisa el stock escrito por otro camino
 public class ProductoLocal {
 
     @Id
@@ -31,8 +36,10 @@ public class ProductoLocal {
     @JsonIgnoreProperties({"productoLocales", "ventas", "usuario", "createdAt", "updatedAt"}) // Evitar referencia circular
     private Local local;
 
+    // Después del alta solo se escribe por SQL (deltas relativos de MovimientoStockService, el motor
+    // de stock y los caminos masivos): el flush de la entidad nunca pisa el stock con un valor viejo
     @NotNull(message = "El stock es obligatorio")
-    @Column(name = "stock", nullable = false)
+    @Column(name = "stock", nullable = false, updatable = false)
     private Integer stock = 0;
 
     @Column(name = "stock_minimo")
@@ -45,6 +52,10 @@ public class ProductoLocal {
     @Column(name = "activo", nullable = false)
     private Boolean activo = true;
 
+    // Modo escrow: cantidad de particiones del stock (ver StockParticion); null = stock en esta fila
+    @Column(name = "particiones_escrow")
+    private Integer particionesEscrow;
+
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -53,6 +64,17 @@ public class ProductoLocal {
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
 
+    // Versión de fila (rowversion): SQL Server la cambia en cada escritura, por JPA o por SQL directo,
+    // con un contador de la base que sigue el orden de las escrituras y no el reloj de la aplicación
+    @JsonIgnore
+    @Column(name = "version_fila", columnDefinition = "rowversion", insertable = false, updatable = false)
+    private byte[] versionFila;
+
+    // La misma versión como número, para comparar en consultas (ver CatalogoService)
+    @JsonIgnore
+    @Formula("CAST(version_fila AS BIGINT)")
+    private Long version;
+
     // Constructores
     public ProductoLocal() {}
 
@@ -85,12 +107,17 @@ public class ProductoLocal {
     public Boolean getActivo() { return activo; }
     public void setActivo(Boolean activo) { this.activo = activo; }
 
+    public Integer getParticionesEscrow() { return particionesEscrow; }
+    public void setParticionesEscrow(Integer particionesEscrow) { this.particionesEscrow = particionesEscrow; }
+
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
 
     public LocalDateTime getUpdatedAt() { return updatedAt; }
     public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
 
+    public Long getVersion() { return version; }
+
     // Métodos de utilidad
     public void reducirStock(Integer cantidad) {
         if (this.stock >= cantidad) {
@@ -104,6 +131,10 @@ public class ProductoLocal {
         this.stock += cantidad;
     }
 
+    public boolean usaEscrow() {
+        return this.particionesEscrow != null && this.particionesEscrow > 0;
+    }
+
     public boolean tieneStockSuficiente(Integer cantidad) {
         return this.stock >= cantidad;
     }
@@ -0,0 +1,72 @@
+package com.robertroman.store_admin_backend.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+// Stock de un ProductoLocal a una fecha de corte, producido al compactar el libro de inventario.
+// El stock a cualquier fecha es el último snapshot anterior más los movimientos posteriores.
+@Entity
+@Table(name = "snapshots_inventario",
+        indexes = @Index(name = "ix_snapshots_inventario_pl_fecha", columnList = "producto_local_id, fecha"))
+public class SnapshotInventario {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "producto_local_id", nullable = false)
+    private Long productoLocalId;
+
+    @Column(name = "local_id", nullable = false)
+    private Long localId;
+
+    @Column(name = "fecha", nullable = false)
+    private LocalDateTime fecha;
+
+    @Column(name = "stock", nullable = false)
+    private Integer stock;
+
+    // Constructores
+    public SnapshotInventario() {}
+
+    // Getters y Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getProductoLocalId() { return productoLocalId; }
+    public void setProductoLocalId(Long productoLocalId) { this.productoLocalId = productoLocalId; }
+
+    public Long getLocalId() { return localId; }
+    public void setLocalId(Long localId) { this.localId = localId; }
+
+    public LocalDateTime getFecha() { return fecha; }
+    public void setFecha(LocalDateTime fecha) { this.fecha = fecha; }
+
+    public Integer getStock() { return stock; }
+    public void setStock(Integer stock) { this.stock = stock; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SnapshotInventario that = (SnapshotInventario) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "SnapshotInventario{" +
+                "id=" + id +
+                ", productoLocalId=" + productoLocalId +
+                ", fecha=" + fecha +
+                ", stock=" + stock +
+                '}';
+    }
+}
@@ -0,0 +1,71 @@
+package com.robertroman.store_admin_backend.entity;
+
+import jakarta.persistence.*;
+
+import java.util.Objects;
+
+// Sub-bucket del stock de un ProductoLocal en modo escrow.
+// Las ventas concurrentes descuentan de particiones distintas en lugar de competir por una sola fila.
+@Entity
+@Table(name = "stock_particiones",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"producto_local_id", "indice"}))
+public class StockParticion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "producto_local_id", nullable = false)
+    private ProductoLocal productoLocal;
+
+    @Column(name = "indice", nullable = false)
+    private Integer indice;
+
+    @Column(name = "cantidad", nullable = false)
+    private Integer cantidad = 0;
+
+    // Constructores
+    public StockParticion() {}
+
+    public StockParticion(ProductoLocal productoLocal, Integer indice, Integer cantidad) {
+        this.productoLocal = productoLocal;
+        this.indice = indice;
+        this.cantidad = cantidad;
+    }
+
+    // Getters y Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public ProductoLocal getProductoLocal() { return productoLocal; }
+    public void setProductoLocal(ProductoLocal productoLocal) { this.productoLocal = productoLocal; }
+
+    public Integer getIndice() { return indice; }
+    public void setIndice(Integer indice) { this.indice = indice; }
+
+    public Integer getCantidad() { return cantidad; }
+    public void setCantidad(Integer cantidad) { this.cantidad = cantidad; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        StockParticion that = (StockParticion) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "StockParticion{" +
+                "id=" + id +
+                ", indice=" + indice +
+                ", cantidad=" + cantidad +
+                '}';
+    }
+}
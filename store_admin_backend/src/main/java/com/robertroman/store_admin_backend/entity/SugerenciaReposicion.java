@@ -0,0 +1,135 @@
+package com.robertroman.store_admin_backend.entity;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+// Stock mínimo y cantidad a reponer sugeridos para un ProductoLocal según su ritmo de ventas.
+// Se recalcula cada noche (una fila por ProductoLocal) y queda para revisar y aplicar.
+@Entity
+@Table(name = "sugerencias_reposicion",
+        uniqueConstraints = @UniqueConstraint(name = "ux_sugerencias_reposicion_pl", columnNames = "producto_local_id"),
+        indexes = @Index(name = "ix_sugerencias_reposicion_local", columnList = "local_id"))
+public class SugerenciaReposicion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "local_id", nullable = false)
+    private Long localId;
+
+    @Column(name = "producto_local_id", nullable = false)
+    private Long productoLocalId;
+
+    @Column(name = "producto_id", nullable = false)
+    private Long productoId;
+
+    @Column(name = "nombre", length = 100)
+    private String nombre;
+
+    // Unidades vendidas por día (promedio y desvío) en el período analizado
+    @Column(name = "venta_diaria", nullable = false, precision = 10, scale = 3)
+    private BigDecimal ventaDiaria;
+
+    @Column(name = "desvio_diario", nullable = false, precision = 10, scale = 3)
+    private BigDecimal desvioDiario;
+
+    @Column(name = "dias_analizados", nullable = false)
+    private Integer diasAnalizados;
+
+    @Column(name = "stock_actual", nullable = false)
+    private Integer stockActual;
+
+    @Column(name = "stock_minimo_actual", nullable = false)
+    private Integer stockMinimoActual;
+
+    @Column(name = "stock_minimo_sugerido", nullable = false)
+    private Integer stockMinimoSugerido;
+
+    @Column(name = "cantidad_reponer", nullable = false)
+    private Integer cantidadReponer;
+
+    @Column(name = "fecha_calculo", nullable = false)
+    private LocalDateTime fechaCalculo;
+
+    @Column(name = "fecha_aplicada")
+    private LocalDateTime fechaAplicada;
+
+    // Constructores
+    public SugerenciaReposicion() {}
+
+    // Métodos de negocio
+    public boolean cambiaStockMinimo() {
+        return !Objects.equals(stockMinimoActual, stockMinimoSugerido);
+    }
+
+    // Getters y Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getLocalId() { return localId; }
+    public void setLocalId(Long localId) { this.localId = localId; }
+
+    public Long getProductoLocalId() { return productoLocalId; }
+    public void setProductoLocalId(Long productoLocalId) { this.productoLocalId = productoLocalId; }
+
+    public Long getProductoId() { return productoId; }
+    public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+    public String getNombre() { return nombre; }
+    public void setNombre(String nombre) { this.nombre = nombre; }
+
+    public BigDecimal getVentaDiaria() { return ventaDiaria; }
+    public void setVentaDiaria(BigDecimal ventaDiaria) { this.ventaDiaria = ventaDiaria; }
+
+    public BigDecimal getDesvioDiario() { return desvioDiario; }
+    public void setDesvioDiario(BigDecimal desvioDiario) { this.desvioDiario = desvioDiario; }
+
+    public Integer getDiasAnalizados() { return diasAnalizados; }
+    public void setDiasAnalizados(Integer diasAnalizados) { this.diasAnalizados = diasAnalizados; }
+
+    public Integer getStockActual() { return stockActual; }
+    public void setStockActual(Integer stockActual) { this.stockActual = stockActual; }
+
+    public Integer getStockMinimoActual() { return stockMinimoActual; }
+    public void setStockMinimoActual(Integer stockMinimoActual) { this.stockMinimoActual = stockMinimoActual; }
+
+    public Integer getStockMinimoSugerido() { return stockMinimoSugerido; }
+    public void setStockMinimoSugerido(Integer stockMinimoSugerido) { this.stockMinimoSugerido = stockMinimoSugerido; }
+
+    public Integer getCantidadReponer() { return cantidadReponer; }
+    public void setCantidadReponer(Integer cantidadReponer) { this.cantidadReponer = cantidadReponer; }
+
+    public LocalDateTime getFechaCalculo() { return fechaCalculo; }
+    public void setFechaCalculo(LocalDateTime fechaCalculo) { this.fechaCalculo = fechaCalculo; }
+
+    public LocalDateTime getFechaAplicada() { return fechaAplicada; }
+    public void setFechaAplicada(LocalDateTime fechaAplicada) { this.fechaAplicada = fechaAplicada; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SugerenciaReposicion that = (SugerenciaReposicion) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "SugerenciaReposicion{" +
+                "id=" + id +
+                ", productoLocalId=" + productoLocalId +
+                ", stockMinimoActual=" + stockMinimoActual +
+                ", stockMinimoSugerido=" + stockMinimoSugerido +
+                ", cantidadReponer=" + cantidadReponer +
+                '}';
+    }
+}
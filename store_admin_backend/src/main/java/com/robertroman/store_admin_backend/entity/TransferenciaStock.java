@@ -0,0 +1,103 @@
+package com.robertroman.store_admin_backend.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// Documento de transferencia de stock entre dos locales
+@Entity
+@Table(name = "transferencias_stock",
+        indexes = {
+                @Index(name = "ix_transferencias_stock_origen", columnList = "local_origen_id, fecha"),
+                @Index(name = "ix_transferencias_stock_destino", columnList = "local_destino_id, fecha")
+        })
+public class TransferenciaStock {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "local_origen_id", nullable = false)
+    private Long localOrigenId;
+
+    @Column(name = "local_destino_id", nullable = false)
+    private Long localDestinoId;
+
+    @Column(name = "usuario_id", nullable = false)
+    private Long usuarioId;
+
+    @Column(name = "observaciones", length = 500)
+    private String observaciones;
+
+    @CreationTimestamp
+    @Column(name = "fecha", nullable = false, updatable = false)
+    private LocalDateTime fecha;
+
+    // Las líneas se insertan por lote junto con la transferencia
+    @OneToMany(mappedBy = "transferencia", fetch = FetchType.LAZY)
+    private List<DetalleTransferencia> detalles = new ArrayList<>();
+
+    // Constructores
+    public TransferenciaStock() {}
+
+    public TransferenciaStock(Long localOrigenId, Long localDestinoId, Long usuarioId, String observaciones) {
+        this.localOrigenId = localOrigenId;
+        this.localDestinoId = localDestinoId;
+        this.usuarioId = usuarioId;
+        this.observaciones = observaciones;
+    }
+
+    // Getters y Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getLocalOrigenId() { return localOrigenId; }
+    public void setLocalOrigenId(Long localOrigenId) { this.localOrigenId = localOrigenId; }
+
+    public Long getLocalDestinoId() { return localDestinoId; }
+    public void setLocalDestinoId(Long localDestinoId) { this.localDestinoId = localDestinoId; }
+
+    public Long getUsuarioId() { return usuarioId; }
+    public void setUsuarioId(Long usuarioId) { this.usuarioId = usuarioId; }
+
+    public String getObservaciones() { return observaciones; }
+    public void setObservaciones(String observaciones) { this.observaciones = observaciones; }
+
+    public LocalDateTime getFecha() { return fecha; }
+    public void setFecha(LocalDateTime fecha) { this.fecha = fecha; }
+
+    public List<DetalleTransferencia> getDetalles() { return detalles; }
+    public void setDetalles(List<DetalleTransferencia> detalles) { this.detalles = detalles; }
+
+    // Referencia para el libro de inventario
+    public String getNumero() {
+        return id != null ? "TRF-" + id : null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TransferenciaStock that = (TransferenciaStock) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "TransferenciaStock{" +
+                "id=" + id +
+                ", localOrigenId=" + localOrigenId +
+                ", localDestinoId=" + localDestinoId +
+                ", fecha=" + fecha +
+                '}';
+    }
+}
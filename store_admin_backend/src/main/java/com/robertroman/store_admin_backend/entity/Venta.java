@@ -11,7 +11,12 @@ import java.util.Objects;
 import java.util.Set;
 
 @Entity
-@Table(name = "ventas")
+@Table(name = "ventas",
+        indexes = {
+                @Index(name = "ix_ventas_local_fecha", columnList = "local_id, fecha_venta"),
+                // Cubre los totales por local y estado sin leer las filas de ventas
+                @Index(name = "ix_ventas_local_estado", columnList = "local_id, estado, fecha_venta, total, monto_devuelto")
+        })
 public class Venta {
 
     @Id
@@ -47,6 +52,10 @@ public class Venta {
     @Column(name = "numero_factura", unique = true, length = 50)
     private String numeroFactura;
 
+    // Acumulado de devoluciones parciales (null si nunca se devolvió)
+    @Column(name = "monto_devuelto", precision = 12, scale = 2)
+    private BigDecimal montoDevuelto;
+
     @Column(name = "observaciones", length = 500)
     private String observaciones;
 
@@ -103,6 +112,9 @@ public class Venta {
     public String getNumeroFactura() { return numeroFactura; }
     public void setNumeroFactura(String numeroFactura) { this.numeroFactura = numeroFactura; }
 
+    public BigDecimal getMontoDevuelto() { return montoDevuelto; }
+    public void setMontoDevuelto(BigDecimal montoDevuelto) { this.montoDevuelto = montoDevuelto; }
+
     public String getObservaciones() { return observaciones; }
     public void setObservaciones(String observaciones) { this.observaciones = observaciones; }
 
@@ -0,0 +1,79 @@
+package com.robertroman.store_admin_backend.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+// Clave de idempotencia generada por la terminal POS para cada venta.
+// Permite reintentar o reenviar ventas sin registrarlas dos veces.
+@Entity
+@Table(name = "ventas_idempotencia")
+public class VentaIdempotencia {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "clave", nullable = false, unique = true, length = 64)
+    private String clave;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "venta_id", nullable = false)
+    private Venta venta;
+
+    @Column(name = "local_id", nullable = false)
+    private Long localId;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // Constructores
+    public VentaIdempotencia() {}
+
+    public VentaIdempotencia(String clave, Venta venta, Long localId) {
+        this.clave = clave;
+        this.venta = venta;
+        this.localId = localId;
+    }
+
+    // Getters y Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getClave() { return clave; }
+    public void setClave(String clave) { this.clave = clave; }
+
+    public Venta getVenta() { return venta; }
+    public void setVenta(Venta venta) { this.venta = venta; }
+
+    public Long getLocalId() { return localId; }
+    public void setLocalId(Long localId) { this.localId = localId; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        VentaIdempotencia that = (VentaIdempotencia) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        return "VentaIdempotencia{" +
+                "id=" + id +
+                ", clave='" + clave + '\'' +
+                ", localId=" + localId +
+                '}';
+    }
+}
@@ -3,6 +3,7 @@ package com.robertroman.store_admin_backend.repository;
 import com.robertroman.store_admin_backend.entity.DetalleVenta;
 import com.robertroman.store_admin_backend.entity.ProductoLocal;
 import com.robertroman.store_admin_backend.entity.Venta;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -26,16 +27,38 @@ public interface DetalleVentaRepository extends JpaRepository<DetalleVenta, Long
     // Detalles de ventas por producto en un local
     List<DetalleVenta> findByProductoLocalId(Long productoLocalId);
 
-    // Productos más vendidos en un local (por cantidad)
-    @Query("SELECT dv.productoLocal, SUM(dv.cantidad) as totalVendido " +
+    // Top K productos más vendidos de un local en un período (ID de ProductoLocal y cantidad neta de
+    // devoluciones, sin ventas canceladas); K y el período se resuelven en la base con el Pageable
+    @Query("SELECT dv.productoLocal.id, SUM(dv.cantidad - COALESCE(dv.cantidadDevuelta, 0)) as totalVendido " +
             "FROM DetalleVenta dv " +
-            "WHERE dv.productoLocal.local.id = :localId " +
-            "GROUP BY dv.productoLocal " +
-            "ORDER BY totalVendido DESC")
-    List<Object[]> findProductosMasVendidosByLocal(@Param("localId") Long localId);
+            "WHERE dv.venta.local.id = :localId " +
+            "AND dv.venta.fechaVenta BETWEEN :fechaInicio AND :fechaFin " +
+            "AND dv.venta.estado <> 'CANCELADA' " +
+            "GROUP BY dv.productoLocal.id " +
+            "HAVING SUM(dv.cantidad - COALESCE(dv.cantidadDevuelta, 0)) > 0 " +
+            "ORDER BY totalVendido DESC, dv.productoLocal.id")
+    List<Object[]> findTopVendidosByLocalAndPeriodo(@Param("localId") Long localId,
+                                                    @Param("fechaInicio") LocalDateTime fechaInicio,
+                                                    @Param("fechaFin") LocalDateTime fechaFin,
+                                                    Pageable pageable);
+
+    // Vendido neto por venta y producto en un período, solo ventas hasta un ID (carga del resumen en
+    // vivo: venta, ID de Producto, cantidad neta de devoluciones, nombre del producto)
+    @Query("SELECT dv.venta.id, dv.productoLocal.producto.id, SUM(dv.cantidad - COALESCE(dv.cantidadDevuelta, 0)), " +
+            "dv.productoLocal.producto.nombre " +
+            "FROM DetalleVenta dv " +
+            "WHERE dv.venta.local.id = :localId " +
+            "AND dv.venta.fechaVenta BETWEEN :fechaInicio AND :fechaFin " +
+            "AND dv.venta.estado <> 'CANCELADA' " +
+            "AND dv.venta.id <= :ultimaVenta " +
+            "GROUP BY dv.venta.id, dv.productoLocal.producto.id, dv.productoLocal.producto.nombre")
+    List<Object[]> findVendidoPorVentaHasta(@Param("localId") Long localId,
+                                            @Param("fechaInicio") LocalDateTime fechaInicio,
+                                            @Param("fechaFin") LocalDateTime fechaFin,
+                                            @Param("ultimaVenta") Long ultimaVenta);
 
-    // Productos más vendidos en general (por cantidad)
-    @Query("SELECT dv.productoLocal.producto, SUM(dv.cantidad) as totalVendido " +
+    // Productos más vendidos en general (por cantidad, neta de devoluciones)
+    @Query("SELECT dv.productoLocal.producto, SUM(dv.cantidad - COALESCE(dv.cantidadDevuelta, 0)) as totalVendido " +
             "FROM DetalleVenta dv " +
             "GROUP BY dv.productoLocal.producto " +
             "ORDER BY totalVendido DESC")
@@ -49,33 +72,40 @@ public interface DetalleVentaRepository extends JpaRepository<DetalleVenta, Long
                                                       @Param("fechaInicio") LocalDateTime fechaInicio,
                                                       @Param("fechaFin") LocalDateTime fechaFin);
 
-    // Total de cantidad vendida por producto en un período
-    @Query("SELECT COALESCE(SUM(dv.cantidad), 0) FROM DetalleVenta dv " +
+    // Total de cantidad vendida por producto en un período (neta de devoluciones)
+    @Query("SELECT COALESCE(SUM(dv.cantidad - COALESCE(dv.cantidadDevuelta, 0)), 0) FROM DetalleVenta dv " +
             "WHERE dv.productoLocal.producto.id = :productoId " +
             "AND dv.venta.fechaVenta BETWEEN :fechaInicio AND :fechaFin")
     Long findTotalCantidadVendidaByProductoAndPeriodo(@Param("productoId") Long productoId,
                                                       @Param("fechaInicio") LocalDateTime fechaInicio,
                                                       @Param("fechaFin") LocalDateTime fechaFin);
 
-    // Total de ingresos por producto en un período
-    @Query("SELECT COALESCE(SUM(dv.subtotal), 0) FROM DetalleVenta dv " +
+    // Total de ingresos por producto en un período (neto de devoluciones)
+    @Query("SELECT COALESCE(SUM(dv.subtotal - COALESCE(dv.montoDevuelto, 0)), 0) FROM DetalleVenta dv " +
             "WHERE dv.productoLocal.producto.id = :productoId " +
             "AND dv.venta.fechaVenta BETWEEN :fechaInicio AND :fechaFin")
     java.math.BigDecimal findTotalIngresosByProductoAndPeriodo(@Param("productoId") Long productoId,
                                                                @Param("fechaInicio") LocalDateTime fechaInicio,
                                                                @Param("fechaFin") LocalDateTime fechaFin);
 
-    // Reporte de ventas por categoría en un local
-    @Query("SELECT dv.productoLocal.producto.categoria, SUM(dv.cantidad), SUM(dv.subtotal) " +
+    // Reporte de ventas por categoría en un local (neto de devoluciones)
+    @Query("SELECT dv.productoLocal.producto.categoria, SUM(dv.cantidad - COALESCE(dv.cantidadDevuelta, 0)), " +
+            "SUM(dv.subtotal - COALESCE(dv.montoDevuelto, 0)) " +
             "FROM DetalleVenta dv " +
             "WHERE dv.productoLocal.local.id = :localId " +
             "AND dv.venta.fechaVenta BETWEEN :fechaInicio AND :fechaFin " +
             "GROUP BY dv.productoLocal.producto.categoria " +
-            "ORDER BY SUM(dv.subtotal) DESC")
+            "ORDER BY SUM(dv.subtotal - COALESCE(dv.montoDevuelto, 0)) DESC")
     List<Object[]> findReporteVentasByCategoria(@Param("localId") Long localId,
                                                 @Param("fechaInicio") LocalDateTime fechaInicio,
                                                 @Param("fechaFin") LocalDateTime fechaFin);
 
+    // Detalles de una venta con su producto (devoluciones y cancelaciones)
+    @Query("SELECT dv FROM DetalleVenta dv " +
+            "JOIN FETCH dv.productoLocal pl JOIN FETCH pl.producto JOIN FETCH pl.local " +
+            "WHERE dv.venta.id = :ventaId")
+    List<DetalleVenta> findByVentaIdConProducto(@Param("ventaId") Long ventaId);
+
     // Detalles de ventas por local en un período
     @Query("SELECT dv FROM DetalleVenta dv " +
             "WHERE dv.productoLocal.local.id = :localId " +
@@ -0,0 +1,30 @@
+package com.robertroman.store_admin_backend.repository;
+
+import com.robertroman.store_admin_backend.entity.Devolucion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface DevolucionRepository extends JpaRepository<Devolucion, Long> {
+
+    // Cantidad de devoluciones de una venta (numeración)
+    long countByVentaId(Long ventaId);
+
+    // IDs de devoluciones de ventas de un local en un período, hasta una venta (carga del resumen en vivo)
+    @Query("SELECT d.id FROM Devolucion d WHERE d.localId = :localId " +
+            "AND d.venta.fechaVenta BETWEEN :fechaInicio AND :fechaFin AND d.venta.id <= :ultimaVenta")
+    List<Long> findIdsByLocalAndPeriodoHastaVenta(@Param("localId") Long localId,
+                                                  @Param("fechaInicio") LocalDateTime fechaInicio,
+                                                  @Param("fechaFin") LocalDateTime fechaFin,
+                                                  @Param("ultimaVenta") Long ultimaVenta);
+
+    // Devoluciones de una venta con sus líneas
+    @Query("SELECT DISTINCT d FROM Devolucion d LEFT JOIN FETCH d.detalles " +
+            "WHERE d.venta.id = :ventaId ORDER BY d.fecha")
+    List<Devolucion> findByVentaIdConDetalles(@Param("ventaId") Long ventaId);
+}
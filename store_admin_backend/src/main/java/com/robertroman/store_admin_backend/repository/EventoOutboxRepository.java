@@ -0,0 +1,19 @@
+package com.robertroman.store_admin_backend.repository;
+
+import com.robertroman.store_admin_backend.entity.EventoOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface EventoOutboxRepository extends JpaRepository<EventoOutbox, Long> {
+
+    // Cantidad de eventos por estado (estado, cantidad)
+    @Query("SELECT e.estado, COUNT(e) FROM EventoOutbox e GROUP BY e.estado")
+    List<Object[]> contarPorEstado();
+
+    // Últimos eventos que agotaron sus reintentos
+    List<EventoOutbox> findTop100ByEstadoOrderByIdDesc(EventoOutbox.Estado estado);
+}
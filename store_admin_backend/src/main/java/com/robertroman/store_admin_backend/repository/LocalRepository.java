@@ -2,8 +2,10 @@ package com.robertroman.store_admin_backend.repository;
 
 import com.robertroman.store_admin_backend.entity.Local;
 import com.robertroman.store_admin_backend.entity.Usuario;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -27,10 +29,22 @@ public interface LocalRepository extends JpaRepository<Local, Long> {
     // Buscar por ciudad
     List<Local> findByCiudadAndActivoTrue(String ciudad);
 
-    // Obtener todas las ciudades donde hay locales
+    // Obtener todas las ciudades donde hay locales (cacheada en el query cache)
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheRegion", value = "consultas-catalogo")
+    })
     @Query("SELECT DISTINCT l.ciudad FROM Local l WHERE l.ciudad IS NOT NULL AND l.activo = true ORDER BY l.ciudad")
     List<String> findAllCiudades();
 
+    // Versión de los locales de un usuario (para ETag / Last-Modified)
+    @Query("SELECT MAX(l.updatedAt), COUNT(l) FROM Local l WHERE l.usuario.id = :usuarioId")
+    List<Object[]> findVersionLocalesByUsuario(@Param("usuarioId") Long usuarioId);
+
+    // Versión de todos los locales
+    @Query("SELECT MAX(l.updatedAt), COUNT(l) FROM Local l")
+    List<Object[]> findVersionLocales();
+
     // Contar locales por usuario
     @Query("SELECT COUNT(l) FROM Local l WHERE l.usuario.id = :usuarioId AND l.activo = true")
     Long countByUsuarioId(@Param("usuarioId") Long usuarioId);
@@ -0,0 +1,21 @@
+package com.robertroman.store_admin_backend.repository;
+
+import com.robertroman.store_admin_backend.entity.MovimientoInventario;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface MovimientoInventarioRepository extends JpaRepository<MovimientoInventario, Long> {
+
+    // Movimientos de un local en un período (auditoría), paginados
+    Page<MovimientoInventario> findByLocalIdAndFechaBetweenOrderByFechaAscIdAsc(Long localId, LocalDateTime desde,
+                                                                               LocalDateTime hasta, Pageable pageable);
+
+    // Movimientos de un producto en un local en un período
+    Page<MovimientoInventario> findByLocalIdAndProductoIdAndFechaBetweenOrderByFechaAscIdAsc(
+            Long localId, Long productoId, LocalDateTime desde, LocalDateTime hasta, Pageable pageable);
+}
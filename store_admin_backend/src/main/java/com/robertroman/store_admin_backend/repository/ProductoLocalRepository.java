@@ -3,9 +3,14 @@ package com.robertroman.store_admin_backend.repository;
 import com.robertroman.store_admin_backend.entity.Local;
 import com.robertroman.store_admin_backend.entity.Producto;
 import com.robertroman.store_admin_backend.entity.ProductoLocal;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -38,4 +43,47 @@ public interface ProductoLocalRepository extends JpaRepository<ProductoLocal, Lo
     List<ProductoLocal> findByLocalIdAndStockLessThanEqualAndActivoTrue(Long localId, Integer stock);
 
     List<ProductoLocal> findByLocalIdAndStockAndActivoTrue(Long localId, Integer stock);
+
+    // Producto en local con bloqueo de escritura (cambios de modo de stock)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT pl FROM ProductoLocal pl WHERE pl.producto.id = :productoId AND pl.local.id = :localId")
+    Optional<ProductoLocal> findByProductoIdAndLocalIdParaActualizar(@Param("productoId") Long productoId,
+                                                                     @Param("localId") Long localId);
+
+    // Productos de un local por lista de IDs de producto (una sola consulta para lotes)
+    @Query("SELECT pl FROM ProductoLocal pl JOIN FETCH pl.producto p " +
+            "WHERE pl.local.id = :localId AND p.id IN :productoIds")
+    List<ProductoLocal> findByLocalIdAndProductoIdIn(@Param("localId") Long localId,
+                                                     @Param("productoIds") Collection<Long> productoIds);
+
+    // Catálogo completo de un local (snapshot para terminales POS)
+    @Query("SELECT pl FROM ProductoLocal pl JOIN FETCH pl.producto p " +
+            "WHERE pl.local.id = :localId AND pl.activo = true AND p.activo = true")
+    List<ProductoLocal> findCatalogoActivoByLocal(@Param("localId") Long localId);
+
+    // Filas del catálogo de un local que cambiaron (asignación o producto) desde una versión de fila
+    @Query("SELECT pl FROM ProductoLocal pl JOIN FETCH pl.producto p " +
+            "WHERE pl.local.id = :localId AND (pl.version >= :desde OR p.version >= :desde)")
+    List<ProductoLocal> findCambiosCatalogoByLocal(@Param("localId") Long localId,
+                                                   @Param("desde") Long desde);
+
+    // Menor versión de fila que todavía puede confirmarse: toda fila con versión menor ya está confirmada
+    @Query(value = "SELECT CAST(MIN_ACTIVE_ROWVERSION() AS BIGINT)", nativeQuery = true)
+    Long findVersionFilaActiva();
+
+    // Indicadores del surtido de un local en una sola consulta agregada: asignaciones, activos,
+    // sin stock, en stock mínimo (mismo criterio que estaEnStockMinimo) y valor del inventario
+    @Query("SELECT COUNT(pl), " +
+            "COALESCE(SUM(CASE WHEN pl.activo = true THEN 1 ELSE 0 END), 0), " +
+            "COALESCE(SUM(CASE WHEN pl.activo = true AND pl.stock <= 0 THEN 1 ELSE 0 END), 0), " +
+            "COALESCE(SUM(CASE WHEN pl.activo = true AND pl.stock <= pl.stockMinimo THEN 1 ELSE 0 END), 0), " +
+            "COALESCE(SUM(CASE WHEN pl.activo = true THEN pl.stock * pl.precioVenta ELSE 0 END), 0) " +
+            "FROM ProductoLocal pl WHERE pl.local.id = :localId")
+    List<Object[]> findIndicadoresByLocal(@Param("localId") Long localId);
+
+    // Versión del catálogo de un local: última modificación de asignaciones y productos, cantidad de filas
+    // y suma de las versiones de fila (sube con cada escritura confirmada, aunque la fecha no se mueva)
+    @Query("SELECT MAX(pl.updatedAt), MAX(p.updatedAt), COUNT(pl), SUM(pl.version + p.version) " +
+            "FROM ProductoLocal pl JOIN pl.producto p WHERE pl.local.id = :localId")
+    List<Object[]> findVersionCatalogoByLocal(@Param("localId") Long localId);
 }
\ No newline at end of file
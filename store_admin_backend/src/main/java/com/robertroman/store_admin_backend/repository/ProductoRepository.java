@@ -1,8 +1,10 @@
 package com.robertroman.store_admin_backend.repository;
 
 import com.robertroman.store_admin_backend.entity.Producto;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
@@ -31,10 +33,19 @@ public interface ProductoRepository extends JpaRepository<Producto, Long> {
     @Query("SELECT p FROM Producto p WHERE p.categoria = :categoria AND p.activo = true ORDER BY p.nombre")
     List<Producto> findActivosByCategoria(@Param("categoria") String categoria);
 
-    // Obtener todas las categorías disponibles
+    // Obtener todas las categorías disponibles (cacheada en el query cache)
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheRegion", value = "consultas-catalogo")
+    })
     @Query("SELECT DISTINCT p.categoria FROM Producto p WHERE p.categoria IS NOT NULL AND p.activo = true ORDER BY p.categoria")
     List<String> findAllCategorias();
 
+    // Versión de la tabla de productos (para ETag / Last-Modified): la suma de versiones de fila
+    // cambia con cada escritura confirmada, aunque la transacción haya fechado sus filas antes
+    @Query("SELECT MAX(p.updatedAt), COUNT(p), SUM(p.version) FROM Producto p")
+    List<Object[]> findVersionProductos();
+
     // Buscar productos sin asignar a ningún local
     @Query("SELECT p FROM Producto p WHERE p.activo = true AND p.id NOT IN " +
             "(SELECT DISTINCT pl.producto.id FROM ProductoLocal pl WHERE pl.activo = true)")
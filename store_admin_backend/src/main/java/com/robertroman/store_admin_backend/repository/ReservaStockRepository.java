@@ -0,0 +1,15 @@
+package com.robertroman.store_admin_backend.repository;
+
+import com.robertroman.store_admin_backend.entity.ReservaStock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ReservaStockRepository extends JpaRepository<ReservaStock, Long> {
+
+    // Reservas que siguen vigentes (recuperación al arrancar)
+    List<ReservaStock> findByExpiraEnAfter(LocalDateTime fecha);
+}
@@ -0,0 +1,20 @@
+package com.robertroman.store_admin_backend.repository;
+
+import com.robertroman.store_admin_backend.entity.StockParticion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface StockParticionRepository extends JpaRepository<StockParticion, Long> {
+
+    List<StockParticion> findByProductoLocalIdOrderByIndice(Long productoLocalId);
+
+    @Modifying
+    @Query("DELETE FROM StockParticion sp WHERE sp.productoLocal.id = :productoLocalId")
+    void deleteByProductoLocalId(@Param("productoLocalId") Long productoLocalId);
+}
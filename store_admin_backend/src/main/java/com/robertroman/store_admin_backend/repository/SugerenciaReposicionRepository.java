@@ -0,0 +1,21 @@
+package com.robertroman.store_admin_backend.repository;
+
+import com.robertroman.store_admin_backend.entity.SugerenciaReposicion;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SugerenciaReposicionRepository extends JpaRepository<SugerenciaReposicion, Long> {
+
+    // Sugerencias de un local, primero las que más hay que reponer
+    Page<SugerenciaReposicion> findByLocalIdOrderByCantidadReponerDescIdAsc(Long localId, Pageable pageable);
+
+    // Solo las que cambian el stock mínimo configurado
+    @Query("SELECT s FROM SugerenciaReposicion s WHERE s.localId = :localId " +
+           "AND s.stockMinimoSugerido <> s.stockMinimoActual ORDER BY s.cantidadReponer DESC, s.id ASC")
+    Page<SugerenciaReposicion> findCambiosByLocal(@Param("localId") Long localId, Pageable pageable);
+}
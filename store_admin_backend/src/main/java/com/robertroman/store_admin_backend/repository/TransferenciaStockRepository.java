@@ -0,0 +1,19 @@
+package com.robertroman.store_admin_backend.repository;
+
+import com.robertroman.store_admin_backend.entity.TransferenciaStock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface TransferenciaStockRepository extends JpaRepository<TransferenciaStock, Long> {
+
+    // Transferencias que salen o entran a un local con sus líneas, más recientes primero
+    @Query("SELECT DISTINCT t FROM TransferenciaStock t LEFT JOIN FETCH t.detalles " +
+            "WHERE t.localOrigenId = :localId OR t.localDestinoId = :localId " +
+            "ORDER BY t.fecha DESC")
+    List<TransferenciaStock> findByLocalConDetalles(@Param("localId") Long localId);
+}
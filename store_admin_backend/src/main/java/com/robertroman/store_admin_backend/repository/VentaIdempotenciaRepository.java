@@ -0,0 +1,23 @@
+package com.robertroman.store_admin_backend.repository;
+
+import com.robertroman.store_admin_backend.entity.VentaIdempotencia;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface VentaIdempotenciaRepository extends JpaRepository<VentaIdempotencia, Long> {
+
+    // Buscar por clave de idempotencia
+    @Query("SELECT vi FROM VentaIdempotencia vi JOIN FETCH vi.venta WHERE vi.clave = :clave")
+    Optional<VentaIdempotencia> findByClave(@Param("clave") String clave);
+
+    // Claves ya registradas de un lote (una sola consulta)
+    @Query("SELECT vi FROM VentaIdempotencia vi JOIN FETCH vi.venta WHERE vi.clave IN :claves")
+    List<VentaIdempotencia> findByClaveIn(@Param("claves") Collection<String> claves);
+}
@@ -2,7 +2,9 @@ package com.robertroman.store_admin_backend.repository;
 
 import com.robertroman.store_admin_backend.entity.Local;
 import com.robertroman.store_admin_backend.entity.Venta;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -42,8 +44,8 @@ public interface VentaRepository extends JpaRepository<Venta, Long> {
     // Ventas por local ordenadas por fecha (más recientes primero)
     List<Venta> findByLocalIdOrderByFechaVentaDesc(Long localId);
 
-    // Total de ventas por local en un período
-    @Query("SELECT COALESCE(SUM(v.total), 0) FROM Venta v WHERE v.local.id = :localId AND v.fechaVenta BETWEEN :fechaInicio AND :fechaFin AND v.estado = 'COMPLETADA'")
+    // Total de ventas por local en un período (neto de devoluciones parciales)
+    @Query("SELECT COALESCE(SUM(v.total - COALESCE(v.montoDevuelto, 0)), 0) FROM Venta v WHERE v.local.id = :localId AND v.fechaVenta BETWEEN :fechaInicio AND :fechaFin AND v.estado = 'COMPLETADA'")
     BigDecimal findTotalVentasByLocalAndPeriodo(@Param("localId") Long localId,
                                                 @Param("fechaInicio") LocalDateTime fechaInicio,
                                                 @Param("fechaFin") LocalDateTime fechaFin);
@@ -68,6 +70,28 @@ public interface VentaRepository extends JpaRepository<Venta, Long> {
     // Verificar si existe número de factura
     boolean existsByNumeroFactura(String numeroFactura);
 
+    // Verificar si ya hay facturas con un prefijo (numeración de lotes)
+    boolean existsByNumeroFacturaStartingWith(String prefijo);
+
     // Últimas N ventas por local
     List<Venta> findTop20ByLocalIdOrderByFechaVentaDesc(Long localId);
+
+    // Última venta registrada en un local
+    @Query("SELECT MAX(v.id) FROM Venta v WHERE v.local.id = :localId")
+    Long findUltimoIdByLocal(@Param("localId") Long localId);
+
+    // Indicadores de ventas de un local en una sola consulta agregada:
+    // total de ventas, completadas, canceladas, monto neto vendido y fecha de la última venta
+    @Query("SELECT COUNT(v), " +
+            "COALESCE(SUM(CASE WHEN v.estado = 'COMPLETADA' THEN 1 ELSE 0 END), 0), " +
+            "COALESCE(SUM(CASE WHEN v.estado = 'CANCELADA' THEN 1 ELSE 0 END), 0), " +
+            "COALESCE(SUM(CASE WHEN v.estado = 'COMPLETADA' THEN v.total - COALESCE(v.montoDevuelto, 0) ELSE 0 END), 0), " +
+            "MAX(v.fechaVenta) " +
+            "FROM Venta v WHERE v.local.id = :localId")
+    List<Object[]> findIndicadoresByLocal(@Param("localId") Long localId);
+
+    // Venta con bloqueo de escritura (devoluciones y cancelaciones de una misma venta en serie)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT v FROM Venta v JOIN FETCH v.local WHERE v.id = :id")
+    Optional<Venta> findByIdParaActualizar(@Param("id") Long id);
 }
\ No newline at end of file
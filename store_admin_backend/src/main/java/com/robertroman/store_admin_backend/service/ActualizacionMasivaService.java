@@ -0,0 +1,389 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.entity.MovimientoInventario;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Actualización masiva de stock, precio y stock mínimo de los productos de un local
+// (recuentos de inventario nocturnos). El acceso se valida una sola vez; las líneas se aplican
+// en bloques, cada uno en su propia transacción con un solo lote de UPDATE, y los errores se
+// informan por línea sin frenar al resto. El stock absoluto solo va en ese UPDATE cuando vive en la
+// fila: con el motor de stock activo se fija a través del motor (que lo escribe en la misma
+// transacción, ordenado con las ventas en curso) y en modo escrow, en las particiones.
+@Service
+public class ActualizacionMasivaService {
+
+    private static final Logger log = LoggerFactory.getLogger(ActualizacionMasivaService.class);
+
+    private static final String SQL_BLOQUEAR =
+            "SELECT id, producto_id, stock, particiones_escrow FROM productos_locales WITH (UPDLOCK, ROWLOCK) " +
+            "WHERE local_id = :localId AND producto_id IN (:productoIds)";
+
+    // Un campo en null queda como estaba
+    private static final String SQL_ACTUALIZAR =
+            "UPDATE productos_locales SET stock = COALESCE(?, stock), precio_venta = COALESCE(?, precio_venta), " +
+            "stock_minimo = COALESCE(?, stock_minimo), updated_at = ? WHERE id = ?";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private LocalService localService;
+
+    @Autowired
+    private MotorStockService motorStock;
+
+    @Autowired
+    private StockEscrowService stockEscrow;
+
+    @Autowired
+    private LibroInventarioService libroInventario;
+
+    private final TransactionTemplate transaccionBloque;
+
+    @Value("${productos-local.actualizacion-masiva.tamano-bloque:1000}")
+    private int tamanoBloque;
+
+    public ActualizacionMasivaService(PlatformTransactionManager transactionManager) {
+        this.transaccionBloque = new TransactionTemplate(transactionManager);
+        this.transaccionBloque.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // Aplicar una lista de líneas (las líneas se numeran desde 1)
+    public ResultadoActualizacion actualizar(Long localId, List<LineaActualizacion> lineas, Long usuarioId) {
+        if (lineas == null || lineas.isEmpty()) {
+            throw new RuntimeException("No se recibieron líneas para actualizar");
+        }
+
+        // Validar acceso una sola vez para todo el lote
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        Proceso proceso = new Proceso(localId);
+        for (int i = 0; i < lineas.size(); i++) {
+            LineaActualizacion linea = lineas.get(i);
+            if (linea == null) {
+                proceso.resultado.procesadas++;
+                proceso.resultado.agregarError(i + 1, null, "Línea vacía");
+                continue;
+            }
+            linea.setLinea(i + 1);
+            proceso.agregar(linea);
+        }
+        proceso.terminar();
+        return proceso.resultado;
+    }
+
+    // Aplicar un CSV leído a medida que llega: productoId,stock,precioVenta,stockMinimo
+    // (encabezado opcional, separador coma o punto y coma, campo vacío = sin cambios)
+    public ResultadoActualizacion actualizarCsv(Long localId, InputStream csv, Long usuarioId) {
+        // Validar acceso una sola vez para todo el archivo
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        Proceso proceso = new Proceso(localId);
+        try (BufferedReader lector = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8))) {
+            String texto;
+            int numero = 0;
+            while ((texto = lector.readLine()) != null) {
+                numero++;
+                if (numero == 1 && texto.startsWith("\uFEFF")) {
+                    texto = texto.substring(1);
+                }
+                if (texto.isBlank() || (numero == 1 && esEncabezado(texto))) {
+                    continue;
+                }
+                try {
+                    proceso.agregar(parsearLinea(texto, numero));
+                } catch (RuntimeException e) {
+                    proceso.resultado.procesadas++;
+                    proceso.resultado.agregarError(numero, null, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error al leer el archivo CSV: " + e.getMessage());
+        }
+        proceso.terminar();
+        return proceso.resultado;
+    }
+
+    private static boolean esEncabezado(String texto) {
+        return !texto.isEmpty() && !Character.isDigit(texto.trim().charAt(0));
+    }
+
+    private static LineaActualizacion parsearLinea(String texto, int numero) {
+        String[] campos = texto.split(texto.indexOf(';') >= 0 ? ";" : ",", -1);
+        if (campos.length < 2 || campos.length > 4) {
+            throw new RuntimeException("Formato inválido, se esperaba productoId,stock,precioVenta,stockMinimo");
+        }
+        try {
+            LineaActualizacion linea = new LineaActualizacion();
+            linea.setLinea(numero);
+            linea.setProductoId(Long.valueOf(campos[0].trim()));
+            linea.setStock(campo(campos, 1) != null ? Integer.valueOf(campo(campos, 1)) : null);
+            linea.setPrecioVenta(campo(campos, 2) != null ? new BigDecimal(campo(campos, 2)) : null);
+            linea.setStockMinimo(campo(campos, 3) != null ? Integer.valueOf(campo(campos, 3)) : null);
+            return linea;
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Valor numérico inválido");
+        }
+    }
+
+    private static String campo(String[] campos, int indice) {
+        if (indice >= campos.length || campos[indice].isBlank()) {
+            return null;
+        }
+        return campos[indice].trim();
+    }
+
+    // Acumula líneas válidas y aplica un bloque cada vez que se llena
+    private class Proceso {
+        private final Long localId;
+        private final ResultadoActualizacion resultado;
+        private final Map<Long, Integer> primeraLinea = new HashMap<>();
+        private List<LineaActualizacion> bloque = new ArrayList<>();
+
+        private Proceso(Long localId) {
+            this.localId = localId;
+            this.resultado = new ResultadoActualizacion(localId);
+        }
+
+        private void agregar(LineaActualizacion linea) {
+            resultado.procesadas++;
+            String error = validar(linea);
+            if (error != null) {
+                resultado.agregarError(linea.getLinea(), linea.getProductoId(), error);
+                return;
+            }
+            Integer anterior = primeraLinea.putIfAbsent(linea.getProductoId(), linea.getLinea());
+            if (anterior != null) {
+                resultado.agregarError(linea.getLinea(), linea.getProductoId(),
+                        "Producto repetido (línea " + anterior + ")");
+                return;
+            }
+            bloque.add(linea);
+            if (bloque.size() >= tamanoBloque) {
+                aplicar();
+            }
+        }
+
+        private void terminar() {
+            if (!bloque.isEmpty()) {
+                aplicar();
+            }
+            resultado.errores.sort(Comparator.comparingInt(ErrorLinea::getLinea));
+        }
+
+        private void aplicar() {
+            List<LineaActualizacion> lineas = bloque;
+            bloque = new ArrayList<>();
+            try {
+                resultado.actualizadas += aplicarBloque(localId, lineas, resultado);
+            } catch (RuntimeException e) {
+                log.warn("Bloque de {} líneas del local {} falló: {}", lineas.size(), localId, e.getMessage());
+                lineas.forEach(l -> resultado.agregarError(l.getLinea(), l.getProductoId(),
+                        "Error al aplicar el bloque: " + e.getMessage()));
+            }
+        }
+    }
+
+    private static String validar(LineaActualizacion linea) {
+        if (linea.getProductoId() == null) {
+            return "El ID del producto es obligatorio";
+        }
+        if (linea.getStock() == null && linea.getPrecioVenta() == null && linea.getStockMinimo() == null) {
+            return "La línea no tiene cambios";
+        }
+        if (linea.getStock() != null && linea.getStock() < 0) {
+            return "El stock no puede ser negativo";
+        }
+        if (linea.getStockMinimo() != null && linea.getStockMinimo() < 0) {
+            return "El stock mínimo no puede ser negativo";
+        }
+        if (linea.getPrecioVenta() != null && linea.getPrecioVenta().signum() < 0) {
+            return "El precio no puede ser negativo";
+        }
+        return null;
+    }
+
+    // Un bloque en su propia transacción; devuelve cuántas líneas se aplicaron
+    private int aplicarBloque(Long localId, List<LineaActualizacion> lineas, ResultadoActualizacion resultado) {
+        MapSqlParameterSource parametros = new MapSqlParameterSource()
+                .addValue("localId", localId)
+                .addValue("productoIds", lineas.stream().map(LineaActualizacion::getProductoId).toList());
+
+        List<ErrorLinea> noAsignadas = new ArrayList<>();
+        Integer aplicadas = transaccionBloque.execute(status -> {
+            Map<Long, long[]> filas = new HashMap<>();
+            jdbcTemplate.query(SQL_BLOQUEAR, parametros, rs -> {
+                filas.put(rs.getLong("producto_id"), new long[]{
+                        rs.getLong("id"), rs.getInt("stock"), rs.getInt("particiones_escrow")});
+            });
+
+            String referencia = "MASIVA-" + localId;
+            List<LineaActualizacion> aplicables = new ArrayList<>(lineas.size());
+            List<Long> productoLocalIds = new ArrayList<>(lineas.size());
+            List<Integer> stocks = new ArrayList<>(lineas.size());
+            for (LineaActualizacion linea : lineas) {
+                long[] fila = filas.get(linea.getProductoId());
+                if (fila == null) {
+                    noAsignadas.add(new ErrorLinea(linea.getLinea(), linea.getProductoId(),
+                            "Producto no asignado a este local"));
+                    continue;
+                }
+                Long productoLocalId = fila[0];
+                Integer stock = linea.getStock();
+                if (stock != null) {
+                    int anterior = (int) fila[1];
+                    if (motorStock.estaHabilitado()) {
+                        // Un UPDATE absoluto por fuera del motor quedaría debajo de los descuentos de
+                        // las ventas que reservan contra su estado en memoria
+                        anterior = motorStock.stockConfirmado(localId, productoLocalId);
+                        motorStock.fijar(localId, productoLocalId, stock);
+                        stock = null;
+                    } else if (fila[2] > 0) {
+                        // En modo escrow el stock vive en las particiones
+                        anterior = stockEscrow.fijar(productoLocalId, (int) fila[2], stock);
+                        stock = null;
+                    }
+                    libroInventario.registrar(productoLocalId, localId, linea.getProductoId(),
+                            linea.getStock() - anterior, MovimientoInventario.Motivo.ACTUALIZACION_MASIVA, referencia);
+                }
+                aplicables.add(linea);
+                productoLocalIds.add(productoLocalId);
+                stocks.add(stock);
+            }
+
+            Timestamp ahora = Timestamp.valueOf(LocalDateTime.now());
+            jdbcTemplate.getJdbcTemplate().batchUpdate(SQL_ACTUALIZAR, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    LineaActualizacion linea = aplicables.get(i);
+                    establecer(ps, 1, stocks.get(i));
+                    if (linea.getPrecioVenta() != null) {
+                        ps.setBigDecimal(2, linea.getPrecioVenta());
+                    } else {
+                        ps.setNull(2, Types.DECIMAL);
+                    }
+                    establecer(ps, 3, linea.getStockMinimo());
+                    ps.setTimestamp(4, ahora);
+                    ps.setLong(5, productoLocalIds.get(i));
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return aplicables.size();
+                }
+            });
+            return aplicables.size();
+        });
+
+        resultado.errores.addAll(noAsignadas);
+        return aplicadas != null ? aplicadas : 0;
+    }
+
+    private static void establecer(PreparedStatement ps, int indice, Integer valor) throws SQLException {
+        if (valor != null) {
+            ps.setInt(indice, valor);
+        } else {
+            ps.setNull(indice, Types.INTEGER);
+        }
+    }
+
+    // DTOs
+    public static class LineaActualizacion {
+        private Integer linea;
+        private Long productoId;
+        private Integer stock;
+        private BigDecimal precioVenta;
+        private Integer stockMinimo;
+
+        // Getters y Setters
+        public Integer getLinea() { return linea; }
+        public void setLinea(Integer linea) { this.linea = linea; }
+
+        public Long getProductoId() { return productoId; }
+        public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+        public Integer getStock() { return stock; }
+        public void setStock(Integer stock) { this.stock = stock; }
+
+        public BigDecimal getPrecioVenta() { return precioVenta; }
+        public void setPrecioVenta(BigDecimal precioVenta) { this.precioVenta = precioVenta; }
+
+        public Integer getStockMinimo() { return stockMinimo; }
+        public void setStockMinimo(Integer stockMinimo) { this.stockMinimo = stockMinimo; }
+    }
+
+    public static class ErrorLinea {
+        private int linea;
+        private Long productoId;
+        private String mensaje;
+
+        public ErrorLinea(int linea, Long productoId, String mensaje) {
+            this.linea = linea;
+            this.productoId = productoId;
+            this.mensaje = mensaje;
+        }
+
+        // Getters y Setters
+        public int getLinea() { return linea; }
+        public void setLinea(int linea) { this.linea = linea; }
+
+        public Long getProductoId() { return productoId; }
+        public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+        public String getMensaje() { return mensaje; }
+        public void setMensaje(String mensaje) { this.mensaje = mensaje; }
+    }
+
+    public static class ResultadoActualizacion {
+        private Long localId;
+        private int procesadas;
+        private int actualizadas;
+        private List<ErrorLinea> errores = new ArrayList<>();
+
+        public ResultadoActualizacion(Long localId) {
+            this.localId = localId;
+        }
+
+        private void agregarError(int linea, Long productoId, String mensaje) {
+            errores.add(new ErrorLinea(linea, productoId, mensaje));
+        }
+
+        // Getters y Setters
+        public Long getLocalId() { return localId; }
+        public void setLocalId(Long localId) { this.localId = localId; }
+
+        public int getProcesadas() { return procesadas; }
+        public void setProcesadas(int procesadas) { this.procesadas = procesadas; }
+
+        public int getActualizadas() { return actualizadas; }
+        public void setActualizadas(int actualizadas) { this.actualizadas = actualizadas; }
+
+        public int getConErrores() { return errores.size(); }
+
+        public List<ErrorLinea> getErrores() { return errores; }
+        public void setErrores(List<ErrorLinea> errores) { this.errores = errores; }
+    }
+}
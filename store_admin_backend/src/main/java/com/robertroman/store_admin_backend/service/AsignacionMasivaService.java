@@ -0,0 +1,182 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.config.Carril;
+import com.robertroman.store_admin_backend.config.CarrilEjecucion;
+import com.robertroman.store_admin_backend.entity.MovimientoInventario;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Asignación masiva de productos a locales (alta de un local nuevo en una sola llamada).
+// Cada bloque de productos se asigna con un único INSERT ... SELECT contra todos los locales pedidos;
+// los pares que ya existen se descartan con un anti-join en la misma sentencia, así la cantidad de
+// idas a la base no depende de cuántos productos se asignan.
+@Service
+@Transactional
+@CarrilEjecucion(Carril.TRANSACCIONAL)
+public class AsignacionMasivaService {
+
+    // SQL Server admite hasta 2100 parámetros por sentencia
+    private static final int MAX_IDS_POR_SENTENCIA = 1000;
+
+    // El UPDLOCK/HOLDLOCK del anti-join evita que dos asignaciones simultáneas inserten el mismo par
+    private static final String SQL_INSERTAR =
+            "INSERT INTO productos_locales (producto_id, local_id, stock, stock_minimo, precio_venta, activo, created_at, updated_at) " +
+            "OUTPUT INSERTED.id, INSERTED.local_id, INSERTED.producto_id " +
+            "SELECT p.id, l.id, :stock, :stockMinimo, p.precio_base, 1, :ahora, :ahora " +
+            "FROM productos p CROSS JOIN locales l " +
+            "WHERE l.id IN (:localIds) AND p.activo = 1 AND %s " +
+            "AND NOT EXISTS (SELECT 1 FROM productos_locales pl WITH (UPDLOCK, HOLDLOCK) " +
+            "WHERE pl.producto_id = p.id AND pl.local_id = l.id)";
+
+    // Pares desasignados antes: se reactivan conservando su stock y precio
+    private static final String SQL_REACTIVAR =
+            "UPDATE pl SET pl.activo = 1, pl.updated_at = :ahora " +
+            "FROM productos_locales pl JOIN productos p ON p.id = pl.producto_id " +
+            "WHERE pl.local_id IN (:localIds) AND pl.activo = 0 AND p.activo = 1 AND %s";
+
+    private static final String SQL_CONTAR =
+            "SELECT COUNT(*) FROM productos p WHERE p.activo = 1 AND %s";
+
+    @Autowired
+    private LocalService localService;
+
+    @Autowired
+    private LibroInventarioService libroInventarioService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    // Asignar los productos de una categoría o de una lista a uno o varios locales
+    public ResultadoAsignacion asignar(AsignacionRequest request, Long usuarioId) {
+        Set<Long> localIds = request.getLocalIds() != null
+                ? new LinkedHashSet<>(request.getLocalIds()) : Set.of();
+        if (localIds.isEmpty()) {
+            throw new RuntimeException("Debe indicar al menos un local");
+        }
+        if (localIds.size() > MAX_IDS_POR_SENTENCIA) {
+            throw new RuntimeException("No se pueden asignar más de " + MAX_IDS_POR_SENTENCIA + " locales a la vez");
+        }
+        String categoria = request.getCategoria() != null && !request.getCategoria().isBlank()
+                ? request.getCategoria().trim() : null;
+        List<Long> productoIds = request.getProductoIds() != null
+                ? new ArrayList<>(new LinkedHashSet<>(request.getProductoIds())) : List.of();
+        if (categoria == null && productoIds.isEmpty()) {
+            throw new RuntimeException("Debe indicar una categoría o una lista de productos");
+        }
+        int stock = request.getStock() != null ? request.getStock() : 0;
+        int stockMinimo = request.getStockMinimo() != null ? request.getStockMinimo() : 0;
+        if (stock < 0 || stockMinimo < 0) {
+            throw new RuntimeException("El stock y el stock mínimo no pueden ser negativos");
+        }
+
+        // Validar acceso a todos los locales antes de escribir nada
+        for (Long localId : localIds) {
+            localService.validarAccesoLocal(localId, usuarioId);
+        }
+
+        Timestamp ahora = Timestamp.valueOf(LocalDateTime.now());
+        String referencia = "asignacion-masiva:usuario:" + usuarioId;
+        ResultadoAsignacion resultado = new ResultadoAsignacion();
+
+        // Sin lista de productos la categoría entra en una sola sentencia
+        List<List<Long>> bloques = new ArrayList<>();
+        if (productoIds.isEmpty()) {
+            bloques.add(List.of());
+        } else {
+            for (int i = 0; i < productoIds.size(); i += MAX_IDS_POR_SENTENCIA) {
+                bloques.add(productoIds.subList(i, Math.min(i + MAX_IDS_POR_SENTENCIA, productoIds.size())));
+            }
+        }
+
+        for (List<Long> bloque : bloques) {
+            MapSqlParameterSource parametros = new MapSqlParameterSource()
+                    .addValue("localIds", localIds)
+                    .addValue("stock", stock)
+                    .addValue("stockMinimo", stockMinimo)
+                    .addValue("ahora", ahora);
+            StringBuilder filtro = new StringBuilder("1 = 1");
+            if (categoria != null) {
+                filtro.append(" AND p.categoria = :categoria");
+                parametros.addValue("categoria", categoria);
+            }
+            if (!bloque.isEmpty()) {
+                filtro.append(" AND p.id IN (:productoIds)");
+                parametros.addValue("productoIds", bloque);
+            }
+
+            Long productos = jdbcTemplate.queryForObject(String.format(SQL_CONTAR, filtro), parametros, Long.class);
+            resultado.seleccionados += (productos != null ? productos : 0) * localIds.size();
+
+            List<Map<String, Object>> insertados =
+                    jdbcTemplate.queryForList(String.format(SQL_INSERTAR, filtro), parametros);
+            resultado.insertados += insertados.size();
+
+            // El stock inicial entra al libro de inventario como reposición
+            if (stock > 0) {
+                for (Map<String, Object> fila : insertados) {
+                    libroInventarioService.registrar(((Number) fila.get("id")).longValue(),
+                            ((Number) fila.get("local_id")).longValue(),
+                            ((Number) fila.get("producto_id")).longValue(),
+                            stock, MovimientoInventario.Motivo.REPOSICION, referencia);
+                }
+            }
+
+            resultado.reactivados += jdbcTemplate.update(String.format(SQL_REACTIVAR, filtro), parametros);
+        }
+
+        resultado.yaAsignados = resultado.seleccionados - resultado.insertados - resultado.reactivados;
+        return resultado;
+    }
+
+    // DTOs
+    public static class AsignacionRequest {
+        private List<Long> localIds;
+        private List<Long> productoIds;
+        private String categoria;
+        private Integer stock;
+        private Integer stockMinimo;
+
+        // Getters y Setters
+        public List<Long> getLocalIds() { return localIds; }
+        public void setLocalIds(List<Long> localIds) { this.localIds = localIds; }
+
+        public List<Long> getProductoIds() { return productoIds; }
+        public void setProductoIds(List<Long> productoIds) { this.productoIds = productoIds; }
+
+        public String getCategoria() { return categoria; }
+        public void setCategoria(String categoria) { this.categoria = categoria; }
+
+        public Integer getStock() { return stock; }
+        public void setStock(Integer stock) { this.stock = stock; }
+
+        public Integer getStockMinimo() { return stockMinimo; }
+        public void setStockMinimo(Integer stockMinimo) { this.stockMinimo = stockMinimo; }
+    }
+
+    public static class ResultadoAsignacion {
+        private long seleccionados;
+        private long insertados;
+        private long reactivados;
+        private long yaAsignados;
+
+        // Getters y Setters
+        public long getSeleccionados() { return seleccionados; }
+        public void setSeleccionados(long seleccionados) { this.seleccionados = seleccionados; }
+
+        public long getInsertados() { return insertados; }
+        public void setInsertados(long insertados) { this.insertados = insertados; }
+
+        public long getReactivados() { return reactivados; }
+        public void setReactivados(long reactivados) { this.reactivados = reactivados; }
+
+        public long getYaAsignados() { return yaAsignados; }
+        public void setYaAsignados(long yaAsignados) { this.yaAsignados = yaAsignados; }
+    }
+}
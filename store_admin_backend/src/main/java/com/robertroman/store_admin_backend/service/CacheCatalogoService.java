@@ -0,0 +1,98 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.entity.Local;
+import com.robertroman.store_admin_backend.entity.Producto;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Administración del cache de segundo nivel del catálogo (Producto y Local)
+@Service
+public class CacheCatalogoService {
+
+    public static final String REGION_PRODUCTOS = "productos";
+    public static final String REGION_LOCALES = "locales";
+    public static final String REGION_CONSULTAS = "consultas-catalogo";
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    // Las actualizaciones hechas con JPA invalidan el cache solas;
+    // estos métodos son para cambios hechos con SQL directo o en lote
+    public void invalidarProductos() {
+        SessionFactory sessionFactory = obtenerSessionFactory();
+        sessionFactory.getCache().evictEntityData(Producto.class);
+        sessionFactory.getCache().evictQueryRegion(REGION_CONSULTAS);
+    }
+
+    public void invalidarLocales() {
+        SessionFactory sessionFactory = obtenerSessionFactory();
+        sessionFactory.getCache().evictEntityData(Local.class);
+        sessionFactory.getCache().evictQueryRegion(REGION_CONSULTAS);
+    }
+
+    // Estadísticas de aciertos y fallos por región
+    public List<EstadisticaRegion> obtenerEstadisticas() {
+        Statistics statistics = obtenerSessionFactory().getStatistics();
+
+        List<EstadisticaRegion> estadisticas = new ArrayList<>();
+        estadisticas.add(crearEstadistica(REGION_PRODUCTOS, statistics.getDomainDataRegionStatistics(REGION_PRODUCTOS)));
+        estadisticas.add(crearEstadistica(REGION_LOCALES, statistics.getDomainDataRegionStatistics(REGION_LOCALES)));
+        estadisticas.add(crearEstadistica(REGION_CONSULTAS, statistics.getQueryRegionStatistics(REGION_CONSULTAS)));
+        return estadisticas;
+    }
+
+    // Métodos auxiliares
+    private SessionFactory obtenerSessionFactory() {
+        return entityManagerFactory.unwrap(SessionFactory.class);
+    }
+
+    private EstadisticaRegion crearEstadistica(String region, CacheRegionStatistics regionStatistics) {
+        EstadisticaRegion estadistica = new EstadisticaRegion();
+        estadistica.setRegion(region);
+        if (regionStatistics != null) {
+            estadistica.setAciertos(regionStatistics.getHitCount());
+            estadistica.setFallos(regionStatistics.getMissCount());
+            estadistica.setEscrituras(regionStatistics.getPutCount());
+            estadistica.setElementosEnMemoria(regionStatistics.getElementCountInMemory());
+        }
+        long total = estadistica.getAciertos() + estadistica.getFallos();
+        estadistica.setTasaAciertos(total > 0 ? (double) estadistica.getAciertos() / total : 0.0);
+        return estadistica;
+    }
+
+    // Clase interna para estadísticas
+    public static class EstadisticaRegion {
+        private String region;
+        private long aciertos;
+        private long fallos;
+        private long escrituras;
+        private long elementosEnMemoria;
+        private double tasaAciertos;
+
+        // Getters y Setters
+        public String getRegion() { return region; }
+        public void setRegion(String region) { this.region = region; }
+
+        public long getAciertos() { return aciertos; }
+        public void setAciertos(long aciertos) { this.aciertos = aciertos; }
+
+        public long getFallos() { return fallos; }
+        public void setFallos(long fallos) { this.fallos = fallos; }
+
+        public long getEscrituras() { return escrituras; }
+        public void setEscrituras(long escrituras) { this.escrituras = escrituras; }
+
+        public long getElementosEnMemoria() { return elementosEnMemoria; }
+        public void setElementosEnMemoria(long elementosEnMemoria) { this.elementosEnMemoria = elementosEnMemoria; }
+
+        public double getTasaAciertos() { return tasaAciertos; }
+        public void setTasaAciertos(double tasaAciertos) { this.tasaAciertos = tasaAciertos; }
+    }
+}
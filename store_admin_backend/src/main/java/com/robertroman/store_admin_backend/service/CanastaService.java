@@ -0,0 +1,557 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.config.Carril;
+import com.robertroman.store_admin_backend.config.CarrilEjecucion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Productos comprados juntos por local (análisis de canasta).
+// Una tarea periódica lee las ventas nuevas de cada local por bloques de IDs, cuenta en memoria en cuántas
+// ventas aparece cada par de productos y suma esos conteos a pares_productos. El conteo reparte las ventas
+// del bloque entre los hilos de un ForkJoinPool; cada parte usa un mapa de primitivos (par → cantidad)
+// y las partes se suman al unirse. La memoria depende del tamaño del bloque, no del historial.
+@Service
+public class CanastaService implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(CanastaService.class);
+
+    private static final String SQL_LOCALES = "SELECT id FROM locales";
+
+    // Hasta dónde contar: ventas con cierta antigüedad, para no saltear transacciones sin confirmar
+    private static final String SQL_CORTE =
+            "SELECT MAX(id) FROM ventas WHERE local_id = ? AND fecha_venta < ?";
+
+    private static final String SQL_AVANCE =
+            "SELECT ultima_venta_id FROM canasta_locales WHERE local_id = ?";
+
+    private static final String SQL_AVANCE_BLOQUEO =
+            "SELECT ultima_venta_id FROM canasta_locales WITH (UPDLOCK, HOLDLOCK) WHERE local_id = ?";
+
+    private static final String SQL_FIN_BLOQUE =
+            "SELECT MAX(id) FROM (SELECT TOP (?) id FROM ventas " +
+            "WHERE local_id = ? AND id > ? AND id <= ? ORDER BY id) t";
+
+    // Las cancelaciones y devoluciones posteriores al conteo no se descuentan
+    private static final String SQL_LINEAS =
+            "SELECT dv.venta_id, dv.producto_local_id FROM detalles_venta dv " +
+            "JOIN ventas v ON v.id = dv.venta_id " +
+            "WHERE v.local_id = ? AND v.id > ? AND v.id <= ? AND v.estado IN ('COMPLETADA', 'DEVUELTA') " +
+            "ORDER BY dv.venta_id, dv.producto_local_id";
+
+    private static final String SQL_SUMAR_PAR =
+            "MERGE pares_productos WITH (HOLDLOCK) AS p " +
+            "USING (VALUES (?, ?, ?, ?)) AS n (local_id, producto_a_id, producto_b_id, ventas) " +
+            "ON p.local_id = n.local_id AND p.producto_a_id = n.producto_a_id AND p.producto_b_id = n.producto_b_id " +
+            "WHEN MATCHED THEN UPDATE SET ventas = p.ventas + n.ventas " +
+            "WHEN NOT MATCHED THEN INSERT (local_id, producto_a_id, producto_b_id, ventas) " +
+            "VALUES (n.local_id, n.producto_a_id, n.producto_b_id, n.ventas);";
+
+    private static final String SQL_GUARDAR_AVANCE =
+            "MERGE canasta_locales WITH (HOLDLOCK) AS c " +
+            "USING (VALUES (?, ?, ?, ?)) AS n (local_id, ultima_venta_id, ventas, fecha) " +
+            "ON c.local_id = n.local_id " +
+            "WHEN MATCHED THEN UPDATE SET ultima_venta_id = n.ultima_venta_id, " +
+            "ventas_procesadas = c.ventas_procesadas + n.ventas, fecha_actualizacion = n.fecha " +
+            "WHEN NOT MATCHED THEN INSERT (local_id, ultima_venta_id, ventas_procesadas, fecha_actualizacion) " +
+            "VALUES (n.local_id, n.ultima_venta_id, n.ventas, n.fecha);";
+
+    private static final String SQL_ESTADO =
+            "SELECT c.ventas_procesadas, c.fecha_actualizacion, p.ventas " +
+            "FROM canasta_locales c " +
+            "LEFT JOIN pares_productos p ON p.local_id = c.local_id " +
+            "AND p.producto_a_id = :productoLocalId AND p.producto_b_id = :productoLocalId " +
+            "WHERE c.local_id = :localId";
+
+    private static final String SQL_RELACIONADOS =
+            "SELECT TOP (:limite) o.otro_id, pr.nombre, p.ventas, d.ventas AS ventas_otro " +
+            "FROM pares_productos p " +
+            "CROSS APPLY (SELECT CASE WHEN p.producto_a_id = :productoLocalId " +
+            "THEN p.producto_b_id ELSE p.producto_a_id END AS otro_id) o " +
+            "JOIN pares_productos d ON d.local_id = p.local_id AND d.producto_a_id = o.otro_id AND d.producto_b_id = o.otro_id " +
+            "JOIN productos_locales pl ON pl.id = o.otro_id " +
+            "JOIN productos pr ON pr.id = pl.producto_id " +
+            "WHERE p.local_id = :localId AND (p.producto_a_id = :productoLocalId OR p.producto_b_id = :productoLocalId) " +
+            "AND p.producto_a_id <> p.producto_b_id AND p.ventas >= :minimoVentas " +
+            "ORDER BY p.ventas DESC, o.otro_id";
+
+    private static final int TAMANO_LOTE_ESCRITURA = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private LocalService localService;
+
+    private final TransactionTemplate transaccionBloque;
+    private final ForkJoinPool conteo;
+    private final int tamanoBloque;
+    private final int ventasPorTarea;
+    private final int maxProductosPorVenta;
+    private final int demoraMinutos;
+
+    // Una sola pasada a la vez (la tarea programada puede solaparse con una pasada larga)
+    private final AtomicBoolean enCurso = new AtomicBoolean();
+
+    public CanastaService(PlatformTransactionManager transactionManager,
+                          @Value("${canasta.tamano-bloque:20000}") int tamanoBloque,
+                          @Value("${canasta.hilos:4}") int hilos,
+                          @Value("${canasta.ventas-por-tarea:2000}") int ventasPorTarea,
+                          @Value("${canasta.max-productos-por-venta:50}") int maxProductosPorVenta,
+                          @Value("${canasta.demora-minutos:5}") int demoraMinutos) {
+        this.transaccionBloque = new TransactionTemplate(transactionManager);
+        this.transaccionBloque.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.conteo = new ForkJoinPool(hilos);
+        this.tamanoBloque = tamanoBloque;
+        this.ventasPorTarea = ventasPorTarea;
+        this.maxProductosPorVenta = maxProductosPorVenta;
+        this.demoraMinutos = demoraMinutos;
+    }
+
+    // Contar las ventas nuevas de todos los locales desde la última pasada
+    @Scheduled(cron = "${canasta.cron:0 30 * * * *}")
+    public void procesar() {
+        if (!enCurso.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (Long localId : jdbcTemplate.queryForList(SQL_LOCALES, Long.class)) {
+                try {
+                    procesarLocal(localId);
+                } catch (RuntimeException e) {
+                    log.warn("Análisis de canasta del local {} falló: {}", localId, e.getMessage());
+                }
+            }
+        } finally {
+            enCurso.set(false);
+        }
+    }
+
+    // Productos que más se venden junto con uno dado, con confianza y lift
+    @CarrilEjecucion(Carril.ANALITICO)
+    @Transactional(readOnly = true)
+    public CompradosJuntos obtenerCompradosJuntos(Long localId, Long productoLocalId, int limite,
+                                                  int minimoVentas, Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        MapSqlParameterSource parametros = new MapSqlParameterSource()
+                .addValue("localId", localId)
+                .addValue("productoLocalId", productoLocalId)
+                .addValue("limite", limite)
+                .addValue("minimoVentas", minimoVentas);
+
+        CompradosJuntos resultado = new CompradosJuntos();
+        resultado.setProductoLocalId(productoLocalId);
+        resultado.setVentasAnalizadas(0L);
+        resultado.setVentasProducto(0L);
+        resultado.setRelacionados(new ArrayList<>());
+        namedJdbcTemplate.query(SQL_ESTADO, parametros, (RowCallbackHandler) rs -> {
+            resultado.setVentasAnalizadas(rs.getLong("ventas_procesadas"));
+            resultado.setFechaActualizacion(rs.getTimestamp("fecha_actualizacion").toLocalDateTime());
+            resultado.setVentasProducto(rs.getLong("ventas"));
+        });
+        if (resultado.getVentasProducto() == 0) {
+            return resultado;
+        }
+
+        long total = resultado.getVentasAnalizadas();
+        long ventasProducto = resultado.getVentasProducto();
+        namedJdbcTemplate.query(SQL_RELACIONADOS, parametros, (RowCallbackHandler) rs -> {
+            long juntos = rs.getLong("ventas");
+            long ventasOtro = rs.getLong("ventas_otro");
+            ProductoRelacionado relacionado = new ProductoRelacionado();
+            relacionado.setProductoLocalId(rs.getLong("otro_id"));
+            relacionado.setNombre(rs.getString("nombre"));
+            relacionado.setVentasJuntos(juntos);
+            relacionado.setConfianza(BigDecimal.valueOf(juntos)
+                    .divide(BigDecimal.valueOf(ventasProducto), 4, RoundingMode.HALF_UP));
+            relacionado.setLift(BigDecimal.valueOf(juntos * (double) total / ((double) ventasProducto * ventasOtro))
+                    .setScale(2, RoundingMode.HALF_UP));
+            resultado.getRelacionados().add(relacionado);
+        });
+        return resultado;
+    }
+
+    @Override
+    public void destroy() {
+        conteo.shutdown();
+    }
+
+    private void procesarLocal(Long localId) {
+        Long corte = jdbcTemplate.queryForObject(SQL_CORTE, Long.class, localId,
+                Timestamp.valueOf(LocalDateTime.now().minusMinutes(demoraMinutos)));
+        if (corte == null) {
+            return;
+        }
+        List<Long> avance = jdbcTemplate.queryForList(SQL_AVANCE, Long.class, localId);
+        long desde = avance.isEmpty() ? 0L : avance.get(0);
+
+        while (desde < corte) {
+            Long hasta = jdbcTemplate.queryForObject(SQL_FIN_BLOQUE, Long.class, tamanoBloque, localId, desde, corte);
+            if (hasta == null) {
+                return;
+            }
+
+            LectorCanastas lector = new LectorCanastas();
+            jdbcTemplate.query(SQL_LINEAS, lector, localId, desde, hasta);
+            Canastas canastas = lector.terminar();
+            Conteo resultado = conteo.invoke(new TareaConteo(canastas, 0, canastas.ventas));
+
+            if (!guardar(localId, desde, hasta, canastas, resultado)) {
+                // Otra pasada avanzó este local mientras se contaba
+                return;
+            }
+            log.debug("Canasta del local {}: ventas {}..{}, {} pares", localId, desde + 1, hasta,
+                    resultado.pares.tamano());
+            desde = hasta;
+        }
+    }
+
+    // Sumar los conteos del bloque y mover el avance en la misma transacción
+    private boolean guardar(Long localId, long desde, long hasta, Canastas canastas, Conteo resultado) {
+        Boolean guardado = transaccionBloque.execute(status -> {
+            List<Long> avance = jdbcTemplate.queryForList(SQL_AVANCE_BLOQUEO, Long.class, localId);
+            if ((avance.isEmpty() ? 0L : avance.get(0)) != desde) {
+                return false;
+            }
+
+            List<Object[]> filas = new ArrayList<>(TAMANO_LOTE_ESCRITURA);
+            for (int i = 0; i < resultado.porProducto.length; i++) {
+                if (resultado.porProducto[i] > 0) {
+                    long productoLocalId = canastas.productos[i];
+                    filas.add(new Object[]{localId, productoLocalId, productoLocalId, resultado.porProducto[i]});
+                    escribirSiLleno(filas);
+                }
+            }
+            resultado.pares.recorrer((clave, ventas) -> {
+                long a = canastas.productos[(int) (clave >>> 32)];
+                long b = canastas.productos[(int) clave];
+                filas.add(new Object[]{localId, Math.min(a, b), Math.max(a, b), ventas});
+                escribirSiLleno(filas);
+            });
+            if (!filas.isEmpty()) {
+                jdbcTemplate.batchUpdate(SQL_SUMAR_PAR, filas);
+            }
+
+            jdbcTemplate.update(SQL_GUARDAR_AVANCE, localId, hasta, canastas.ventas,
+                    Timestamp.valueOf(LocalDateTime.now()));
+            return true;
+        });
+        return Boolean.TRUE.equals(guardado);
+    }
+
+    private void escribirSiLleno(List<Object[]> filas) {
+        if (filas.size() >= TAMANO_LOTE_ESCRITURA) {
+            jdbcTemplate.batchUpdate(SQL_SUMAR_PAR, filas);
+            filas.clear();
+        }
+    }
+
+    // Ventas de un bloque como listas de índices de producto (sin repetidos, en orden)
+    private static final class Canastas {
+        // Productos de la venta v: items[inicio[v]] .. items[inicio[v + 1] - 1]
+        private int[] inicio;
+        private int[] items;
+        // Índice → ID de ProductoLocal
+        private long[] productos;
+        private int ventas;
+    }
+
+    // Arma las canastas a medida que llegan las líneas ordenadas por venta y producto
+    private static final class LectorCanastas implements RowCallbackHandler {
+        private final MapaLargoEntero indices = new MapaLargoEntero(1024);
+        private int[] inicio = new int[1024];
+        private int[] items = new int[4096];
+        private long[] productos = new long[1024];
+        private int ventas;
+        private int cantidadItems;
+        private long ventaActual = -1;
+        private long productoAnterior = -1;
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long ventaId = rs.getLong(1);
+            long productoLocalId = rs.getLong(2);
+            if (ventaId != ventaActual) {
+                if (ventas + 1 >= inicio.length) {
+                    inicio = Arrays.copyOf(inicio, inicio.length * 2);
+                }
+                inicio[ventas++] = cantidadItems;
+                ventaActual = ventaId;
+                productoAnterior = -1;
+            } else if (productoLocalId == productoAnterior) {
+                // El mismo producto en dos líneas de la venta cuenta una sola vez
+                return;
+            }
+            productoAnterior = productoLocalId;
+
+            int indice = indices.obtener(productoLocalId, -1);
+            if (indice < 0) {
+                indice = indices.tamano();
+                indices.poner(productoLocalId, indice);
+                if (indice >= productos.length) {
+                    productos = Arrays.copyOf(productos, productos.length * 2);
+                }
+                productos[indice] = productoLocalId;
+            }
+            if (cantidadItems >= items.length) {
+                items = Arrays.copyOf(items, items.length * 2);
+            }
+            items[cantidadItems++] = indice;
+        }
+
+        private Canastas terminar() {
+            inicio[ventas] = cantidadItems;
+            Canastas canastas = new Canastas();
+            canastas.inicio = inicio;
+            canastas.items = items;
+            canastas.productos = Arrays.copyOf(productos, indices.tamano());
+            canastas.ventas = ventas;
+            return canastas;
+        }
+    }
+
+    // Conteo de una parte de las ventas del bloque
+    private static final class Conteo {
+        // Clave del par: índice menor en los 32 bits altos, mayor en los bajos
+        private MapaLargoEntero pares;
+        private int[] porProducto;
+
+        // Sumar otro conteo (se recorre el mapa más chico)
+        private Conteo sumar(Conteo otro) {
+            Conteo mayor = pares.tamano() >= otro.pares.tamano() ? this : otro;
+            Conteo menor = mayor == this ? otro : this;
+            menor.pares.recorrer((clave, ventas) -> mayor.pares.sumar(clave, ventas));
+            for (int i = 0; i < mayor.porProducto.length; i++) {
+                mayor.porProducto[i] += menor.porProducto[i];
+            }
+            return mayor;
+        }
+    }
+
+    private final class TareaConteo extends RecursiveTask<Conteo> {
+        private static final long serialVersionUID = 1L;
+
+        private final Canastas canastas;
+        private final int desde;
+        private final int hasta;
+
+        private TareaConteo(Canastas canastas, int desde, int hasta) {
+            this.canastas = canastas;
+            this.desde = desde;
+            this.hasta = hasta;
+        }
+
+        @Override
+        protected Conteo compute() {
+            if (hasta - desde > ventasPorTarea) {
+                int medio = (desde + hasta) >>> 1;
+                TareaConteo izquierda = new TareaConteo(canastas, desde, medio);
+                izquierda.fork();
+                Conteo derecha = new TareaConteo(canastas, medio, hasta).compute();
+                return izquierda.join().sumar(derecha);
+            }
+
+            Conteo resultado = new Conteo();
+            resultado.pares = new MapaLargoEntero(1024);
+            resultado.porProducto = new int[canastas.productos.length];
+            int[] items = canastas.items;
+            for (int v = desde; v < hasta; v++) {
+                int inicio = canastas.inicio[v];
+                int fin = canastas.inicio[v + 1];
+                for (int i = inicio; i < fin; i++) {
+                    resultado.porProducto[items[i]]++;
+                }
+                // Ventas mayoristas: el número de pares crece al cuadrado y no dicen nada de afinidad
+                if (fin - inicio > maxProductosPorVenta) {
+                    continue;
+                }
+                for (int i = inicio; i < fin; i++) {
+                    for (int j = i + 1; j < fin; j++) {
+                        int a = Math.min(items[i], items[j]);
+                        int b = Math.max(items[i], items[j]);
+                        resultado.pares.sumar(((long) a << 32) | b, 1);
+                    }
+                }
+            }
+            return resultado;
+        }
+    }
+
+    interface ConsumidorEntrada {
+        void aceptar(long clave, int valor);
+    }
+
+    // Mapa long → int con direccionamiento abierto (sondeo lineal), sin objetos por entrada.
+    // La clave 0 marca un lugar libre: los pares tienen b > a >= 0 y los IDs empiezan en 1.
+    // Visible en el paquete para probarlo por separado.
+    static final class MapaLargoEntero {
+        private long[] claves;
+        private int[] valores;
+        private int tamano;
+        private int mascara;
+
+        MapaLargoEntero(int capacidadInicial) {
+            int capacidad = Integer.highestOneBit(Math.max(16, capacidadInicial) - 1) << 1;
+            claves = new long[capacidad];
+            valores = new int[capacidad];
+            mascara = capacidad - 1;
+        }
+
+        int tamano() {
+            return tamano;
+        }
+
+        int obtener(long clave, int porDefecto) {
+            int i = posicion(clave);
+            while (claves[i] != 0) {
+                if (claves[i] == clave) {
+                    return valores[i];
+                }
+                i = (i + 1) & mascara;
+            }
+            return porDefecto;
+        }
+
+        void poner(long clave, int valor) {
+            int i = lugar(clave);
+            valores[i] = valor;
+        }
+
+        void sumar(long clave, int delta) {
+            int i = lugar(clave);
+            valores[i] += delta;
+        }
+
+        void recorrer(ConsumidorEntrada consumidor) {
+            for (int i = 0; i < claves.length; i++) {
+                if (claves[i] != 0) {
+                    consumidor.aceptar(claves[i], valores[i]);
+                }
+            }
+        }
+
+        // Lugar de la clave, ocupándolo (con valor 0) si no estaba
+        private int lugar(long clave) {
+            if (clave == 0) {
+                throw new IllegalArgumentException("La clave 0 está reservada");
+            }
+            int i = posicion(clave);
+            while (claves[i] != 0) {
+                if (claves[i] == clave) {
+                    return i;
+                }
+                i = (i + 1) & mascara;
+            }
+            if ((tamano + 1) * 4L > claves.length * 3L) {
+                agrandar();
+                return lugar(clave);
+            }
+            claves[i] = clave;
+            tamano++;
+            return i;
+        }
+
+        private int posicion(long clave) {
+            long h = clave * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mascara;
+        }
+
+        private void agrandar() {
+            long[] clavesAnteriores = claves;
+            int[] valoresAnteriores = valores;
+            claves = new long[clavesAnteriores.length * 2];
+            valores = new int[clavesAnteriores.length * 2];
+            mascara = claves.length - 1;
+            for (int i = 0; i < clavesAnteriores.length; i++) {
+                if (clavesAnteriores[i] != 0) {
+                    int j = posicion(clavesAnteriores[i]);
+                    while (claves[j] != 0) {
+                        j = (j + 1) & mascara;
+                    }
+                    claves[j] = clavesAnteriores[i];
+                    valores[j] = valoresAnteriores[i];
+                }
+            }
+        }
+    }
+
+    // DTOs
+    public static class CompradosJuntos {
+        private Long productoLocalId;
+        // Ventas en las que apareció el producto y ventas analizadas del local
+        private Long ventasProducto;
+        private Long ventasAnalizadas;
+        private LocalDateTime fechaActualizacion;
+        private List<ProductoRelacionado> relacionados;
+
+        // Getters y Setters
+        public Long getProductoLocalId() { return productoLocalId; }
+        public void setProductoLocalId(Long productoLocalId) { this.productoLocalId = productoLocalId; }
+
+        public Long getVentasProducto() { return ventasProducto; }
+        public void setVentasProducto(Long ventasProducto) { this.ventasProducto = ventasProducto; }
+
+        public Long getVentasAnalizadas() { return ventasAnalizadas; }
+        public void setVentasAnalizadas(Long ventasAnalizadas) { this.ventasAnalizadas = ventasAnalizadas; }
+
+        public LocalDateTime getFechaActualizacion() { return fechaActualizacion; }
+        public void setFechaActualizacion(LocalDateTime fechaActualizacion) { this.fechaActualizacion = fechaActualizacion; }
+
+        public List<ProductoRelacionado> getRelacionados() { return relacionados; }
+        public void setRelacionados(List<ProductoRelacionado> relacionados) { this.relacionados = relacionados; }
+    }
+
+    public static class ProductoRelacionado {
+        private Long productoLocalId;
+        private String nombre;
+        private Long ventasJuntos;
+        // Proporción de las ventas del producto que también lo incluyen
+        private BigDecimal confianza;
+        // Cuántas veces más se compran juntos de lo esperable por azar
+        private BigDecimal lift;
+
+        // Getters y Setters
+        public Long getProductoLocalId() { return productoLocalId; }
+        public void setProductoLocalId(Long productoLocalId) { this.productoLocalId = productoLocalId; }
+
+        public String getNombre() { return nombre; }
+        public void setNombre(String nombre) { this.nombre = nombre; }
+
+        public Long getVentasJuntos() { return ventasJuntos; }
+        public void setVentasJuntos(Long ventasJuntos) { this.ventasJuntos = ventasJuntos; }
+
+        public BigDecimal getConfianza() { return confianza; }
+        public void setConfianza(BigDecimal confianza) { this.confianza = confianza; }
+
+        public BigDecimal getLift() { return lift; }
+        public void setLift(BigDecimal lift) { this.lift = lift; }
+    }
+}
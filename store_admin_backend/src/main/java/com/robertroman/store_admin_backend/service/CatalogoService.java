@@ -0,0 +1,146 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.dto.VersionRecurso;
+import com.robertroman.store_admin_backend.entity.ProductoLocal;
+import com.robertroman.store_admin_backend.repository.ProductoLocalRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Catálogo versionado por local para la sincronización de terminales POS
+@Service
+@Transactional(readOnly = true)
+public class CatalogoService {
+
+    @Autowired
+    private ProductoLocalRepository productoLocalRepository;
+
+    @Autowired
+    private LocalService localService;
+
+    // Snapshot completo (desde == null) o delta desde una versión anterior.
+    // La versión es MIN_ACTIVE_ROWVERSION(): toda fila con versión de fila menor ya está confirmada y
+    // las escrituras en curso o futuras quedan en esa versión o más arriba, sin importar cuánto tarde
+    // en confirmar su transacción (updated_at se fecha antes del commit y no sirve de cursor). Las
+    // terminales aplican los cambios como upsert, así que repetir filas en el próximo delta es inofensivo.
+    public CatalogoLocal obtenerCatalogo(Long localId, Long desde, Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        // La versión se toma antes de leer las filas: lo que confirme después entra en el próximo delta
+        Long hasta = productoLocalRepository.findVersionFilaActiva();
+
+        CatalogoLocal catalogo = new CatalogoLocal();
+        catalogo.setLocalId(localId);
+        catalogo.setVersion(hasta != null ? hasta : 0L);
+
+        // Una versión mayor que la actual no salió de este cursor (p. ej. un cursor por fecha viejo): snapshot
+        if (desde == null || desde <= 0 || (hasta != null && desde > hasta)) {
+            catalogo.setCompleto(true);
+            List<ItemCatalogo> productos = new ArrayList<>();
+            for (ProductoLocal pl : productoLocalRepository.findCatalogoActivoByLocal(localId)) {
+                productos.add(crearItem(pl));
+            }
+            catalogo.setProductos(productos);
+            catalogo.setEliminados(new ArrayList<>());
+            return catalogo;
+        }
+
+        catalogo.setCompleto(false);
+        List<ItemCatalogo> productos = new ArrayList<>();
+        List<Long> eliminados = new ArrayList<>();
+        for (ProductoLocal pl : productoLocalRepository.findCambiosCatalogoByLocal(localId, desde)) {
+            if (Boolean.TRUE.equals(pl.getActivo()) && Boolean.TRUE.equals(pl.getProducto().getActivo())) {
+                productos.add(crearItem(pl));
+            } else {
+                // Tombstone: la terminal debe quitar el producto de su lista
+                eliminados.add(pl.getProducto().getId());
+            }
+        }
+        catalogo.setProductos(productos);
+        catalogo.setEliminados(eliminados);
+        return catalogo;
+    }
+
+    // Versión actual del catálogo de un local (consulta de agregados, sin traer filas)
+    public VersionRecurso obtenerVersion(Long localId) {
+        List<Object[]> resultado = productoLocalRepository.findVersionCatalogoByLocal(localId);
+        Object[] fila = resultado.isEmpty() ? new Object[4] : resultado.get(0);
+
+        VersionRecurso version = VersionRecurso.desdeAgregados((LocalDateTime) fila[0], (LocalDateTime) fila[1]);
+        version.setCantidad(fila[2] != null ? ((Number) fila[2]).longValue() : 0L);
+        version.setHuella(fila[3] != null ? ((Number) fila[3]).longValue() : 0L);
+        return version;
+    }
+
+    // Métodos auxiliares
+    private ItemCatalogo crearItem(ProductoLocal pl) {
+        ItemCatalogo item = new ItemCatalogo();
+        item.setProductoId(pl.getProducto().getId());
+        item.setSku(pl.getProducto().getSku());
+        item.setNombre(pl.getProducto().getNombre());
+        item.setCategoria(pl.getProducto().getCategoria());
+        item.setPrecioVenta(pl.getPrecioVenta());
+        item.setStock(pl.getStock());
+        return item;
+    }
+
+    // Clases internas para DTOs
+
+    public static class CatalogoLocal {
+        private Long localId;
+        private long version;
+        private boolean completo;
+        private List<ItemCatalogo> productos;
+        private List<Long> eliminados;
+
+        // Getters y Setters
+        public Long getLocalId() { return localId; }
+        public void setLocalId(Long localId) { this.localId = localId; }
+
+        public long getVersion() { return version; }
+        public void setVersion(long version) { this.version = version; }
+
+        public boolean isCompleto() { return completo; }
+        public void setCompleto(boolean completo) { this.completo = completo; }
+
+        public List<ItemCatalogo> getProductos() { return productos; }
+        public void setProductos(List<ItemCatalogo> productos) { this.productos = productos; }
+
+        public List<Long> getEliminados() { return eliminados; }
+        public void setEliminados(List<Long> eliminados) { this.eliminados = eliminados; }
+    }
+
+    public static class ItemCatalogo {
+        private Long productoId;
+        private String sku;
+        private String nombre;
+        private String categoria;
+        private BigDecimal precioVenta;
+        private Integer stock;
+
+        // Getters y Setters
+        public Long getProductoId() { return productoId; }
+        public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+        public String getSku() { return sku; }
+        public void setSku(String sku) { this.sku = sku; }
+
+        public String getNombre() { return nombre; }
+        public void setNombre(String nombre) { this.nombre = nombre; }
+
+        public String getCategoria() { return categoria; }
+        public void setCategoria(String categoria) { this.categoria = categoria; }
+
+        public BigDecimal getPrecioVenta() { return precioVenta; }
+        public void setPrecioVenta(BigDecimal precioVenta) { this.precioVenta = precioVenta; }
+
+        public Integer getStock() { return stock; }
+        public void setStock(Integer stock) { this.stock = stock; }
+    }
+}
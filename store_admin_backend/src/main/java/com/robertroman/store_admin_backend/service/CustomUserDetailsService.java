@@ -3,21 +3,29 @@ package com.robertroman.store_admin_backend.service;
 import com.robertroman.store_admin_backend.entity.Usuario;
 import com.robertroman.store_admin_backend.repository.UsuarioRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Optional;
 
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
+    // Autoridad de los operadores del sistema (outbox y demás tareas de mantenimiento)
+    public static final String AUTORIDAD_OPERADOR = "OPERADOR";
+
     @Autowired
     private UsuarioRepository usuarioRepository;
 
+    // Usernames con autoridad de operador (sistema.operadores, separados por coma)
+    @Value("${sistema.operadores:}")
+    private String[] operadores;
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         // Buscar usuario por username o email
@@ -29,11 +37,14 @@ public class CustomUserDetailsService implements UserDetailsService {
 
         Usuario usuario = usuarioOpt.get();
 
-        // Crear UserDetails con authorities vacías (puedes agregar roles más tarde)
+        // Sin roles en la base: solo los operadores configurados tienen una autoridad
+        boolean operador = Arrays.stream(operadores).map(String::trim)
+                .anyMatch(nombre -> nombre.equalsIgnoreCase(usuario.getUsername()));
+
         return User.builder()
                 .username(usuario.getUsername())
                 .password(usuario.getPassword())
-                .authorities(Collections.emptyList()) // Por ahora sin roles específicos
+                .authorities(operador ? new String[]{AUTORIDAD_OPERADOR} : new String[0])
                 .accountExpired(false)
                 .accountLocked(false)
                 .credentialsExpired(false)
@@ -1,9 +1,12 @@
 package com.robertroman.store_admin_backend.service;
 
+import com.robertroman.store_admin_backend.config.Carril;
+import com.robertroman.store_admin_backend.config.CarrilEjecucion;
 import com.robertroman.store_admin_backend.entity.Producto;
 import com.robertroman.store_admin_backend.entity.ProductoLocal;
 import com.robertroman.store_admin_backend.repository.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -15,6 +18,7 @@ import java.util.stream.Collectors;
 
 @Service
 @Transactional(readOnly = true)
+@CarrilEjecucion(Carril.ANALITICO)
 public class DashboardService {
 
     @Autowired
@@ -55,8 +59,8 @@ public class DashboardService {
         dashboard.setProductosSinStock((int) productos.stream()
                 .filter(p -> p.getStock() == 0).count());
 
-        // Productos más vendidos
-        dashboard.setProductosMasVendidos(obtenerProductosMasVendidos(localId));
+        // Productos más vendidos del período
+        dashboard.setProductosMasVendidos(topVendidos(localId, fechaInicio, fechaFin, 10));
 
         // Ventas por categoría
         dashboard.setVentasPorCategoria(obtenerVentasPorCategoria(localId, fechaInicio, fechaFin));
@@ -64,15 +68,29 @@ public class DashboardService {
         return dashboard;
     }
 
-    // Productos más vendidos en el local
-    public List<ProductoVendido> obtenerProductosMasVendidos(Long localId) {
-        List<Object[]> resultados = detalleVentaRepository.findProductosMasVendidosByLocal(localId);
+    // Productos más vendidos en el local en un período
+    public List<ProductoVendido> obtenerProductosMasVendidos(Long localId, LocalDateTime fechaInicio,
+                                                             LocalDateTime fechaFin, int limite, Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        return topVendidos(localId, fechaInicio, fechaFin, limite);
+    }
+
+    // Top K resuelto en la base; solo se cargan los K productos del resultado
+    private List<ProductoVendido> topVendidos(Long localId, LocalDateTime fechaInicio, LocalDateTime fechaFin, int limite) {
+        List<Object[]> resultados = detalleVentaRepository.findTopVendidosByLocalAndPeriodo(
+                localId, fechaInicio, fechaFin, PageRequest.of(0, limite));
+
+        Map<Long, ProductoLocal> productos = productoLocalRepository.findAllById(
+                        resultados.stream().map(row -> (Long) row[0]).toList())
+                .stream()
+                .collect(Collectors.toMap(ProductoLocal::getId, pl -> pl));
 
         return resultados.stream()
-                .limit(10) // Top 10
                 .map(row -> {
                     ProductoVendido pv = new ProductoVendido();
-                    pv.setProductoLocal((com.robertroman.store_admin_backend.entity.ProductoLocal) row[0]);
+                    pv.setProductoLocal(productos.get((Long) row[0]));
                     pv.setCantidadVendida(((Number) row[1]).longValue());
                     return pv;
                 })
@@ -0,0 +1,275 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.config.Carril;
+import com.robertroman.store_admin_backend.config.CarrilEjecucion;
+import com.robertroman.store_admin_backend.entity.*;
+import com.robertroman.store_admin_backend.repository.DetalleVentaRepository;
+import com.robertroman.store_admin_backend.repository.DevolucionRepository;
+import com.robertroman.store_admin_backend.repository.VentaRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+
+// Devoluciones parciales de ventas.
+// Cada devolución queda como documento con sus líneas; la cantidad devuelta se acumula en cada
+// detalle con un solo lote de UPDATE condicionales y el stock se repone con un solo lote de deltas,
+// así la cantidad de idas a la base no depende de cuántas líneas se devuelven.
+// Como en la venta, las líneas van sin impuestos ni descuento general y el total de la devolución
+// (lo que se reintegra) los incluye en proporción; ese total es el que se descuenta de la venta.
+@Service
+@Transactional
+@CarrilEjecucion(Carril.TRANSACCIONAL)
+public class DevolucionService {
+
+    // Solo si todavía queda esa cantidad sin devolver
+    private static final String SQL_DEVOLVER_DETALLE =
+            "UPDATE detalles_venta SET cantidad_devuelta = COALESCE(cantidad_devuelta, 0) + ?, " +
+            "monto_devuelto = COALESCE(monto_devuelto, 0) + ? " +
+            "WHERE id = ? AND venta_id = ? AND cantidad - COALESCE(cantidad_devuelta, 0) >= ?";
+
+    private static final String SQL_INSERTAR_DETALLE =
+            "INSERT INTO detalles_devolucion (devolucion_id, detalle_venta_id, producto_local_id, cantidad, monto) " +
+            "VALUES (?, ?, ?, ?, ?)";
+
+    @Autowired
+    private VentaRepository ventaRepository;
+
+    @Autowired
+    private DetalleVentaRepository detalleVentaRepository;
+
+    @Autowired
+    private DevolucionRepository devolucionRepository;
+
+    @Autowired
+    private MovimientoStockService movimientoStockService;
+
+    @Autowired
+    private LocalService localService;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Devolver algunas líneas o cantidades de una venta
+    public Devolucion registrarDevolucion(Long ventaId, DevolucionRequest request, Long usuarioId) {
+        Venta venta = ventaRepository.findByIdParaActualizar(ventaId)
+                .orElseThrow(() -> new RuntimeException("Venta no encontrada con ID: " + ventaId));
+
+        // Validar acceso al local
+        localService.validarAccesoLocal(venta.getLocal().getId(), usuarioId);
+
+        if (venta.getEstado() != Venta.EstadoVenta.COMPLETADA) {
+            throw new RuntimeException("Solo se pueden devolver ventas completadas");
+        }
+        if (request.getItems() == null || request.getItems().isEmpty()) {
+            throw new RuntimeException("La devolución debe incluir al menos un item");
+        }
+
+        List<DetalleVenta> detalles = detalleVentaRepository.findByVentaIdConProducto(ventaId);
+        Map<DetalleVenta, Integer> aDevolver = cantidadesADevolver(detalles, request.getItems());
+
+        Devolucion devolucion = new Devolucion(venta, usuarioId,
+                venta.getNumeroFactura() + "-D" + (devolucionRepository.countByVentaId(ventaId) + 1),
+                request.getMotivo());
+
+        // Monto proporcional al subtotal de la línea; la última unidad se lleva el resto del redondeo
+        List<DetalleDevolucion> lineas = new ArrayList<>(aDevolver.size());
+        Map<ProductoLocal, Integer> reposicion = new LinkedHashMap<>();
+        List<OutboxService.ItemVendido> devueltos = new ArrayList<>(aDevolver.size());
+        BigDecimal total = BigDecimal.ZERO;
+        boolean ventaCompleta = true;
+        for (DetalleVenta detalle : detalles) {
+            Integer cantidad = aDevolver.get(detalle);
+            if (cantidad == null) {
+                ventaCompleta &= detalle.cantidadPendienteDeDevolver() == 0;
+                continue;
+            }
+
+            BigDecimal monto;
+            if (cantidad == detalle.cantidadPendienteDeDevolver()) {
+                monto = detalle.getSubtotal().subtract(
+                        detalle.getMontoDevuelto() != null ? detalle.getMontoDevuelto() : BigDecimal.ZERO);
+            } else {
+                monto = detalle.getSubtotal().multiply(BigDecimal.valueOf(cantidad))
+                        .divide(BigDecimal.valueOf(detalle.getCantidad()), 2, RoundingMode.HALF_UP);
+                ventaCompleta = false;
+            }
+
+            lineas.add(new DetalleDevolucion(devolucion, detalle.getId(), detalle.getProductoLocal().getId(),
+                    cantidad, monto));
+            reposicion.merge(detalle.getProductoLocal(), cantidad, Integer::sum);
+            devueltos.add(new OutboxService.ItemVendido(detalle.getProductoLocal().getProducto().getId(),
+                    detalle.getProductoLocal().getId(), cantidad, monto));
+            total = total.add(monto);
+        }
+        BigDecimal reintegro = calcularReintegro(venta, total, ventaCompleta);
+        devolucion.setTotal(reintegro);
+        devolucion = devolucionRepository.save(devolucion);
+
+        acumularEnDetalles(ventaId, lineas);
+
+        Long devolucionId = devolucion.getId();
+        List<Object[]> parametros = new ArrayList<>(lineas.size());
+        lineas.forEach(l -> parametros.add(new Object[]{devolucionId, l.getDetalleVentaId(),
+                l.getProductoLocalId(), l.getCantidad(), l.getMonto()}));
+        jdbcTemplate.batchUpdate(SQL_INSERTAR_DETALLE, parametros);
+
+        movimientoStockService.reponer(reposicion, MovimientoInventario.Motivo.DEVOLUCION, devolucion.getNumero());
+
+        // Totales de la venta: neto de devoluciones; devuelta del todo si no queda nada
+        venta.setMontoDevuelto((venta.getMontoDevuelto() != null ? venta.getMontoDevuelto() : BigDecimal.ZERO)
+                .add(reintegro));
+        if (ventaCompleta) {
+            venta.setEstado(Venta.EstadoVenta.DEVUELTA);
+        }
+        ventaRepository.save(venta);
+
+        outboxService.registrar(venta.getLocal().getId(), EventoOutbox.Tipo.DEVOLUCION_REGISTRADA, devolucion.getId(),
+                new OutboxService.DatosVenta(venta.getId(), devolucion.getNumero(), reintegro, venta.getFechaVenta(), devueltos));
+
+        devolucion.setDetalles(lineas);
+        return devolucion;
+    }
+
+    // Obtener devoluciones de una venta
+    @Transactional(readOnly = true)
+    public List<Devolucion> obtenerDevoluciones(Long ventaId, Long usuarioId) {
+        Venta venta = ventaRepository.findById(ventaId)
+                .orElseThrow(() -> new RuntimeException("Venta no encontrada con ID: " + ventaId));
+
+        // Validar acceso al local
+        localService.validarAccesoLocal(venta.getLocal().getId(), usuarioId);
+
+        return devolucionRepository.findByVentaIdConDetalles(ventaId);
+    }
+
+    // Agrupar lo pedido por detalle y validar cantidades. Los items por ID de detalle van a esa línea;
+    // los items por producto se reparten, en orden, entre todas las líneas de ese producto según lo
+    // que cada una tiene pendiente de devolver.
+    private Map<DetalleVenta, Integer> cantidadesADevolver(List<DetalleVenta> detalles, List<ItemDevolucion> items) {
+        Map<Long, DetalleVenta> porId = new HashMap<>();
+        Map<Long, List<DetalleVenta>> porProducto = new HashMap<>();
+        detalles.forEach(d -> {
+            porId.put(d.getId(), d);
+            porProducto.computeIfAbsent(d.getProductoLocal().getProducto().getId(), k -> new ArrayList<>()).add(d);
+        });
+
+        Map<DetalleVenta, Integer> cantidades = new LinkedHashMap<>();
+        Map<Long, Integer> pedidoPorProducto = new LinkedHashMap<>();
+        for (ItemDevolucion item : items) {
+            if (item.getDetalleVentaId() == null && item.getProductoId() == null) {
+                throw new RuntimeException("Cada item debe indicar el detalle de venta o el producto");
+            }
+            if (item.getDetalleVentaId() != null ? !porId.containsKey(item.getDetalleVentaId())
+                    : !porProducto.containsKey(item.getProductoId())) {
+                throw new RuntimeException("El item no pertenece a esta venta");
+            }
+            if (item.getCantidad() == null || item.getCantidad() <= 0) {
+                throw new RuntimeException("La cantidad a devolver debe ser mayor a 0");
+            }
+            if (item.getDetalleVentaId() != null) {
+                cantidades.merge(porId.get(item.getDetalleVentaId()), item.getCantidad(), Integer::sum);
+            } else {
+                pedidoPorProducto.merge(item.getProductoId(), item.getCantidad(), Integer::sum);
+            }
+        }
+
+        cantidades.forEach((detalle, cantidad) -> {
+            if (cantidad > detalle.cantidadPendienteDeDevolver()) {
+                throw new RuntimeException("No se puede devolver más de lo vendido para el producto: " +
+                        detalle.getNombreProducto() + ". Pendiente: " + detalle.cantidadPendienteDeDevolver() +
+                        ", solicitado: " + cantidad);
+            }
+        });
+
+        // Repartir lo pedido por producto sobre lo que quedó pendiente después de los items por detalle
+        pedidoPorProducto.forEach((productoId, pedido) -> {
+            List<DetalleVenta> lineas = porProducto.get(productoId);
+            int restante = pedido;
+            for (DetalleVenta detalle : lineas) {
+                int libre = detalle.cantidadPendienteDeDevolver() - cantidades.getOrDefault(detalle, 0);
+                int asignada = Math.min(libre, restante);
+                if (asignada > 0) {
+                    cantidades.merge(detalle, asignada, Integer::sum);
+                    restante -= asignada;
+                }
+                if (restante == 0) {
+                    break;
+                }
+            }
+            if (restante > 0) {
+                throw new RuntimeException("No se puede devolver más de lo vendido para el producto: " +
+                        lineas.get(0).getNombreProducto() + ". Pendiente: " + (pedido - restante) +
+                        ", solicitado: " + pedido);
+            }
+        });
+        return cantidades;
+    }
+
+    // Lo que se reintegra: el monto de las líneas más su parte de los impuestos y el descuento de la
+    // venta, en proporción al subtotal. Si la venta queda devuelta del todo se reintegra lo que falta
+    // de su total, así una venta DEVUELTA queda en cero y el redondeo no deja restos.
+    private static BigDecimal calcularReintegro(Venta venta, BigDecimal montoLineas, boolean ventaCompleta) {
+        BigDecimal pendiente = venta.getTotal().subtract(
+                venta.getMontoDevuelto() != null ? venta.getMontoDevuelto() : BigDecimal.ZERO);
+        if (ventaCompleta) {
+            return pendiente;
+        }
+        if (venta.getSubtotal() == null || venta.getSubtotal().signum() == 0) {
+            return montoLineas;
+        }
+        BigDecimal proporcional = montoLineas.multiply(venta.getTotal())
+                .divide(venta.getSubtotal(), 2, RoundingMode.HALF_UP);
+        return proporcional.min(pendiente);
+    }
+
+    // Un solo lote de UPDATE condicionales; si alguna línea ya no alcanza se revierte todo
+    private void acumularEnDetalles(Long ventaId, List<DetalleDevolucion> lineas) {
+        List<Object[]> parametros = new ArrayList<>(lineas.size());
+        lineas.forEach(l -> parametros.add(new Object[]{l.getCantidad(), l.getMonto(),
+                l.getDetalleVentaId(), ventaId, l.getCantidad()}));
+
+        int[] filas = jdbcTemplate.batchUpdate(SQL_DEVOLVER_DETALLE, parametros);
+        for (int actualizadas : filas) {
+            if (actualizadas == 0) {
+                throw new RuntimeException("La venta fue modificada por otra devolución, reintente");
+            }
+        }
+    }
+
+    // DTOs
+    public static class DevolucionRequest {
+        private String motivo;
+        private List<ItemDevolucion> items;
+
+        // Getters y Setters
+        public String getMotivo() { return motivo; }
+        public void setMotivo(String motivo) { this.motivo = motivo; }
+
+        public List<ItemDevolucion> getItems() { return items; }
+        public void setItems(List<ItemDevolucion> items) { this.items = items; }
+    }
+
+    public static class ItemDevolucion {
+        private Long detalleVentaId;
+        private Long productoId;
+        private Integer cantidad;
+
+        // Getters y Setters
+        public Long getDetalleVentaId() { return detalleVentaId; }
+        public void setDetalleVentaId(Long detalleVentaId) { this.detalleVentaId = detalleVentaId; }
+
+        public Long getProductoId() { return productoId; }
+        public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+        public Integer getCantidad() { return cantidad; }
+        public void setCantidad(Integer cantidad) { this.cantidad = cantidad; }
+    }
+}
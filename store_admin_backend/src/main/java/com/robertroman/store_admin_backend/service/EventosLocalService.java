@@ -0,0 +1,519 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.entity.Venta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Eventos en tiempo real por local (Server-Sent Events) para que los tableros no consulten en bucle.
+// Los eventos se publican recién después del commit. Cada suscriptor tiene una cola acotada que
+// vacía un pool chico de hilos de envío: quien produce el evento solo encola y nunca espera a la
+// red, un cliente lento que llena su cola se desconecta, y una escritura que pasa el plazo
+// (eventos.timeout-escritura-ms) se interrumpe y desconecta al cliente para liberar el hilo.
+// EventSource no permite enviar headers: el navegador pide antes un ticket de un solo uso, corto y
+// atado al local, y lo pasa en la URL en lugar del JWT. Los tickets viven en memoria, así que con
+// varias instancias el ticket y el flujo tienen que ir a la misma.
+@Service
+public class EventosLocalService implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(EventosLocalService.class);
+
+    // SQL Server admite hasta 2100 parámetros por sentencia
+    private static final int MAX_IDS_POR_CONSULTA = 1000;
+
+    private static final String SQL_STOCK =
+            "SELECT pl.id, pl.local_id, pl.producto_id, p.nombre, pl.stock, pl.stock_minimo, pl.particiones_escrow " +
+            "FROM productos_locales pl JOIN productos p ON p.id = pl.producto_id WHERE pl.id IN (:ids)";
+
+    public enum TipoEvento {
+        VENTA_REGISTRADA, VENTA_CANCELADA, STOCK_ACTUALIZADO, STOCK_BAJO
+    }
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private LocalService localService;
+
+    @Autowired
+    private MotorStockService motorStock;
+
+    @Autowired
+    private StockEscrowService stockEscrow;
+
+    private final Map<Long, Set<Suscriptor>> suscriptores = new ConcurrentHashMap<>();
+    // Conexiones por local: se reserva el lugar antes de abrir, así el máximo no se pasa con
+    // suscripciones simultáneas
+    private final Map<Long, AtomicInteger> conexiones = new ConcurrentHashMap<>();
+    private final Map<String, TicketEventos> tickets = new ConcurrentHashMap<>();
+    private final SecureRandom aleatorio = new SecureRandom();
+    private final AtomicLong secuencia = new AtomicLong();
+    private final ExecutorService enviadores;
+    private final int capacidadCola;
+    private final int maxPorLocal;
+    private final long timeoutMs;
+
+    @Value("${eventos.timeout-escritura-ms:10000}")
+    private long timeoutEscrituraMs;
+
+    @Value("${eventos.ticket-ttl-ms:30000}")
+    private long ticketTtlMs;
+
+    public EventosLocalService(@Value("${eventos.hilos-envio:2}") int hilosEnvio,
+                               @Value("${eventos.capacidad-cola:256}") int capacidadCola,
+                               @Value("${eventos.max-suscriptores-por-local:50}") int maxPorLocal,
+                               @Value("${eventos.timeout-ms:1800000}") long timeoutMs) {
+        AtomicLong hilos = new AtomicLong();
+        this.enviadores = Executors.newFixedThreadPool(hilosEnvio, r -> {
+            Thread hilo = new Thread(r, "eventos-local-" + hilos.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        this.capacidadCola = capacidadCola;
+        this.maxPorLocal = maxPorLocal;
+        this.timeoutMs = timeoutMs;
+    }
+
+    // Ticket para abrir el flujo de eventos de un local (un solo uso, vence en eventos.ticket-ttl-ms)
+    public TicketEventos emitirTicket(Long localId, Long usuarioId, String username) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        byte[] bytes = new byte[32];
+        aleatorio.nextBytes(bytes);
+        String valor = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        TicketEventos ticket = new TicketEventos(valor, localId, usuarioId, username,
+                System.currentTimeMillis() + ticketTtlMs);
+        tickets.put(valor, ticket);
+        return ticket;
+    }
+
+    // Consumir un ticket para el local pedido; null si no existe, venció o es de otro local
+    public TicketEventos canjearTicket(String valor, Long localId) {
+        TicketEventos ticket = tickets.remove(valor);
+        if (ticket == null || ticket.vencido() || !ticket.getLocalId().equals(localId)) {
+            return null;
+        }
+        return ticket;
+    }
+
+    // Abrir un flujo de eventos para un local
+    public SseEmitter suscribir(Long localId, Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        AtomicInteger abiertas = conexiones.computeIfAbsent(localId, id -> new AtomicInteger());
+        if (abiertas.incrementAndGet() > maxPorLocal) {
+            abiertas.decrementAndGet();
+            throw new RuntimeException("Se alcanzó el máximo de conexiones de eventos para este local");
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Suscriptor suscriptor = new Suscriptor(localId, emitter);
+        suscriptores.computeIfAbsent(localId, id -> ConcurrentHashMap.newKeySet()).add(suscriptor);
+        emitter.onCompletion(() -> quitar(suscriptor));
+        emitter.onTimeout(() -> quitar(suscriptor));
+        emitter.onError(e -> quitar(suscriptor));
+
+        suscriptor.ofrecer(SseEmitter.event().comment("conectado").build());
+        return emitter;
+    }
+
+    // Venta confirmada (se envía después del commit)
+    public void ventaRegistrada(Venta venta) {
+        publicarVenta(TipoEvento.VENTA_REGISTRADA, venta);
+    }
+
+    // Venta cancelada (se envía después del commit)
+    public void ventaCancelada(Venta venta) {
+        publicarVenta(TipoEvento.VENTA_CANCELADA, venta);
+    }
+
+    private void publicarVenta(TipoEvento tipo, Venta venta) {
+        Long localId = venta.getLocal().getId();
+        if (!tieneSuscriptores(localId)) {
+            return;
+        }
+        EventoVenta datos = new EventoVenta(venta.getId(), venta.getNumeroFactura(), venta.getTotal(),
+                venta.getMetodoPago() != null ? venta.getMetodoPago().name() : null, venta.getEstado().name());
+        despuesDelCommit(() -> publicar(localId, tipo, datos));
+    }
+
+    // Movimientos de stock ya confirmados (productoLocalId, localId, productoId, delta, ...).
+    // El stock resultante se consulta en un hilo de envío, y solo si el local tiene suscriptores.
+    public void movimientosConfirmados(List<Object[]> filas) {
+        Map<Long, Integer> deltas = new LinkedHashMap<>();
+        for (Object[] fila : filas) {
+            if (tieneSuscriptores((Long) fila[1])) {
+                deltas.merge((Long) fila[0], (Integer) fila[3], Integer::sum);
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try {
+            enviadores.execute(() -> publicarStock(deltas));
+        } catch (RejectedExecutionException e) {
+            log.debug("Eventos de stock descartados: {}", e.getMessage());
+        }
+    }
+
+    private void publicarStock(Map<Long, Integer> deltas) {
+        List<Object[]> filas = new ArrayList<>(deltas.size());
+        try {
+            List<Long> ids = new ArrayList<>(deltas.keySet());
+            for (int i = 0; i < ids.size(); i += MAX_IDS_POR_CONSULTA) {
+                List<Long> bloque = ids.subList(i, Math.min(i + MAX_IDS_POR_CONSULTA, ids.size()));
+                jdbcTemplate.query(SQL_STOCK, new MapSqlParameterSource("ids", bloque), rs -> {
+                    filas.add(new Object[]{rs.getLong("id"), rs.getLong("local_id"), rs.getLong("producto_id"),
+                            rs.getString("nombre"), rs.getInt("stock"), rs.getInt("stock_minimo"),
+                            rs.getInt("particiones_escrow")});
+                });
+            }
+        } catch (RuntimeException e) {
+            log.warn("No se pudo obtener el stock para los eventos: {}", e.getMessage());
+            return;
+        }
+
+        Map<Long, List<ItemStock>> actualizados = new LinkedHashMap<>();
+        Map<Long, List<ItemStock>> bajos = new LinkedHashMap<>();
+        for (Object[] fila : filas) {
+            Long productoLocalId = (Long) fila[0];
+            Long localId = (Long) fila[1];
+            int stock = stockVigente(productoLocalId, (Integer) fila[4], (Integer) fila[6]);
+            int stockMinimo = (Integer) fila[5];
+            int delta = deltas.get(productoLocalId);
+            ItemStock item = new ItemStock((Long) fila[2], (String) fila[3], stock, stockMinimo, delta);
+
+            actualizados.computeIfAbsent(localId, id -> new ArrayList<>()).add(item);
+            // Cruzó el mínimo con este cambio
+            if (stock <= stockMinimo && stock - delta > stockMinimo) {
+                bajos.computeIfAbsent(localId, id -> new ArrayList<>()).add(item);
+            }
+        }
+
+        actualizados.forEach((localId, items) -> publicar(localId, TipoEvento.STOCK_ACTUALIZADO, items));
+        bajos.forEach((localId, items) -> publicar(localId, TipoEvento.STOCK_BAJO, items));
+    }
+
+    // Mismo criterio que MovimientoStockService.stockActual. Con motor la fila ya tiene lo confirmado:
+    // el motor escribe dentro de cada transacción.
+    private int stockVigente(Long productoLocalId, int stockFila, int particionesEscrow) {
+        if (particionesEscrow > 0 && !motorStock.estaHabilitado()) {
+            return stockEscrow.stockTotal(productoLocalId);
+        }
+        return stockFila;
+    }
+
+    // Encolar un evento para todos los suscriptores del local (nunca bloquea)
+    public void publicar(Long localId, TipoEvento tipo, Object datos) {
+        Set<Suscriptor> delLocal = suscriptores.get(localId);
+        if (delLocal == null || delLocal.isEmpty()) {
+            return;
+        }
+        EventoLocal evento = new EventoLocal(localId, tipo, datos);
+        // Se arma una sola vez y se comparte entre los suscriptores
+        Set<ResponseBodyEmitter.DataWithMediaType> sse = SseEmitter.event()
+                .id(String.valueOf(secuencia.incrementAndGet()))
+                .name(tipo.name())
+                .data(evento, MediaType.APPLICATION_JSON)
+                .build();
+        delLocal.forEach(suscriptor -> suscriptor.ofrecer(sse));
+    }
+
+    // Mantener viva la conexión a través de proxies y detectar clientes que se fueron
+    @Scheduled(fixedDelayString = "${eventos.heartbeat-ms:20000}")
+    public void latido() {
+        Set<ResponseBodyEmitter.DataWithMediaType> latido = SseEmitter.event().comment("latido").build();
+        suscriptores.values().forEach(delLocal -> delLocal.forEach(suscriptor -> suscriptor.ofrecer(latido)));
+        tickets.values().removeIf(TicketEventos::vencido);
+    }
+
+    // Cortar las escrituras que pasaron el plazo: el hilo de envío vuelve a atender al resto
+    @Scheduled(fixedDelayString = "${eventos.control-escritura-ms:1000}")
+    public void vigilarEscrituras() {
+        long limite = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(timeoutEscrituraMs);
+        suscriptores.values().forEach(delLocal -> delLocal.forEach(suscriptor -> suscriptor.vencerSiSeDemora(limite)));
+    }
+
+    private boolean tieneSuscriptores(Long localId) {
+        Set<Suscriptor> delLocal = suscriptores.get(localId);
+        return delLocal != null && !delLocal.isEmpty();
+    }
+
+    private void despuesDelCommit(Runnable accion) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            accion.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                accion.run();
+            }
+        });
+    }
+
+    // Puede llamarse varias veces por suscriptor (cierre, error, timeout): descuenta una sola
+    private void quitar(Suscriptor suscriptor) {
+        Set<Suscriptor> delLocal = suscriptores.get(suscriptor.localId);
+        if (delLocal != null && delLocal.remove(suscriptor)) {
+            conexiones.get(suscriptor.localId).decrementAndGet();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        enviadores.shutdownNow();
+        suscriptores.values().forEach(delLocal -> delLocal.forEach(suscriptor -> suscriptor.emitter.complete()));
+        suscriptores.clear();
+        conexiones.clear();
+    }
+
+    // Conexión abierta con su cola acotada; a lo sumo un hilo la vacía a la vez
+    private class Suscriptor {
+        private final Long localId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Set<ResponseBodyEmitter.DataWithMediaType>> cola = new ArrayBlockingQueue<>(capacidadCola);
+        private final AtomicBoolean programado = new AtomicBoolean();
+        private volatile boolean cerrado;
+        // Hilo escribiendo ahora y desde cuándo (nanoTime); se leen y cambian con el monitor tomado
+        private Thread escribiendo;
+        private long escribiendoDesde;
+
+        private Suscriptor(Long localId, SseEmitter emitter) {
+            this.localId = localId;
+            this.emitter = emitter;
+        }
+
+        private void ofrecer(Set<ResponseBodyEmitter.DataWithMediaType> evento) {
+            if (cerrado) {
+                return;
+            }
+            if (!cola.offer(evento)) {
+                log.info("Cliente de eventos del local {} desconectado por no consumir a tiempo", localId);
+                cerrar();
+                return;
+            }
+            programar();
+        }
+
+        private void programar() {
+            if (programado.compareAndSet(false, true)) {
+                try {
+                    enviadores.execute(this::vaciar);
+                } catch (RejectedExecutionException e) {
+                    programado.set(false);
+                }
+            }
+        }
+
+        private void vaciar() {
+            try {
+                Set<ResponseBodyEmitter.DataWithMediaType> evento;
+                while (!cerrado && (evento = cola.poll()) != null) {
+                    synchronized (this) {
+                        escribiendo = Thread.currentThread();
+                        escribiendoDesde = System.nanoTime();
+                    }
+                    try {
+                        emitter.send(evento);
+                    } finally {
+                        // Una interrupción de vencerSiSeDemora llega antes de esto o no llega
+                        synchronized (this) {
+                            escribiendo = null;
+                            Thread.interrupted();
+                        }
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Cliente de eventos del local {} desconectado: {}", localId, e.getMessage());
+                cerrar();
+            } finally {
+                programado.set(false);
+            }
+            // Vencido por vigilarEscrituras con el envío terminado igual: completar desde acá
+            if (cerrado) {
+                cerrar();
+                return;
+            }
+            // Un evento encolado mientras se liberaba la marca no debe quedar esperando
+            if (!cola.isEmpty()) {
+                programar();
+            }
+        }
+
+        // Escritura trabada más allá del límite: se descarta al cliente y se interrumpe el hilo;
+        // el emitter se completa desde ese hilo al fallar el envío (no se puede desde acá mientras
+        // el envío lo tiene tomado)
+        private synchronized void vencerSiSeDemora(long limite) {
+            if (escribiendo != null && escribiendoDesde - limite < 0) {
+                log.info("Cliente de eventos del local {} desconectado por no recibir a tiempo", localId);
+                cerrado = true;
+                cola.clear();
+                quitar(this);
+                escribiendo.interrupt();
+            }
+        }
+
+        private void cerrar() {
+            cerrado = true;
+            cola.clear();
+            quitar(this);
+            try {
+                emitter.complete();
+            } catch (RuntimeException e) {
+                log.debug("Error al cerrar el flujo de eventos: {}", e.getMessage());
+            }
+        }
+    }
+
+    // DTOs
+    public static class TicketEventos {
+        private String ticket;
+        private Long localId;
+        private Long usuarioId;
+        private String username;
+        private long venceEn;
+
+        public TicketEventos(String ticket, Long localId, Long usuarioId, String username, long venceEn) {
+            this.ticket = ticket;
+            this.localId = localId;
+            this.usuarioId = usuarioId;
+            this.username = username;
+            this.venceEn = venceEn;
+        }
+
+        private boolean vencido() {
+            return System.currentTimeMillis() > venceEn;
+        }
+
+        // Getters y Setters
+        public String getTicket() { return ticket; }
+        public void setTicket(String ticket) { this.ticket = ticket; }
+
+        public Long getLocalId() { return localId; }
+        public void setLocalId(Long localId) { this.localId = localId; }
+
+        public Long getUsuarioId() { return usuarioId; }
+        public void setUsuarioId(Long usuarioId) { this.usuarioId = usuarioId; }
+
+        public String getUsername() { return username; }
+        public void setUsername(String username) { this.username = username; }
+
+        public long getVenceEn() { return venceEn; }
+        public void setVenceEn(long venceEn) { this.venceEn = venceEn; }
+    }
+
+    public static class EventoLocal {
+        private Long localId;
+        private TipoEvento tipo;
+        private LocalDateTime fecha;
+        private Object datos;
+
+        public EventoLocal(Long localId, TipoEvento tipo, Object datos) {
+            this.localId = localId;
+            this.tipo = tipo;
+            this.fecha = LocalDateTime.now();
+            this.datos = datos;
+        }
+
+        // Getters y Setters
+        public Long getLocalId() { return localId; }
+        public void setLocalId(Long localId) { this.localId = localId; }
+
+        public TipoEvento getTipo() { return tipo; }
+        public void setTipo(TipoEvento tipo) { this.tipo = tipo; }
+
+        public LocalDateTime getFecha() { return fecha; }
+        public void setFecha(LocalDateTime fecha) { this.fecha = fecha; }
+
+        public Object getDatos() { return datos; }
+        public void setDatos(Object datos) { this.datos = datos; }
+    }
+
+    public static class EventoVenta {
+        private Long ventaId;
+        private String numeroFactura;
+        private BigDecimal total;
+        private String metodoPago;
+        private String estado;
+
+        public EventoVenta(Long ventaId, String numeroFactura, BigDecimal total, String metodoPago, String estado) {
+            this.ventaId = ventaId;
+            this.numeroFactura = numeroFactura;
+            this.total = total;
+            this.metodoPago = metodoPago;
+            this.estado = estado;
+        }
+
+        // Getters y Setters
+        public Long getVentaId() { return ventaId; }
+        public void setVentaId(Long ventaId) { this.ventaId = ventaId; }
+
+        public String getNumeroFactura() { return numeroFactura; }
+        public void setNumeroFactura(String numeroFactura) { this.numeroFactura = numeroFactura; }
+
+        public BigDecimal getTotal() { return total; }
+        public void setTotal(BigDecimal total) { this.total = total; }
+
+        public String getMetodoPago() { return metodoPago; }
+        public void setMetodoPago(String metodoPago) { this.metodoPago = metodoPago; }
+
+        public String getEstado() { return estado; }
+        public void setEstado(String estado) { this.estado = estado; }
+    }
+
+    public static class ItemStock {
+        private Long productoId;
+        private String nombre;
+        private Integer stock;
+        private Integer stockMinimo;
+        private Integer delta;
+
+        public ItemStock(Long productoId, String nombre, Integer stock, Integer stockMinimo, Integer delta) {
+            this.productoId = productoId;
+            this.nombre = nombre;
+            this.stock = stock;
+            this.stockMinimo = stockMinimo;
+            this.delta = delta;
+        }
+
+        // Getters y Setters
+        public Long getProductoId() { return productoId; }
+        public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+        public String getNombre() { return nombre; }
+        public void setNombre(String nombre) { this.nombre = nombre; }
+
+        public Integer getStock() { return stock; }
+        public void setStock(Integer stock) { this.stock = stock; }
+
+        public Integer getStockMinimo() { return stockMinimo; }
+        public void setStockMinimo(Integer stockMinimo) { this.stockMinimo = stockMinimo; }
+
+        public Integer getDelta() { return delta; }
+        public void setDelta(Integer delta) { this.delta = delta; }
+    }
+}
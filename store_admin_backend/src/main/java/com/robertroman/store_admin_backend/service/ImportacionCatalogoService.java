@@ -0,0 +1,502 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+// Importación masiva del catálogo de productos (listas de proveedores).
+// El archivo (CSV con encabezado o JSON por línea) se lee a medida que llega; cada bloque de líneas
+// se parsea en paralelo mientras se escribe el bloque anterior. Los SKU se deduplican contra un
+// conjunto en memoria cargado de una vez desde productos, y cada bloque se inserta (o actualiza por
+// SKU) con lotes de INSERT/UPDATE en su propia transacción. El avance se consulta por ID.
+@Service
+public class ImportacionCatalogoService implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ImportacionCatalogoService.class);
+
+    private static final String SQL_SKUS = "SELECT sku FROM productos WHERE sku IS NOT NULL";
+
+    private static final String SQL_INSERTAR =
+            "INSERT INTO productos (nombre, descripcion, precio_base, categoria, sku, activo, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SQL_ACTUALIZAR =
+            "UPDATE productos SET nombre = ?, descripcion = ?, precio_base = ?, categoria = ?, activo = ?, updated_at = ? " +
+            "WHERE sku = ?";
+
+    private static final int IMPORTACIONES_RECORDADAS = 20;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CacheCatalogoService cacheCatalogoService;
+
+    private final ObjectReader lectorJson;
+    private final TransactionTemplate transaccionBloque;
+    private final ForkJoinPool parseo;
+    private final int tamanoBloque;
+    private final int maxRechazos;
+
+    // Importaciones en curso y recientes, por ID
+    private final Map<String, Progreso> importaciones = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Progreso> eldest) {
+            return size() > IMPORTACIONES_RECORDADAS && !"EN_CURSO".equals(eldest.getValue().getEstado());
+        }
+    });
+
+    // Un solo proceso a la vez por SKU: el conjunto en memoria se comparte entre importaciones concurrentes
+    private final Set<String> skusEnProceso = ConcurrentHashMap.newKeySet();
+
+    public ImportacionCatalogoService(PlatformTransactionManager transactionManager,
+                                      ObjectMapper objectMapper,
+                                      @Value("${importacion.catalogo.tamano-bloque:2000}") int tamanoBloque,
+                                      @Value("${importacion.catalogo.hilos-parseo:4}") int hilosParseo,
+                                      @Value("${importacion.catalogo.max-rechazos:1000}") int maxRechazos) {
+        this.lectorJson = objectMapper.readerFor(FilaProducto.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.transaccionBloque = new TransactionTemplate(transactionManager);
+        this.transaccionBloque.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.parseo = new ForkJoinPool(hilosParseo);
+        this.tamanoBloque = tamanoBloque;
+        this.maxRechazos = maxRechazos;
+    }
+
+    // Importar un archivo; con actualizarExistentes los SKU ya cargados se actualizan en vez de rechazarse
+    public Progreso importar(InputStream entrada, Formato formato, boolean actualizarExistentes, String id) {
+        String importacionId = id != null && !id.isBlank() ? id : UUID.randomUUID().toString();
+        if (importaciones.containsKey(importacionId)) {
+            throw new RuntimeException("Ya existe una importación con ID: " + importacionId);
+        }
+        Progreso progreso = new Progreso(importacionId, formato);
+        importaciones.put(importacionId, progreso);
+
+        Set<String> existentes = new HashSet<>(jdbcTemplate.queryForList(SQL_SKUS, String.class));
+        Set<String> reservados = new HashSet<>();
+        Importacion importacion = new Importacion(progreso, existentes, reservados, actualizarExistentes);
+
+        try (BufferedReader lector = new BufferedReader(
+                Channels.newReader(Channels.newChannel(entrada), StandardCharsets.UTF_8), 1 << 16)) {
+            Columnas columnas = formato == Formato.CSV ? Columnas.leer(lector.readLine()) : null;
+            int numero = formato == Formato.CSV ? 1 : 0;
+
+            CompletableFuture<List<FilaProducto>> enCurso = null;
+            List<String> lineas = new ArrayList<>(tamanoBloque);
+            int primeraLinea = numero + 1;
+            String texto;
+            while ((texto = lector.readLine()) != null) {
+                numero++;
+                if (texto.isBlank()) {
+                    continue;
+                }
+                if (lineas.isEmpty()) {
+                    primeraLinea = numero;
+                }
+                lineas.add(texto);
+                if (lineas.size() >= tamanoBloque) {
+                    CompletableFuture<List<FilaProducto>> siguiente = parsear(lineas, primeraLinea, formato, columnas);
+                    if (enCurso != null) {
+                        importacion.escribir(enCurso.join());
+                    }
+                    enCurso = siguiente;
+                    lineas = new ArrayList<>(tamanoBloque);
+                }
+            }
+            CompletableFuture<List<FilaProducto>> ultimo = lineas.isEmpty() ? null
+                    : parsear(lineas, primeraLinea, formato, columnas);
+            if (enCurso != null) {
+                importacion.escribir(enCurso.join());
+            }
+            if (ultimo != null) {
+                importacion.escribir(ultimo.join());
+            }
+            progreso.estado = "COMPLETADA";
+        } catch (IOException | RuntimeException e) {
+            progreso.estado = "FALLIDA";
+            progreso.mensaje = e.getMessage();
+            log.warn("Importación de catálogo {} falló: {}", importacionId, e.getMessage());
+        } finally {
+            skusEnProceso.removeAll(reservados);
+            progreso.fin = LocalDateTime.now();
+            // Los INSERT/UPDATE directos no pasan por el cache de segundo nivel
+            if (progreso.insertados.get() > 0 || progreso.actualizados.get() > 0) {
+                cacheCatalogoService.invalidarProductos();
+            }
+        }
+        return progreso;
+    }
+
+    public Progreso obtenerProgreso(String id) {
+        Progreso progreso = importaciones.get(id);
+        if (progreso == null) {
+            throw new RuntimeException("Importación no encontrada con ID: " + id);
+        }
+        return progreso;
+    }
+
+    public List<Progreso> obtenerImportaciones() {
+        synchronized (importaciones) {
+            return new ArrayList<>(importaciones.values());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        parseo.shutdown();
+    }
+
+    // Parseo de un bloque repartido entre los hilos de parseo (el orden se conserva)
+    private CompletableFuture<List<FilaProducto>> parsear(List<String> lineas, int primeraLinea,
+                                                          Formato formato, Columnas columnas) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<FilaProducto> filas = new ArrayList<>(lineas.size());
+            for (int i = 0; i < lineas.size(); i++) {
+                filas.add(null);
+            }
+            IntStream.range(0, lineas.size()).parallel().forEach(i ->
+                    filas.set(i, parsearLinea(lineas.get(i), primeraLinea + i, formato, columnas)));
+            return filas;
+        }, parseo);
+    }
+
+    private FilaProducto parsearLinea(String texto, int numero, Formato formato, Columnas columnas) {
+        FilaProducto fila;
+        try {
+            fila = formato == Formato.CSV ? columnas.fila(texto) : lectorJson.readValue(texto);
+        } catch (IOException | RuntimeException e) {
+            fila = new FilaProducto();
+            fila.error = "Formato inválido";
+        }
+        fila.linea = numero;
+        if (fila.error == null) {
+            fila.error = validar(fila);
+        }
+        return fila;
+    }
+
+    private static String validar(FilaProducto fila) {
+        if (fila.getNombre() == null || fila.getNombre().isBlank()) {
+            return "El nombre del producto es obligatorio";
+        }
+        fila.setNombre(fila.getNombre().trim());
+        if (fila.getNombre().length() < 2 || fila.getNombre().length() > 100) {
+            return "El nombre debe tener entre 2 y 100 caracteres";
+        }
+        if (fila.getPrecioBase() == null) {
+            return "El precio es obligatorio";
+        }
+        if (fila.getPrecioBase().signum() < 0) {
+            return "El precio no puede ser negativo";
+        }
+        if (fila.getDescripcion() != null && fila.getDescripcion().length() > 500) {
+            return "La descripción no puede exceder 500 caracteres";
+        }
+        if (fila.getCategoria() != null && fila.getCategoria().length() > 50) {
+            return "La categoría no puede exceder 50 caracteres";
+        }
+        if (fila.getSku() != null) {
+            fila.setSku(fila.getSku().trim());
+            if (fila.getSku().isEmpty()) {
+                fila.setSku(null);
+            } else if (fila.getSku().length() > 20) {
+                return "El SKU no puede exceder 20 caracteres";
+            }
+        }
+        return null;
+    }
+
+    // Estado de una importación: deduplica y escribe bloque por bloque
+    private class Importacion {
+        private final Progreso progreso;
+        private final Set<String> existentes;
+        private final Set<String> reservados;
+        private final boolean actualizarExistentes;
+
+        private Importacion(Progreso progreso, Set<String> existentes, Set<String> reservados,
+                            boolean actualizarExistentes) {
+            this.progreso = progreso;
+            this.existentes = existentes;
+            this.reservados = reservados;
+            this.actualizarExistentes = actualizarExistentes;
+        }
+
+        private void escribir(List<FilaProducto> filas) {
+            List<FilaProducto> nuevas = new ArrayList<>();
+            List<FilaProducto> actualizadas = new ArrayList<>();
+            List<String> skusBloque = new ArrayList<>();
+
+            for (FilaProducto fila : filas) {
+                progreso.leidas.incrementAndGet();
+                if (fila.error != null) {
+                    progreso.rechazar(fila.linea, fila.getSku(), fila.error, maxRechazos);
+                    continue;
+                }
+                String sku = fila.getSku();
+                if (sku == null) {
+                    nuevas.add(fila);
+                    continue;
+                }
+                if (reservados.contains(sku)) {
+                    progreso.rechazar(fila.linea, sku, "SKU repetido en el archivo", maxRechazos);
+                } else if (!skusEnProceso.add(sku)) {
+                    progreso.rechazar(fila.linea, sku, "SKU en proceso por otra importación", maxRechazos);
+                } else {
+                    reservados.add(sku);
+                    skusBloque.add(sku);
+                    if (!existentes.contains(sku)) {
+                        nuevas.add(fila);
+                    } else if (actualizarExistentes) {
+                        actualizadas.add(fila);
+                    } else {
+                        progreso.rechazar(fila.linea, sku, "Ya existe un producto con el SKU: " + sku, maxRechazos);
+                    }
+                }
+            }
+
+            if (nuevas.isEmpty() && actualizadas.isEmpty()) {
+                return;
+            }
+            try {
+                transaccionBloque.executeWithoutResult(status -> {
+                    Timestamp ahora = Timestamp.valueOf(LocalDateTime.now());
+                    if (!nuevas.isEmpty()) {
+                        List<Object[]> parametros = new ArrayList<>(nuevas.size());
+                        nuevas.forEach(f -> parametros.add(new Object[]{f.getNombre(), f.getDescripcion(),
+                                f.getPrecioBase(), f.getCategoria(), f.getSku(), activo(f), ahora, ahora}));
+                        jdbcTemplate.batchUpdate(SQL_INSERTAR, parametros);
+                    }
+                    if (!actualizadas.isEmpty()) {
+                        List<Object[]> parametros = new ArrayList<>(actualizadas.size());
+                        actualizadas.forEach(f -> parametros.add(new Object[]{f.getNombre(), f.getDescripcion(),
+                                f.getPrecioBase(), f.getCategoria(), activo(f), ahora, f.getSku()}));
+                        jdbcTemplate.batchUpdate(SQL_ACTUALIZAR, parametros);
+                    }
+                });
+                existentes.addAll(skusBloque);
+                progreso.insertados.addAndGet(nuevas.size());
+                progreso.actualizados.addAndGet(actualizadas.size());
+            } catch (RuntimeException e) {
+                log.warn("Bloque de importación {} falló: {}", progreso.getId(), e.getMessage());
+                String mensaje = "Error al escribir el bloque: " + e.getMessage();
+                nuevas.forEach(f -> progreso.rechazar(f.linea, f.getSku(), mensaje, maxRechazos));
+                actualizadas.forEach(f -> progreso.rechazar(f.linea, f.getSku(), mensaje, maxRechazos));
+            }
+        }
+
+        private boolean activo(FilaProducto fila) {
+            return fila.getActivo() == null || fila.getActivo();
+        }
+    }
+
+    // Posición de cada columna según el encabezado del CSV
+    private static class Columnas {
+        private final Map<String, Integer> posiciones = new HashMap<>();
+        private char separador;
+
+        private static Columnas leer(String encabezado) {
+            if (encabezado == null) {
+                throw new RuntimeException("El archivo está vacío");
+            }
+            if (encabezado.startsWith("\uFEFF")) {
+                encabezado = encabezado.substring(1);
+            }
+            Columnas columnas = new Columnas();
+            columnas.separador = encabezado.indexOf(';') >= 0 ? ';' : ',';
+            List<String> nombres = separar(encabezado, columnas.separador);
+            for (int i = 0; i < nombres.size(); i++) {
+                columnas.posiciones.put(nombres.get(i).trim().toLowerCase(Locale.ROOT), i);
+            }
+            if (!columnas.posiciones.containsKey("nombre") || !columnas.posiciones.containsKey("preciobase")) {
+                throw new RuntimeException("El encabezado debe incluir las columnas nombre y precioBase");
+            }
+            return columnas;
+        }
+
+        private FilaProducto fila(String texto) {
+            List<String> campos = separar(texto, separador);
+            FilaProducto fila = new FilaProducto();
+            fila.setSku(campo(campos, "sku"));
+            fila.setNombre(campo(campos, "nombre"));
+            fila.setDescripcion(campo(campos, "descripcion"));
+            fila.setCategoria(campo(campos, "categoria"));
+            String precio = campo(campos, "preciobase");
+            fila.setPrecioBase(precio != null ? new BigDecimal(precio.trim()) : null);
+            String activo = campo(campos, "activo");
+            fila.setActivo(activo != null ? Boolean.valueOf(activo.trim()) : null);
+            return fila;
+        }
+
+        private String campo(List<String> campos, String columna) {
+            Integer posicion = posiciones.get(columna);
+            if (posicion == null || posicion >= campos.size() || campos.get(posicion).isEmpty()) {
+                return null;
+            }
+            return campos.get(posicion);
+        }
+
+        // Campos separados, admitiendo comillas dobles (y "" como comilla escapada)
+        private static List<String> separar(String texto, char separador) {
+            List<String> campos = new ArrayList<>();
+            StringBuilder actual = new StringBuilder();
+            boolean entreComillas = false;
+            for (int i = 0; i < texto.length(); i++) {
+                char c = texto.charAt(i);
+                if (entreComillas) {
+                    if (c == '"' && i + 1 < texto.length() && texto.charAt(i + 1) == '"') {
+                        actual.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        entreComillas = false;
+                    } else {
+                        actual.append(c);
+                    }
+                } else if (c == '"') {
+                    entreComillas = true;
+                } else if (c == separador) {
+                    campos.add(actual.toString());
+                    actual.setLength(0);
+                } else {
+                    actual.append(c);
+                }
+            }
+            campos.add(actual.toString());
+            return campos;
+        }
+    }
+
+    public enum Formato {
+        CSV, JSON
+    }
+
+    // DTOs
+    public static class FilaProducto {
+        private String sku;
+        private String nombre;
+        private String descripcion;
+        private BigDecimal precioBase;
+        private String categoria;
+        private Boolean activo;
+
+        private int linea;
+        private String error;
+
+        // Getters y Setters
+        public String getSku() { return sku; }
+        public void setSku(String sku) { this.sku = sku; }
+
+        public String getNombre() { return nombre; }
+        public void setNombre(String nombre) { this.nombre = nombre; }
+
+        public String getDescripcion() { return descripcion; }
+        public void setDescripcion(String descripcion) { this.descripcion = descripcion; }
+
+        public BigDecimal getPrecioBase() { return precioBase; }
+        public void setPrecioBase(BigDecimal precioBase) { this.precioBase = precioBase; }
+
+        public String getCategoria() { return categoria; }
+        public void setCategoria(String categoria) { this.categoria = categoria; }
+
+        public Boolean getActivo() { return activo; }
+        public void setActivo(Boolean activo) { this.activo = activo; }
+    }
+
+    public static class Rechazo {
+        private int linea;
+        private String sku;
+        private String mensaje;
+
+        public Rechazo(int linea, String sku, String mensaje) {
+            this.linea = linea;
+            this.sku = sku;
+            this.mensaje = mensaje;
+        }
+
+        // Getters y Setters
+        public int getLinea() { return linea; }
+        public void setLinea(int linea) { this.linea = linea; }
+
+        public String getSku() { return sku; }
+        public void setSku(String sku) { this.sku = sku; }
+
+        public String getMensaje() { return mensaje; }
+        public void setMensaje(String mensaje) { this.mensaje = mensaje; }
+    }
+
+    // Avance de una importación (se consulta mientras corre)
+    public static class Progreso {
+        private final String id;
+        private final Formato formato;
+        private final LocalDateTime inicio = LocalDateTime.now();
+        private volatile LocalDateTime fin;
+        private volatile String estado = "EN_CURSO";
+        private volatile String mensaje;
+        private final AtomicInteger leidas = new AtomicInteger();
+        private final AtomicInteger insertados = new AtomicInteger();
+        private final AtomicInteger actualizados = new AtomicInteger();
+        private final AtomicInteger rechazados = new AtomicInteger();
+        private final List<Rechazo> rechazos = Collections.synchronizedList(new ArrayList<>());
+
+        public Progreso(String id, Formato formato) {
+            this.id = id;
+            this.formato = formato;
+        }
+
+        // Se cuentan todos los rechazos, pero solo se guarda el detalle de los primeros
+        private void rechazar(int linea, String sku, String mensaje, int maximo) {
+            if (rechazados.incrementAndGet() <= maximo) {
+                rechazos.add(new Rechazo(linea, sku, mensaje));
+            }
+        }
+
+        // Getters
+        public String getId() { return id; }
+        public Formato getFormato() { return formato; }
+        public LocalDateTime getInicio() { return inicio; }
+        public LocalDateTime getFin() { return fin; }
+        public String getEstado() { return estado; }
+        public String getMensaje() { return mensaje; }
+        public int getLeidas() { return leidas.get(); }
+        public int getInsertados() { return insertados.get(); }
+        public int getActualizados() { return actualizados.get(); }
+        public int getRechazados() { return rechazados.get(); }
+
+        public List<Rechazo> getRechazos() {
+            synchronized (rechazos) {
+                return new ArrayList<>(rechazos);
+            }
+        }
+
+        public double getFilasPorSegundo() {
+            LocalDateTime hasta = fin != null ? fin : LocalDateTime.now();
+            long ms = Math.max(1, Duration.between(inicio, hasta).toMillis());
+            return leidas.get() * 1000.0 / ms;
+        }
+    }
+}
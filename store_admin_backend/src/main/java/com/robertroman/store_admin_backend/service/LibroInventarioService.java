@@ -0,0 +1,280 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.entity.MovimientoInventario;
+import com.robertroman.store_admin_backend.entity.ProductoLocal;
+import com.robertroman.store_admin_backend.repository.MovimientoInventarioRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Libro de movimientos de inventario (solo se agrega).
+// Cada cambio de stock deja un movimiento con su delta, motivo y referencia. Los movimientos de una
+// transacción se insertan en un solo lote antes del commit, con la misma fecha. Periódicamente se
+// compactan en snapshots por ProductoLocal, así el stock a una fecha se obtiene con el último
+// snapshot anterior más una cola corta de movimientos, sin recorrer toda la historia.
+@Service
+public class LibroInventarioService {
+
+    private static final Logger log = LoggerFactory.getLogger(LibroInventarioService.class);
+
+    private static final String SQL_INSERTAR =
+            "INSERT INTO movimientos_inventario (producto_local_id, local_id, producto_id, delta, motivo, referencia, fecha) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    // Productos con snapshot: el último snapshot más los movimientos hasta el corte
+    private static final String SQL_COMPACTAR_CON_SNAPSHOT =
+            "INSERT INTO snapshots_inventario (producto_local_id, local_id, fecha, stock) " +
+            "SELECT s.producto_local_id, s.local_id, ?, s.stock + t.suma " +
+            "FROM (SELECT producto_local_id, local_id, fecha, stock, " +
+            "      ROW_NUMBER() OVER (PARTITION BY producto_local_id ORDER BY fecha DESC) AS rn " +
+            "      FROM snapshots_inventario) s " +
+            "CROSS APPLY (SELECT SUM(m.delta) AS suma FROM movimientos_inventario m " +
+            "             WHERE m.producto_local_id = s.producto_local_id AND m.fecha > s.fecha AND m.fecha <= ?) t " +
+            "WHERE s.rn = 1 AND t.suma IS NOT NULL";
+
+    // Stock vigente: en modo escrow vive en las particiones (la fila se sincroniza con demora).
+    // Con el motor de stock la fila está al día: el motor escribe dentro de cada transacción.
+    private static final String STOCK_VIGENTE =
+            "CASE WHEN pl.particiones_escrow > 0 THEN " +
+            "(SELECT COALESCE(SUM(sp.cantidad), 0) FROM stock_particiones sp WHERE sp.producto_local_id = pl.id) " +
+            "ELSE pl.stock END";
+
+    // Primer snapshot: se reconstruye hacia atrás desde el stock vigente
+    private static final String SQL_COMPACTAR_SIN_SNAPSHOT =
+            "INSERT INTO snapshots_inventario (producto_local_id, local_id, fecha, stock) " +
+            "SELECT pl.id, pl.local_id, ?, " + STOCK_VIGENTE + " - COALESCE((SELECT SUM(m.delta) FROM movimientos_inventario m " +
+            "                                                  WHERE m.producto_local_id = pl.id AND m.fecha > ?), 0) " +
+            "FROM productos_locales pl " +
+            "WHERE EXISTS (SELECT 1 FROM movimientos_inventario m WHERE m.producto_local_id = pl.id AND m.fecha <= ?) " +
+            "AND NOT EXISTS (SELECT 1 FROM snapshots_inventario s WHERE s.producto_local_id = pl.id)";
+
+    // Movimientos vencidos ya cubiertos por un snapshot posterior
+    private static final String SQL_PURGAR_MOVIMIENTOS =
+            "DELETE TOP (?) FROM movimientos_inventario " +
+            "WHERE fecha < ? AND EXISTS (SELECT 1 FROM snapshots_inventario s " +
+            "                            WHERE s.producto_local_id = movimientos_inventario.producto_local_id " +
+            "                            AND s.fecha >= movimientos_inventario.fecha AND s.fecha <= ?)";
+
+    // Snapshots vencidos reemplazados por otro también vencido (se conserva el último antes del límite)
+    private static final String SQL_PURGAR_SNAPSHOTS =
+            "DELETE TOP (?) FROM snapshots_inventario " +
+            "WHERE fecha < ? AND EXISTS (SELECT 1 FROM snapshots_inventario s " +
+            "                            WHERE s.producto_local_id = snapshots_inventario.producto_local_id " +
+            "                            AND s.fecha > snapshots_inventario.fecha AND s.fecha <= ?)";
+
+    // Stock a una fecha de los productos de un local
+    private static final String SQL_STOCK_A_FECHA =
+            "SELECT pl.id AS producto_local_id, pl.producto_id, p.nombre, " +
+            "       CASE WHEN s.stock IS NOT NULL THEN s.stock + COALESCE(cola.suma, 0) " +
+            "            ELSE " + STOCK_VIGENTE + " - COALESCE(posterior.suma, 0) END AS stock " +
+            "FROM productos_locales pl " +
+            "JOIN productos p ON p.id = pl.producto_id " +
+            "OUTER APPLY (SELECT TOP 1 fecha, stock FROM snapshots_inventario si " +
+            "             WHERE si.producto_local_id = pl.id AND si.fecha <= ? ORDER BY si.fecha DESC) s " +
+            "OUTER APPLY (SELECT SUM(m.delta) AS suma FROM movimientos_inventario m " +
+            "             WHERE m.producto_local_id = pl.id AND m.fecha > s.fecha AND m.fecha <= ?) cola " +
+            "OUTER APPLY (SELECT SUM(m.delta) AS suma FROM movimientos_inventario m " +
+            "             WHERE s.stock IS NULL AND m.producto_local_id = pl.id AND m.fecha > ?) posterior " +
+            "WHERE pl.local_id = ? AND pl.created_at <= ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MovimientoInventarioRepository movimientoInventarioRepository;
+
+    @Autowired
+    private LocalService localService;
+
+    @Autowired
+    private EventosLocalService eventosLocal;
+
+    private final TransactionTemplate transaccion;
+    private final long demoraMinutos;
+    private final int retencionDias;
+    private final int tamanoPurga;
+
+    public LibroInventarioService(PlatformTransactionManager transactionManager,
+                                  @Value("${inventario.compactacion.demora-minutos:5}") long demoraMinutos,
+                                  @Value("${inventario.compactacion.retencion-dias:365}") int retencionDias,
+                                  @Value("${inventario.compactacion.tamano-purga:5000}") int tamanoPurga) {
+        this.transaccion = new TransactionTemplate(transactionManager);
+        this.demoraMinutos = demoraMinutos;
+        this.retencionDias = retencionDias;
+        this.tamanoPurga = tamanoPurga;
+    }
+
+    // Registrar un movimiento; dentro de una transacción se inserta junto con el resto antes del commit
+    public void registrar(ProductoLocal productoLocal, int delta, MovimientoInventario.Motivo motivo, String referencia) {
+        registrar(productoLocal.getId(), productoLocal.getLocal().getId(), productoLocal.getProducto().getId(),
+                delta, motivo, referencia);
+    }
+
+    // Igual, para escrituras por SQL directo que no cargan la entidad
+    public void registrar(Long productoLocalId, Long localId, Long productoId, int delta,
+                          MovimientoInventario.Motivo motivo, String referencia) {
+        if (delta == 0) {
+            return;
+        }
+
+        Object[] fila = {productoLocalId, localId, productoId, delta, motivo.name(), referencia, null};
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            fila[6] = Timestamp.valueOf(LocalDateTime.now());
+            jdbcTemplate.update(SQL_INSERTAR, fila);
+            eventosLocal.movimientosConfirmados(List.<Object[]>of(fila));
+            return;
+        }
+
+        Pendientes pendientes = (Pendientes) TransactionSynchronizationManager.getResource(this);
+        if (pendientes == null) {
+            pendientes = new Pendientes();
+            TransactionSynchronizationManager.bindResource(this, pendientes);
+            TransactionSynchronizationManager.registerSynchronization(pendientes);
+        }
+        pendientes.filas.add(fila);
+    }
+
+    // Stock de los productos de un local a una fecha (productoLocalId, productoId, nombre, stock)
+    public List<StockAFecha> stockAFecha(Long localId, LocalDateTime fecha, Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        Timestamp t = Timestamp.valueOf(fecha);
+        return jdbcTemplate.query(SQL_STOCK_A_FECHA, (rs, rowNum) -> new StockAFecha(
+                rs.getLong("producto_local_id"), rs.getLong("producto_id"),
+                rs.getString("nombre"), rs.getInt("stock")), t, t, t, localId, t);
+    }
+
+    // Stock de un producto en un local a una fecha
+    public StockAFecha stockAFecha(Long localId, Long productoId, LocalDateTime fecha, Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        Timestamp t = Timestamp.valueOf(fecha);
+        List<StockAFecha> filas = jdbcTemplate.query(SQL_STOCK_A_FECHA + " AND pl.producto_id = ?",
+                (rs, rowNum) -> new StockAFecha(rs.getLong("producto_local_id"), rs.getLong("producto_id"),
+                        rs.getString("nombre"), rs.getInt("stock")), t, t, t, localId, t, productoId);
+        if (filas.isEmpty()) {
+            throw new RuntimeException("Producto no asignado a este local a esa fecha");
+        }
+        return filas.get(0);
+    }
+
+    // Movimientos de un local en un período, opcionalmente de un solo producto
+    public Page<MovimientoInventario> movimientos(Long localId, Long productoId, LocalDateTime desde,
+                                                  LocalDateTime hasta, int pagina, int tamano, Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        PageRequest pageRequest = PageRequest.of(pagina, tamano);
+        if (productoId != null) {
+            return movimientoInventarioRepository.findByLocalIdAndProductoIdAndFechaBetweenOrderByFechaAscIdAsc(
+                    localId, productoId, desde, hasta, pageRequest);
+        }
+        return movimientoInventarioRepository.findByLocalIdAndFechaBetweenOrderByFechaAscIdAsc(
+                localId, desde, hasta, pageRequest);
+    }
+
+    // Compactar movimientos en snapshots y purgar lo vencido.
+    // El corte va con demora para no dejar afuera transacciones que todavía no confirmaron.
+    @Scheduled(cron = "${inventario.compactacion.cron:0 */15 * * * *}")
+    public void compactar() {
+        Timestamp corte = Timestamp.valueOf(LocalDateTime.now().minusMinutes(demoraMinutos));
+
+        Integer creados = transaccion.execute(status ->
+                jdbcTemplate.update(SQL_COMPACTAR_CON_SNAPSHOT, corte, corte) +
+                jdbcTemplate.update(SQL_COMPACTAR_SIN_SNAPSHOT, corte, corte, corte));
+        log.debug("Compactación del libro de inventario al {}: {} snapshots", corte, creados);
+
+        if (retencionDias > 0) {
+            Timestamp limite = Timestamp.valueOf(LocalDateTime.now().minusDays(retencionDias));
+            purgar(SQL_PURGAR_MOVIMIENTOS, limite);
+            purgar(SQL_PURGAR_SNAPSHOTS, limite);
+        }
+    }
+
+    // Borrar por tandas para no escalar bloqueos sobre toda la tabla
+    private void purgar(String sql, Timestamp limite) {
+        int borrados;
+        do {
+            borrados = jdbcTemplate.update(sql, tamanoPurga, limite, limite);
+        } while (borrados >= tamanoPurga);
+    }
+
+    // Movimientos pendientes de la transacción actual
+    private class Pendientes implements TransactionSynchronization {
+        private final List<Object[]> filas = new ArrayList<>();
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(LibroInventarioService.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(LibroInventarioService.this, this);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            // Fecha del commit: la compactación no puede saltearse un movimiento confirmado tarde
+            Timestamp fecha = Timestamp.valueOf(LocalDateTime.now());
+            filas.forEach(fila -> fila[6] = fecha);
+            jdbcTemplate.batchUpdate(SQL_INSERTAR, filas);
+        }
+
+        @Override
+        public void afterCommit() {
+            eventosLocal.movimientosConfirmados(filas);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(LibroInventarioService.this);
+        }
+    }
+
+    // DTO
+    public static class StockAFecha {
+        private Long productoLocalId;
+        private Long productoId;
+        private String nombre;
+        private Integer stock;
+
+        public StockAFecha(Long productoLocalId, Long productoId, String nombre, Integer stock) {
+            this.productoLocalId = productoLocalId;
+            this.productoId = productoId;
+            this.nombre = nombre;
+            this.stock = stock;
+        }
+
+        // Getters y Setters
+        public Long getProductoLocalId() { return productoLocalId; }
+        public void setProductoLocalId(Long productoLocalId) { this.productoLocalId = productoLocalId; }
+
+        public Long getProductoId() { return productoId; }
+        public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+        public String getNombre() { return nombre; }
+        public void setNombre(String nombre) { this.nombre = nombre; }
+
+        public Integer getStock() { return stock; }
+        public void setStock(Integer stock) { this.stock = stock; }
+    }
+}
@@ -1,13 +1,19 @@
 package com.robertroman.store_admin_backend.service;
 
+import com.robertroman.store_admin_backend.dto.VersionRecurso;
 import com.robertroman.store_admin_backend.entity.Local;
 import com.robertroman.store_admin_backend.entity.Usuario;
 import com.robertroman.store_admin_backend.repository.LocalRepository;
+import com.robertroman.store_admin_backend.repository.ProductoLocalRepository;
 import com.robertroman.store_admin_backend.repository.UsuarioRepository;
+import com.robertroman.store_admin_backend.repository.VentaRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -22,6 +28,12 @@ public class LocalService {
     @Autowired
     private UsuarioRepository usuarioRepository;
 
+    @Autowired
+    private ProductoLocalRepository productoLocalRepository;
+
+    @Autowired
+    private VentaRepository ventaRepository;
+
     // Crear local
     public Local crearLocal(Local local, Long usuarioId) {
         // Verificar que existe el usuario
@@ -146,36 +158,141 @@ public class LocalService {
         }
     }
 
-    // Obtener estadísticas básicas del local
+    // Versión de los locales de un usuario (validador para GET condicional)
+    @Transactional(readOnly = true)
+    public VersionRecurso obtenerVersionLocalesPorUsuario(Long usuarioId) {
+        return crearVersion(localRepository.findVersionLocalesByUsuario(usuarioId));
+    }
+
+    // Versión de todos los locales
+    @Transactional(readOnly = true)
+    public VersionRecurso obtenerVersionLocales() {
+        return crearVersion(localRepository.findVersionLocales());
+    }
+
+    private VersionRecurso crearVersion(List<Object[]> resultado) {
+        Object[] fila = resultado.isEmpty() ? new Object[2] : resultado.get(0);
+
+        VersionRecurso version = VersionRecurso.desdeAgregados((LocalDateTime) fila[0]);
+        version.setCantidad(fila[1] != null ? ((Number) fila[1]).longValue() : 0L);
+        return version;
+    }
+
+    // Obtener estadísticas del local con consultas agregadas (sin cargar productos ni ventas)
+    @Transactional(readOnly = true)
     public LocalEstadisticas obtenerEstadisticasLocal(Long localId) {
         Optional<Local> localOpt = localRepository.findById(localId);
         if (localOpt.isEmpty()) {
             throw new RuntimeException("Local no encontrado con ID: " + localId);
         }
 
-        Local local = localOpt.get();
         LocalEstadisticas estadisticas = new LocalEstadisticas();
-        estadisticas.setLocal(local);
-        estadisticas.setCantidadProductos(local.getProductoLocales().size());
-        estadisticas.setCantidadVentas(local.getVentas().size());
+        estadisticas.setLocal(localOpt.get());
+
+        Object[] productos = primeraFila(productoLocalRepository.findIndicadoresByLocal(localId), 5);
+        estadisticas.setCantidadProductos(numero(productos[0]));
+        estadisticas.setProductosActivos(numero(productos[1]));
+        estadisticas.setProductosSinStock(numero(productos[2]));
+        estadisticas.setProductosStockBajo(numero(productos[3]));
+        estadisticas.setValorInventario(decimal(productos[4]));
+
+        Object[] ventas = primeraFila(ventaRepository.findIndicadoresByLocal(localId), 5);
+        estadisticas.setCantidadVentas(numero(ventas[0]));
+        estadisticas.setVentasCompletadas(numero(ventas[1]));
+        estadisticas.setVentasCanceladas(numero(ventas[2]));
+        estadisticas.setTotalVendido(decimal(ventas[3]));
+        estadisticas.setUltimaVenta((LocalDateTime) ventas[4]);
+        estadisticas.setTicketPromedio(estadisticas.getVentasCompletadas() > 0
+                ? estadisticas.getTotalVendido().divide(BigDecimal.valueOf(estadisticas.getVentasCompletadas()),
+                        2, RoundingMode.HALF_UP)
+                : BigDecimal.ZERO);
+
+        LocalDateTime inicioHoy = LocalDate.now().atStartOfDay();
+        LocalDateTime finHoy = inicioHoy.plusDays(1).minusNanos(1);
+        estadisticas.setVentasHoy(ventaRepository.countVentasByLocalAndPeriodo(localId, inicioHoy, finHoy));
+        estadisticas.setTotalVendidoHoy(ventaRepository.findTotalVentasByLocalAndPeriodo(localId, inicioHoy, finHoy));
 
         return estadisticas;
     }
 
+    // Una consulta agregada siempre devuelve una fila; por las dudas se completa con nulos
+    private static Object[] primeraFila(List<Object[]> resultado, int columnas) {
+        return resultado.isEmpty() ? new Object[columnas] : resultado.get(0);
+    }
+
+    private static Long numero(Object valor) {
+        return valor != null ? ((Number) valor).longValue() : 0L;
+    }
+
+    private static BigDecimal decimal(Object valor) {
+        if (valor == null) {
+            return BigDecimal.ZERO;
+        }
+        return valor instanceof BigDecimal decimal ? decimal : new BigDecimal(valor.toString());
+    }
+
     // Clase interna para estadísticas
     public static class LocalEstadisticas {
         private Local local;
-        private Integer cantidadProductos;
-        private Integer cantidadVentas;
+
+        // Surtido (cantidadProductos cuenta todas las asignaciones, activas o no)
+        private Long cantidadProductos;
+        private Long productosActivos;
+        private Long productosSinStock;
+        private Long productosStockBajo;
+        private BigDecimal valorInventario;
+
+        // Ventas (cantidadVentas cuenta todos los estados)
+        private Long cantidadVentas;
+        private Long ventasCompletadas;
+        private Long ventasCanceladas;
+        private BigDecimal totalVendido;
+        private BigDecimal ticketPromedio;
+        private LocalDateTime ultimaVenta;
+        private Long ventasHoy;
+        private BigDecimal totalVendidoHoy;
 
         // Getters y Setters
         public Local getLocal() { return local; }
         public void setLocal(Local local) { this.local = local; }
 
-        public Integer getCantidadProductos() { return cantidadProductos; }
-        public void setCantidadProductos(Integer cantidadProductos) { this.cantidadProductos = cantidadProductos; }
+        public Long getCantidadProductos() { return cantidadProductos; }
+        public void setCantidadProductos(Long cantidadProductos) { this.cantidadProductos = cantidadProductos; }
+
+        public Long getProductosActivos() { return productosActivos; }
+        public void setProductosActivos(Long productosActivos) { this.productosActivos = productosActivos; }
+
+        public Long getProductosSinStock() { return productosSinStock; }
+        public void setProductosSinStock(Long productosSinStock) { this.productosSinStock = productosSinStock; }
+
+        public Long getProductosStockBajo() { return productosStockBajo; }
+        public void setProductosStockBajo(Long productosStockBajo) { this.productosStockBajo = productosStockBajo; }
+
+        public BigDecimal getValorInventario() { return valorInventario; }
+        public void setValorInventario(BigDecimal valorInventario) { this.valorInventario = valorInventario; }
+
+        public Long getCantidadVentas() { return cantidadVentas; }
+        public void setCantidadVentas(Long cantidadVentas) { this.cantidadVentas = cantidadVentas; }
+
+        public Long getVentasCompletadas() { return ventasCompletadas; }
+        public void setVentasCompletadas(Long ventasCompletadas) { this.ventasCompletadas = ventasCompletadas; }
+
+        public Long getVentasCanceladas() { return ventasCanceladas; }
+        public void setVentasCanceladas(Long ventasCanceladas) { this.ventasCanceladas = ventasCanceladas; }
+
+        public BigDecimal getTotalVendido() { return totalVendido; }
+        public void setTotalVendido(BigDecimal totalVendido) { this.totalVendido = totalVendido; }
+
+        public BigDecimal getTicketPromedio() { return ticketPromedio; }
+        public void setTicketPromedio(BigDecimal ticketPromedio) { this.ticketPromedio = ticketPromedio; }
+
+        public LocalDateTime getUltimaVenta() { return ultimaVenta; }
+        public void setUltimaVenta(LocalDateTime ultimaVenta) { this.ultimaVenta = ultimaVenta; }
+
+        public Long getVentasHoy() { return ventasHoy; }
+        public void setVentasHoy(Long ventasHoy) { this.ventasHoy = ventasHoy; }
 
-        public Integer getCantidadVentas() { return cantidadVentas; }
-        public void setCantidadVentas(Integer cantidadVentas) { this.cantidadVentas = cantidadVentas; }
+        public BigDecimal getTotalVendidoHoy() { return totalVendidoHoy; }
+        public void setTotalVendidoHoy(BigDecimal totalVendidoHoy) { this.totalVendidoHoy = totalVendidoHoy; }
     }
 }
\ No newline at end of file
@@ -0,0 +1,19 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.entity.EventoOutbox;
+
+import java.util.Set;
+
+// Consumidor de eventos del outbox (acumulados, alertas, contadores, invalidación de caches).
+// Basta con declararlo como bean: el despachador lo invoca en orden por local y fuera de la
+// transacción de la venta. La entrega es al menos una vez, así que debe ser idempotente, y un
+// evento que agotó sus intentos y se reencola llega después de los siguientes de su local, así que
+// también debe tolerar eventos fuera de orden.
+public interface ManejadorEventoOutbox {
+
+    // Tipos de evento que atiende
+    Set<EventoOutbox.Tipo> tipos();
+
+    // Una excepción hace que el evento se reintente más tarde (y frena los siguientes del local)
+    void manejar(EventoOutbox evento) throws Exception;
+}
@@ -0,0 +1,349 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.entity.EventoOutbox;
+import com.robertroman.store_admin_backend.entity.Producto;
+import com.robertroman.store_admin_backend.repository.DetalleVentaRepository;
+import com.robertroman.store_admin_backend.repository.DevolucionRepository;
+import com.robertroman.store_admin_backend.repository.ProductoRepository;
+import com.robertroman.store_admin_backend.repository.VentaRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// Productos más vendidos del día por local, en memoria (algoritmo Space-Saving).
+// Cada local guarda a lo sumo N contadores: un producto nuevo reemplaza al de menor cuenta y hereda
+// esa cuenta como error máximo, así los más vendidos quedan siempre adentro con memoria fija.
+// Se alimenta del outbox de ventas. El primer pedido del día publica el resumen vacío y recién después
+// lo carga desde la base: los eventos que llegan mientras tanto se guardan y se aplican al terminar la
+// carga, así una venta confirmada durante la carga entra por un lado o por el otro. El resumen recuerda
+// qué ventas y devoluciones contó, y un evento se ignora si lo que trae ya está contado (por ID y no
+// contra un máximo, porque una venta con ID menor puede confirmarse después de la carga).
+// Una cancelación solo descuenta si la venta está contada (si se canceló antes, la carga ya la excluyó).
+// El outbox no garantiza el orden entre eventos (un evento FALLIDO reencolado llega tarde), así que
+// el resumen lo tolera: la venta que llega después de su cancelación no se cuenta, y la devolución
+// que llega antes que su venta queda pendiente y se descuenta cuando la venta llega.
+// Los nombres salen de la carga; solo se consultan los de productos que entraron después por el outbox.
+@Service
+public class MasVendidosEnVivoService implements ManejadorEventoOutbox {
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private DetalleVentaRepository detalleVentaRepository;
+
+    @Autowired
+    private DevolucionRepository devolucionRepository;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private VentaRepository ventaRepository;
+
+    @Autowired
+    private LocalService localService;
+
+    @Value("${dashboard.mas-vendidos.capacidad:100}")
+    private int capacidad;
+
+    private final Map<Long, Resumen> resumenes = new ConcurrentHashMap<>();
+
+    @Override
+    public Set<EventoOutbox.Tipo> tipos() {
+        return EnumSet.of(EventoOutbox.Tipo.VENTA_REGISTRADA, EventoOutbox.Tipo.VENTA_CANCELADA,
+                EventoOutbox.Tipo.DEVOLUCION_REGISTRADA);
+    }
+
+    @Override
+    public void manejar(EventoOutbox evento) {
+        Resumen resumen = resumenes.get(evento.getLocalId());
+        // Sin resumen del día todavía: la carga inicial ya va a incluir esta venta
+        if (resumen == null || !resumen.fecha.equals(LocalDate.now())) {
+            return;
+        }
+
+        OutboxService.DatosVenta datos = outboxService.leer(evento, OutboxService.DatosVenta.class);
+        if (datos.getFecha() == null || !datos.getFecha().toLocalDate().equals(resumen.fecha)) {
+            return;
+        }
+
+        synchronized (resumen) {
+            if (resumen.cargando) {
+                // Se aplica al terminar la carga, cuando ya se sabe qué ventas incluyó
+                resumen.enEspera.add(new EventoEnEspera(evento.getTipo(), evento.getAgregadoId(), datos));
+                return;
+            }
+            aplicar(resumen, evento.getTipo(), evento.getAgregadoId(), datos);
+        }
+    }
+
+    // Aplicar un evento al resumen (sincronizado sobre el resumen)
+    private void aplicar(Resumen resumen, EventoOutbox.Tipo tipo, Long agregadoId, OutboxService.DatosVenta datos) {
+        switch (tipo) {
+            case VENTA_REGISTRADA -> {
+                Long ventaId = datos.getVentaId();
+                // Ya cancelada (la cancelación llegó antes) o ya contada: no se suma
+                if (!resumen.canceladas.contains(ventaId) && resumen.ventas.add(ventaId)) {
+                    datos.getItems().forEach(item -> resumen.sumar(item.getProductoId(), item.getCantidad()));
+                    List<EventoEnEspera> pendientes = resumen.devolucionesPendientes.remove(ventaId);
+                    if (pendientes != null) {
+                        pendientes.forEach(e -> aplicar(resumen, e.tipo, e.agregadoId, e.datos));
+                    }
+                }
+            }
+            case VENTA_CANCELADA -> {
+                Long ventaId = datos.getVentaId();
+                if (resumen.ventas.remove(ventaId)) {
+                    datos.getItems().forEach(item -> resumen.restar(item.getProductoId(), item.getCantidad()));
+                }
+                // Si la venta llega después no se cuenta; sus devoluciones pendientes ya no aplican
+                resumen.canceladas.add(ventaId);
+                resumen.devolucionesPendientes.remove(ventaId);
+            }
+            case DEVOLUCION_REGISTRADA -> {
+                Long ventaId = datos.getVentaId();
+                if (resumen.ventas.contains(ventaId)) {
+                    if (resumen.devoluciones.add(agregadoId)) {
+                        datos.getItems().forEach(item -> resumen.restar(item.getProductoId(), item.getCantidad()));
+                    }
+                } else if (!resumen.canceladas.contains(ventaId)) {
+                    // La venta todavía no llegó: se descuenta cuando llegue
+                    resumen.devolucionesPendientes.computeIfAbsent(ventaId, id -> new ArrayList<>())
+                            .add(new EventoEnEspera(tipo, agregadoId, datos));
+                }
+            }
+        }
+    }
+
+    // Los K más vendidos hoy según el resumen en memoria
+    public List<ProductoEnVivo> obtenerMasVendidosHoy(Long localId, int limite, Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        Resumen resumen = resumenDelDia(localId);
+        List<Contador> top;
+        synchronized (resumen) {
+            top = resumen.top(limite);
+        }
+
+        // Solo los que entraron por el outbox y todavía no tienen nombre
+        List<Long> sinNombre = top.stream().filter(c -> c.nombre == null).map(c -> c.productoId).toList();
+        if (!sinNombre.isEmpty()) {
+            Map<Long, String> nombres = productoRepository.findAllById(sinNombre).stream()
+                    .collect(Collectors.toMap(Producto::getId, Producto::getNombre));
+            synchronized (resumen) {
+                nombres.forEach(resumen::nombrar);
+            }
+            top.forEach(c -> c.nombre = c.nombre != null ? c.nombre : nombres.get(c.productoId));
+        }
+
+        List<ProductoEnVivo> resultado = new ArrayList<>(top.size());
+        for (Contador contador : top) {
+            resultado.add(new ProductoEnVivo(contador.productoId, contador.nombre, contador.cuenta, contador.error));
+        }
+        return resultado;
+    }
+
+    // Resumen de hoy; si no existe (o es de ayer) se carga desde la base
+    private Resumen resumenDelDia(Long localId) {
+        LocalDate hoy = LocalDate.now();
+        Resumen actual = resumenes.get(localId);
+        if (actual != null && actual.fecha.equals(hoy) && !actual.cargando) {
+            return actual;
+        }
+
+        // Mientras otro hilo carga, esperar acá a que termine
+        synchronized (resumenes) {
+            actual = resumenes.get(localId);
+            if (actual != null && actual.fecha.equals(hoy) && !actual.cargando) {
+                return actual;
+            }
+
+            // Publicar antes de leer: desde acá los eventos del outbox se guardan en vez de perderse
+            Resumen nuevo = new Resumen(hoy, capacidad);
+            resumenes.put(localId, nuevo);
+            try {
+                cargar(localId, nuevo);
+            } catch (RuntimeException e) {
+                // Lo guardado ya está confirmado en la base: la próxima carga lo incluye
+                resumenes.remove(localId, nuevo);
+                throw e;
+            }
+            return nuevo;
+        }
+    }
+
+    private void cargar(Long localId, Resumen nuevo) {
+        LocalDate hoy = nuevo.fecha;
+        // La carga no pasa de la última venta; lo posterior llega por el outbox
+        Long ultimaVenta = ventaRepository.findUltimoIdByLocal(localId);
+        long hasta = ultimaVenta != null ? ultimaVenta : 0L;
+        LocalDateTime inicio = hoy.atStartOfDay();
+        LocalDateTime fin = hoy.plusDays(1).atStartOfDay().minusNanos(1);
+
+        // Ventas y totales salen de la misma consulta, así lo contado y lo recordado coinciden
+        Set<Long> ventas = new HashSet<>();
+        Map<Long, Long> porProducto = new HashMap<>();
+        Map<Long, String> nombres = new HashMap<>();
+        for (Object[] fila : detalleVentaRepository.findVendidoPorVentaHasta(localId, inicio, fin, hasta)) {
+            ventas.add((Long) fila[0]);
+            porProducto.merge((Long) fila[1], ((Number) fila[2]).longValue(), Long::sum);
+            nombres.put((Long) fila[1], (String) fila[3]);
+        }
+        List<Long> devoluciones = devolucionRepository.findIdsByLocalAndPeriodoHastaVenta(localId, inicio, fin, hasta);
+
+        synchronized (nuevo) {
+            nuevo.ventas.addAll(ventas);
+            nuevo.devoluciones.addAll(devoluciones);
+
+            // Los de más cuenta primero: entran con cuenta exacta
+            porProducto.entrySet().stream()
+                    .filter(entry -> entry.getValue() > 0)
+                    .sorted(Map.Entry.<Long, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                    .limit(capacidad)
+                    .forEach(entry -> nuevo.sumar(entry.getKey(), entry.getValue()));
+            nombres.forEach(nuevo::nombrar);
+
+            // Lo que llegó durante la carga: lo que ya estaba en la base se descarta por ID
+            nuevo.enEspera.forEach(e -> aplicar(nuevo, e.tipo, e.agregadoId, e.datos));
+            nuevo.enEspera.clear();
+            nuevo.cargando = false;
+        }
+    }
+
+    // Resumen Space-Saving de un local para un día (se accede sincronizado sobre la instancia)
+    private static class Resumen {
+        private final LocalDate fecha;
+        private final int capacidad;
+        // Mientras se carga desde la base, los eventos se guardan en enEspera
+        private volatile boolean cargando = true;
+        private final List<EventoEnEspera> enEspera = new ArrayList<>();
+        // Ventas contadas (por la carga o por el outbox) y devoluciones ya descontadas
+        private final Set<Long> ventas = new HashSet<>();
+        private final Set<Long> devoluciones = new HashSet<>();
+        // Eventos fuera de orden: ventas canceladas antes de contarse y devoluciones de ventas que no llegaron
+        private final Set<Long> canceladas = new HashSet<>();
+        private final Map<Long, List<EventoEnEspera>> devolucionesPendientes = new HashMap<>();
+        private final Map<Long, Contador> porProducto = new HashMap<>();
+        private final TreeSet<Contador> ordenados = new TreeSet<>(
+                Comparator.comparingLong((Contador c) -> c.cuenta).thenComparingLong(c -> c.productoId));
+
+        private Resumen(LocalDate fecha, int capacidad) {
+            this.fecha = fecha;
+            this.capacidad = capacidad;
+        }
+
+        private void sumar(Long productoId, long cantidad) {
+            Contador contador = porProducto.get(productoId);
+            if (contador != null) {
+                actualizar(contador, contador.cuenta + cantidad);
+                return;
+            }
+            if (porProducto.size() < capacidad) {
+                contador = new Contador(productoId, cantidad, 0);
+            } else {
+                // Reemplazar al de menor cuenta: el nuevo hereda esa cuenta como sobreestimación máxima
+                Contador minimo = ordenados.pollFirst();
+                porProducto.remove(minimo.productoId);
+                contador = new Contador(productoId, minimo.cuenta + cantidad, minimo.cuenta);
+            }
+            porProducto.put(productoId, contador);
+            ordenados.add(contador);
+        }
+
+        // Cancelaciones y devoluciones: solo se descuenta de lo que se está siguiendo
+        private void restar(Long productoId, long cantidad) {
+            Contador contador = porProducto.get(productoId);
+            if (contador != null) {
+                actualizar(contador, Math.max(contador.error, contador.cuenta - cantidad));
+            }
+        }
+
+        private void nombrar(Long productoId, String nombre) {
+            Contador contador = porProducto.get(productoId);
+            if (contador != null && contador.nombre == null) {
+                contador.nombre = nombre;
+            }
+        }
+
+        private void actualizar(Contador contador, long cuenta) {
+            ordenados.remove(contador);
+            contador.cuenta = cuenta;
+            ordenados.add(contador);
+        }
+
+        private List<Contador> top(int k) {
+            List<Contador> top = new ArrayList<>(Math.min(k, ordenados.size()));
+            Iterator<Contador> it = ordenados.descendingIterator();
+            while (it.hasNext() && top.size() < k) {
+                Contador contador = it.next();
+                if (contador.cuenta > contador.error) {
+                    Contador copia = new Contador(contador.productoId, contador.cuenta, contador.error);
+                    copia.nombre = contador.nombre;
+                    top.add(copia);
+                }
+            }
+            return top;
+        }
+    }
+
+    private static class Contador {
+        private final Long productoId;
+        private long cuenta;
+        private final long error;
+        private String nombre;
+
+        private Contador(Long productoId, long cuenta, long error) {
+            this.productoId = productoId;
+            this.cuenta = cuenta;
+            this.error = error;
+        }
+    }
+
+    private static class EventoEnEspera {
+        private final EventoOutbox.Tipo tipo;
+        private final Long agregadoId;
+        private final OutboxService.DatosVenta datos;
+
+        private EventoEnEspera(EventoOutbox.Tipo tipo, Long agregadoId, OutboxService.DatosVenta datos) {
+            this.tipo = tipo;
+            this.agregadoId = agregadoId;
+            this.datos = datos;
+        }
+    }
+
+    // DTO
+    public static class ProductoEnVivo {
+        private Long productoId;
+        private String nombre;
+        private Long cantidadEstimada;
+        private Long errorMaximo;
+
+        public ProductoEnVivo(Long productoId, String nombre, Long cantidadEstimada, Long errorMaximo) {
+            this.productoId = productoId;
+            this.nombre = nombre;
+            this.cantidadEstimada = cantidadEstimada;
+            this.errorMaximo = errorMaximo;
+        }
+
+        // Getters y Setters
+        public Long getProductoId() { return productoId; }
+        public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+        public String getNombre() { return nombre; }
+        public void setNombre(String nombre) { this.nombre = nombre; }
+
+        public Long getCantidadEstimada() { return cantidadEstimada; }
+        public void setCantidadEstimada(Long cantidadEstimada) { this.cantidadEstimada = cantidadEstimada; }
+
+        public Long getErrorMaximo() { return errorMaximo; }
+        public void setErrorMaximo(Long errorMaximo) { this.errorMaximo = errorMaximo; }
+    }
+}
@@ -0,0 +1,542 @@
+package com.robertroman.store_admin_backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Motor de stock de escritor único por local.
+// Cada local se asigna a una franja con un solo hilo escritor que lleva en memoria el stock
+// confirmado y lo reservado por transacciones en curso: la verificación de stock de las ventas de un
+// local se serializa ahí, sin bloquear filas mientras dura la transacción. Lo movido por una
+// transacción se escribe en la base dentro de ella misma, como deltas relativos en un solo lote antes
+// del commit (UPDATE ... SET stock = stock + ?), y en memoria se confirma o libera al terminar: una
+// caída solo pierde el estado en memoria, que se vuelve a cargar de la base.
+// Los escritores nunca usan conexiones (las lecturas se hacen en el hilo que llama, antes de entregar
+// la tarea), así que esperarlos con una conexión tomada no puede agotar el pool.
+// El estado vive en este proceso: el motor solo es correcto con UNA instancia de la aplicación; con
+// varias, cada una aceptaría ventas contra su propia copia del stock.
+// Se activa con stock.motor.enabled.
+@Service
+public class MotorStockService implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(MotorStockService.class);
+
+    private static final String SQL_CARGAR =
+            "SELECT id, stock FROM productos_locales WHERE id IN (:ids)";
+
+    private static final String SQL_SUMAR =
+            "UPDATE productos_locales SET stock = stock + ?, updated_at = ? WHERE id = ?";
+
+    private static final String SQL_FIJAR =
+            "UPDATE productos_locales SET stock = ?, updated_at = ? OUTPUT DELETED.stock WHERE id = ?";
+
+    // Reintentos mientras un producto invalidado espera que terminen sus transacciones en curso
+    private static final int MAX_REINTENTOS = 50;
+    private static final long ESPERA_REINTENTO_MS = 2;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final boolean habilitado;
+    private final long inactividadMs;
+
+    private final ExecutorService[] escritores;
+    private final ScheduledExecutorService limpieza;
+
+    // Estado por ProductoLocal; solo lo modifica el escritor de su local
+    private final Map<Long, EstadoStock> estados = new ConcurrentHashMap<>();
+
+    // Estados desalojados por franja: una carga leída antes de un desalojo puede estar vieja
+    private final AtomicLongArray desalojos;
+
+    public MotorStockService(NamedParameterJdbcTemplate jdbcTemplate,
+                             @Value("${stock.motor.enabled:false}") boolean habilitado,
+                             @Value("${stock.motor.franjas:8}") int franjas,
+                             @Value("${stock.motor.intervalo-limpieza-ms:30000}") long intervaloLimpiezaMs,
+                             @Value("${stock.motor.inactividad-ms:300000}") long inactividadMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.habilitado = habilitado;
+        this.inactividadMs = inactividadMs;
+
+        if (!habilitado) {
+            this.escritores = new ExecutorService[0];
+            this.desalojos = new AtomicLongArray(0);
+            this.limpieza = null;
+            return;
+        }
+
+        log.info("Motor de stock habilitado con {} franjas (requiere una sola instancia de la aplicación)", franjas);
+        this.escritores = new ExecutorService[franjas];
+        this.desalojos = new AtomicLongArray(franjas);
+        for (int i = 0; i < franjas; i++) {
+            String nombre = "motor-stock-" + i;
+            this.escritores[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread hilo = new Thread(r, nombre);
+                hilo.setDaemon(true);
+                return hilo;
+            });
+        }
+
+        this.limpieza = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "motor-stock-limpieza");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        this.limpieza.scheduleWithFixedDelay(() -> {
+            for (int i = 0; i < escritores.length; i++) {
+                int franja = i;
+                enviar(franja, () -> limpiar(franja));
+            }
+        }, intervaloLimpiezaMs, intervaloLimpiezaMs, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean estaHabilitado() {
+        return habilitado;
+    }
+
+    // Reservar cantidades de varios productos de un local (todo o nada), dejando intacto lo
+    // retenido por reservas de canastos. Devuelve el ID del primer ProductoLocal sin stock
+    // suficiente, o null si se reservó todo.
+    public Long reservar(Long localId, Map<Long, Integer> cantidades, Map<Long, Integer> retenidos) {
+        Long sinStock = conEstados(localId, cantidades.keySet(), () -> {
+            for (Map.Entry<Long, Integer> entry : cantidades.entrySet()) {
+                int retenido = retenidos.getOrDefault(entry.getKey(), 0);
+                if (estados.get(entry.getKey()).disponible() - retenido < entry.getValue()) {
+                    return entry.getKey();
+                }
+            }
+            cantidades.forEach((id, cantidad) -> {
+                EstadoStock estado = estados.get(id);
+                estado.enVuelo += cantidad;
+                estado.abiertos++;
+            });
+            return null;
+        });
+
+        if (sinStock == null) {
+            registrar(localId, movimientos -> cantidades.forEach((id, cantidad) -> {
+                movimientos.reservados.merge(id, cantidad, Integer::sum);
+                movimientos.abiertos.merge(id, 1, Integer::sum);
+            }));
+        }
+        return sinStock;
+    }
+
+    // Sumar stock (devoluciones, reposiciones); visible al confirmarse la transacción
+    public void reponer(Long localId, Long productoLocalId, int cantidad) {
+        abrir(localId, productoLocalId);
+        registrar(localId, movimientos -> {
+            movimientos.reposiciones.merge(productoLocalId, cantidad, Integer::sum);
+            movimientos.abiertos.merge(productoLocalId, 1, Integer::sum);
+        });
+    }
+
+    // Fijar stock absoluto (ajuste manual); en memoria se aplica como delta contra el valor anterior
+    public void fijar(Long localId, Long productoLocalId, int nuevoStock) {
+        abrir(localId, productoLocalId);
+        registrar(localId, movimientos -> {
+            movimientos.fijaciones.put(productoLocalId, nuevoStock);
+            movimientos.abiertos.merge(productoLocalId, 1, Integer::sum);
+        });
+    }
+
+    // Stock disponible según el motor (confirmado menos lo reservado por transacciones en curso),
+    // incluyendo lo que ya movió la transacción actual
+    public int stockDisponible(Long localId, Long productoLocalId) {
+        int[] valores = conEstados(localId, Set.of(productoLocalId), () -> {
+            EstadoStock estado = estados.get(productoLocalId);
+            return new int[]{estado.base, estado.enVuelo};
+        });
+        int disponible = valores[0] - valores[1];
+
+        Movimientos propios = movimientos(localId, false);
+        if (propios != null) {
+            Integer fijado = propios.fijaciones.get(productoLocalId);
+            if (fijado != null) {
+                // Lo reservado por otras transacciones sigue sin estar disponible
+                disponible = fijado - (valores[1] - propios.reservados.getOrDefault(productoLocalId, 0));
+            } else {
+                disponible += propios.reposiciones.getOrDefault(productoLocalId, 0);
+            }
+        }
+        return disponible;
+    }
+
+    // Stock confirmado según el motor (sin descontar lo reservado por transacciones en curso)
+    public int stockConfirmado(Long localId, Long productoLocalId) {
+        return conEstados(localId, Set.of(productoLocalId), () -> estados.get(productoLocalId).base);
+    }
+
+    // Olvidar el estado de estos productos (después de escribir stock por fuera del motor).
+    // Los que tienen transacciones en curso se desalojan cuando terminan; hasta entonces no se
+    // aceptan movimientos nuevos sobre ellos.
+    public void invalidar(Long localId, Collection<Long> productoLocalIds) {
+        if (!habilitado || productoLocalIds.isEmpty()) {
+            return;
+        }
+        int franja = franja(localId);
+        ejecutar(franja, () -> {
+            for (Long id : productoLocalIds) {
+                EstadoStock estado = estados.get(id);
+                if (estado == null) {
+                    continue;
+                }
+                if (estado.abiertos == 0) {
+                    desalojar(franja, id);
+                } else {
+                    estado.invalidado = true;
+                }
+            }
+            return null;
+        });
+    }
+
+    // Fijar el estado de un producto a la transacción actual hasta que termine
+    private void abrir(Long localId, Long productoLocalId) {
+        conEstados(localId, Set.of(productoLocalId), () -> {
+            estados.get(productoLocalId).abiertos++;
+            return null;
+        });
+    }
+
+    // Ejecutar una tarea en el escritor con los estados de estos productos cargados.
+    // La lectura de la base se hace en el hilo actual; el escritor solo instala lo leído si ningún
+    // estado de la franja se desalojó mientras tanto (si no, se vuelve a leer).
+    private <T> T conEstados(Long localId, Collection<Long> ids, Supplier<T> tarea) {
+        if (!habilitado) {
+            throw new IllegalStateException("El motor de stock no está habilitado");
+        }
+        int franja = franja(localId);
+        for (int intento = 0; intento < MAX_REINTENTOS; intento++) {
+            if (intento > 1) {
+                esperar();
+            }
+            long desalojosLeidos = desalojos.get(franja);
+            Map<Long, Integer> leidos = leerFaltantes(ids);
+            Listo<T> listo = ejecutar(franja, () ->
+                    instalar(franja, ids, leidos, desalojosLeidos) ? new Listo<>(tarea.get()) : null);
+            if (listo != null) {
+                return listo.valor();
+            }
+        }
+        throw new RuntimeException("El stock del producto se está actualizando, intente nuevamente");
+    }
+
+    private Map<Long, Integer> leerFaltantes(Collection<Long> ids) {
+        List<Long> faltantes = ids.stream()
+                .filter(id -> {
+                    EstadoStock estado = estados.get(id);
+                    return estado == null || estado.invalidado;
+                })
+                .toList();
+        if (faltantes.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, Integer> leidos = new HashMap<>();
+        jdbcTemplate.query(SQL_CARGAR, new MapSqlParameterSource("ids", faltantes), rs -> {
+            leidos.put(rs.getLong("id"), rs.getInt("stock"));
+        });
+        for (Long id : faltantes) {
+            if (!leidos.containsKey(id)) {
+                throw new RuntimeException("ProductoLocal no encontrado con ID: " + id);
+            }
+        }
+        return leidos;
+    }
+
+    // Operaciones del escritor (siempre en el hilo de la franja, sin tocar la base)
+
+    private boolean instalar(int franja, Collection<Long> ids, Map<Long, Integer> leidos, long desalojosLeidos) {
+        for (Long id : ids) {
+            EstadoStock estado = estados.get(id);
+            if (estado != null && estado.invalidado) {
+                if (estado.abiertos > 0) {
+                    // Esperar a que terminen las transacciones que lo están moviendo
+                    return false;
+                }
+                desalojar(franja, id);
+                estado = null;
+            }
+            if (estado == null) {
+                Integer stock = leidos.get(id);
+                if (stock == null || desalojos.get(franja) != desalojosLeidos) {
+                    return false;
+                }
+                estados.put(id, new EstadoStock(franja, stock));
+            }
+        }
+        return true;
+    }
+
+    private void confirmar(Movimientos movimientos) {
+        movimientos.reservados.forEach((id, cantidad) -> {
+            EstadoStock estado = estados.get(id);
+            estado.enVuelo -= cantidad;
+            if (!movimientos.ajustes.containsKey(id)) {
+                estado.base -= cantidad;
+            }
+        });
+        movimientos.reposiciones.forEach((id, cantidad) -> {
+            if (!movimientos.ajustes.containsKey(id)) {
+                estados.get(id).base += cantidad;
+            }
+        });
+        movimientos.ajustes.forEach((id, delta) -> estados.get(id).base += delta);
+        cerrar(movimientos);
+    }
+
+    private void liberar(Movimientos movimientos) {
+        movimientos.reservados.forEach((id, cantidad) -> estados.get(id).enVuelo -= cantidad);
+        cerrar(movimientos);
+    }
+
+    private void cerrar(Movimientos movimientos) {
+        movimientos.abiertos.forEach((id, cantidad) -> {
+            EstadoStock estado = estados.get(id);
+            estado.abiertos -= cantidad;
+            estado.tocar();
+            if (estado.invalidado && estado.abiertos == 0) {
+                desalojar(movimientos.franja, id);
+            }
+        });
+    }
+
+    private void desalojar(int franja, Long id) {
+        estados.remove(id);
+        desalojos.incrementAndGet(franja);
+    }
+
+    // Olvidar los estados inactivos (o invalidados) de la franja; se recargan de la base al próximo uso
+    private void limpiar(int franja) {
+        long limite = System.currentTimeMillis() - inactividadMs;
+        boolean desalojado = false;
+        Iterator<EstadoStock> it = estados.values().iterator();
+        while (it.hasNext()) {
+            EstadoStock estado = it.next();
+            if (estado.franja == franja && estado.abiertos == 0 && (estado.invalidado || estado.ultimoUso < limite)) {
+                it.remove();
+                desalojado = true;
+            }
+        }
+        if (desalojado) {
+            desalojos.incrementAndGet(franja);
+        }
+    }
+
+    // Escritura en la base (en el hilo de la transacción, antes del commit)
+
+    private void escribir(Movimientos movimientos) {
+        Timestamp ahora = Timestamp.valueOf(LocalDateTime.now());
+
+        // En orden de ID, para que dos transacciones no se crucen los bloqueos de fila
+        Map<Long, Integer> deltas = new TreeMap<>();
+        movimientos.reposiciones.forEach((id, cantidad) -> deltas.merge(id, cantidad, Integer::sum));
+        movimientos.reservados.forEach((id, cantidad) -> deltas.merge(id, -cantidad, Integer::sum));
+        List<Object[]> parametros = new ArrayList<>(deltas.size());
+        deltas.forEach((id, delta) -> {
+            // Una fijación pisa lo movido antes por la misma transacción
+            if (delta != 0 && !movimientos.fijaciones.containsKey(id)) {
+                parametros.add(new Object[]{delta, ahora, id});
+            }
+        });
+        if (!parametros.isEmpty()) {
+            jdbcTemplate.getJdbcTemplate().batchUpdate(SQL_SUMAR, parametros);
+        }
+
+        new TreeMap<>(movimientos.fijaciones).forEach((id, nuevoStock) -> {
+            Integer anterior = jdbcTemplate.getJdbcTemplate().queryForObject(SQL_FIJAR, Integer.class, nuevoStock, ahora, id);
+            movimientos.ajustes.put(id, nuevoStock - (anterior != null ? anterior : 0));
+        });
+    }
+
+    // Movimientos fuera de una transacción: se escriben y confirman en el momento
+    private void completar(Movimientos movimientos) {
+        try {
+            escribir(movimientos);
+        } catch (RuntimeException e) {
+            enviar(movimientos.franja, () -> liberar(movimientos));
+            throw e;
+        }
+        enviar(movimientos.franja, () -> confirmar(movimientos));
+    }
+
+    // Transacción actual
+
+    private void registrar(Long localId, Consumer<Movimientos> cambio) {
+        Movimientos movimientos = movimientos(localId, true);
+        if (movimientos != null) {
+            cambio.accept(movimientos);
+            return;
+        }
+        movimientos = new Movimientos(franja(localId));
+        cambio.accept(movimientos);
+        completar(movimientos);
+    }
+
+    private Movimientos movimientos(Long localId, boolean crear) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        Acumulado acumulado = (Acumulado) TransactionSynchronizationManager.getResource(this);
+        if (acumulado == null) {
+            if (!crear) {
+                return null;
+            }
+            acumulado = new Acumulado();
+            TransactionSynchronizationManager.bindResource(this, acumulado);
+            TransactionSynchronizationManager.registerSynchronization(acumulado);
+        }
+        return crear ? acumulado.porLocal.computeIfAbsent(localId, id -> new Movimientos(franja(id)))
+                : acumulado.porLocal.get(localId);
+    }
+
+    // Lo movido por una transacción en un local
+    private static class Movimientos {
+        private final int franja;
+        private final Map<Long, Integer> reservados = new HashMap<>();
+        private final Map<Long, Integer> reposiciones = new HashMap<>();
+        private final Map<Long, Integer> fijaciones = new LinkedHashMap<>();
+        // Veces que la transacción fijó cada estado (se sueltan al terminar)
+        private final Map<Long, Integer> abiertos = new HashMap<>();
+        // Delta de cada fijación contra el valor que había en la base al escribirla
+        private final Map<Long, Integer> ajustes = new HashMap<>();
+
+        private Movimientos(int franja) {
+            this.franja = franja;
+        }
+    }
+
+    // Lo movido por una transacción; se escribe antes del commit y se confirma o libera al terminar
+    private class Acumulado implements TransactionSynchronization {
+        private final Map<Long, Movimientos> porLocal = new TreeMap<>();
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(MotorStockService.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(MotorStockService.this, this);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            porLocal.values().forEach(MotorStockService.this::escribir);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(MotorStockService.this);
+            porLocal.values().forEach(movimientos -> {
+                if (status == STATUS_COMMITTED) {
+                    enviar(movimientos.franja, () -> confirmar(movimientos));
+                } else if (status == STATUS_ROLLED_BACK) {
+                    enviar(movimientos.franja, () -> liberar(movimientos));
+                } else {
+                    // No se sabe si el commit llegó a la base: recargar estos productos
+                    enviar(movimientos.franja, () -> {
+                        movimientos.abiertos.keySet().forEach(id -> estados.get(id).invalidado = true);
+                        liberar(movimientos);
+                    });
+                }
+            });
+        }
+    }
+
+    // Franjas
+
+    private int franja(Long localId) {
+        return (int) Math.floorMod(localId, (long) escritores.length);
+    }
+
+    private <T> T ejecutar(int franja, Callable<T> tarea) {
+        try {
+            return escritores[franja].submit(tarea).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Operación de stock interrumpida");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException("Error en el motor de stock: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void enviar(int franja, Runnable tarea) {
+        escritores[franja].execute(() -> {
+            try {
+                tarea.run();
+            } catch (RuntimeException e) {
+                log.error("Error aplicando stock en la franja {}: {}", franja, e.getMessage());
+            }
+        });
+    }
+
+    private static void esperar() {
+        try {
+            Thread.sleep(ESPERA_REINTENTO_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Operación de stock interrumpida");
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (!habilitado) {
+            return;
+        }
+        // Todo lo confirmado ya está en la base: solo queda terminar las tareas encoladas
+        limpieza.shutdown();
+        for (ExecutorService escritor : escritores) {
+            escritor.shutdown();
+            try {
+                escritor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Resultado de una tarea del escritor (null si hay que volver a leer y reintentar)
+    private record Listo<T>(T valor) {}
+
+    private static class EstadoStock {
+        private final int franja;
+        // Stock confirmado en la base
+        private int base;
+        // Reservado por transacciones en curso
+        private int enVuelo;
+        // Movimientos de transacciones en curso; mientras haya alguno el estado no se desaloja
+        private int abiertos;
+        private volatile boolean invalidado = false;
+        private long ultimoUso = System.currentTimeMillis();
+
+        private EstadoStock(int franja, int base) {
+            this.franja = franja;
+            this.base = base;
+        }
+
+        private int disponible() {
+            return base - enVuelo;
+        }
+
+        private void tocar() {
+            ultimoUso = System.currentTimeMillis();
+        }
+    }
+}
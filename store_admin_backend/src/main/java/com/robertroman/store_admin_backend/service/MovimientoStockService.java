@@ -0,0 +1,269 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.entity.MovimientoInventario;
+import com.robertroman.store_admin_backend.entity.ProductoLocal;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Punto único para mover stock de ProductoLocal.
+// Sin motor, escribe la fila con UPDATE relativos (o las particiones si el producto está en modo
+// escrow); con stock.motor.enabled, delega en el escritor único del local (que ya evita la
+// contención, así que ahí no se usan particiones). La columna stock de la entidad no se escribe en
+// el flush: la entidad solo refleja el cambio, y ningún camino pisa el stock con un valor leído antes.
+// Lo retenido por reservas de otros canastos no se puede vender.
+// Todo movimiento confirmado queda registrado en el libro de inventario.
+@Service
+public class MovimientoStockService {
+
+    private static final String SQL_SUMAR =
+            "UPDATE productos_locales SET stock = stock + ?, updated_at = ? WHERE id = ?";
+
+    // Solo si todavía alcanza, sin tocar lo retenido por otros
+    private static final String SQL_DESCONTAR =
+            "UPDATE productos_locales SET stock = stock - ?, updated_at = ? WHERE id = ? AND stock >= ?";
+
+    private static final String SQL_FIJAR =
+            "UPDATE productos_locales SET stock = ?, updated_at = ? OUTPUT DELETED.stock WHERE id = ?";
+
+    private static final String SQL_STOCK =
+            "SELECT stock FROM productos_locales WHERE id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MotorStockService motorStock;
+
+    @Autowired
+    private StockEscrowService stockEscrow;
+
+    @Autowired
+    private RetencionesStock retenciones;
+
+    @Autowired
+    private LibroInventarioService libroInventario;
+
+    // Descontar stock de varios productos de un mismo local (todo o nada), sin contar como ajeno
+    // lo retenido por la reserva propia (cantidad por productoId).
+    // Devuelve el motivo del rechazo, o null si se descontó todo.
+    public String descontar(Map<ProductoLocal, Integer> cantidades, Map<Long, Integer> retenidoPropio,
+                            MovimientoInventario.Motivo motivo, String referencia) {
+        String error = descontarStock(cantidades, retenidoPropio);
+        if (error == null) {
+            cantidades.forEach((productoLocal, cantidad) ->
+                    libroInventario.registrar(productoLocal, -cantidad, motivo, referencia));
+        }
+        return error;
+    }
+
+    private String descontarStock(Map<ProductoLocal, Integer> cantidades, Map<Long, Integer> retenidoPropio) {
+        if (cantidades.isEmpty()) {
+            return null;
+        }
+
+        Map<ProductoLocal, Integer> retenidoAjeno = new HashMap<>();
+        cantidades.keySet().forEach(productoLocal -> retenidoAjeno.put(productoLocal,
+                retenidoAjeno(productoLocal, retenidoPropio.getOrDefault(productoLocal.getProducto().getId(), 0))));
+
+        if (!motorStock.estaHabilitado()) {
+            return descontarSinMotor(cantidades, retenidoAjeno);
+        }
+
+        Long localId = cantidades.keySet().iterator().next().getLocal().getId();
+        Map<Long, ProductoLocal> porId = new LinkedHashMap<>();
+        Map<Long, Integer> porIdCantidad = new LinkedHashMap<>();
+        Map<Long, Integer> porIdRetenido = new HashMap<>();
+        cantidades.forEach((productoLocal, cantidad) -> {
+            if (!productoLocal.getLocal().getId().equals(localId)) {
+                throw new RuntimeException("Todos los productos deben pertenecer al mismo local");
+            }
+            porId.put(productoLocal.getId(), productoLocal);
+            porIdCantidad.put(productoLocal.getId(), cantidad);
+            porIdRetenido.put(productoLocal.getId(), retenidoAjeno.get(productoLocal));
+        });
+
+        Long sinStock = motorStock.reservar(localId, porIdCantidad, porIdRetenido);
+        if (sinStock == null) {
+            return null;
+        }
+        return mensajeStockInsuficiente(porId.get(sinStock),
+                motorStock.stockDisponible(localId, sinStock) - porIdRetenido.get(sinStock),
+                porIdCantidad.get(sinStock));
+    }
+
+    private String descontarSinMotor(Map<ProductoLocal, Integer> cantidades, Map<ProductoLocal, Integer> retenidoAjeno) {
+        // Primero lo que se puede verificar sin escribir
+        for (Map.Entry<ProductoLocal, Integer> entry : cantidades.entrySet()) {
+            ProductoLocal productoLocal = entry.getKey();
+            int ajeno = retenidoAjeno.get(productoLocal);
+            int stock;
+            if (!productoLocal.usaEscrow()) {
+                stock = productoLocal.getStock();
+            } else if (ajeno > 0) {
+                stock = stockEscrow.stockTotal(productoLocal.getId());
+            } else {
+                continue;
+            }
+            if (stock - ajeno < entry.getValue()) {
+                return mensajeStockInsuficiente(productoLocal, stock - ajeno, entry.getValue());
+            }
+        }
+
+        // Particiones: si una no alcanza, devolver lo ya descontado en esta venta.
+        // Siempre en orden de ID, para que un rebalanceo nunca espere particiones de un producto
+        // que otra venta tomó antes que las de este.
+        Map<ProductoLocal, Integer> descontadas = new LinkedHashMap<>();
+        List<Map.Entry<ProductoLocal, Integer>> enEscrow = cantidades.entrySet().stream()
+                .filter(entry -> entry.getKey().usaEscrow())
+                .sorted(Comparator.comparing(entry -> entry.getKey().getId()))
+                .toList();
+        for (Map.Entry<ProductoLocal, Integer> entry : enEscrow) {
+            ProductoLocal productoLocal = entry.getKey();
+            if (!stockEscrow.descontar(productoLocal, entry.getValue())) {
+                descontadas.forEach(stockEscrow::reponer);
+                return mensajeStockInsuficiente(productoLocal,
+                        stockEscrow.stockTotal(productoLocal.getId()), entry.getValue());
+            }
+            descontadas.put(productoLocal, entry.getValue());
+        }
+
+        // Filas: un solo lote de descuentos condicionales, en orden de ID. Si otra venta se llevó el
+        // stock desde la verificación, se devuelve todo lo descontado en esta llamada.
+        List<Map.Entry<ProductoLocal, Integer>> enFila = cantidades.entrySet().stream()
+                .filter(entry -> !entry.getKey().usaEscrow())
+                .sorted(Comparator.comparing(entry -> entry.getKey().getId()))
+                .toList();
+        if (enFila.isEmpty()) {
+            return null;
+        }
+        Timestamp ahora = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> parametros = new ArrayList<>(enFila.size());
+        enFila.forEach(entry -> parametros.add(new Object[]{entry.getValue(), ahora, entry.getKey().getId(),
+                entry.getValue() + retenidoAjeno.get(entry.getKey())}));
+        int[] filas = jdbcTemplate.batchUpdate(SQL_DESCONTAR, parametros);
+
+        for (int i = 0; i < filas.length; i++) {
+            if (filas[i] == 0) {
+                List<Object[]> devolver = new ArrayList<>();
+                for (int j = 0; j < filas.length; j++) {
+                    if (filas[j] != 0) {
+                        devolver.add(new Object[]{enFila.get(j).getValue(), ahora, enFila.get(j).getKey().getId()});
+                    }
+                }
+                if (!devolver.isEmpty()) {
+                    jdbcTemplate.batchUpdate(SQL_SUMAR, devolver);
+                }
+                descontadas.forEach(stockEscrow::reponer);
+                ProductoLocal productoLocal = enFila.get(i).getKey();
+                Integer stock = jdbcTemplate.queryForObject(SQL_STOCK, Integer.class, productoLocal.getId());
+                return mensajeStockInsuficiente(productoLocal,
+                        (stock != null ? stock : 0) - retenidoAjeno.get(productoLocal), enFila.get(i).getValue());
+            }
+        }
+
+        // Reflejar en la entidad (no se escribe en el flush)
+        enFila.forEach(entry -> entry.getKey().setStock(entry.getKey().getStock() - entry.getValue()));
+        return null;
+    }
+
+    // Descontar stock de un producto; lanza excepción si no alcanza
+    public void descontar(ProductoLocal productoLocal, int cantidad, int retenidoPropio,
+                          MovimientoInventario.Motivo motivo, String referencia) {
+        String error = descontar(Map.of(productoLocal, cantidad),
+                Map.of(productoLocal.getProducto().getId(), retenidoPropio), motivo, referencia);
+        if (error != null) {
+            throw new RuntimeException(error);
+        }
+    }
+
+    // Sumar stock (cancelaciones, devoluciones, reposiciones)
+    public void reponer(ProductoLocal productoLocal, int cantidad, MovimientoInventario.Motivo motivo,
+                        String referencia) {
+        if (motorStock.estaHabilitado()) {
+            motorStock.reponer(productoLocal.getLocal().getId(), productoLocal.getId(), cantidad);
+        } else if (productoLocal.usaEscrow()) {
+            stockEscrow.reponer(productoLocal, cantidad);
+        } else {
+            jdbcTemplate.update(SQL_SUMAR, cantidad, Timestamp.valueOf(LocalDateTime.now()), productoLocal.getId());
+            productoLocal.aumentarStock(cantidad);
+        }
+        libroInventario.registrar(productoLocal, cantidad, motivo, referencia);
+    }
+
+    // Sumar stock de varios productos (devoluciones, cancelaciones) con un solo lote de UPDATE relativos.
+    // Como ningún camino escribe el stock absoluto leído antes, el delta no pisa ventas concurrentes
+    // ni es pisado por ellas.
+    public void reponer(Map<ProductoLocal, Integer> cantidades, MovimientoInventario.Motivo motivo,
+                        String referencia) {
+        Timestamp ahora = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> parametros = new ArrayList<>();
+        cantidades.forEach((productoLocal, cantidad) -> {
+            if (motorStock.estaHabilitado()) {
+                motorStock.reponer(productoLocal.getLocal().getId(), productoLocal.getId(), cantidad);
+            } else if (productoLocal.usaEscrow()) {
+                stockEscrow.reponer(productoLocal, cantidad);
+            } else {
+                parametros.add(new Object[]{cantidad, ahora, productoLocal.getId()});
+                productoLocal.aumentarStock(cantidad);
+            }
+            libroInventario.registrar(productoLocal, cantidad, motivo, referencia);
+        });
+        if (!parametros.isEmpty()) {
+            jdbcTemplate.batchUpdate(SQL_SUMAR, parametros);
+        }
+    }
+
+    // Fijar stock absoluto (ajuste manual); en el libro queda la diferencia con el stock confirmado
+    public void fijar(ProductoLocal productoLocal, int nuevoStock, MovimientoInventario.Motivo motivo,
+                      String referencia) {
+        int anterior;
+        if (motorStock.estaHabilitado()) {
+            anterior = motorStock.stockConfirmado(productoLocal.getLocal().getId(), productoLocal.getId());
+            motorStock.fijar(productoLocal.getLocal().getId(), productoLocal.getId(), nuevoStock);
+        } else if (productoLocal.usaEscrow()) {
+            anterior = stockEscrow.fijar(productoLocal, nuevoStock);
+        } else {
+            Integer enBase = jdbcTemplate.queryForObject(SQL_FIJAR, Integer.class,
+                    nuevoStock, Timestamp.valueOf(LocalDateTime.now()), productoLocal.getId());
+            anterior = enBase != null ? enBase : 0;
+            productoLocal.setStock(nuevoStock);
+        }
+        libroInventario.registrar(productoLocal, nuevoStock - anterior, motivo, referencia);
+    }
+
+    // Stock vigente (con motor, el del escritor del local, con lo movido por la transacción actual)
+    public int stockActual(ProductoLocal productoLocal) {
+        if (motorStock.estaHabilitado()) {
+            return motorStock.stockDisponible(productoLocal.getLocal().getId(), productoLocal.getId());
+        }
+        if (productoLocal.usaEscrow()) {
+            return stockEscrow.stockTotal(productoLocal.getId());
+        }
+        return productoLocal.getStock();
+    }
+
+    // Stock disponible para vender: vigente menos lo retenido por reservas
+    public int stockDisponible(ProductoLocal productoLocal) {
+        return stockActual(productoLocal) - retenidoAjeno(productoLocal, 0);
+    }
+
+    private int retenidoAjeno(ProductoLocal productoLocal, int propio) {
+        int total = retenciones.retenido(productoLocal.getLocal().getId(), productoLocal.getProducto().getId());
+        return Math.max(0, total - propio);
+    }
+
+    private String mensajeStockInsuficiente(ProductoLocal productoLocal, int disponible, int solicitado) {
+        return "Stock insuficiente para el producto: " + productoLocal.getProducto().getNombre() +
+                ". Stock disponible: " + disponible + ", solicitado: " + solicitado;
+    }
+}
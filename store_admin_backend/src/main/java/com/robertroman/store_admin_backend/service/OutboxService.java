@@ -0,0 +1,506 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.robertroman.store_admin_backend.entity.DetalleVenta;
+import com.robertroman.store_admin_backend.entity.EventoOutbox;
+import com.robertroman.store_admin_backend.entity.Venta;
+import com.robertroman.store_admin_backend.repository.EventoOutboxRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Outbox transaccional para el procesamiento posterior a las ventas.
+// Los eventos se insertan en un solo lote antes del commit de la transacción que los origina, así
+// existen si y solo si la venta existe y el checkout no espera a ningún consumidor. Un despachador
+// en proceso los lee por lotes y los entrega a los ManejadorEventoOutbox registrados: los locales
+// se procesan en paralelo, los eventos de un mismo local en orden de id, y un evento que falla se
+// reintenta con espera exponencial frenando a los siguientes de su local hasta agotar los intentos.
+// Cada lote se reclama antes de procesarlo (procesando_por y reclamado_hasta), así con varias
+// instancias ningún evento se entrega dos veces mientras dure el reclamo, y un local no avanza en
+// otra instancia mientras tenga eventos anteriores reclamados.
+// El id sigue el orden de inserción, no el de commit: el reclamo no saltea filas bloqueadas (un evento
+// de una transacción que todavía no confirmó, o un reclamo en curso de otra instancia) sino que las
+// espera, así un evento nunca se entrega antes que uno de id menor de su local que iba a confirmar.
+// El orden deja de valer cuando un evento agota sus intentos (FALLIDO ya no frena al local) y se
+// reencola a mano después: los consumidores tienen que tolerar eventos fuera de orden.
+// Si una instancia se cae, sus eventos vuelven a estar disponibles al vencer outbox.reclamo-ms.
+@Service
+public class OutboxService implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxService.class);
+
+    private static final String SQL_INSERTAR =
+            "INSERT INTO eventos_outbox (local_id, tipo, agregado_id, payload, estado, intentos, proximo_intento, fecha_creacion) " +
+            "VALUES (?, ?, ?, ?, 'PENDIENTE', 0, ?, ?)";
+
+    // Reclamar vencidos, libres (o ya nuestros) y sin un evento anterior del mismo local esperando
+    // reintento o reclamado por otra instancia. Sin READPAST y con lectura bloqueante también en la
+    // subconsulta (READCOMMITTEDLOCK, aunque la base use versionado de filas): una fila insertada por
+    // una transacción abierta o reclamada en este momento por otra instancia se espera en lugar de
+    // saltearla, así no se reclama un evento posterior de su local antes que ella. La espera es corta:
+    // los eventos se insertan justo antes del commit y el reclamo es una sola sentencia.
+    private static final String SQL_RECLAMAR =
+            "WITH lote AS (" +
+            "  SELECT TOP (?) o.* FROM eventos_outbox o WITH (UPDLOCK, ROWLOCK) " +
+            "  WHERE o.estado = 'PENDIENTE' AND o.proximo_intento <= ? " +
+            "  AND (o.procesando_por IS NULL OR o.reclamado_hasta < ? OR o.procesando_por = ?) " +
+            "  AND NOT EXISTS (SELECT 1 FROM eventos_outbox a WITH (READCOMMITTEDLOCK) " +
+            "                  WHERE a.local_id = o.local_id AND a.estado = 'PENDIENTE' " +
+            "                  AND a.id < o.id AND (a.proximo_intento > ? " +
+            "                       OR (a.procesando_por <> ? AND a.reclamado_hasta >= ?))) " +
+            "  ORDER BY o.id) " +
+            "UPDATE lote SET procesando_por = ?, reclamado_hasta = ? " +
+            "OUTPUT INSERTED.id, INSERTED.local_id, INSERTED.tipo, INSERTED.agregado_id, INSERTED.payload, " +
+            "INSERTED.intentos, INSERTED.fecha_creacion";
+
+    private static final String SQL_PROCESADO =
+            "UPDATE eventos_outbox SET estado = 'PROCESADO', fecha_procesado = ?, ultimo_error = NULL, " +
+            "procesando_por = NULL, reclamado_hasta = NULL WHERE id = ?";
+
+    private static final String SQL_FALLO =
+            "UPDATE eventos_outbox SET estado = ?, intentos = ?, proximo_intento = ?, ultimo_error = ?, " +
+            "procesando_por = NULL, reclamado_hasta = NULL WHERE id = ?";
+
+    // Lo reclamado que no llegó a procesarse (interrupción) vuelve a quedar libre
+    private static final String SQL_LIBERAR =
+            "UPDATE eventos_outbox SET procesando_por = NULL, reclamado_hasta = NULL " +
+            "WHERE id = ? AND estado = 'PENDIENTE' AND procesando_por = ?";
+
+    private static final String SQL_REINTENTAR =
+            "UPDATE eventos_outbox SET estado = 'PENDIENTE', intentos = 0, proximo_intento = ?, ultimo_error = NULL, " +
+            "procesando_por = NULL, reclamado_hasta = NULL WHERE estado = 'FALLIDO'";
+
+    private static final String SQL_PURGAR =
+            "DELETE TOP (?) FROM eventos_outbox WHERE estado = 'PROCESADO' AND fecha_procesado < ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EventoOutboxRepository eventoOutboxRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Se resuelven al primer uso: los manejadores pueden depender de este servicio
+    @Autowired
+    private ObjectProvider<ManejadorEventoOutbox> proveedorManejadores;
+
+    private volatile List<ManejadorEventoOutbox> manejadores;
+
+    private final ExecutorService procesadores;
+    private final int tamanoLote;
+    private final int maxIntentos;
+    private final long esperaBaseMs;
+    private final long esperaMaximaMs;
+    private final int retencionHoras;
+
+    // Identifica a esta instancia en los reclamos
+    private final String instancia = UUID.randomUUID().toString();
+
+    @Value("${outbox.reclamo-ms:300000}")
+    private long reclamoMs;
+
+    private final AtomicLong procesados = new AtomicLong();
+    private final AtomicLong reintentos = new AtomicLong();
+    private final AtomicLong fallidos = new AtomicLong();
+    private volatile LocalDateTime ultimoDespacho;
+
+    public OutboxService(@Value("${outbox.hilos:4}") int hilos,
+                         @Value("${outbox.tamano-lote:200}") int tamanoLote,
+                         @Value("${outbox.max-intentos:10}") int maxIntentos,
+                         @Value("${outbox.espera-base-ms:1000}") long esperaBaseMs,
+                         @Value("${outbox.espera-maxima-ms:600000}") long esperaMaximaMs,
+                         @Value("${outbox.retencion-horas:72}") int retencionHoras) {
+        AtomicLong numero = new AtomicLong();
+        this.procesadores = Executors.newFixedThreadPool(hilos, r -> {
+            Thread hilo = new Thread(r, "outbox-" + numero.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        this.tamanoLote = tamanoLote;
+        this.maxIntentos = maxIntentos;
+        this.esperaBaseMs = esperaBaseMs;
+        this.esperaMaximaMs = esperaMaximaMs;
+        this.retencionHoras = retencionHoras;
+    }
+
+    // Registrar un evento; dentro de una transacción se inserta junto con el resto antes del commit
+    public void registrar(Long localId, EventoOutbox.Tipo tipo, Long agregadoId, Object datos) {
+        // Un tipo sin consumidores no se guarda
+        if (manejadores().stream().noneMatch(manejador -> manejador.tipos().contains(tipo))) {
+            return;
+        }
+
+        String payload;
+        try {
+            payload = datos != null ? objectMapper.writeValueAsString(datos) : null;
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("No se pudo serializar el evento " + tipo + ": " + e.getMessage());
+        }
+        Object[] fila = {localId, tipo.name(), agregadoId, payload, null, null};
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            Timestamp ahora = Timestamp.valueOf(LocalDateTime.now());
+            fila[4] = ahora;
+            fila[5] = ahora;
+            jdbcTemplate.update(SQL_INSERTAR, fila);
+            return;
+        }
+
+        Pendientes pendientes = (Pendientes) TransactionSynchronizationManager.getResource(this);
+        if (pendientes == null) {
+            pendientes = new Pendientes();
+            TransactionSynchronizationManager.bindResource(this, pendientes);
+            TransactionSynchronizationManager.registerSynchronization(pendientes);
+        }
+        pendientes.filas.add(fila);
+    }
+
+    // Venta confirmada con sus líneas
+    public void ventaRegistrada(Venta venta) {
+        if (manejadores().isEmpty()) {
+            return;
+        }
+        List<ItemVendido> items = new ArrayList<>(venta.getDetalles().size());
+        for (DetalleVenta detalle : venta.getDetalles()) {
+            items.add(new ItemVendido(detalle.getProductoLocal().getProducto().getId(),
+                    detalle.getProductoLocal().getId(), detalle.getCantidad(), detalle.getSubtotal()));
+        }
+        registrar(venta.getLocal().getId(), EventoOutbox.Tipo.VENTA_REGISTRADA, venta.getId(),
+                new DatosVenta(venta.getId(), venta.getNumeroFactura(), venta.getTotal(), venta.getFechaVenta(), items));
+    }
+
+    // Leer el payload de un evento (para los manejadores)
+    public <T> T leer(EventoOutbox evento, Class<T> tipo) {
+        try {
+            return objectMapper.readValue(evento.getPayload(), tipo);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Payload inválido en el evento " + evento.getId() + ": " + e.getMessage());
+        }
+    }
+
+    // Despachar lo pendiente; si el lote vino lleno se sigue leyendo hasta vaciar
+    @Scheduled(fixedDelayString = "${outbox.intervalo-ms:500}")
+    public void despachar() {
+        if (manejadores().isEmpty()) {
+            return;
+        }
+
+        int leidos;
+        do {
+            LocalDateTime momento = LocalDateTime.now();
+            Timestamp ahora = Timestamp.valueOf(momento);
+            Timestamp hasta = Timestamp.valueOf(momento.plusNanos(reclamoMs * 1_000_000));
+            List<EventoOutbox> lote = new ArrayList<>(jdbcTemplate.query(SQL_RECLAMAR, (rs, rowNum) -> {
+                EventoOutbox evento = new EventoOutbox();
+                evento.setId(rs.getLong("id"));
+                evento.setLocalId(rs.getLong("local_id"));
+                evento.setTipo(EventoOutbox.Tipo.valueOf(rs.getString("tipo")));
+                long agregadoId = rs.getLong("agregado_id");
+                evento.setAgregadoId(rs.wasNull() ? null : agregadoId);
+                evento.setPayload(rs.getString("payload"));
+                evento.setIntentos(rs.getInt("intentos"));
+                evento.setFechaCreacion(rs.getTimestamp("fecha_creacion").toLocalDateTime());
+                return evento;
+            }, tamanoLote, ahora, ahora, instancia, ahora, instancia, ahora, instancia, hasta));
+            // OUTPUT no garantiza el orden
+            lote.sort(Comparator.comparing(EventoOutbox::getId));
+            leidos = lote.size();
+            if (leidos == 0) {
+                break;
+            }
+            procesarLote(lote);
+            ultimoDespacho = LocalDateTime.now();
+        } while (leidos >= tamanoLote);
+    }
+
+    private void procesarLote(List<EventoOutbox> lote) {
+        Map<Long, List<EventoOutbox>> porLocal = new LinkedHashMap<>();
+        lote.forEach(evento -> porLocal.computeIfAbsent(evento.getLocalId(), id -> new ArrayList<>()).add(evento));
+
+        List<Callable<ResultadoLocal>> tareas = new ArrayList<>(porLocal.size());
+        porLocal.values().forEach(eventos -> tareas.add(() -> procesarLocal(eventos)));
+
+        List<Object[]> ok = new ArrayList<>();
+        List<Object[]> fallos = new ArrayList<>();
+        Set<Long> resueltos = new HashSet<>();
+        try {
+            for (Future<ResultadoLocal> futuro : procesadores.invokeAll(tareas)) {
+                ResultadoLocal resultado = futuro.get();
+                Timestamp fecha = Timestamp.valueOf(LocalDateTime.now());
+                resultado.procesados.forEach(id -> ok.add(new Object[]{fecha, id}));
+                resueltos.addAll(resultado.procesados);
+                if (resultado.fallido != null) {
+                    fallos.add(fila(resultado.fallido, resultado.error));
+                    resueltos.add(resultado.fallido.getId());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Error inesperado en el despachador del outbox", e.getCause());
+        }
+
+        if (!ok.isEmpty()) {
+            jdbcTemplate.batchUpdate(SQL_PROCESADO, ok);
+        }
+        if (!fallos.isEmpty()) {
+            jdbcTemplate.batchUpdate(SQL_FALLO, fallos);
+        }
+        // Los que quedaron detrás de un fallo (o sin procesar) se sueltan para el próximo ciclo
+        List<Object[]> libres = new ArrayList<>();
+        lote.stream().filter(evento -> !resueltos.contains(evento.getId()))
+                .forEach(evento -> libres.add(new Object[]{evento.getId(), instancia}));
+        if (!libres.isEmpty()) {
+            jdbcTemplate.batchUpdate(SQL_LIBERAR, libres);
+        }
+    }
+
+    // Eventos de un local en orden; al primer fallo se corta para no desordenarlos
+    private ResultadoLocal procesarLocal(List<EventoOutbox> eventos) {
+        ResultadoLocal resultado = new ResultadoLocal();
+        for (EventoOutbox evento : eventos) {
+            try {
+                for (ManejadorEventoOutbox manejador : manejadores()) {
+                    if (manejador.tipos().contains(evento.getTipo())) {
+                        manejador.manejar(evento);
+                    }
+                }
+                resultado.procesados.add(evento.getId());
+                procesados.incrementAndGet();
+            } catch (Exception e) {
+                resultado.fallido = evento;
+                resultado.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+                log.warn("Evento {} del outbox falló (intento {}): {}", evento.getId(), evento.getIntentos() + 1,
+                        resultado.error);
+                break;
+            }
+        }
+        return resultado;
+    }
+
+    // Próximo intento con espera exponencial; agotados los intentos queda FALLIDO y el local sigue
+    private Object[] fila(EventoOutbox evento, String error) {
+        int intentos = evento.getIntentos() + 1;
+        EventoOutbox.Estado estado;
+        if (intentos >= maxIntentos) {
+            estado = EventoOutbox.Estado.FALLIDO;
+            fallidos.incrementAndGet();
+            log.error("Evento {} del outbox ({}) descartado tras {} intentos", evento.getId(), evento.getTipo(), intentos);
+        } else {
+            estado = EventoOutbox.Estado.PENDIENTE;
+            reintentos.incrementAndGet();
+        }
+        long espera = Math.min(esperaMaximaMs, esperaBaseMs << Math.min(intentos - 1, 20));
+        String mensaje = error.length() > 500 ? error.substring(0, 500) : error;
+        return new Object[]{estado.name(), intentos, Timestamp.valueOf(LocalDateTime.now().plusNanos(espera * 1_000_000)),
+                mensaje, evento.getId()};
+    }
+
+    // Volver a encolar los eventos que agotaron sus reintentos
+    public int reintentarFallidos() {
+        return jdbcTemplate.update(SQL_REINTENTAR, Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    // Borrar por tandas lo procesado que superó la retención
+    @Scheduled(cron = "${outbox.purga.cron:0 0 * * * *}")
+    public void purgar() {
+        Timestamp limite = Timestamp.valueOf(LocalDateTime.now().minusHours(retencionHoras));
+        int borrados;
+        do {
+            borrados = jdbcTemplate.update(SQL_PURGAR, tamanoLote, limite);
+        } while (borrados >= tamanoLote);
+    }
+
+    // Estado del outbox para monitoreo
+    public EstadoOutbox obtenerEstado() {
+        EstadoOutbox estado = new EstadoOutbox();
+        for (Object[] fila : eventoOutboxRepository.contarPorEstado()) {
+            long cantidad = ((Number) fila[1]).longValue();
+            switch ((EventoOutbox.Estado) fila[0]) {
+                case PENDIENTE -> estado.setPendientes(cantidad);
+                case PROCESADO -> estado.setProcesados(cantidad);
+                case FALLIDO -> estado.setFallidos(cantidad);
+            }
+        }
+        estado.setManejadores(manejadores().stream().map(m -> m.getClass().getSimpleName()).toList());
+        estado.setProcesadosDesdeInicio(procesados.get());
+        estado.setReintentosDesdeInicio(reintentos.get());
+        estado.setDescartadosDesdeInicio(fallidos.get());
+        estado.setUltimoDespacho(ultimoDespacho);
+        estado.setUltimosFallidos(eventoOutboxRepository.findTop100ByEstadoOrderByIdDesc(EventoOutbox.Estado.FALLIDO));
+        return estado;
+    }
+
+    private List<ManejadorEventoOutbox> manejadores() {
+        List<ManejadorEventoOutbox> lista = manejadores;
+        if (lista == null) {
+            lista = proveedorManejadores.orderedStream().toList();
+            manejadores = lista;
+        }
+        return lista;
+    }
+
+    @Override
+    public void destroy() {
+        procesadores.shutdownNow();
+    }
+
+    // Eventos pendientes de la transacción actual
+    private class Pendientes implements TransactionSynchronization {
+        private final List<Object[]> filas = new ArrayList<>();
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(OutboxService.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(OutboxService.this, this);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            Timestamp ahora = Timestamp.valueOf(LocalDateTime.now());
+            filas.forEach(fila -> {
+                fila[4] = ahora;
+                fila[5] = ahora;
+            });
+            jdbcTemplate.batchUpdate(SQL_INSERTAR, filas);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(OutboxService.this);
+        }
+    }
+
+    private static class ResultadoLocal {
+        private final List<Long> procesados = new ArrayList<>();
+        private EventoOutbox fallido;
+        private String error;
+    }
+
+    // Payloads (la fecha es siempre la de la venta original)
+    public static class DatosVenta {
+        private Long ventaId;
+        private String numero;
+        private BigDecimal total;
+        private LocalDateTime fecha;
+        private List<ItemVendido> items;
+
+        public DatosVenta() {}
+
+        public DatosVenta(Long ventaId, String numero, BigDecimal total, LocalDateTime fecha, List<ItemVendido> items) {
+            this.ventaId = ventaId;
+            this.numero = numero;
+            this.total = total;
+            this.fecha = fecha;
+            this.items = items;
+        }
+
+        // Getters y Setters
+        public Long getVentaId() { return ventaId; }
+        public void setVentaId(Long ventaId) { this.ventaId = ventaId; }
+
+        public String getNumero() { return numero; }
+        public void setNumero(String numero) { this.numero = numero; }
+
+        public BigDecimal getTotal() { return total; }
+        public void setTotal(BigDecimal total) { this.total = total; }
+
+        public LocalDateTime getFecha() { return fecha; }
+        public void setFecha(LocalDateTime fecha) { this.fecha = fecha; }
+
+        public List<ItemVendido> getItems() { return items; }
+        public void setItems(List<ItemVendido> items) { this.items = items; }
+    }
+
+    public static class ItemVendido {
+        private Long productoId;
+        private Long productoLocalId;
+        private Integer cantidad;
+        private BigDecimal monto;
+
+        public ItemVendido() {}
+
+        public ItemVendido(Long productoId, Long productoLocalId, Integer cantidad, BigDecimal monto) {
+            this.productoId = productoId;
+            this.productoLocalId = productoLocalId;
+            this.cantidad = cantidad;
+            this.monto = monto;
+        }
+
+        // Getters y Setters
+        public Long getProductoId() { return productoId; }
+        public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+        public Long getProductoLocalId() { return productoLocalId; }
+        public void setProductoLocalId(Long productoLocalId) { this.productoLocalId = productoLocalId; }
+
+        public Integer getCantidad() { return cantidad; }
+        public void setCantidad(Integer cantidad) { this.cantidad = cantidad; }
+
+        public BigDecimal getMonto() { return monto; }
+        public void setMonto(BigDecimal monto) { this.monto = monto; }
+    }
+
+    // DTO
+    public static class EstadoOutbox {
+        private long pendientes;
+        private long procesados;
+        private long fallidos;
+        private List<String> manejadores;
+        private long procesadosDesdeInicio;
+        private long reintentosDesdeInicio;
+        private long descartadosDesdeInicio;
+        private LocalDateTime ultimoDespacho;
+        private List<EventoOutbox> ultimosFallidos;
+
+        // Getters y Setters
+        public long getPendientes() { return pendientes; }
+        public void setPendientes(long pendientes) { this.pendientes = pendientes; }
+
+        public long getProcesados() { return procesados; }
+        public void setProcesados(long procesados) { this.procesados = procesados; }
+
+        public long getFallidos() { return fallidos; }
+        public void setFallidos(long fallidos) { this.fallidos = fallidos; }
+
+        public List<String> getManejadores() { return manejadores; }
+        public void setManejadores(List<String> manejadores) { this.manejadores = manejadores; }
+
+        public long getProcesadosDesdeInicio() { return procesadosDesdeInicio; }
+        public void setProcesadosDesdeInicio(long procesadosDesdeInicio) { this.procesadosDesdeInicio = procesadosDesdeInicio; }
+
+        public long getReintentosDesdeInicio() { return reintentosDesdeInicio; }
+        public void setReintentosDesdeInicio(long reintentosDesdeInicio) { this.reintentosDesdeInicio = reintentosDesdeInicio; }
+
+        public long getDescartadosDesdeInicio() { return descartadosDesdeInicio; }
+        public void setDescartadosDesdeInicio(long descartadosDesdeInicio) { this.descartadosDesdeInicio = descartadosDesdeInicio; }
+
+        public LocalDateTime getUltimoDespacho() { return ultimoDespacho; }
+        public void setUltimoDespacho(LocalDateTime ultimoDespacho) { this.ultimoDespacho = ultimoDespacho; }
+
+        public List<EventoOutbox> getUltimosFallidos() { return ultimosFallidos; }
+        public void setUltimosFallidos(List<EventoOutbox> ultimosFallidos) { this.ultimosFallidos = ultimosFallidos; }
+    }
+}
@@ -1,6 +1,10 @@
 package com.robertroman.store_admin_backend.service;
 
+import com.robertroman.store_admin_backend.config.Carril;
+import com.robertroman.store_admin_backend.config.CarrilEjecucion;
+import com.robertroman.store_admin_backend.dto.VersionRecurso;
 import com.robertroman.store_admin_backend.entity.Local;
+import com.robertroman.store_admin_backend.entity.MovimientoInventario;
 import com.robertroman.store_admin_backend.entity.Producto;
 import com.robertroman.store_admin_backend.entity.ProductoLocal;
 import com.robertroman.store_admin_backend.repository.LocalRepository;
@@ -16,6 +20,7 @@ import java.util.Optional;
 
 @Service
 @Transactional
+@CarrilEjecucion(Carril.TRANSACCIONAL)
 public class ProductoLocalService {
 
     @Autowired
@@ -30,6 +35,18 @@ public class ProductoLocalService {
     @Autowired
     private LocalService localService;
 
+    @Autowired
+    private CatalogoService catalogoService;
+
+    @Autowired
+    private MovimientoStockService movimientoStockService;
+
+    @Autowired
+    private StockEscrowService stockEscrowService;
+
+    @Autowired
+    private MotorStockService motorStockService;
+
     // Asignar producto a local (requerimiento principal)
     public ProductoLocal asignarProductoALocal(Long productoId, Long localId, Integer stock,
                                                BigDecimal precioVenta, Integer stockMinimo, Long usuarioId) {
@@ -78,9 +95,9 @@ public class ProductoLocalService {
         }
 
         ProductoLocal productoLocal = productoLocalOpt.get();
-        productoLocal.setStock(nuevoStock);
+        movimientoStockService.fijar(productoLocal, nuevoStock, MovimientoInventario.Motivo.AJUSTE, "usuario:" + usuarioId);
 
-        return productoLocalRepository.save(productoLocal);
+        return conStockVigente(productoLocalRepository.save(productoLocal));
     }
 
     // Actualizar precio de venta en local
@@ -107,13 +124,7 @@ public class ProductoLocalService {
         }
 
         ProductoLocal productoLocal = productoLocalOpt.get();
-
-        if (!productoLocal.tieneStockSuficiente(cantidad)) {
-            throw new RuntimeException("Stock insuficiente. Stock actual: " + productoLocal.getStock() +
-                    ", cantidad solicitada: " + cantidad);
-        }
-
-        productoLocal.reducirStock(cantidad);
+        movimientoStockService.descontar(productoLocal, cantidad, 0, MovimientoInventario.Motivo.SALIDA, null);
         return productoLocalRepository.save(productoLocal);
     }
 
@@ -128,11 +139,55 @@ public class ProductoLocalService {
         }
 
         ProductoLocal productoLocal = productoLocalOpt.get();
-        productoLocal.aumentarStock(cantidad);
+        movimientoStockService.reponer(productoLocal, cantidad, MovimientoInventario.Motivo.REPOSICION, "usuario:" + usuarioId);
+
+        return conStockVigente(productoLocalRepository.save(productoLocal));
+    }
+
+    // Con motor, la entidad no se modifica (el motor escribe el stock con un delta al confirmar):
+    // se devuelve con el valor del motor, que el flush no escribe (la columna no es actualizable)
+    private ProductoLocal conStockVigente(ProductoLocal productoLocal) {
+        if (motorStockService.estaHabilitado()) {
+            productoLocal.setStock(movimientoStockService.stockActual(productoLocal));
+        }
+        return productoLocal;
+    }
+
+    // Activar (particiones >= 2) o desactivar (null o 0) el modo escrow para ofertas relámpago
+    public ProductoLocal configurarEscrow(Long productoId, Long localId, Integer particiones, Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        if (motorStockService.estaHabilitado()) {
+            throw new RuntimeException("El modo escrow no aplica con el motor de stock activo");
+        }
+
+        // Bloquear la fila para que el stock no cambie mientras se reparte o se junta
+        Optional<ProductoLocal> productoLocalOpt =
+                productoLocalRepository.findByProductoIdAndLocalIdParaActualizar(productoId, localId);
+        if (productoLocalOpt.isEmpty()) {
+            throw new RuntimeException("Producto no asignado a este local");
+        }
+
+        ProductoLocal productoLocal = productoLocalOpt.get();
+        if (particiones == null || particiones == 0) {
+            stockEscrowService.desactivar(productoLocal);
+        } else {
+            stockEscrowService.activar(productoLocal, particiones);
+        }
 
         return productoLocalRepository.save(productoLocal);
     }
 
+    // Versión del inventario de un local (validador para GET condicional)
+    @Transactional(readOnly = true)
+    public VersionRecurso obtenerVersionInventario(Long localId, Long usuarioId) {
+        // Validar acceso al local antes de revelar cualquier cosa
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        return catalogoService.obtenerVersion(localId);
+    }
+
     // Obtener productos de un local (para dashboard)
     public List<ProductoLocal> obtenerProductosDeLocal(Long localId, Long usuarioId) {
         // Validar acceso al local
@@ -146,7 +201,7 @@ public class ProductoLocalService {
     public Optional<Integer> obtenerStock(Long productoId, Long localId) {
         Optional<ProductoLocal> productoLocalOpt = productoLocalRepository.findByProductoIdAndLocalId(productoId, localId);
         if (productoLocalOpt.isPresent()) {
-            return Optional.of(productoLocalOpt.get().getStock());
+            return Optional.of(movimientoStockService.stockActual(productoLocalOpt.get()));
         }
         return Optional.empty();
     }
@@ -209,7 +264,7 @@ public class ProductoLocalService {
     public boolean verificarDisponibilidadParaVenta(Long productoId, Long localId, Integer cantidad) {
         Optional<ProductoLocal> productoLocalOpt = productoLocalRepository.findByProductoIdAndLocalId(productoId, localId);
         if (productoLocalOpt.isPresent()) {
-            return productoLocalOpt.get().tieneStockSuficiente(cantidad);
+            return movimientoStockService.stockActual(productoLocalOpt.get()) >= cantidad;
         }
         return false;
     }
@@ -1,11 +1,13 @@
 package com.robertroman.store_admin_backend.service;
 
+import com.robertroman.store_admin_backend.dto.VersionRecurso;
 import com.robertroman.store_admin_backend.entity.Producto;
 import com.robertroman.store_admin_backend.repository.ProductoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -123,6 +125,18 @@ public class ProductoService {
         return productoRepository.findAll();
     }
 
+    // Versión de la colección de productos (validador para GET condicional)
+    @Transactional(readOnly = true)
+    public VersionRecurso obtenerVersionProductos() {
+        List<Object[]> resultado = productoRepository.findVersionProductos();
+        Object[] fila = resultado.isEmpty() ? new Object[3] : resultado.get(0);
+
+        VersionRecurso version = VersionRecurso.desdeAgregados((LocalDateTime) fila[0]);
+        version.setCantidad(fila[1] != null ? ((Number) fila[1]).longValue() : 0L);
+        version.setHuella(fila[2] != null ? ((Number) fila[2]).longValue() : 0L);
+        return version;
+    }
+
     // Eliminar producto completamente (usar con precaución)
     public void eliminarProducto(Long id) {
         if (!productoRepository.existsById(id)) {
@@ -0,0 +1,357 @@
+package com.robertroman.store_admin_backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Remarcación masiva de precios de venta (porcentaje, monto fijo y redondeo) filtrando por
+// categoría, locales y SKUs. El nuevo precio se calcula en la base: la simulación es una sola
+// consulta agregada y la aplicación recorre los productos por rangos de ID, cada rango con un
+// único UPDATE en su propia transacción para no retener bloqueos durante todo el proceso.
+// Un porcentaje aplicado dos veces se acumula: para reintentar una aplicación interrumpida se
+// reenvía la misma solicitud con desdeId = ultimoId del resultado, y solo se recorren los rangos
+// que faltaban. Las asignaciones inactivas quedan fuera salvo que se pidan.
+@Service
+public class RemarcacionPreciosService {
+
+    private static final Logger log = LoggerFactory.getLogger(RemarcacionPreciosService.class);
+
+    // SQL Server admite hasta 2100 parámetros por sentencia
+    private static final int MAX_FILTROS = 1000;
+
+    // Precio máximo que entra en DECIMAL(10,2)
+    private static final String PRECIO_MAXIMO = "99999999.99";
+
+    // Precio nuevo calculado una vez por fila; %s es la expresión de redondeo
+    private static final String SQL_DESDE =
+            "FROM productos_locales pl " +
+            "JOIN productos p ON p.id = pl.producto_id " +
+            "JOIN locales l ON l.id = pl.local_id " +
+            "CROSS APPLY (SELECT CAST(pl.precio_venta * (1 + :porcentaje / 100.0) + :monto AS DECIMAL(19, 4)) AS bruto) b " +
+            "CROSS APPLY (SELECT %s AS nuevo) n ";
+
+    private static final String SQL_SIMULAR =
+            "SELECT l.id AS local_id, l.nombre, COUNT(*) AS coincidencias, " +
+            "SUM(CASE WHEN n.nuevo <= 0 OR n.nuevo > " + PRECIO_MAXIMO + " THEN 1 ELSE 0 END) AS fuera_de_rango, " +
+            "SUM(CASE WHEN n.nuevo > 0 AND n.nuevo <= " + PRECIO_MAXIMO + " AND n.nuevo <> pl.precio_venta THEN 1 ELSE 0 END) AS cambian, " +
+            "SUM(pl.precio_venta) AS suma_actual, " +
+            "SUM(CASE WHEN n.nuevo > 0 AND n.nuevo <= " + PRECIO_MAXIMO + " THEN n.nuevo ELSE pl.precio_venta END) AS suma_nueva, " +
+            "MIN(n.nuevo - pl.precio_venta) AS diferencia_minima, " +
+            "MAX(n.nuevo - pl.precio_venta) AS diferencia_maxima " +
+            "%s WHERE %s GROUP BY l.id, l.nombre ORDER BY l.id";
+
+    // Fin del próximo rango: el ID del N-ésimo producto que cumple el filtro
+    private static final String SQL_FIN_RANGO =
+            "SELECT MAX(t.id) FROM (SELECT TOP (:tamano) pl.id %s WHERE %s AND pl.id > :desde ORDER BY pl.id) t";
+
+    private static final String SQL_APLICAR =
+            "UPDATE pl SET pl.precio_venta = CAST(n.nuevo AS DECIMAL(10, 2)), pl.updated_at = :ahora " +
+            "%s WHERE %s AND pl.id > :desde AND pl.id <= :hasta " +
+            "AND n.nuevo > 0 AND n.nuevo <= " + PRECIO_MAXIMO + " AND n.nuevo <> pl.precio_venta";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private LocalService localService;
+
+    private final TransactionTemplate transaccionBloque;
+
+    @Value("${productos-local.remarcacion.tamano-bloque:2000}")
+    private int tamanoBloque;
+
+    public RemarcacionPreciosService(PlatformTransactionManager transactionManager) {
+        this.transaccionBloque = new TransactionTemplate(transactionManager);
+        this.transaccionBloque.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // Vista previa sin modificar nada: cuántos precios cambian y cómo, por local
+    public SimulacionRemarcacion simular(RemarcacionRequest request, Long usuarioId) {
+        Consulta consulta = new Consulta(request, usuarioId);
+
+        SimulacionRemarcacion simulacion = new SimulacionRemarcacion();
+        jdbcTemplate.query(String.format(SQL_SIMULAR, consulta.desde, consulta.filtro), consulta.parametros, rs -> {
+            ResumenLocal resumen = new ResumenLocal();
+            resumen.setLocalId(rs.getLong("local_id"));
+            resumen.setNombreLocal(rs.getString("nombre"));
+            resumen.setCoincidencias(rs.getLong("coincidencias"));
+            resumen.setCambian(rs.getLong("cambian"));
+            resumen.setFueraDeRango(rs.getLong("fuera_de_rango"));
+            resumen.setSumaActual(rs.getBigDecimal("suma_actual"));
+            resumen.setSumaNueva(rs.getBigDecimal("suma_nueva"));
+            resumen.setDiferenciaMinima(rs.getBigDecimal("diferencia_minima"));
+            resumen.setDiferenciaMaxima(rs.getBigDecimal("diferencia_maxima"));
+            simulacion.agregar(resumen);
+        });
+        return simulacion;
+    }
+
+    // Aplicar la remarcación por rangos; si un rango falla, los anteriores quedan aplicados
+    // y se informa hasta qué ID se llegó, para retomar desde ahí
+    public ResultadoRemarcacion aplicar(RemarcacionRequest request, Long usuarioId) {
+        Consulta consulta = new Consulta(request, usuarioId);
+        String sqlFinRango = String.format(SQL_FIN_RANGO, consulta.desde, consulta.filtro);
+        String sqlAplicar = String.format(SQL_APLICAR, consulta.desde, consulta.filtro);
+
+        ResultadoRemarcacion resultado = new ResultadoRemarcacion();
+        MapSqlParameterSource parametros = consulta.parametros
+                .addValue("tamano", tamanoBloque)
+                .addValue("ahora", Timestamp.valueOf(LocalDateTime.now()));
+        long desde = request.getDesdeId() != null ? request.getDesdeId() : 0;
+        if (desde < 0) {
+            throw new RuntimeException("El ID desde el que retomar no puede ser negativo");
+        }
+        resultado.ultimoId = request.getDesdeId();
+        try {
+            while (true) {
+                parametros.addValue("desde", desde);
+                Long hasta = jdbcTemplate.queryForObject(sqlFinRango, parametros, Long.class);
+                if (hasta == null) {
+                    break;
+                }
+                parametros.addValue("hasta", hasta);
+                Integer filas = transaccionBloque.execute(status -> jdbcTemplate.update(sqlAplicar, parametros));
+                resultado.actualizados += filas != null ? filas : 0;
+                resultado.bloques++;
+                resultado.ultimoId = hasta;
+                desde = hasta;
+            }
+            resultado.completo = true;
+        } catch (RuntimeException e) {
+            log.warn("Remarcación interrumpida después del ID {}: {}", desde, e.getMessage());
+            resultado.error = "Remarcación interrumpida después del producto-local " + desde +
+                    " (reintente con desdeId = " + desde + "): " + e.getMessage();
+        }
+        return resultado;
+    }
+
+    // Filtro y parámetros comunes a la simulación y a la aplicación
+    private class Consulta {
+        private final String desde;
+        private final String filtro;
+        private final MapSqlParameterSource parametros = new MapSqlParameterSource();
+
+        private Consulta(RemarcacionRequest request, Long usuarioId) {
+            BigDecimal porcentaje = request.getPorcentaje() != null ? request.getPorcentaje() : BigDecimal.ZERO;
+            BigDecimal monto = request.getMonto() != null ? request.getMonto() : BigDecimal.ZERO;
+            BigDecimal redondeo = request.getRedondeo();
+            if (porcentaje.signum() == 0 && monto.signum() == 0 && redondeo == null) {
+                throw new RuntimeException("Debe indicar un porcentaje, un monto o un redondeo");
+            }
+            if (porcentaje.compareTo(BigDecimal.valueOf(-100)) <= 0 || porcentaje.compareTo(BigDecimal.valueOf(1000)) > 0) {
+                throw new RuntimeException("El porcentaje debe ser mayor a -100 y no superar 1000");
+            }
+            if (monto.abs().compareTo(new BigDecimal(PRECIO_MAXIMO)) > 0) {
+                throw new RuntimeException("El monto supera el precio máximo permitido");
+            }
+            if (redondeo != null && redondeo.signum() <= 0) {
+                throw new RuntimeException("El redondeo debe ser mayor a 0");
+            }
+            parametros.addValue("porcentaje", porcentaje).addValue("monto", monto);
+
+            String nuevo = "b.bruto";
+            if (redondeo != null) {
+                String funcion = switch (request.getModoRedondeo() != null ? request.getModoRedondeo() : ModoRedondeo.CERCANO) {
+                    case ARRIBA -> "CEILING(b.bruto / :redondeo)";
+                    case ABAJO -> "FLOOR(b.bruto / :redondeo)";
+                    case CERCANO -> "ROUND(b.bruto / :redondeo, 0)";
+                };
+                nuevo = funcion + " * :redondeo";
+                parametros.addValue("redondeo", redondeo);
+            }
+            this.desde = String.format(SQL_DESDE, "ROUND(" + nuevo + ", 2)");
+
+            // Solo locales del usuario; si pide locales concretos, se valida cada uno
+            StringBuilder filtro = new StringBuilder("l.usuario_id = :usuarioId");
+            parametros.addValue("usuarioId", usuarioId);
+            if (!Boolean.TRUE.equals(request.getIncluirInactivos())) {
+                filtro.append(" AND pl.activo = 1");
+            }
+            if (request.getLocalIds() != null && !request.getLocalIds().isEmpty()) {
+                Set<Long> localIds = new LinkedHashSet<>(request.getLocalIds());
+                validarTamano(localIds, "locales");
+                for (Long localId : localIds) {
+                    localService.validarAccesoLocal(localId, usuarioId);
+                }
+                filtro.append(" AND l.id IN (:localIds)");
+                parametros.addValue("localIds", localIds);
+            }
+            if (request.getCategoria() != null && !request.getCategoria().isBlank()) {
+                filtro.append(" AND p.categoria = :categoria");
+                parametros.addValue("categoria", request.getCategoria().trim());
+            }
+            if (request.getSkus() != null && !request.getSkus().isEmpty()) {
+                Set<String> skus = new LinkedHashSet<>(request.getSkus());
+                validarTamano(skus, "SKUs");
+                filtro.append(" AND p.sku IN (:skus)");
+                parametros.addValue("skus", skus);
+            }
+            this.filtro = filtro.toString();
+        }
+
+        private void validarTamano(Collection<?> valores, String nombre) {
+            if (valores.size() > MAX_FILTROS) {
+                throw new RuntimeException("No se pueden indicar más de " + MAX_FILTROS + " " + nombre);
+            }
+        }
+    }
+
+    public enum ModoRedondeo {
+        ARRIBA, ABAJO, CERCANO
+    }
+
+    // DTOs
+    public static class RemarcacionRequest {
+        private List<Long> localIds;
+        private String categoria;
+        private List<String> skus;
+        private BigDecimal porcentaje;
+        private BigDecimal monto;
+        private BigDecimal redondeo;
+        private ModoRedondeo modoRedondeo;
+        private Boolean incluirInactivos;
+        // Solo al aplicar: retomar después de este ID (ultimoId de un intento interrumpido)
+        private Long desdeId;
+
+        // Getters y Setters
+        public List<Long> getLocalIds() { return localIds; }
+        public void setLocalIds(List<Long> localIds) { this.localIds = localIds; }
+
+        public String getCategoria() { return categoria; }
+        public void setCategoria(String categoria) { this.categoria = categoria; }
+
+        public List<String> getSkus() { return skus; }
+        public void setSkus(List<String> skus) { this.skus = skus; }
+
+        public BigDecimal getPorcentaje() { return porcentaje; }
+        public void setPorcentaje(BigDecimal porcentaje) { this.porcentaje = porcentaje; }
+
+        public BigDecimal getMonto() { return monto; }
+        public void setMonto(BigDecimal monto) { this.monto = monto; }
+
+        public BigDecimal getRedondeo() { return redondeo; }
+        public void setRedondeo(BigDecimal redondeo) { this.redondeo = redondeo; }
+
+        public ModoRedondeo getModoRedondeo() { return modoRedondeo; }
+        public void setModoRedondeo(ModoRedondeo modoRedondeo) { this.modoRedondeo = modoRedondeo; }
+
+        public Boolean getIncluirInactivos() { return incluirInactivos; }
+        public void setIncluirInactivos(Boolean incluirInactivos) { this.incluirInactivos = incluirInactivos; }
+
+        public Long getDesdeId() { return desdeId; }
+        public void setDesdeId(Long desdeId) { this.desdeId = desdeId; }
+    }
+
+    public static class SimulacionRemarcacion {
+        private long coincidencias;
+        private long cambian;
+        private long fueraDeRango;
+        private BigDecimal sumaActual = BigDecimal.ZERO;
+        private BigDecimal sumaNueva = BigDecimal.ZERO;
+        private List<ResumenLocal> locales = new ArrayList<>();
+
+        private void agregar(ResumenLocal resumen) {
+            locales.add(resumen);
+            coincidencias += resumen.getCoincidencias();
+            cambian += resumen.getCambian();
+            fueraDeRango += resumen.getFueraDeRango();
+            sumaActual = sumaActual.add(resumen.getSumaActual());
+            sumaNueva = sumaNueva.add(resumen.getSumaNueva());
+        }
+
+        // Getters y Setters
+        public long getCoincidencias() { return coincidencias; }
+        public void setCoincidencias(long coincidencias) { this.coincidencias = coincidencias; }
+
+        public long getCambian() { return cambian; }
+        public void setCambian(long cambian) { this.cambian = cambian; }
+
+        public long getFueraDeRango() { return fueraDeRango; }
+        public void setFueraDeRango(long fueraDeRango) { this.fueraDeRango = fueraDeRango; }
+
+        public BigDecimal getSumaActual() { return sumaActual; }
+        public void setSumaActual(BigDecimal sumaActual) { this.sumaActual = sumaActual; }
+
+        public BigDecimal getSumaNueva() { return sumaNueva; }
+        public void setSumaNueva(BigDecimal sumaNueva) { this.sumaNueva = sumaNueva; }
+
+        public List<ResumenLocal> getLocales() { return locales; }
+        public void setLocales(List<ResumenLocal> locales) { this.locales = locales; }
+    }
+
+    public static class ResumenLocal {
+        private Long localId;
+        private String nombreLocal;
+        private long coincidencias;
+        private long cambian;
+        private long fueraDeRango;
+        private BigDecimal sumaActual;
+        private BigDecimal sumaNueva;
+        private BigDecimal diferenciaMinima;
+        private BigDecimal diferenciaMaxima;
+
+        // Getters y Setters
+        public Long getLocalId() { return localId; }
+        public void setLocalId(Long localId) { this.localId = localId; }
+
+        public String getNombreLocal() { return nombreLocal; }
+        public void setNombreLocal(String nombreLocal) { this.nombreLocal = nombreLocal; }
+
+        public long getCoincidencias() { return coincidencias; }
+        public void setCoincidencias(long coincidencias) { this.coincidencias = coincidencias; }
+
+        public long getCambian() { return cambian; }
+        public void setCambian(long cambian) { this.cambian = cambian; }
+
+        public long getFueraDeRango() { return fueraDeRango; }
+        public void setFueraDeRango(long fueraDeRango) { this.fueraDeRango = fueraDeRango; }
+
+        public BigDecimal getSumaActual() { return sumaActual; }
+        public void setSumaActual(BigDecimal sumaActual) { this.sumaActual = sumaActual; }
+
+        public BigDecimal getSumaNueva() { return sumaNueva; }
+        public void setSumaNueva(BigDecimal sumaNueva) { this.sumaNueva = sumaNueva; }
+
+        public BigDecimal getDiferenciaMinima() { return diferenciaMinima; }
+        public void setDiferenciaMinima(BigDecimal diferenciaMinima) { this.diferenciaMinima = diferenciaMinima; }
+
+        public BigDecimal getDiferenciaMaxima() { return diferenciaMaxima; }
+        public void setDiferenciaMaxima(BigDecimal diferenciaMaxima) { this.diferenciaMaxima = diferenciaMaxima; }
+    }
+
+    public static class ResultadoRemarcacion {
+        private long actualizados;
+        private int bloques;
+        private Long ultimoId;
+        private boolean completo;
+        private String error;
+
+        // Getters y Setters
+        public long getActualizados() { return actualizados; }
+        public void setActualizados(long actualizados) { this.actualizados = actualizados; }
+
+        public int getBloques() { return bloques; }
+        public void setBloques(int bloques) { this.bloques = bloques; }
+
+        public Long getUltimoId() { return ultimoId; }
+        public void setUltimoId(Long ultimoId) { this.ultimoId = ultimoId; }
+
+        public boolean isCompleto() { return completo; }
+        public void setCompleto(boolean completo) { this.completo = completo; }
+
+        public String getError() { return error; }
+        public void setError(String error) { this.error = error; }
+    }
+}
@@ -0,0 +1,424 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.config.Carril;
+import com.robertroman.store_admin_backend.config.CarrilEjecucion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Reportes de surtido por local: productos sin ventas en N días y clasificación ABC por ingresos.
+// Cada reporte es una sola consulta sobre todo el surtido (anti-join contra las ventas recientes y
+// acumulado de ingresos con funciones de ventana), paginada en la base o exportada en CSV a medida
+// que se leen las filas, en lugar de consultar las ventas producto por producto.
+@Service
+@Transactional(readOnly = true)
+@CarrilEjecucion(Carril.ANALITICO)
+public class ReportesSurtidoService {
+
+    // Stock vigente según el modo del producto (en escrow vive en las particiones)
+    private static final String STOCK =
+            "CASE WHEN pl.particiones_escrow > 0 THEN " +
+            "(SELECT COALESCE(SUM(sp.cantidad), 0) FROM stock_particiones sp WHERE sp.producto_local_id = pl.id) " +
+            "ELSE pl.stock END";
+
+    // Activos asignados antes del período y sin ninguna venta en él; %s: paginación o nada
+    private static final String SQL_SIN_VENTAS =
+            "SELECT pl.id, pl.producto_id, p.nombre, p.sku, p.categoria, s.stock, pl.precio_venta, " +
+            "s.stock * pl.precio_venta AS valor_inmovilizado, u.ultima_venta, COUNT(*) OVER () AS total_filas " +
+            "FROM productos_locales pl " +
+            "JOIN productos p ON p.id = pl.producto_id " +
+            "CROSS APPLY (SELECT " + STOCK + " AS stock) s " +
+            "OUTER APPLY (SELECT MAX(v.fecha_venta) AS ultima_venta FROM detalles_venta dv " +
+            "JOIN ventas v ON v.id = dv.venta_id " +
+            "WHERE dv.producto_local_id = pl.id AND v.estado IN ('COMPLETADA', 'DEVUELTA')) u " +
+            "WHERE pl.local_id = :localId AND pl.activo = 1 AND pl.created_at < :desde " +
+            "AND NOT EXISTS (SELECT 1 FROM ventas v JOIN detalles_venta dv ON dv.venta_id = v.id " +
+            "WHERE v.local_id = :localId AND v.fecha_venta >= :desde AND v.estado IN ('COMPLETADA', 'DEVUELTA') " +
+            "AND dv.producto_local_id = pl.id) " +
+            "ORDER BY valor_inmovilizado DESC, pl.id %s";
+
+    // Ingresos netos por producto, acumulados de mayor a menor; la clase depende de lo acumulado
+    // antes de cada producto (el que cruza el límite queda en la clase anterior)
+    private static final String SQL_ABC_BASE =
+            "WITH ingresos AS (" +
+            "SELECT dv.producto_local_id, SUM(dv.subtotal - COALESCE(dv.monto_devuelto, 0)) AS ingreso, " +
+            "SUM(dv.cantidad - COALESCE(dv.cantidad_devuelta, 0)) AS unidades " +
+            "FROM ventas v JOIN detalles_venta dv ON dv.venta_id = v.id " +
+            "WHERE v.local_id = :localId AND v.fecha_venta >= :desde AND v.fecha_venta < :hasta " +
+            "AND v.estado IN ('COMPLETADA', 'DEVUELTA') " +
+            "GROUP BY dv.producto_local_id), " +
+            "acumulado AS (" +
+            "SELECT i.producto_local_id, i.ingreso, i.unidades, " +
+            "ROW_NUMBER() OVER (ORDER BY i.ingreso DESC, i.producto_local_id) AS posicion, " +
+            "SUM(i.ingreso) OVER (ORDER BY i.ingreso DESC, i.producto_local_id ROWS UNBOUNDED PRECEDING) AS acumulado, " +
+            "SUM(i.ingreso) OVER () AS total " +
+            "FROM ingresos i WHERE i.ingreso > 0), " +
+            "clasificado AS (" +
+            "SELECT a.*, CASE WHEN a.acumulado - a.ingreso < a.total * :limiteA THEN 'A' " +
+            "WHEN a.acumulado - a.ingreso < a.total * :limiteB THEN 'B' ELSE 'C' END AS clase " +
+            "FROM acumulado a) ";
+
+    // %s: filtro por clase y paginación
+    private static final String SQL_ABC = SQL_ABC_BASE +
+            "SELECT c.producto_local_id, pl.producto_id, p.nombre, p.sku, p.categoria, c.unidades, c.ingreso, " +
+            "c.acumulado, c.total, c.posicion, c.clase, COUNT(*) OVER () AS total_filas " +
+            "FROM clasificado c " +
+            "JOIN productos_locales pl ON pl.id = c.producto_local_id " +
+            "JOIN productos p ON p.id = pl.producto_id " +
+            "%s ORDER BY c.posicion %s";
+
+    private static final String SQL_ABC_RESUMEN = SQL_ABC_BASE +
+            "SELECT clase, COUNT(*) AS productos, SUM(ingreso) AS ingreso, MAX(total) AS total " +
+            "FROM clasificado GROUP BY clase ORDER BY clase";
+
+    private static final String PAGINA = "OFFSET :offset ROWS FETCH NEXT :tamano ROWS ONLY";
+
+    private static final Set<String> CLASES = Set.of("A", "B", "C");
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private LocalService localService;
+
+    // Productos activos sin ventas en los últimos N días, primero los de mayor valor inmovilizado
+    public Page<ProductoSinVentas> obtenerSinVentas(Long localId, int dias, int pagina, int tamano, Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        MapSqlParameterSource parametros = parametrosSinVentas(localId, dias)
+                .addValue("offset", (long) pagina * tamano)
+                .addValue("tamano", tamano);
+        // El total viene en cada fila (COUNT(*) OVER), sin una consulta de conteo aparte
+        long[] total = {0};
+        List<ProductoSinVentas> productos = jdbcTemplate.query(String.format(SQL_SIN_VENTAS, PAGINA), parametros,
+                (rs, i) -> {
+                    total[0] = rs.getLong("total_filas");
+                    return productoSinVentas(rs);
+                });
+        return new PageImpl<>(productos, PageRequest.of(pagina, tamano), total[0]);
+    }
+
+    // Mismo reporte completo en CSV, escrito a medida que se leen las filas.
+    // El acceso al local se valida antes de empezar a escribir la respuesta.
+    public void exportarSinVentas(Long localId, int dias, OutputStream salida) {
+        Csv csv = new Csv(salida);
+        csv.fila("producto_local_id", "producto_id", "nombre", "sku", "categoria", "stock", "precio_venta",
+                "valor_inmovilizado", "ultima_venta");
+        jdbcTemplate.query(String.format(SQL_SIN_VENTAS, ""), parametrosSinVentas(localId, dias),
+                (RowCallbackHandler) rs -> {
+                    ProductoSinVentas p = productoSinVentas(rs);
+                    csv.fila(p.getProductoLocalId(), p.getProductoId(), p.getNombre(), p.getSku(), p.getCategoria(),
+                            p.getStock(), p.getPrecioVenta(), p.getValorInmovilizado(), p.getUltimaVenta());
+                });
+        csv.terminar();
+    }
+
+    // Clasificación ABC (Pareto) de los productos vendidos en el período, por ingresos netos
+    public ClasificacionAbc obtenerClasificacionAbc(Long localId, LocalDateTime desde, LocalDateTime hasta,
+                                                    int porcentajeA, int porcentajeB, String clase,
+                                                    int pagina, int tamano, Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        MapSqlParameterSource parametros = parametrosAbc(localId, desde, hasta, porcentajeA, porcentajeB, clase)
+                .addValue("offset", (long) pagina * tamano)
+                .addValue("tamano", tamano);
+
+        ClasificacionAbc clasificacion = new ClasificacionAbc();
+        clasificacion.setResumen(new ArrayList<>());
+        jdbcTemplate.query(SQL_ABC_RESUMEN, parametros, (RowCallbackHandler) rs -> {
+            ResumenClase resumen = new ResumenClase();
+            resumen.setClase(rs.getString("clase"));
+            resumen.setProductos(rs.getLong("productos"));
+            resumen.setIngreso(rs.getBigDecimal("ingreso"));
+            resumen.setParticipacion(porcentaje(rs.getBigDecimal("ingreso"), rs.getBigDecimal("total")));
+            clasificacion.getResumen().add(resumen);
+        });
+
+        long[] total = {0};
+        List<ProductoAbc> productos = jdbcTemplate.query(
+                String.format(SQL_ABC, filtroClase(clase), PAGINA), parametros, (rs, i) -> {
+                    total[0] = rs.getLong("total_filas");
+                    return productoAbc(rs);
+                });
+        clasificacion.setProductos(new PageImpl<>(productos, PageRequest.of(pagina, tamano), total[0]));
+        return clasificacion;
+    }
+
+    // Clasificación ABC completa en CSV, escrita a medida que se leen las filas.
+    // El acceso al local se valida antes de empezar a escribir la respuesta.
+    public void exportarClasificacionAbc(Long localId, LocalDateTime desde, LocalDateTime hasta,
+                                         int porcentajeA, int porcentajeB, String clase, OutputStream salida) {
+        MapSqlParameterSource parametros = parametrosAbc(localId, desde, hasta, porcentajeA, porcentajeB, clase);
+        Csv csv = new Csv(salida);
+        csv.fila("posicion", "clase", "producto_local_id", "producto_id", "nombre", "sku", "categoria", "unidades",
+                "ingreso", "participacion", "participacion_acumulada");
+        jdbcTemplate.query(String.format(SQL_ABC, filtroClase(clase), ""), parametros, (RowCallbackHandler) rs -> {
+            ProductoAbc p = productoAbc(rs);
+            csv.fila(p.getPosicion(), p.getClase(), p.getProductoLocalId(), p.getProductoId(), p.getNombre(),
+                    p.getSku(), p.getCategoria(), p.getUnidades(), p.getIngreso(), p.getParticipacion(),
+                    p.getParticipacionAcumulada());
+        });
+        csv.terminar();
+    }
+
+    // Validación de los parámetros de la clasificación (antes de abrir una exportación)
+    public static void validarParametrosAbc(LocalDateTime desde, LocalDateTime hasta, int porcentajeA,
+                                            int porcentajeB, String clase) {
+        if (!desde.isBefore(hasta)) {
+            throw new RuntimeException("La fecha de inicio debe ser anterior a la fecha de fin");
+        }
+        if (porcentajeA <= 0 || porcentajeA >= porcentajeB || porcentajeB > 100) {
+            throw new RuntimeException("Los porcentajes deben cumplir 0 < A < B <= 100");
+        }
+        if (clase != null && !CLASES.contains(clase)) {
+            throw new RuntimeException("Clase inválida: " + clase);
+        }
+    }
+
+    private MapSqlParameterSource parametrosSinVentas(Long localId, int dias) {
+        if (dias < 1) {
+            throw new RuntimeException("La cantidad de días debe ser mayor a 0");
+        }
+        return new MapSqlParameterSource()
+                .addValue("localId", localId)
+                .addValue("desde", Timestamp.valueOf(LocalDateTime.now().minusDays(dias)));
+    }
+
+    private MapSqlParameterSource parametrosAbc(Long localId, LocalDateTime desde, LocalDateTime hasta,
+                                                int porcentajeA, int porcentajeB, String clase) {
+        validarParametrosAbc(desde, hasta, porcentajeA, porcentajeB, clase);
+        return new MapSqlParameterSource()
+                .addValue("localId", localId)
+                .addValue("desde", Timestamp.valueOf(desde))
+                .addValue("hasta", Timestamp.valueOf(hasta))
+                .addValue("limiteA", BigDecimal.valueOf(porcentajeA, 2))
+                .addValue("limiteB", BigDecimal.valueOf(porcentajeB, 2))
+                .addValue("clase", clase);
+    }
+
+    private static String filtroClase(String clase) {
+        return clase != null ? "WHERE c.clase = :clase" : "";
+    }
+
+    private static ProductoSinVentas productoSinVentas(ResultSet rs) throws SQLException {
+        ProductoSinVentas producto = new ProductoSinVentas();
+        producto.setProductoLocalId(rs.getLong("id"));
+        producto.setProductoId(rs.getLong("producto_id"));
+        producto.setNombre(rs.getString("nombre"));
+        producto.setSku(rs.getString("sku"));
+        producto.setCategoria(rs.getString("categoria"));
+        producto.setStock(rs.getInt("stock"));
+        producto.setPrecioVenta(rs.getBigDecimal("precio_venta"));
+        producto.setValorInmovilizado(rs.getBigDecimal("valor_inmovilizado"));
+        Timestamp ultimaVenta = rs.getTimestamp("ultima_venta");
+        producto.setUltimaVenta(ultimaVenta != null ? ultimaVenta.toLocalDateTime() : null);
+        return producto;
+    }
+
+    private static ProductoAbc productoAbc(ResultSet rs) throws SQLException {
+        ProductoAbc producto = new ProductoAbc();
+        producto.setPosicion(rs.getLong("posicion"));
+        producto.setClase(rs.getString("clase"));
+        producto.setProductoLocalId(rs.getLong("producto_local_id"));
+        producto.setProductoId(rs.getLong("producto_id"));
+        producto.setNombre(rs.getString("nombre"));
+        producto.setSku(rs.getString("sku"));
+        producto.setCategoria(rs.getString("categoria"));
+        producto.setUnidades(rs.getLong("unidades"));
+        producto.setIngreso(rs.getBigDecimal("ingreso"));
+        producto.setParticipacion(porcentaje(producto.getIngreso(), rs.getBigDecimal("total")));
+        producto.setParticipacionAcumulada(porcentaje(rs.getBigDecimal("acumulado"), rs.getBigDecimal("total")));
+        return producto;
+    }
+
+    private static BigDecimal porcentaje(BigDecimal parte, BigDecimal total) {
+        if (total == null || total.signum() == 0) {
+            return BigDecimal.ZERO;
+        }
+        return parte.multiply(new BigDecimal("100")).divide(total, 2, RoundingMode.HALF_UP);
+    }
+
+    // Escritura de filas CSV (UTF-8, separador coma, comillas solo si hacen falta)
+    private static class Csv {
+        private final Writer escritor;
+
+        private Csv(OutputStream salida) {
+            this.escritor = new BufferedWriter(new OutputStreamWriter(salida, StandardCharsets.UTF_8), 1 << 16);
+        }
+
+        private void fila(Object... valores) {
+            try {
+                for (int i = 0; i < valores.length; i++) {
+                    if (i > 0) {
+                        escritor.write(',');
+                    }
+                    escritor.write(campo(valores[i]));
+                }
+                escritor.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void terminar() {
+            try {
+                escritor.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static String campo(Object valor) {
+            if (valor == null) {
+                return "";
+            }
+            String texto = valor instanceof BigDecimal decimal ? decimal.toPlainString() : valor.toString();
+            if (texto.indexOf(',') >= 0 || texto.indexOf('"') >= 0 || texto.indexOf('\n') >= 0 || texto.indexOf('\r') >= 0) {
+                return '"' + texto.replace("\"", "\"\"") + '"';
+            }
+            return texto;
+        }
+    }
+
+    // DTOs
+    public static class ProductoSinVentas {
+        private Long productoLocalId;
+        private Long productoId;
+        private String nombre;
+        private String sku;
+        private String categoria;
+        private Integer stock;
+        private BigDecimal precioVenta;
+        // Stock por precio de venta
+        private BigDecimal valorInmovilizado;
+        // Última venta del producto en el local (null si nunca se vendió)
+        private LocalDateTime ultimaVenta;
+
+        // Getters y Setters
+        public Long getProductoLocalId() { return productoLocalId; }
+        public void setProductoLocalId(Long productoLocalId) { this.productoLocalId = productoLocalId; }
+
+        public Long getProductoId() { return productoId; }
+        public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+        public String getNombre() { return nombre; }
+        public void setNombre(String nombre) { this.nombre = nombre; }
+
+        public String getSku() { return sku; }
+        public void setSku(String sku) { this.sku = sku; }
+
+        public String getCategoria() { return categoria; }
+        public void setCategoria(String categoria) { this.categoria = categoria; }
+
+        public Integer getStock() { return stock; }
+        public void setStock(Integer stock) { this.stock = stock; }
+
+        public BigDecimal getPrecioVenta() { return precioVenta; }
+        public void setPrecioVenta(BigDecimal precioVenta) { this.precioVenta = precioVenta; }
+
+        public BigDecimal getValorInmovilizado() { return valorInmovilizado; }
+        public void setValorInmovilizado(BigDecimal valorInmovilizado) { this.valorInmovilizado = valorInmovilizado; }
+
+        public LocalDateTime getUltimaVenta() { return ultimaVenta; }
+        public void setUltimaVenta(LocalDateTime ultimaVenta) { this.ultimaVenta = ultimaVenta; }
+    }
+
+    public static class ClasificacionAbc {
+        private List<ResumenClase> resumen;
+        private Page<ProductoAbc> productos;
+
+        // Getters y Setters
+        public List<ResumenClase> getResumen() { return resumen; }
+        public void setResumen(List<ResumenClase> resumen) { this.resumen = resumen; }
+
+        public Page<ProductoAbc> getProductos() { return productos; }
+        public void setProductos(Page<ProductoAbc> productos) { this.productos = productos; }
+    }
+
+    public static class ResumenClase {
+        private String clase;
+        private Long productos;
+        private BigDecimal ingreso;
+        // Porcentaje del ingreso total del período
+        private BigDecimal participacion;
+
+        // Getters y Setters
+        public String getClase() { return clase; }
+        public void setClase(String clase) { this.clase = clase; }
+
+        public Long getProductos() { return productos; }
+        public void setProductos(Long productos) { this.productos = productos; }
+
+        public BigDecimal getIngreso() { return ingreso; }
+        public void setIngreso(BigDecimal ingreso) { this.ingreso = ingreso; }
+
+        public BigDecimal getParticipacion() { return participacion; }
+        public void setParticipacion(BigDecimal participacion) { this.participacion = participacion; }
+    }
+
+    public static class ProductoAbc {
+        private Long posicion;
+        private String clase;
+        private Long productoLocalId;
+        private Long productoId;
+        private String nombre;
+        private String sku;
+        private String categoria;
+        private Long unidades;
+        private BigDecimal ingreso;
+        private BigDecimal participacion;
+        private BigDecimal participacionAcumulada;
+
+        // Getters y Setters
+        public Long getPosicion() { return posicion; }
+        public void setPosicion(Long posicion) { this.posicion = posicion; }
+
+        public String getClase() { return clase; }
+        public void setClase(String clase) { this.clase = clase; }
+
+        public Long getProductoLocalId() { return productoLocalId; }
+        public void setProductoLocalId(Long productoLocalId) { this.productoLocalId = productoLocalId; }
+
+        public Long getProductoId() { return productoId; }
+        public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+        public String getNombre() { return nombre; }
+        public void setNombre(String nombre) { this.nombre = nombre; }
+
+        public String getSku() { return sku; }
+        public void setSku(String sku) { this.sku = sku; }
+
+        public String getCategoria() { return categoria; }
+        public void setCategoria(String categoria) { this.categoria = categoria; }
+
+        public Long getUnidades() { return unidades; }
+        public void setUnidades(Long unidades) { this.unidades = unidades; }
+
+        public BigDecimal getIngreso() { return ingreso; }
+        public void setIngreso(BigDecimal ingreso) { this.ingreso = ingreso; }
+
+        public BigDecimal getParticipacion() { return participacion; }
+        public void setParticipacion(BigDecimal participacion) { this.participacion = participacion; }
+
+        public BigDecimal getParticipacionAcumulada() { return participacionAcumulada; }
+        public void setParticipacionAcumulada(BigDecimal participacionAcumulada) { this.participacionAcumulada = participacionAcumulada; }
+    }
+}
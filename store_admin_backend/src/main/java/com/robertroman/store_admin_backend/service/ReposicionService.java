@@ -0,0 +1,272 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.config.Carril;
+import com.robertroman.store_admin_backend.config.CarrilEjecucion;
+import com.robertroman.store_admin_backend.entity.SugerenciaReposicion;
+import com.robertroman.store_admin_backend.repository.SugerenciaReposicionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Sugerencias de stock mínimo (punto de pedido) y cantidad a reponer por ProductoLocal.
+// Cada noche se calcula, para cada local en paralelo, la venta diaria promedio y su desvío en el
+// período analizado con una sola consulta agregada por local (una fila por producto, leída a medida
+// que llega). El stock mínimo sugerido cubre la demanda durante la entrega más un stock de seguridad;
+// la cantidad a reponer lleva el stock hasta cubrir además el período de revisión.
+// Las sugerencias se guardan para revisarlas y aplicarlas en bloque.
+@Service
+public class ReposicionService implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ReposicionService.class);
+
+    // SQL Server admite hasta 2100 parámetros por sentencia
+    private static final int MAX_IDS = 1000;
+
+    private static final int TAMANO_LOTE_ESCRITURA = 1000;
+
+    private static final String SQL_LOCALES = "SELECT id FROM locales";
+
+    // Suma y suma de cuadrados de las unidades vendidas por día (los días sin ventas cuentan como 0)
+    private static final String SQL_DEMANDA =
+            "WITH diario AS (" +
+            "SELECT dv.producto_local_id, SUM(dv.cantidad - COALESCE(dv.cantidad_devuelta, 0)) AS cantidad " +
+            "FROM ventas v JOIN detalles_venta dv ON dv.venta_id = v.id " +
+            "WHERE v.local_id = ? AND v.fecha_venta >= ? AND v.fecha_venta < ? AND v.estado IN ('COMPLETADA', 'DEVUELTA') " +
+            "GROUP BY dv.producto_local_id, CAST(v.fecha_venta AS DATE)), " +
+            "demanda AS (" +
+            "SELECT producto_local_id, SUM(CAST(cantidad AS BIGINT)) AS suma, " +
+            "SUM(CAST(cantidad AS BIGINT) * cantidad) AS suma_cuadrados FROM diario GROUP BY producto_local_id) " +
+            "SELECT pl.id, pl.producto_id, p.nombre, COALESCE(pl.stock_minimo, 0) AS stock_minimo, pl.created_at, " +
+            "CASE WHEN pl.particiones_escrow > 0 THEN " +
+            "(SELECT COALESCE(SUM(sp.cantidad), 0) FROM stock_particiones sp WHERE sp.producto_local_id = pl.id) " +
+            "ELSE pl.stock END AS stock, " +
+            "COALESCE(d.suma, 0) AS suma, COALESCE(d.suma_cuadrados, 0) AS suma_cuadrados " +
+            "FROM productos_locales pl " +
+            "JOIN productos p ON p.id = pl.producto_id " +
+            "LEFT JOIN demanda d ON d.producto_local_id = pl.id " +
+            "WHERE pl.local_id = ? AND pl.activo = 1";
+
+    private static final String SQL_GUARDAR =
+            "MERGE sugerencias_reposicion WITH (HOLDLOCK) AS s " +
+            "USING (VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)) AS n (producto_local_id, local_id, producto_id, nombre, " +
+            "venta_diaria, desvio_diario, dias_analizados, stock_actual, stock_minimo_actual, stock_minimo_sugerido, " +
+            "cantidad_reponer, fecha_calculo) " +
+            "ON s.producto_local_id = n.producto_local_id " +
+            "WHEN MATCHED THEN UPDATE SET local_id = n.local_id, producto_id = n.producto_id, nombre = n.nombre, " +
+            "venta_diaria = n.venta_diaria, desvio_diario = n.desvio_diario, dias_analizados = n.dias_analizados, " +
+            "stock_actual = n.stock_actual, stock_minimo_actual = n.stock_minimo_actual, " +
+            "stock_minimo_sugerido = n.stock_minimo_sugerido, cantidad_reponer = n.cantidad_reponer, " +
+            "fecha_calculo = n.fecha_calculo, fecha_aplicada = NULL " +
+            "WHEN NOT MATCHED THEN INSERT (producto_local_id, local_id, producto_id, nombre, venta_diaria, desvio_diario, " +
+            "dias_analizados, stock_actual, stock_minimo_actual, stock_minimo_sugerido, cantidad_reponer, fecha_calculo) " +
+            "VALUES (n.producto_local_id, n.local_id, n.producto_id, n.nombre, n.venta_diaria, n.desvio_diario, " +
+            "n.dias_analizados, n.stock_actual, n.stock_minimo_actual, n.stock_minimo_sugerido, n.cantidad_reponer, " +
+            "n.fecha_calculo);";
+
+    // Productos dados de baja o desasignados desde el cálculo anterior
+    private static final String SQL_BORRAR_VIEJAS =
+            "DELETE FROM sugerencias_reposicion WHERE local_id = ? AND fecha_calculo < ?";
+
+    // %s: filtro opcional por IDs de sugerencia. Solo asignaciones activas (las únicas que se calculan):
+    // una dada de baja después del cálculo no se toca ni su sugerencia se marca como aplicada
+    private static final String SQL_APLICAR =
+            "UPDATE pl SET pl.stock_minimo = s.stock_minimo_sugerido, pl.updated_at = :ahora " +
+            "FROM productos_locales pl JOIN sugerencias_reposicion s ON s.producto_local_id = pl.id " +
+            "WHERE s.local_id = :localId AND pl.local_id = :localId AND pl.activo = 1 %s " +
+            "AND COALESCE(pl.stock_minimo, 0) <> s.stock_minimo_sugerido";
+
+    private static final String SQL_MARCAR_APLICADAS =
+            "UPDATE s SET s.stock_minimo_actual = s.stock_minimo_sugerido, s.fecha_aplicada = :ahora " +
+            "FROM sugerencias_reposicion s JOIN productos_locales pl ON pl.id = s.producto_local_id " +
+            "WHERE s.local_id = :localId AND pl.local_id = :localId AND pl.activo = 1 %s " +
+            "AND s.stock_minimo_actual <> s.stock_minimo_sugerido";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Autowired
+    private SugerenciaReposicionRepository sugerenciaReposicionRepository;
+
+    @Autowired
+    private LocalService localService;
+
+    private final TransactionTemplate transaccionLocal;
+    private final ForkJoinPool calculo;
+
+    @Value("${reposicion.dias-analizados:56}")
+    private int diasAnalizados;
+
+    @Value("${reposicion.dias-entrega:7}")
+    private int diasEntrega;
+
+    @Value("${reposicion.dias-revision:7}")
+    private int diasRevision;
+
+    // Factor del nivel de servicio (1.65 ≈ 95% de los ciclos sin quiebre)
+    @Value("${reposicion.factor-servicio:1.65}")
+    private double factorServicio;
+
+    // Una sola pasada completa a la vez
+    private final AtomicBoolean enCurso = new AtomicBoolean();
+
+    public ReposicionService(PlatformTransactionManager transactionManager,
+                             @Value("${reposicion.hilos:4}") int hilos) {
+        this.transaccionLocal = new TransactionTemplate(transactionManager);
+        this.transaccionLocal.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.calculo = new ForkJoinPool(hilos);
+    }
+
+    // Recalcular las sugerencias de todos los locales, repartidos entre los hilos de cálculo
+    @Scheduled(cron = "${reposicion.cron:0 0 3 * * *}")
+    public void recalcularTodos() {
+        if (!enCurso.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long inicio = System.nanoTime();
+            List<Long> localIds = jdbcTemplate.queryForList(SQL_LOCALES, Long.class);
+            AtomicInteger sugerencias = new AtomicInteger();
+            calculo.submit(() -> localIds.parallelStream().forEach(localId -> {
+                try {
+                    sugerencias.addAndGet(calcularLocal(localId));
+                } catch (RuntimeException e) {
+                    log.warn("Sugerencias de reposición del local {} fallaron: {}", localId, e.getMessage());
+                }
+            })).join();
+            log.info("Sugerencias de reposición: {} locales, {} productos en {} ms", localIds.size(),
+                    sugerencias.get(), (System.nanoTime() - inicio) / 1_000_000);
+        } finally {
+            enCurso.set(false);
+        }
+    }
+
+    // Recalcular un local a pedido (por ejemplo, después de cambiar los parámetros)
+    public int recalcular(Long localId, Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+        return calcularLocal(localId);
+    }
+
+    public Page<SugerenciaReposicion> obtenerSugerencias(Long localId, boolean soloCambios, int pagina, int tamano,
+                                                         Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        PageRequest pageRequest = PageRequest.of(pagina, tamano);
+        return soloCambios
+                ? sugerenciaReposicionRepository.findCambiosByLocal(localId, pageRequest)
+                : sugerenciaReposicionRepository.findByLocalIdOrderByCantidadReponerDescIdAsc(localId, pageRequest);
+    }
+
+    // Aplicar el stock mínimo sugerido; sin IDs se aplican todas las sugerencias del local
+    @CarrilEjecucion(Carril.TRANSACCIONAL)
+    public int aplicar(Long localId, List<Long> sugerenciaIds, Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        Timestamp ahora = Timestamp.valueOf(LocalDateTime.now());
+        if (sugerenciaIds == null || sugerenciaIds.isEmpty()) {
+            return aplicarBloque(localId, null, ahora);
+        }
+        List<Long> ids = sugerenciaIds.stream().filter(Objects::nonNull).distinct().toList();
+        int aplicadas = 0;
+        for (int i = 0; i < ids.size(); i += MAX_IDS) {
+            aplicadas += aplicarBloque(localId, ids.subList(i, Math.min(i + MAX_IDS, ids.size())), ahora);
+        }
+        return aplicadas;
+    }
+
+    @Override
+    public void destroy() {
+        calculo.shutdown();
+    }
+
+    private int aplicarBloque(Long localId, List<Long> ids, Timestamp ahora) {
+        MapSqlParameterSource parametros = new MapSqlParameterSource()
+                .addValue("localId", localId)
+                .addValue("ahora", ahora);
+        String filtro = "";
+        if (ids != null) {
+            parametros.addValue("ids", ids);
+            filtro = "AND s.id IN (:ids)";
+        }
+        String sqlAplicar = String.format(SQL_APLICAR, filtro);
+        String sqlMarcar = String.format(SQL_MARCAR_APLICADAS, filtro);
+
+        Integer aplicadas = transaccionLocal.execute(status -> {
+            int filas = namedJdbcTemplate.update(sqlAplicar, parametros);
+            namedJdbcTemplate.update(sqlMarcar, parametros);
+            return filas;
+        });
+        return aplicadas != null ? aplicadas : 0;
+    }
+
+    // Calcular y guardar las sugerencias de un local; devuelve cuántos productos se evaluaron
+    private int calcularLocal(Long localId) {
+        LocalDate hoy = LocalDate.now();
+        LocalDateTime hasta = hoy.atStartOfDay();
+        LocalDateTime desde = hoy.minusDays(diasAnalizados).atStartOfDay();
+        // En milisegundos: la base guarda menos decimales y el borrado compara contra esta fecha
+        Timestamp fechaCalculo = Timestamp.valueOf(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+
+        List<Object[]> filas = new ArrayList<>();
+        jdbcTemplate.query(SQL_DEMANDA, (RowCallbackHandler) rs -> {
+            // Productos asignados hace poco: solo cuentan los días desde la asignación
+            LocalDateTime asignado = rs.getTimestamp("created_at").toLocalDateTime();
+            long dias = asignado.isAfter(desde)
+                    ? Math.max(1, ChronoUnit.DAYS.between(asignado.toLocalDate(), hoy))
+                    : diasAnalizados;
+            double suma = rs.getLong("suma");
+            double media = suma / dias;
+            double varianza = Math.max(0, rs.getLong("suma_cuadrados") / (double) dias - media * media);
+            double desvio = Math.sqrt(varianza);
+
+            double seguridad = factorServicio * desvio * Math.sqrt(diasEntrega);
+            int stock = rs.getInt("stock");
+            int minimoSugerido = (int) Math.ceil(media * diasEntrega + seguridad);
+            int nivelObjetivo = (int) Math.ceil(media * (diasEntrega + diasRevision) + seguridad);
+
+            filas.add(new Object[]{
+                    rs.getLong("id"), localId, rs.getLong("producto_id"), rs.getString("nombre"),
+                    BigDecimal.valueOf(media).setScale(3, RoundingMode.HALF_UP),
+                    BigDecimal.valueOf(desvio).setScale(3, RoundingMode.HALF_UP),
+                    (int) dias, stock, rs.getInt("stock_minimo"), minimoSugerido,
+                    Math.max(0, nivelObjetivo - stock), fechaCalculo});
+        }, localId, Timestamp.valueOf(desde), Timestamp.valueOf(hasta), localId);
+
+        transaccionLocal.executeWithoutResult(status -> {
+            for (int i = 0; i < filas.size(); i += TAMANO_LOTE_ESCRITURA) {
+                jdbcTemplate.batchUpdate(SQL_GUARDAR, filas.subList(i, Math.min(i + TAMANO_LOTE_ESCRITURA, filas.size())));
+            }
+            jdbcTemplate.update(SQL_BORRAR_VIEJAS, localId, fechaCalculo);
+        });
+        return filas.size();
+    }
+}
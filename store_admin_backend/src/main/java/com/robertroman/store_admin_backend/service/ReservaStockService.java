@@ -0,0 +1,390 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.entity.ProductoLocal;
+import com.robertroman.store_admin_backend.entity.ReservaStock;
+import com.robertroman.store_admin_backend.repository.ProductoLocalRepository;
+import com.robertroman.store_admin_backend.repository.ReservaStockRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Reservas de stock con vencimiento para canastos en armado.
+// Las reservas viven en memoria: los totales retenidos por (local, producto) están en
+// RetencionesStock y los vencimientos en una DelayQueue que se barre cada segundo.
+// Periódicamente se copian las reservas modificadas a reservas_stock para recuperarlas tras un reinicio.
+@Service
+public class ReservaStockService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReservaStockService.class);
+
+    private static final String SQL_BORRAR = "DELETE FROM reservas_stock WHERE codigo = ?";
+
+    private static final String SQL_INSERTAR =
+            "INSERT INTO reservas_stock (codigo, local_id, producto_id, cantidad, usuario_id, expira_en) " +
+            "VALUES (?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private RetencionesStock retenciones;
+
+    @Autowired
+    private MovimientoStockService movimientoStockService;
+
+    @Autowired
+    private ProductoLocalRepository productoLocalRepository;
+
+    @Autowired
+    private ReservaStockRepository reservaStockRepository;
+
+    @Autowired
+    private LocalService localService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transaccion;
+
+    @Value("${reservas.ttl-segundos:900}")
+    private long ttlPorDefectoSegundos;
+
+    @Value("${reservas.ttl-maximo-segundos:3600}")
+    private long ttlMaximoSegundos;
+
+    private final Map<String, Reserva> reservas = new ConcurrentHashMap<>();
+    private final DelayQueue<Vencimiento> vencimientos = new DelayQueue<>();
+    // Reservas creadas, modificadas o terminadas desde la última persistencia
+    private final Set<String> modificadas = ConcurrentHashMap.newKeySet();
+
+    public ReservaStockService(PlatformTransactionManager transactionManager) {
+        this.transaccion = new TransactionTemplate(transactionManager);
+    }
+
+    // Crear reserva para un canasto
+    public Reserva crear(Long localId, List<ItemReserva> items, Long ttlSegundos, Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        Reserva reserva = new Reserva(UUID.randomUUID().toString(), localId, usuarioId);
+        reserva.expiraEn = calcularVencimiento(ttlSegundos);
+
+        for (ItemReserva item : items != null ? items : List.<ItemReserva>of()) {
+            try {
+                cambiarCantidad(reserva, item.getProductoId(), item.getCantidad());
+            } catch (RuntimeException e) {
+                // Todo o nada: soltar lo que ya se había retenido
+                reserva.items.forEach((productoId, cantidad) -> retenciones.liberar(localId, productoId, cantidad));
+                throw e;
+            }
+        }
+        registrar(reserva);
+        return reserva;
+    }
+
+    // Fijar la cantidad reservada de un producto (0 la quita) y renovar el vencimiento
+    public Reserva actualizarItem(String codigo, Long productoId, Integer cantidad, Long ttlSegundos, Long usuarioId) {
+        Reserva reserva = obtenerVigente(codigo, usuarioId);
+        synchronized (reserva) {
+            verificarVigente(reserva);
+            cambiarCantidad(reserva, productoId, cantidad);
+            reserva.expiraEn = calcularVencimiento(ttlSegundos);
+            registrar(reserva);
+        }
+        return reserva;
+    }
+
+    // Liberar toda la reserva
+    public void liberar(String codigo, Long usuarioId) {
+        Reserva reserva = obtenerVigente(codigo, usuarioId);
+        terminar(reserva);
+    }
+
+    public Reserva obtener(String codigo, Long usuarioId) {
+        return obtenerVigente(codigo, usuarioId);
+    }
+
+    // Reserva vigente para convertir en venta en ese local (el acceso ya lo validó la venta)
+    public Reserva obtenerParaVenta(String codigo, Long localId) {
+        Reserva reserva = reservas.get(codigo);
+        if (reserva == null || reserva.vencida()) {
+            throw new RuntimeException("La reserva no existe o está vencida");
+        }
+        if (!reserva.localId.equals(localId)) {
+            throw new RuntimeException("La reserva pertenece a otro local");
+        }
+        return reserva;
+    }
+
+    // Terminar la reserva cuando confirme la transacción de la venta
+    public void consumirAlConfirmar(String codigo) {
+        Reserva reserva = reservas.get(codigo);
+        if (reserva == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            terminar(reserva);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                terminar(reserva);
+            }
+        });
+    }
+
+    // Stock, retenido y disponible de un producto en un local
+    public Disponibilidad disponibilidad(Long localId, Long productoId, Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        ProductoLocal productoLocal = productoLocalRepository.findByProductoIdAndLocalId(productoId, localId)
+                .orElseThrow(() -> new RuntimeException("Producto no asignado a este local"));
+
+        int stock = movimientoStockService.stockActual(productoLocal);
+        int retenido = retenciones.retenido(localId, productoId);
+        return new Disponibilidad(localId, productoId, stock, retenido);
+    }
+
+    // Barrido de vencimientos
+    @Scheduled(fixedDelayString = "${reservas.intervalo-barrido-ms:1000}")
+    public void barrerVencidas() {
+        Vencimiento vencimiento;
+        while ((vencimiento = vencimientos.poll()) != null) {
+            Reserva reserva = reservas.get(vencimiento.codigo);
+            // La reserva pudo renovarse (hay otro vencimiento en cola) o ya haberse terminado
+            if (reserva != null && reserva.vencida()) {
+                terminar(reserva);
+            }
+        }
+    }
+
+    // Copiar a la base las reservas que cambiaron
+    @Scheduled(fixedDelayString = "${reservas.intervalo-persistencia-ms:30000}")
+    public void persistir() {
+        if (modificadas.isEmpty()) {
+            return;
+        }
+        List<String> codigos = new ArrayList<>(modificadas);
+        codigos.forEach(modificadas::remove);
+
+        List<Object[]> borrar = new ArrayList<>();
+        List<Object[]> insertar = new ArrayList<>();
+        for (String codigo : codigos) {
+            borrar.add(new Object[]{codigo});
+            Reserva reserva = reservas.get(codigo);
+            if (reserva == null) {
+                continue;
+            }
+            synchronized (reserva) {
+                Timestamp expiraEn = Timestamp.valueOf(reserva.expiraEn);
+                reserva.items.forEach((productoId, cantidad) -> insertar.add(new Object[]{
+                        codigo, reserva.localId, productoId, cantidad, reserva.usuarioId, expiraEn}));
+            }
+        }
+
+        try {
+            transaccion.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(SQL_BORRAR, borrar);
+                jdbcTemplate.batchUpdate(SQL_INSERTAR, insertar);
+            });
+        } catch (RuntimeException e) {
+            modificadas.addAll(codigos);
+            log.error("Error al persistir reservas de stock: {}", e.getMessage());
+        }
+    }
+
+    // Recuperar reservas vigentes al arrancar
+    @EventListener(ApplicationReadyEvent.class)
+    public void recuperar() {
+        List<ReservaStock> filas = reservaStockRepository.findByExpiraEnAfter(LocalDateTime.now());
+        Map<String, List<ReservaStock>> porCodigo = filas.stream()
+                .collect(Collectors.groupingBy(ReservaStock::getCodigo));
+
+        porCodigo.forEach((codigo, lineas) -> {
+            ReservaStock primera = lineas.get(0);
+            Reserva reserva = new Reserva(codigo, primera.getLocalId(), primera.getUsuarioId());
+            reserva.expiraEn = primera.getExpiraEn();
+            for (ReservaStock linea : lineas) {
+                reserva.items.put(linea.getProductoId(), linea.getCantidad());
+                retenciones.forzar(reserva.localId, linea.getProductoId(), linea.getCantidad());
+            }
+            reservas.put(codigo, reserva);
+            vencimientos.add(new Vencimiento(codigo, reserva.expiraEn));
+        });
+
+        // Descartar las que vencieron mientras la aplicación estaba detenida
+        jdbcTemplate.update("DELETE FROM reservas_stock WHERE expira_en <= ?", Timestamp.valueOf(LocalDateTime.now()));
+
+        if (!porCodigo.isEmpty()) {
+            log.info("Recuperadas {} reservas de stock vigentes", porCodigo.size());
+        }
+    }
+
+    // Métodos auxiliares
+
+    private void cambiarCantidad(Reserva reserva, Long productoId, Integer cantidad) {
+        if (productoId == null || cantidad == null || cantidad < 0) {
+            throw new RuntimeException("Producto y cantidad (>= 0) son obligatorios");
+        }
+
+        int actual = reserva.items.getOrDefault(productoId, 0);
+        int diferencia = cantidad - actual;
+        if (diferencia > 0) {
+            ProductoLocal productoLocal = productoLocalRepository.findByProductoIdAndLocalId(productoId, reserva.localId)
+                    .orElseThrow(() -> new RuntimeException("Producto con ID " + productoId + " no está disponible en este local"));
+            int stock = movimientoStockService.stockActual(productoLocal);
+            if (!retenciones.retener(reserva.localId, productoId, diferencia, stock)) {
+                throw new RuntimeException("Stock insuficiente para reservar el producto: " +
+                        productoLocal.getProducto().getNombre() + ". Disponible: " +
+                        Math.max(0, stock - retenciones.retenido(reserva.localId, productoId)) +
+                        ", solicitado: " + diferencia);
+            }
+        } else if (diferencia < 0) {
+            retenciones.liberar(reserva.localId, productoId, -diferencia);
+        }
+
+        if (cantidad == 0) {
+            reserva.items.remove(productoId);
+        } else {
+            reserva.items.put(productoId, cantidad);
+        }
+    }
+
+    private void registrar(Reserva reserva) {
+        reservas.put(reserva.codigo, reserva);
+        vencimientos.add(new Vencimiento(reserva.codigo, reserva.expiraEn));
+        modificadas.add(reserva.codigo);
+    }
+
+    private void terminar(Reserva reserva) {
+        synchronized (reserva) {
+            if (reserva.terminada) {
+                return;
+            }
+            reserva.terminada = true;
+            reserva.items.forEach((productoId, cantidad) -> retenciones.liberar(reserva.localId, productoId, cantidad));
+            reservas.remove(reserva.codigo);
+            modificadas.add(reserva.codigo);
+        }
+    }
+
+    private Reserva obtenerVigente(String codigo, Long usuarioId) {
+        Reserva reserva = reservas.get(codigo);
+        if (reserva == null || reserva.vencida()) {
+            throw new RuntimeException("La reserva no existe o está vencida");
+        }
+        // Validar acceso al local de la reserva
+        localService.validarAccesoLocal(reserva.localId, usuarioId);
+        return reserva;
+    }
+
+    private void verificarVigente(Reserva reserva) {
+        if (reserva.terminada || reserva.vencida()) {
+            throw new RuntimeException("La reserva no existe o está vencida");
+        }
+    }
+
+    private LocalDateTime calcularVencimiento(Long ttlSegundos) {
+        long ttl = ttlSegundos != null && ttlSegundos > 0 ? Math.min(ttlSegundos, ttlMaximoSegundos) : ttlPorDefectoSegundos;
+        return LocalDateTime.now().plusSeconds(ttl);
+    }
+
+    private static class Vencimiento implements Delayed {
+        private final String codigo;
+        private final long instanteMs;
+
+        private Vencimiento(String codigo, LocalDateTime expiraEn) {
+            this.codigo = codigo;
+            this.instanteMs = expiraEn.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(instanteMs - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed otro) {
+            return Long.compare(instanteMs, ((Vencimiento) otro).instanteMs);
+        }
+    }
+
+    // Clases internas para DTOs
+
+    public static class Reserva {
+        private final String codigo;
+        private final Long localId;
+        private final Long usuarioId;
+        private final Map<Long, Integer> items = new ConcurrentHashMap<>();
+        private volatile LocalDateTime expiraEn;
+        private volatile boolean terminada = false;
+
+        private Reserva(String codigo, Long localId, Long usuarioId) {
+            this.codigo = codigo;
+            this.localId = localId;
+            this.usuarioId = usuarioId;
+        }
+
+        private boolean vencida() {
+            return !expiraEn.isAfter(LocalDateTime.now());
+        }
+
+        // Getters
+        public String getCodigo() { return codigo; }
+        public Long getLocalId() { return localId; }
+        public Map<Long, Integer> getItems() { return Collections.unmodifiableMap(items); }
+        public LocalDateTime getExpiraEn() { return expiraEn; }
+    }
+
+    public static class ItemReserva {
+        private Long productoId;
+        private Integer cantidad;
+
+        // Getters y Setters
+        public Long getProductoId() { return productoId; }
+        public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+        public Integer getCantidad() { return cantidad; }
+        public void setCantidad(Integer cantidad) { this.cantidad = cantidad; }
+    }
+
+    public static class Disponibilidad {
+        private final Long localId;
+        private final Long productoId;
+        private final int stock;
+        private final int retenido;
+
+        public Disponibilidad(Long localId, Long productoId, int stock, int retenido) {
+            this.localId = localId;
+            this.productoId = productoId;
+            this.stock = stock;
+            this.retenido = retenido;
+        }
+
+        // Getters
+        public Long getLocalId() { return localId; }
+        public Long getProductoId() { return productoId; }
+        public int getStock() { return stock; }
+        public int getRetenido() { return retenido; }
+        public int getDisponible() { return Math.max(0, stock - retenido); }
+    }
+}
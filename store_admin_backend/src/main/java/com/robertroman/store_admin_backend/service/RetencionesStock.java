@@ -0,0 +1,67 @@
+package com.robertroman.store_admin_backend.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Total retenido por reservas vigentes para cada (local, producto), con lectura O(1).
+// Lo mantiene ReservaStockService; lo consultan los chequeos de stock de las ventas.
+@Component
+public class RetencionesStock {
+
+    private final Map<Clave, Integer> retenidos = new ConcurrentHashMap<>();
+
+    public int retenido(Long localId, Long productoId) {
+        return retenidos.getOrDefault(new Clave(localId, productoId), 0);
+    }
+
+    // Retener si el stock alcanza para lo ya retenido más lo pedido (atómico por clave)
+    public boolean retener(Long localId, Long productoId, int cantidad, int stock) {
+        boolean[] retenido = {false};
+        retenidos.compute(new Clave(localId, productoId), (clave, actual) -> {
+            int total = actual != null ? actual : 0;
+            if (stock - total < cantidad) {
+                return actual;
+            }
+            retenido[0] = true;
+            return total + cantidad;
+        });
+        return retenido[0];
+    }
+
+    // Retener sin verificar stock (recuperación de reservas ya concedidas)
+    public void forzar(Long localId, Long productoId, int cantidad) {
+        retenidos.merge(new Clave(localId, productoId), cantidad, Integer::sum);
+    }
+
+    public void liberar(Long localId, Long productoId, int cantidad) {
+        retenidos.computeIfPresent(new Clave(localId, productoId), (clave, actual) -> {
+            int restante = actual - cantidad;
+            return restante > 0 ? restante : null;
+        });
+    }
+
+    private static final class Clave {
+        private final Long localId;
+        private final Long productoId;
+
+        private Clave(Long localId, Long productoId) {
+            this.localId = localId;
+            this.productoId = productoId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Clave that)) return false;
+            return localId.equals(that.localId) && productoId.equals(that.productoId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(localId, productoId);
+        }
+    }
+}
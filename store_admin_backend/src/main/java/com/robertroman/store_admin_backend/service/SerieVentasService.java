@@ -0,0 +1,201 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.config.Carril;
+import com.robertroman.store_admin_backend.config.CarrilEjecucion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+
+// Series de ventas para gráficos (total y cantidad por hora, día, semana, mes u hora de la semana).
+// El agrupamiento se hace en la base con una expresión de intervalo por fila, así se devuelven unas
+// pocas decenas de puntos en lugar de todas las ventas; los intervalos sin ventas se completan en cero.
+@Service
+@Transactional(readOnly = true)
+@CarrilEjecucion(Carril.ANALITICO)
+public class SerieVentasService {
+
+    // Máximo de puntos por serie (evita pedir un año por hora)
+    private static final int MAX_PUNTOS = 1000;
+
+    // Las semanas empiezan el lunes: 1900-01-01 fue lunes, así no depende de SET DATEFIRST
+    private static final String SQL_SERIE =
+            "SELECT b.intervalo, SUM(v.total - COALESCE(v.monto_devuelto, 0)) AS total, COUNT(*) AS cantidad " +
+            "FROM ventas v " +
+            "CROSS APPLY (SELECT %s AS intervalo) b " +
+            "WHERE v.local_id = :localId AND v.fecha_venta >= :desde AND v.fecha_venta < :hasta " +
+            "AND v.estado = 'COMPLETADA' " +
+            "GROUP BY b.intervalo";
+
+    public enum Granularidad {
+        HORA("DATEADD(hour, DATEDIFF(hour, 0, v.fecha_venta), 0)"),
+        DIA("CAST(CAST(v.fecha_venta AS DATE) AS DATETIME2)"),
+        SEMANA("CAST(DATEADD(day, -(DATEDIFF(day, '19000101', v.fecha_venta) % 7), CAST(v.fecha_venta AS DATE)) AS DATETIME2)"),
+        MES("CAST(DATEFROMPARTS(YEAR(v.fecha_venta), MONTH(v.fecha_venta), 1) AS DATETIME2)"),
+        // 0 = lunes 00 h ... 167 = domingo 23 h
+        HORA_SEMANA("(DATEDIFF(day, '19000101', v.fecha_venta) % 7) * 24 + DATEPART(hour, v.fecha_venta)");
+
+        private final String expresion;
+
+        Granularidad(String expresion) {
+            this.expresion = expresion;
+        }
+    }
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private LocalService localService;
+
+    // Serie de ventas de un local entre dos fechas (fin exclusivo)
+    public SerieVentas obtenerSerie(Long localId, Granularidad granularidad, LocalDateTime desde,
+                                    LocalDateTime hasta, Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        if (!desde.isBefore(hasta)) {
+            throw new RuntimeException("La fecha de inicio debe ser anterior a la fecha de fin");
+        }
+
+        // Intervalos vacíos primero, para que los sin ventas queden en cero
+        Map<Object, PuntoSerie> puntos = new LinkedHashMap<>();
+        if (granularidad == Granularidad.HORA_SEMANA) {
+            for (int i = 0; i < 168; i++) {
+                puntos.put(i, PuntoSerie.horaSemana(i));
+            }
+        } else {
+            LocalDateTime intervalo = inicioIntervalo(granularidad, desde);
+            while (intervalo.isBefore(hasta)) {
+                if (puntos.size() >= MAX_PUNTOS) {
+                    throw new RuntimeException("El período es demasiado largo para la granularidad " + granularidad +
+                            " (máximo " + MAX_PUNTOS + " puntos)");
+                }
+                puntos.put(intervalo, PuntoSerie.desde(intervalo));
+                intervalo = siguiente(granularidad, intervalo);
+            }
+        }
+
+        MapSqlParameterSource parametros = new MapSqlParameterSource()
+                .addValue("localId", localId)
+                .addValue("desde", Timestamp.valueOf(desde))
+                .addValue("hasta", Timestamp.valueOf(hasta));
+        jdbcTemplate.query(String.format(SQL_SERIE, granularidad.expresion), parametros, rs -> {
+            Object clave = granularidad == Granularidad.HORA_SEMANA
+                    ? (Object) rs.getInt("intervalo")
+                    : rs.getTimestamp("intervalo").toLocalDateTime();
+            PuntoSerie punto = puntos.get(clave);
+            if (punto != null) {
+                punto.setTotal(rs.getBigDecimal("total"));
+                punto.setCantidad(rs.getLong("cantidad"));
+            }
+        });
+
+        SerieVentas serie = new SerieVentas();
+        serie.setGranularidad(granularidad);
+        serie.setDesde(desde);
+        serie.setHasta(hasta);
+        serie.setPuntos(new ArrayList<>(puntos.values()));
+        serie.setTotal(serie.getPuntos().stream().map(PuntoSerie::getTotal).reduce(BigDecimal.ZERO, BigDecimal::add));
+        serie.setCantidad(serie.getPuntos().stream().mapToLong(PuntoSerie::getCantidad).sum());
+        return serie;
+    }
+
+    // Mismo redondeo que la expresión SQL de cada granularidad
+    private static LocalDateTime inicioIntervalo(Granularidad granularidad, LocalDateTime fecha) {
+        return switch (granularidad) {
+            case HORA -> fecha.truncatedTo(ChronoUnit.HOURS);
+            case DIA -> fecha.truncatedTo(ChronoUnit.DAYS);
+            case SEMANA -> fecha.truncatedTo(ChronoUnit.DAYS).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MES -> fecha.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+            case HORA_SEMANA -> throw new IllegalArgumentException("Sin intervalo calendario");
+        };
+    }
+
+    private static LocalDateTime siguiente(Granularidad granularidad, LocalDateTime intervalo) {
+        return switch (granularidad) {
+            case HORA -> intervalo.plusHours(1);
+            case DIA -> intervalo.plusDays(1);
+            case SEMANA -> intervalo.plusWeeks(1);
+            case MES -> intervalo.plusMonths(1);
+            case HORA_SEMANA -> throw new IllegalArgumentException("Sin intervalo calendario");
+        };
+    }
+
+    // DTOs
+    public static class SerieVentas {
+        private Granularidad granularidad;
+        private LocalDateTime desde;
+        private LocalDateTime hasta;
+        private BigDecimal total;
+        private Long cantidad;
+        private List<PuntoSerie> puntos;
+
+        // Getters y Setters
+        public Granularidad getGranularidad() { return granularidad; }
+        public void setGranularidad(Granularidad granularidad) { this.granularidad = granularidad; }
+
+        public LocalDateTime getDesde() { return desde; }
+        public void setDesde(LocalDateTime desde) { this.desde = desde; }
+
+        public LocalDateTime getHasta() { return hasta; }
+        public void setHasta(LocalDateTime hasta) { this.hasta = hasta; }
+
+        public BigDecimal getTotal() { return total; }
+        public void setTotal(BigDecimal total) { this.total = total; }
+
+        public Long getCantidad() { return cantidad; }
+        public void setCantidad(Long cantidad) { this.cantidad = cantidad; }
+
+        public List<PuntoSerie> getPuntos() { return puntos; }
+        public void setPuntos(List<PuntoSerie> puntos) { this.puntos = puntos; }
+    }
+
+    public static class PuntoSerie {
+        // Inicio del intervalo (series calendario)
+        private LocalDateTime inicio;
+        // Día de la semana (1 = lunes) y hora (serie por hora de la semana)
+        private Integer diaSemana;
+        private Integer hora;
+        private BigDecimal total = BigDecimal.ZERO;
+        private Long cantidad = 0L;
+
+        private static PuntoSerie desde(LocalDateTime inicio) {
+            PuntoSerie punto = new PuntoSerie();
+            punto.inicio = inicio;
+            return punto;
+        }
+
+        private static PuntoSerie horaSemana(int indice) {
+            PuntoSerie punto = new PuntoSerie();
+            punto.diaSemana = indice / 24 + 1;
+            punto.hora = indice % 24;
+            return punto;
+        }
+
+        // Getters y Setters
+        public LocalDateTime getInicio() { return inicio; }
+        public void setInicio(LocalDateTime inicio) { this.inicio = inicio; }
+
+        public Integer getDiaSemana() { return diaSemana; }
+        public void setDiaSemana(Integer diaSemana) { this.diaSemana = diaSemana; }
+
+        public Integer getHora() { return hora; }
+        public void setHora(Integer hora) { this.hora = hora; }
+
+        public BigDecimal getTotal() { return total; }
+        public void setTotal(BigDecimal total) { this.total = total; }
+
+        public Long getCantidad() { return cantidad; }
+        public void setCantidad(Long cantidad) { this.cantidad = cantidad; }
+    }
+}
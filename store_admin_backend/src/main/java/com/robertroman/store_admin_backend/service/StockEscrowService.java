@@ -0,0 +1,190 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.entity.ProductoLocal;
+import com.robertroman.store_admin_backend.entity.StockParticion;
+import com.robertroman.store_admin_backend.repository.StockParticionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Stock en modo escrow para productos en oferta relámpago.
+// El stock de un ProductoLocal se reparte en N particiones; cada venta descuenta con un UPDATE
+// condicional sobre una partición elegida al azar, así N ventas concurrentes no esperan el mismo
+// bloqueo de fila (READPAST salta las particiones bloqueadas por otra venta en curso). Si ninguna
+// partición alcanza por sí sola, se bloquean todas y se rebalancea el total entre ellas.
+// productos_locales.stock se sincroniza periódicamente con la suma para las lecturas de listado.
+// No convive con el motor de stock (los dos escribirían productos_locales.stock): con
+// stock.motor.enabled la aplicación no arranca si quedan productos en modo escrow.
+@Service
+public class StockEscrowService {
+
+    private static final String SQL_DESCONTAR =
+            "UPDATE stock_particiones WITH (READPAST, ROWLOCK) SET cantidad = cantidad - ? " +
+            "WHERE producto_local_id = ? AND indice = ? AND cantidad >= ?";
+
+    private static final String SQL_SUMAR =
+            "UPDATE stock_particiones SET cantidad = cantidad + ? WHERE producto_local_id = ? AND indice = ?";
+
+    private static final String SQL_FIJAR =
+            "UPDATE stock_particiones SET cantidad = ? WHERE producto_local_id = ? AND indice = ?";
+
+    private static final String SQL_BLOQUEAR =
+            "SELECT indice, cantidad FROM stock_particiones WITH (UPDLOCK, ROWLOCK) " +
+            "WHERE producto_local_id = ? ORDER BY indice";
+
+    private static final String SQL_TOTAL =
+            "SELECT COALESCE(SUM(cantidad), 0) FROM stock_particiones WHERE producto_local_id = ?";
+
+    private static final String SQL_SINCRONIZAR =
+            "UPDATE pl SET pl.stock = t.total, pl.updated_at = ? " +
+            "FROM productos_locales pl " +
+            "JOIN (SELECT producto_local_id, SUM(cantidad) AS total FROM stock_particiones " +
+            "      GROUP BY producto_local_id) t ON t.producto_local_id = pl.id " +
+            "WHERE pl.particiones_escrow IS NOT NULL AND pl.stock <> t.total";
+
+    private static final String SQL_FIJAR_FILA =
+            "UPDATE productos_locales SET stock = ?, updated_at = ? WHERE id = ?";
+
+    private static final String SQL_CONTAR_EN_ESCROW =
+            "SELECT COUNT(*) FROM productos_locales WHERE particiones_escrow IS NOT NULL";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private StockParticionRepository stockParticionRepository;
+
+    @Autowired
+    private MotorStockService motorStock;
+
+    // Los modos son excluyentes: con el motor activo no puede haber productos en escrow
+    @EventListener(ApplicationReadyEvent.class)
+    public void verificarModoUnico() {
+        if (!motorStock.estaHabilitado()) {
+            return;
+        }
+        Integer enEscrow = jdbcTemplate.queryForObject(SQL_CONTAR_EN_ESCROW, Integer.class);
+        if (enEscrow != null && enEscrow > 0) {
+            throw new IllegalStateException("Hay " + enEscrow + " productos en modo escrow: desactivarlos " +
+                    "antes de habilitar stock.motor.enabled");
+        }
+    }
+
+    // Descontar de alguna partición; false si el total no alcanza
+    public boolean descontar(ProductoLocal productoLocal, int cantidad) {
+        Long id = productoLocal.getId();
+        int particiones = productoLocal.getParticionesEscrow();
+
+        // Probar cada partición empezando por una al azar
+        int inicio = ThreadLocalRandom.current().nextInt(particiones);
+        for (int i = 0; i < particiones; i++) {
+            int indice = (inicio + i) % particiones;
+            if (jdbcTemplate.update(SQL_DESCONTAR, cantidad, id, indice, cantidad) == 1) {
+                return true;
+            }
+        }
+
+        return rebalancearYDescontar(id, particiones, cantidad);
+    }
+
+    // Sumar a una partición al azar
+    public void reponer(ProductoLocal productoLocal, int cantidad) {
+        Long id = productoLocal.getId();
+        int indice = ThreadLocalRandom.current().nextInt(productoLocal.getParticionesEscrow());
+        jdbcTemplate.update(SQL_SUMAR, cantidad, id, indice);
+    }
+
+    // Fijar el total repartiéndolo en partes iguales; devuelve el total anterior
+    public int fijar(ProductoLocal productoLocal, int nuevoStock) {
+        return fijar(productoLocal.getId(), productoLocal.getParticionesEscrow(), nuevoStock);
+    }
+
+    public int fijar(Long productoLocalId, int particiones, int nuevoStock) {
+        int anterior = bloquear(productoLocalId).stream().mapToInt(p -> p[1]).sum();
+        repartir(productoLocalId, particiones, nuevoStock);
+        return anterior;
+    }
+
+    public int stockTotal(Long productoLocalId) {
+        Integer total = jdbcTemplate.queryForObject(SQL_TOTAL, Integer.class, productoLocalId);
+        return total != null ? total : 0;
+    }
+
+    // Pasar el stock de la fila a N particiones (la fila debe estar bloqueada por el llamador)
+    public void activar(ProductoLocal productoLocal, int particiones) {
+        if (particiones < 2) {
+            throw new RuntimeException("El modo escrow requiere al menos 2 particiones");
+        }
+        if (productoLocal.usaEscrow()) {
+            throw new RuntimeException("El producto ya está en modo escrow");
+        }
+
+        int stock = productoLocal.getStock();
+        List<StockParticion> nuevas = new ArrayList<>(particiones);
+        for (int i = 0; i < particiones; i++) {
+            nuevas.add(new StockParticion(productoLocal, i, parte(stock, particiones, i)));
+        }
+        stockParticionRepository.saveAll(nuevas);
+        productoLocal.setParticionesEscrow(particiones);
+    }
+
+    // Volver a una sola fila con la suma de las particiones
+    public void desactivar(ProductoLocal productoLocal) {
+        if (!productoLocal.usaEscrow()) {
+            throw new RuntimeException("El producto no está en modo escrow");
+        }
+
+        int total = bloquear(productoLocal.getId()).stream().mapToInt(p -> p[1]).sum();
+        stockParticionRepository.deleteByProductoLocalId(productoLocal.getId());
+        // La columna stock no se escribe en el flush de la entidad
+        jdbcTemplate.update(SQL_FIJAR_FILA, total, Timestamp.valueOf(LocalDateTime.now()), productoLocal.getId());
+        productoLocal.setStock(total);
+        productoLocal.setParticionesEscrow(null);
+    }
+
+    // Reflejar la suma de las particiones en productos_locales.stock
+    @Scheduled(fixedDelayString = "${stock.escrow.intervalo-sincronizacion-ms:5000}")
+    public void sincronizarTotales() {
+        if (motorStock.estaHabilitado()) {
+            return;
+        }
+        jdbcTemplate.update(SQL_SINCRONIZAR, Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    // Bloquea todas las particiones hasta el fin de la transacción y redistribuye lo que queda
+    private boolean rebalancearYDescontar(Long id, int particiones, int cantidad) {
+        int total = bloquear(id).stream().mapToInt(p -> p[1]).sum();
+        if (total < cantidad) {
+            return false;
+        }
+        repartir(id, particiones, total - cantidad);
+        return true;
+    }
+
+    private List<int[]> bloquear(Long id) {
+        return jdbcTemplate.query(SQL_BLOQUEAR,
+                (rs, rowNum) -> new int[]{rs.getInt("indice"), rs.getInt("cantidad")}, id);
+    }
+
+    private void repartir(Long id, int particiones, int total) {
+        List<Object[]> parametros = new ArrayList<>(particiones);
+        for (int i = 0; i < particiones; i++) {
+            parametros.add(new Object[]{parte(total, particiones, i), id, i});
+        }
+        jdbcTemplate.batchUpdate(SQL_FIJAR, parametros);
+    }
+
+    // Reparto en partes iguales; el resto va a las primeras particiones
+    private static int parte(int total, int particiones, int indice) {
+        return total / particiones + (indice < total % particiones ? 1 : 0);
+    }
+}
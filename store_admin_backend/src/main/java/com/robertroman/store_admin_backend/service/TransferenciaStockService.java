@@ -0,0 +1,199 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.config.Carril;
+import com.robertroman.store_admin_backend.config.CarrilEjecucion;
+import com.robertroman.store_admin_backend.entity.DetalleTransferencia;
+import com.robertroman.store_admin_backend.entity.MovimientoInventario;
+import com.robertroman.store_admin_backend.entity.ProductoLocal;
+import com.robertroman.store_admin_backend.entity.TransferenciaStock;
+import com.robertroman.store_admin_backend.repository.ProductoLocalRepository;
+import com.robertroman.store_admin_backend.repository.TransferenciaStockRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Transferencias de stock entre locales.
+// Todas las líneas se aplican en una sola transacción: el descuento en el origen y la suma en el
+// destino van por lotes, y los productos que faltan en el destino se crean con un solo lote de
+// INSERT copiando precio y stock mínimo del origen.
+@Service
+@Transactional
+@CarrilEjecucion(Carril.TRANSACCIONAL)
+public class TransferenciaStockService {
+
+    private static final String SQL_CREAR_EN_DESTINO =
+            "INSERT INTO productos_locales (producto_id, local_id, stock, stock_minimo, precio_venta, activo, created_at, updated_at) " +
+            "SELECT pl.producto_id, ?, 0, pl.stock_minimo, pl.precio_venta, 1, ?, ? " +
+            "FROM productos_locales pl WHERE pl.id = ?";
+
+    private static final String SQL_INSERTAR_DETALLE =
+            "INSERT INTO detalles_transferencia (transferencia_id, producto_id, cantidad) VALUES (?, ?, ?)";
+
+    @Autowired
+    private ProductoLocalRepository productoLocalRepository;
+
+    @Autowired
+    private TransferenciaStockRepository transferenciaStockRepository;
+
+    @Autowired
+    private MovimientoStockService movimientoStockService;
+
+    @Autowired
+    private LocalService localService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Transferir stock de varios productos de un local a otro (todo o nada)
+    public TransferenciaStock transferir(TransferenciaRequest request, Long usuarioId) {
+        Long origenId = request.getLocalOrigenId();
+        Long destinoId = request.getLocalDestinoId();
+        if (origenId == null || destinoId == null) {
+            throw new RuntimeException("Los locales de origen y destino son obligatorios");
+        }
+        if (origenId.equals(destinoId)) {
+            throw new RuntimeException("El local de origen y el de destino deben ser distintos");
+        }
+
+        // Validar acceso a ambos locales
+        localService.validarAccesoLocal(origenId, usuarioId);
+        localService.validarAccesoLocal(destinoId, usuarioId);
+
+        Map<Long, Integer> cantidades = cantidadesPorProducto(request.getItems());
+
+        Map<Long, ProductoLocal> origen = porProducto(productoLocalRepository
+                .findByLocalIdAndProductoIdIn(origenId, cantidades.keySet()));
+        for (Long productoId : cantidades.keySet()) {
+            if (!origen.containsKey(productoId)) {
+                throw new RuntimeException("Producto con ID " + productoId + " no asignado al local de origen");
+            }
+        }
+
+        Map<Long, ProductoLocal> destino = obtenerOCrearEnDestino(destinoId, cantidades.keySet(), origen);
+
+        TransferenciaStock transferencia = transferenciaStockRepository.save(
+                new TransferenciaStock(origenId, destinoId, usuarioId, request.getObservaciones()));
+        String referencia = transferencia.getNumero();
+
+        // Descontar en el origen (todo o nada, respetando reservas)
+        Map<ProductoLocal, Integer> salida = new LinkedHashMap<>();
+        Map<ProductoLocal, Integer> entrada = new LinkedHashMap<>();
+        cantidades.forEach((productoId, cantidad) -> {
+            salida.put(origen.get(productoId), cantidad);
+            entrada.put(destino.get(productoId), cantidad);
+        });
+        String error = movimientoStockService.descontar(salida, Map.of(),
+                MovimientoInventario.Motivo.TRANSFERENCIA_SALIDA, referencia);
+        if (error != null) {
+            throw new RuntimeException(error);
+        }
+        movimientoStockService.reponer(entrada, MovimientoInventario.Motivo.TRANSFERENCIA_ENTRADA, referencia);
+
+        List<DetalleTransferencia> detalles = new ArrayList<>(cantidades.size());
+        List<Object[]> parametros = new ArrayList<>(cantidades.size());
+        cantidades.forEach((productoId, cantidad) -> {
+            detalles.add(new DetalleTransferencia(transferencia, productoId, cantidad));
+            parametros.add(new Object[]{transferencia.getId(), productoId, cantidad});
+        });
+        jdbcTemplate.batchUpdate(SQL_INSERTAR_DETALLE, parametros);
+
+        transferencia.setDetalles(detalles);
+        return transferencia;
+    }
+
+    // Transferencias que salen o entran a un local
+    @Transactional(readOnly = true)
+    public List<TransferenciaStock> obtenerTransferenciasDeLocal(Long localId, Long usuarioId) {
+        // Validar acceso al local
+        localService.validarAccesoLocal(localId, usuarioId);
+
+        return transferenciaStockRepository.findByLocalConDetalles(localId);
+    }
+
+    private Map<Long, Integer> cantidadesPorProducto(List<ItemTransferencia> items) {
+        if (items == null || items.isEmpty()) {
+            throw new RuntimeException("La transferencia debe incluir al menos un item");
+        }
+
+        Map<Long, Integer> cantidades = new LinkedHashMap<>();
+        for (ItemTransferencia item : items) {
+            if (item.getProductoId() == null) {
+                throw new RuntimeException("El ID del producto es obligatorio");
+            }
+            if (item.getCantidad() == null || item.getCantidad() <= 0) {
+                throw new RuntimeException("La cantidad debe ser mayor a 0");
+            }
+            cantidades.merge(item.getProductoId(), item.getCantidad(), Integer::sum);
+        }
+        return cantidades;
+    }
+
+    // Productos del destino; los que faltan se crean y los desasignados se reactivan
+    private Map<Long, ProductoLocal> obtenerOCrearEnDestino(Long destinoId, Set<Long> productoIds,
+                                                            Map<Long, ProductoLocal> origen) {
+        Map<Long, ProductoLocal> destino = porProducto(productoLocalRepository
+                .findByLocalIdAndProductoIdIn(destinoId, productoIds));
+
+        Timestamp ahora = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> faltantes = new ArrayList<>();
+        for (Long productoId : productoIds) {
+            if (!destino.containsKey(productoId)) {
+                faltantes.add(new Object[]{destinoId, ahora, ahora, origen.get(productoId).getId()});
+            }
+        }
+        if (!faltantes.isEmpty()) {
+            jdbcTemplate.batchUpdate(SQL_CREAR_EN_DESTINO, faltantes);
+            destino = porProducto(productoLocalRepository.findByLocalIdAndProductoIdIn(destinoId, productoIds));
+        }
+
+        destino.values().stream()
+                .filter(productoLocal -> !Boolean.TRUE.equals(productoLocal.getActivo()))
+                .forEach(productoLocal -> productoLocal.setActivo(true));
+        return destino;
+    }
+
+    private static Map<Long, ProductoLocal> porProducto(List<ProductoLocal> productoLocales) {
+        return productoLocales.stream()
+                .collect(Collectors.toMap(pl -> pl.getProducto().getId(), Function.identity()));
+    }
+
+    // DTOs
+    public static class TransferenciaRequest {
+        private Long localOrigenId;
+        private Long localDestinoId;
+        private String observaciones;
+        private List<ItemTransferencia> items;
+
+        // Getters y Setters
+        public Long getLocalOrigenId() { return localOrigenId; }
+        public void setLocalOrigenId(Long localOrigenId) { this.localOrigenId = localOrigenId; }
+
+        public Long getLocalDestinoId() { return localDestinoId; }
+        public void setLocalDestinoId(Long localDestinoId) { this.localDestinoId = localDestinoId; }
+
+        public String getObservaciones() { return observaciones; }
+        public void setObservaciones(String observaciones) { this.observaciones = observaciones; }
+
+        public List<ItemTransferencia> getItems() { return items; }
+        public void setItems(List<ItemTransferencia> items) { this.items = items; }
+    }
+
+    public static class ItemTransferencia {
+        private Long productoId;
+        private Integer cantidad;
+
+        // Getters y Setters
+        public Long getProductoId() { return productoId; }
+        public void setProductoId(Long productoId) { this.productoId = productoId; }
+
+        public Integer getCantidad() { return cantidad; }
+        public void setCantidad(Integer cantidad) { this.cantidad = cantidad; }
+    }
+}
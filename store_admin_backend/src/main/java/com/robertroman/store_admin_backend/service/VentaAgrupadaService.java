@@ -0,0 +1,219 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.entity.Local;
+import com.robertroman.store_admin_backend.entity.Venta;
+import com.robertroman.store_admin_backend.entity.VentaIdempotencia;
+import com.robertroman.store_admin_backend.repository.LocalRepository;
+import com.robertroman.store_admin_backend.repository.VentaIdempotenciaRepository;
+import com.robertroman.store_admin_backend.repository.VentaRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Group commit de ventas por local.
+// Las ventas que llegan al mismo local dentro de una ventana corta se escriben y confirman
+// en una sola transacción, repartiendo el costo del commit. Cada venta se valida por separado
+// (todo o nada) y cada llamador recibe su propio resultado. Una venta hecha desde una reserva usa
+// su stock retenido y la libera al confirmar el grupo, igual que en VentaService.
+// Se activa con ventas.group-commit.enabled.
+@Service
+public class VentaAgrupadaService implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(VentaAgrupadaService.class);
+
+    @Autowired
+    private VentaLoteService ventaLoteService;
+
+    @Autowired
+    private VentaRepository ventaRepository;
+
+    @Autowired
+    private LocalRepository localRepository;
+
+    @Autowired
+    private VentaIdempotenciaRepository ventaIdempotenciaRepository;
+
+    @Autowired
+    private LocalService localService;
+
+    private final boolean habilitado;
+    private final long ventanaMs;
+    private final int maxPorGrupo;
+    private final long esperaMaximaMs;
+
+    private final TransactionTemplate transaccionGrupo;
+    private final ScheduledExecutorService planificador;
+    private final Map<Long, ColaLocal> colas = new ConcurrentHashMap<>();
+
+    public VentaAgrupadaService(PlatformTransactionManager transactionManager,
+                                @Value("${ventas.group-commit.enabled:false}") boolean habilitado,
+                                @Value("${ventas.group-commit.ventana-ms:5}") long ventanaMs,
+                                @Value("${ventas.group-commit.max-por-grupo:50}") int maxPorGrupo,
+                                @Value("${ventas.group-commit.hilos:4}") int hilos,
+                                @Value("${ventas.group-commit.espera-maxima-ms:30000}") long esperaMaximaMs) {
+        this.habilitado = habilitado;
+        this.ventanaMs = ventanaMs;
+        this.maxPorGrupo = maxPorGrupo;
+        this.esperaMaximaMs = esperaMaximaMs;
+
+        this.transaccionGrupo = new TransactionTemplate(transactionManager);
+        this.transaccionGrupo.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        AtomicInteger contador = new AtomicInteger();
+        this.planificador = habilitado ? Executors.newScheduledThreadPool(hilos, r -> {
+            Thread hilo = new Thread(r, "group-commit-ventas-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        }) : null;
+    }
+
+    public boolean estaHabilitado() {
+        return habilitado;
+    }
+
+    // Crear venta esperando el commit del grupo de su local
+    public Venta crearVenta(VentaService.CrearVentaRequest request, Long usuarioId) {
+        // Validar acceso al local antes de encolar
+        localService.validarAccesoLocal(request.getLocalId(), usuarioId);
+
+        // Reintento de una venta ya registrada
+        String clave = request.getClaveIdempotencia();
+        if (clave != null && !clave.isBlank()) {
+            Optional<VentaIdempotencia> previa = ventaIdempotenciaRepository.findByClave(clave);
+            if (previa.isPresent()) {
+                if (!previa.get().getLocalId().equals(request.getLocalId())) {
+                    throw new RuntimeException("La clave de idempotencia ya fue usada en otro local");
+                }
+                return previa.get().getVenta();
+            }
+        }
+
+        Local local = localRepository.findById(request.getLocalId())
+                .orElseThrow(() -> new RuntimeException("Local no encontrado con ID: " + request.getLocalId()));
+
+        Solicitud solicitud = new Solicitud(new VentaLoteService.VentaPendiente(0, request));
+        colas.computeIfAbsent(local.getId(), id -> new ColaLocal(local)).encolar(solicitud);
+
+        VentaLoteService.ResultadoVenta resultado = esperar(solicitud.resultado);
+        if (resultado.getEstado() == VentaLoteService.EstadoResultado.RECHAZADA) {
+            throw new RuntimeException(resultado.getMensaje());
+        }
+
+        return ventaRepository.findById(resultado.getVentaId())
+                .orElseThrow(() -> new RuntimeException("Venta no encontrada con ID: " + resultado.getVentaId()));
+    }
+
+    private VentaLoteService.ResultadoVenta esperar(CompletableFuture<VentaLoteService.ResultadoVenta> futuro) {
+        try {
+            return futuro.get(esperaMaximaMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("La venta sigue en proceso; reintente con la misma clave de idempotencia");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Venta interrumpida");
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error al registrar la venta: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (planificador == null) {
+            return;
+        }
+        // Vaciar lo encolado antes de apagar
+        colas.values().forEach(ColaLocal::vaciar);
+        planificador.shutdown();
+    }
+
+    private static class Solicitud {
+        private final VentaLoteService.VentaPendiente pendiente;
+        private final CompletableFuture<VentaLoteService.ResultadoVenta> resultado = new CompletableFuture<>();
+
+        private Solicitud(VentaLoteService.VentaPendiente pendiente) {
+            this.pendiente = pendiente;
+        }
+    }
+
+    // Cola de ventas de un local; un solo grupo se escribe a la vez por local
+    private class ColaLocal {
+        private final Local local;
+        private final ReentrantLock escritura = new ReentrantLock();
+        private List<Solicitud> pendientes = new ArrayList<>();
+        private boolean programada = false;
+
+        private ColaLocal(Local local) {
+            this.local = local;
+        }
+
+        private void encolar(Solicitud solicitud) {
+            synchronized (this) {
+                pendientes.add(solicitud);
+                if (pendientes.size() >= maxPorGrupo) {
+                    planificador.execute(this::vaciar);
+                } else if (!programada) {
+                    programada = true;
+                    planificador.schedule(this::vaciar, ventanaMs, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        private void vaciar() {
+            escritura.lock();
+            try {
+                List<Solicitud> grupo;
+                synchronized (this) {
+                    grupo = pendientes;
+                    pendientes = new ArrayList<>();
+                    programada = false;
+                }
+                if (!grupo.isEmpty()) {
+                    try {
+                        escribir(grupo);
+                    } catch (RuntimeException e) {
+                        // Nunca dejar a un llamador esperando
+                        grupo.forEach(s -> s.resultado.completeExceptionally(e));
+                    }
+                }
+            } finally {
+                escritura.unlock();
+            }
+        }
+
+        private void escribir(List<Solicitud> grupo) {
+            List<VentaLoteService.VentaPendiente> ventas = new ArrayList<>(grupo.size());
+            grupo.forEach(s -> ventas.add(s.pendiente));
+
+            List<VentaLoteService.ResultadoVenta> resultados;
+            try {
+                resultados = transaccionGrupo.execute(status -> ventaLoteService.aplicarVentas(local, ventas));
+            } catch (RuntimeException e) {
+                // Un conflicto no debe arrastrar al resto del grupo: reintentar de a una
+                log.warn("Grupo de {} ventas del local {} falló, reintentando de a una: {}",
+                        grupo.size(), local.getId(), e.getMessage());
+                resultados = new ArrayList<>(grupo.size());
+                for (Solicitud solicitud : grupo) {
+                    resultados.add(ventaLoteService.aplicarIndividual(local, solicitud.pendiente));
+                }
+            }
+
+            for (int i = 0; i < grupo.size(); i++) {
+                grupo.get(i).resultado.complete(resultados.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.config.Carril;
+import com.robertroman.store_admin_backend.config.CarrilEjecucion;
+import com.robertroman.store_admin_backend.entity.*;
+import com.robertroman.store_admin_backend.repository.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Ingesta de ventas encoladas por terminales POS sin conexión.
+// Cada venta trae una clave de idempotencia generada por la terminal: reenviar el lote
+// (o parte de él) nunca registra dos veces la misma venta ni descuenta stock de nuevo.
+// Las ventas se aplican en bloques, cada uno en su propia transacción, cargando los
+// productos del bloque en una sola consulta; el stock se descuenta con un lote de UPDATE relativos
+// y condicionados a que alcance (MovimientoStockService), en las particiones si el producto está
+// en modo escrow, o en el motor de stock si está activo.
+@Service
+@CarrilEjecucion(Carril.TRANSACCIONAL)
+public class VentaLoteService {
+
+    private static final Logger log = LoggerFactory.getLogger(VentaLoteService.class);
+
+    private static final int LONGITUD_MAXIMA_CLAVE = 64;
+
+    @Autowired
+    private VentaRepository ventaRepository;
+
+    @Autowired
+    private ProductoLocalRepository productoLocalRepository;
+
+    @Autowired
+    private LocalRepository localRepository;
+
+    @Autowired
+    private VentaIdempotenciaRepository ventaIdempotenciaRepository;
+
+    @Autowired
+    private LocalService localService;
+
+    @Autowired
+    private MovimientoStockService movimientoStockService;
+
+    @Autowired
+    private EventosLocalService eventosLocal;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private ReservaStockService reservaStockService;
+
+    private final TransactionTemplate transaccionBloque;
+
+    @Value("${ventas.lote.tamano-bloque:50}")
+    private int tamanoBloque;
+
+    @Value("${ventas.lote.max-ventas:1000}")
+    private int maxVentas;
+
+    public VentaLoteService(PlatformTransactionManager transactionManager) {
+        this.transaccionBloque = new TransactionTemplate(transactionManager);
+        this.transaccionBloque.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // Procesar un lote de ventas de un local
+    public ResultadoLote procesarLote(LoteVentasRequest request, Long usuarioId) {
+        if (request.getLocalId() == null) {
+            throw new RuntimeException("El local es obligatorio");
+        }
+        List<VentaService.CrearVentaRequest> ventas = request.getVentas();
+        if (ventas == null || ventas.isEmpty()) {
+            throw new RuntimeException("El lote no contiene ventas");
+        }
+        if (ventas.size() > maxVentas) {
+            throw new RuntimeException("El lote supera el máximo de " + maxVentas + " ventas");
+        }
+
+        // Validar acceso una sola vez para todo el lote
+        localService.validarAccesoLocal(request.getLocalId(), usuarioId);
+
+        Local local = localRepository.findById(request.getLocalId())
+                .orElseThrow(() -> new RuntimeException("Local no encontrado con ID: " + request.getLocalId()));
+
+        ResultadoVenta[] resultados = new ResultadoVenta[ventas.size()];
+        Map<String, Integer> primeraAparicion = new HashMap<>();
+        List<VentaPendiente> pendientes = new ArrayList<>();
+
+        // Claves inválidas o repetidas dentro del mismo lote
+        for (int i = 0; i < ventas.size(); i++) {
+            VentaService.CrearVentaRequest venta = ventas.get(i);
+            String clave = venta != null ? venta.getClaveIdempotencia() : null;
+
+            if (clave == null || clave.isBlank()) {
+                resultados[i] = ResultadoVenta.rechazada(i, clave, "La clave de idempotencia es obligatoria");
+            } else if (clave.length() > LONGITUD_MAXIMA_CLAVE) {
+                resultados[i] = ResultadoVenta.rechazada(i, clave,
+                        "La clave de idempotencia no puede superar " + LONGITUD_MAXIMA_CLAVE + " caracteres");
+            } else if (primeraAparicion.putIfAbsent(clave, i) == null) {
+                pendientes.add(new VentaPendiente(i, venta));
+            }
+        }
+
+        // Claves ya registradas en envíos anteriores (una sola consulta)
+        if (!pendientes.isEmpty()) {
+            Map<String, VentaIdempotencia> registradas = ventaIdempotenciaRepository
+                    .findByClaveIn(primeraAparicion.keySet()).stream()
+                    .collect(Collectors.toMap(VentaIdempotencia::getClave, Function.identity()));
+
+            pendientes.removeIf(p -> {
+                VentaIdempotencia previa = registradas.get(p.clave());
+                if (previa == null) {
+                    return false;
+                }
+                resultados[p.indice()] = resultadoPrevio(p, previa, local.getId());
+                return true;
+            });
+        }
+
+        // Aplicar en bloques, cada uno en su propia transacción
+        for (int desde = 0; desde < pendientes.size(); desde += tamanoBloque) {
+            List<VentaPendiente> bloque = pendientes.subList(desde, Math.min(desde + tamanoBloque, pendientes.size()));
+            try {
+                List<ResultadoVenta> aplicados = transaccionBloque.execute(status -> aplicarVentas(local, bloque));
+                aplicados.forEach(r -> resultados[r.getIndice()] = r);
+            } catch (RuntimeException e) {
+                // Conflicto con otro envío concurrente (o error inesperado): reintentar venta a venta
+                log.warn("Bloque de {} ventas del local {} falló, reintentando de a una: {}",
+                        bloque.size(), local.getId(), e.getMessage());
+                for (VentaPendiente pendiente : bloque) {
+                    resultados[pendiente.indice()] = aplicarIndividual(local, pendiente);
+                }
+            }
+        }
+
+        // Repetidas dentro del lote: apuntan al resultado de su primera aparición
+        for (int i = 0; i < resultados.length; i++) {
+            if (resultados[i] == null) {
+                String clave = ventas.get(i).getClaveIdempotencia();
+                ResultadoVenta original = resultados[primeraAparicion.get(clave)];
+                if (original.getEstado() == EstadoResultado.RECHAZADA) {
+                    resultados[i] = ResultadoVenta.rechazada(i, clave, original.getMensaje());
+                    continue;
+                }
+                resultados[i] = ResultadoVenta.duplicada(i, clave, original.getVentaId(), original.getNumeroFactura(),
+                        "Clave repetida en el lote (venta " + original.getIndice() + ")");
+            }
+        }
+
+        return new ResultadoLote(local.getId(), Arrays.asList(resultados));
+    }
+
+    // Aplicar ventas de un mismo local dentro de la transacción actual.
+    // Cada venta es todo o nada: si un item no es válido, la venta se rechaza sin tocar stock.
+    public List<ResultadoVenta> aplicarVentas(Local local, List<VentaPendiente> pendientes) {
+        // Ventas a partir de una reserva: su stock retenido queda disponible para la venta.
+        // Por identidad y no por índice: en el group commit todas las ventas llegan con índice 0.
+        Map<VentaPendiente, Map<Long, Integer>> retenidoPropio = new IdentityHashMap<>();
+        Map<VentaPendiente, String> erroresReserva = new IdentityHashMap<>();
+        Set<String> reservasUsadas = new HashSet<>();
+        for (VentaPendiente pendiente : pendientes) {
+            String codigo = pendiente.venta().getCodigoReserva();
+            if (codigo == null) {
+                continue;
+            }
+            if (!reservasUsadas.add(codigo)) {
+                erroresReserva.put(pendiente, "La reserva ya se usa en otra venta del mismo envío");
+                continue;
+            }
+            try {
+                ReservaStockService.Reserva reserva = reservaStockService.obtenerParaVenta(codigo, local.getId());
+                retenidoPropio.put(pendiente, reserva.getItems());
+                if (items(pendiente.venta()).isEmpty()) {
+                    pendiente.venta().setItems(VentaService.itemsDeReserva(reserva));
+                }
+            } catch (RuntimeException e) {
+                erroresReserva.put(pendiente, e.getMessage());
+            }
+        }
+
+        Set<Long> productoIds = pendientes.stream()
+                .flatMap(p -> items(p.venta()).stream())
+                .map(VentaService.ItemVentaRequest::getProductoId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+
+        Map<Long, ProductoLocal> porProducto = productoIds.isEmpty() ? Map.of() :
+                productoLocalRepository.findByLocalIdAndProductoIdIn(local.getId(), productoIds).stream()
+                        .collect(Collectors.toMap(pl -> pl.getProducto().getId(), Function.identity()));
+
+        String prefijoFactura = null;
+        int secuencia = 0;
+        List<ResultadoVenta> resultados = new ArrayList<>(pendientes.size());
+
+        for (VentaPendiente pendiente : pendientes) {
+            Map<ProductoLocal, Integer> demanda = new LinkedHashMap<>();
+            String error = erroresReserva.containsKey(pendiente) ? erroresReserva.get(pendiente)
+                    : validarVenta(pendiente.venta(), porProducto, demanda);
+            String numeroFactura = null;
+            if (error == null) {
+                if (prefijoFactura == null) {
+                    prefijoFactura = generarPrefijoFactura(local.getId());
+                }
+                numeroFactura = prefijoFactura + "-" + (secuencia + 1);
+                // Descuenta todo o nada
+                error = movimientoStockService.descontar(demanda, retenidoPropio.getOrDefault(pendiente, Map.of()),
+                        MovimientoInventario.Motivo.VENTA, numeroFactura);
+            }
+            if (error != null) {
+                resultados.add(ResultadoVenta.rechazada(pendiente.indice(), pendiente.clave(), error));
+                continue;
+            }
+
+            secuencia++;
+            Venta venta = construirVenta(local, pendiente.venta(), porProducto, numeroFactura);
+            venta = ventaRepository.save(venta);
+            if (pendiente.clave() != null && !pendiente.clave().isBlank()) {
+                ventaIdempotenciaRepository.save(new VentaIdempotencia(pendiente.clave(), venta, local.getId()));
+            }
+            if (pendiente.venta().getCodigoReserva() != null) {
+                reservaStockService.consumirAlConfirmar(pendiente.venta().getCodigoReserva());
+            }
+            outboxService.ventaRegistrada(venta);
+            eventosLocal.ventaRegistrada(venta);
+
+            resultados.add(ResultadoVenta.creada(pendiente.indice(), pendiente.clave(),
+                    venta.getId(), venta.getNumeroFactura()));
+        }
+
+        return resultados;
+    }
+
+    // Aplicar una sola venta en su propia transacción (reintento tras fallar un bloque)
+    public ResultadoVenta aplicarIndividual(Local local, VentaPendiente pendiente) {
+        try {
+            return transaccionBloque.execute(status -> aplicarVentas(local, List.of(pendiente))).get(0);
+        } catch (DataIntegrityViolationException e) {
+            // Otro envío registró la misma clave entre la verificación y el commit
+            Optional<VentaIdempotencia> previa = ventaIdempotenciaRepository.findByClave(pendiente.clave());
+            if (previa.isPresent()) {
+                return resultadoPrevio(pendiente, previa.get(), local.getId());
+            }
+            return ResultadoVenta.rechazada(pendiente.indice(), pendiente.clave(),
+                    "Conflicto al registrar la venta, reintente el envío");
+        } catch (RuntimeException e) {
+            return ResultadoVenta.rechazada(pendiente.indice(), pendiente.clave(), e.getMessage());
+        }
+    }
+
+    private ResultadoVenta resultadoPrevio(VentaPendiente pendiente, VentaIdempotencia previa, Long localId) {
+        if (!previa.getLocalId().equals(localId)) {
+            return ResultadoVenta.rechazada(pendiente.indice(), pendiente.clave(),
+                    "La clave de idempotencia ya fue usada en otro local");
+        }
+        return ResultadoVenta.duplicada(pendiente.indice(), pendiente.clave(), previa.getVenta().getId(),
+                previa.getVenta().getNumeroFactura(), "Venta ya registrada");
+    }
+
+    // Validar items y acumular la cantidad pedida por producto
+    private String validarVenta(VentaService.CrearVentaRequest venta, Map<Long, ProductoLocal> porProducto,
+                                Map<ProductoLocal, Integer> demanda) {
+        List<VentaService.ItemVentaRequest> items = items(venta);
+        if (items.isEmpty()) {
+            return "La venta no contiene items";
+        }
+
+        for (VentaService.ItemVentaRequest item : items) {
+            if (item.getProductoId() == null) {
+                return "Item sin producto";
+            }
+            if (item.getCantidad() == null || item.getCantidad() <= 0) {
+                return "Cantidad inválida para el producto con ID " + item.getProductoId();
+            }
+            if (!porProducto.containsKey(item.getProductoId())) {
+                return "Producto con ID " + item.getProductoId() + " no está disponible en este local";
+            }
+            demanda.merge(porProducto.get(item.getProductoId()), item.getCantidad(), Integer::sum);
+        }
+
+        return null;
+    }
+
+    private Venta construirVenta(Local local, VentaService.CrearVentaRequest request,
+                                 Map<Long, ProductoLocal> porProducto, String numeroFactura) {
+        Venta venta = new Venta();
+        venta.setLocal(local);
+        venta.setMetodoPago(request.getMetodoPago());
+        venta.setDescuento(request.getDescuento() != null ? request.getDescuento() : BigDecimal.ZERO);
+        venta.setImpuestos(request.getImpuestos() != null ? request.getImpuestos() : BigDecimal.ZERO);
+        venta.setObservaciones(request.getObservaciones());
+        venta.setNumeroFactura(numeroFactura);
+        venta.setEstado(Venta.EstadoVenta.COMPLETADA);
+
+        for (VentaService.ItemVentaRequest item : request.getItems()) {
+            ProductoLocal productoLocal = porProducto.get(item.getProductoId());
+
+            DetalleVenta detalle = new DetalleVenta();
+            detalle.setProductoLocal(productoLocal);
+            detalle.setCantidad(item.getCantidad());
+            detalle.setPrecioUnitario(item.getPrecioUnitario() != null ?
+                    item.getPrecioUnitario() : productoLocal.getPrecioVenta());
+            detalle.setDescuentoItem(item.getDescuentoItem() != null ? item.getDescuentoItem() : BigDecimal.ZERO);
+            detalle.calcularSubtotal();
+            venta.addDetalle(detalle);
+        }
+
+        venta.calcularTotal();
+        return venta;
+    }
+
+    // Prefijo de factura libre para el bloque; las ventas se numeran con un sufijo secuencial
+    private String generarPrefijoFactura(Long localId) {
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
+        String base = "L" + localId + "-" + timestamp + "-P";
+
+        int contador = 1;
+        while (ventaRepository.existsByNumeroFacturaStartingWith(base + contador + "-")) {
+            contador++;
+        }
+        return base + contador;
+    }
+
+    private static List<VentaService.ItemVentaRequest> items(VentaService.CrearVentaRequest venta) {
+        return venta.getItems() != null ? venta.getItems() : List.of();
+    }
+
+    // Venta del lote pendiente de aplicar, con su posición en el envío original
+    public static class VentaPendiente {
+        private final int indice;
+        private final VentaService.CrearVentaRequest venta;
+
+        public VentaPendiente(int indice, VentaService.CrearVentaRequest venta) {
+            this.indice = indice;
+            this.venta = venta;
+        }
+
+        public int indice() { return indice; }
+        public VentaService.CrearVentaRequest venta() { return venta; }
+        public String clave() { return venta.getClaveIdempotencia(); }
+    }
+
+    // Clases internas para DTOs
+
+    public static class LoteVentasRequest {
+        private Long localId;
+        private List<VentaService.CrearVentaRequest> ventas;
+
+        // Getters y Setters
+        public Long getLocalId() { return localId; }
+        public void setLocalId(Long localId) { this.localId = localId; }
+
+        public List<VentaService.CrearVentaRequest> getVentas() { return ventas; }
+        public void setVentas(List<VentaService.CrearVentaRequest> ventas) { this.ventas = ventas; }
+    }
+
+    public enum EstadoResultado {
+        CREADA, DUPLICADA, RECHAZADA
+    }
+
+    public static class ResultadoVenta {
+        private final int indice;
+        private final String claveIdempotencia;
+        private final EstadoResultado estado;
+        private final Long ventaId;
+        private final String numeroFactura;
+        private final String mensaje;
+
+        private ResultadoVenta(int indice, String claveIdempotencia, EstadoResultado estado,
+                               Long ventaId, String numeroFactura, String mensaje) {
+            this.indice = indice;
+            this.claveIdempotencia = claveIdempotencia;
+            this.estado = estado;
+            this.ventaId = ventaId;
+            this.numeroFactura = numeroFactura;
+            this.mensaje = mensaje;
+        }
+
+        static ResultadoVenta creada(int indice, String clave, Long ventaId, String numeroFactura) {
+            return new ResultadoVenta(indice, clave, EstadoResultado.CREADA, ventaId, numeroFactura, null);
+        }
+
+        static ResultadoVenta duplicada(int indice, String clave, Long ventaId, String numeroFactura, String mensaje) {
+            return new ResultadoVenta(indice, clave, EstadoResultado.DUPLICADA, ventaId, numeroFactura, mensaje);
+        }
+
+        static ResultadoVenta rechazada(int indice, String clave, String mensaje) {
+            return new ResultadoVenta(indice, clave, EstadoResultado.RECHAZADA, null, null, mensaje);
+        }
+
+        // Getters
+        public int getIndice() { return indice; }
+        public String getClaveIdempotencia() { return claveIdempotencia; }
+        public EstadoResultado getEstado() { return estado; }
+        public Long getVentaId() { return ventaId; }
+        public String getNumeroFactura() { return numeroFactura; }
+        public String getMensaje() { return mensaje; }
+    }
+
+    public static class ResultadoLote {
+        private final Long localId;
+        private final long creadas;
+        private final long duplicadas;
+        private final long rechazadas;
+        private final List<ResultadoVenta> resultados;
+
+        public ResultadoLote(Long localId, List<ResultadoVenta> resultados) {
+            this.localId = localId;
+            this.resultados = resultados;
+            this.creadas = contar(resultados, EstadoResultado.CREADA);
+            this.duplicadas = contar(resultados, EstadoResultado.DUPLICADA);
+            this.rechazadas = contar(resultados, EstadoResultado.RECHAZADA);
+        }
+
+        private static long contar(List<ResultadoVenta> resultados, EstadoResultado estado) {
+            return resultados.stream().filter(r -> r.getEstado() == estado).count();
+        }
+
+        // Getters
+        public Long getLocalId() { return localId; }
+        public int getRecibidas() { return resultados.size(); }
+        public long getCreadas() { return creadas; }
+        public long getDuplicadas() { return duplicadas; }
+        public long getRechazadas() { return rechazadas; }
+        public List<ResultadoVenta> getResultados() { return resultados; }
+    }
+}
@@ -1,19 +1,30 @@
 package com.robertroman.store_admin_backend.service;
 
+import com.robertroman.store_admin_backend.config.Carril;
+import com.robertroman.store_admin_backend.config.CarrilEjecucion;
 import com.robertroman.store_admin_backend.entity.*;
 import com.robertroman.store_admin_backend.repository.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 @Transactional
+@CarrilEjecucion(Carril.TRANSACCIONAL)
 public class VentaService {
 
     @Autowired
@@ -31,11 +42,65 @@ public class VentaService {
     @Autowired
     private LocalService localService;
 
-    // Crear venta completa (requerimiento principal)
+    @Autowired
+    private VentaIdempotenciaRepository ventaIdempotenciaRepository;
+
+    @Autowired
+    private MovimientoStockService movimientoStockService;
+
+    @Autowired
+    private ReservaStockService reservaStockService;
+
+    @Autowired
+    private EventosLocalService eventosLocal;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    private final TransactionTemplate transaccionVenta;
+
+    public VentaService(PlatformTransactionManager transactionManager) {
+        this.transaccionVenta = new TransactionTemplate(transactionManager);
+    }
+
+    // Crear venta completa (requerimiento principal).
+    // La transacción se abre acá adentro: si dos reintentos con la misma clave de idempotencia
+    // pasan juntos la verificación, el que pierde choca con la clave única al confirmar (su venta
+    // y su stock vuelven atrás) y devuelve la venta que registró el otro.
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Venta crearVenta(CrearVentaRequest request, Long usuarioId) {
+        try {
+            return transaccionVenta.execute(status -> registrarVenta(request, usuarioId));
+        } catch (DataIntegrityViolationException e) {
+            String clave = request.getClaveIdempotencia();
+            Optional<VentaIdempotencia> previa = clave != null && !clave.isBlank()
+                    ? ventaIdempotenciaRepository.findByClave(clave) : Optional.empty();
+            if (previa.isEmpty()) {
+                throw e;
+            }
+            if (!previa.get().getLocalId().equals(request.getLocalId())) {
+                throw new RuntimeException("La clave de idempotencia ya fue usada en otro local");
+            }
+            return previa.get().getVenta();
+        }
+    }
+
+    private Venta registrarVenta(CrearVentaRequest request, Long usuarioId) {
         // Validar acceso al local
         localService.validarAccesoLocal(request.getLocalId(), usuarioId);
 
+        // Reintento de una venta ya registrada: devolver la original sin tocar stock
+        String clave = request.getClaveIdempotencia();
+        if (clave != null && !clave.isBlank()) {
+            Optional<VentaIdempotencia> previa = ventaIdempotenciaRepository.findByClave(clave);
+            if (previa.isPresent()) {
+                if (!previa.get().getLocalId().equals(request.getLocalId())) {
+                    throw new RuntimeException("La clave de idempotencia ya fue usada en otro local");
+                }
+                return previa.get().getVenta();
+            }
+        }
+
         // Verificar que existe el local
         Optional<Local> localOpt = localRepository.findById(request.getLocalId());
         if (localOpt.isEmpty()) {
@@ -44,6 +109,17 @@ public class VentaService {
 
         Local local = localOpt.get();
 
+        // Venta a partir de una reserva: su stock retenido queda disponible para esta venta
+        Map<Long, Integer> retenidoPropio = Map.of();
+        if (request.getCodigoReserva() != null) {
+            ReservaStockService.Reserva reserva =
+                    reservaStockService.obtenerParaVenta(request.getCodigoReserva(), local.getId());
+            retenidoPropio = reserva.getItems();
+            if (request.getItems() == null || request.getItems().isEmpty()) {
+                request.setItems(itemsDeReserva(reserva));
+            }
+        }
+
         // Crear la venta con valores iniciales
         Venta venta = new Venta();
         venta.setLocal(local);
@@ -63,10 +139,23 @@ public class VentaService {
         // Guardar venta temporal
         venta = ventaRepository.save(venta);
 
+        // Descontar stock una sola vez por producto, aunque aparezca en varias líneas
+        // (dos descuentos del mismo producto en modo escrow pueden bloquearse con otra venta)
+        Map<Long, Integer> cantidadesPorProducto = new LinkedHashMap<>();
+        for (ItemVentaRequest item : request.getItems()) {
+            cantidadesPorProducto.merge(item.getProductoId(), item.getCantidad(), Integer::sum);
+        }
+        Map<Long, ProductoLocal> productosLocal = new HashMap<>();
+        for (Map.Entry<Long, Integer> entry : cantidadesPorProducto.entrySet()) {
+            ProductoLocal productoLocal = descontarStock(venta, entry.getKey(), entry.getValue(),
+                    retenidoPropio.getOrDefault(entry.getKey(), 0));
+            productosLocal.put(entry.getKey(), productoLocal);
+        }
+
         // Procesar cada item de la venta
         BigDecimal subtotal = BigDecimal.ZERO;
         for (ItemVentaRequest item : request.getItems()) {
-            DetalleVenta detalle = crearDetalleVenta(venta, item);
+            DetalleVenta detalle = crearDetalleVenta(venta, item, productosLocal.get(item.getProductoId()));
             venta.addDetalle(detalle); // Agregar detalle a la venta
             subtotal = subtotal.add(detalle.getSubtotal());
         }
@@ -80,27 +169,51 @@ public class VentaService {
         venta.setEstado(Venta.EstadoVenta.COMPLETADA);
 
         // Guardar venta con totales calculados
-        return ventaRepository.save(venta);
+        venta = ventaRepository.save(venta);
+
+        if (clave != null && !clave.isBlank()) {
+            ventaIdempotenciaRepository.save(new VentaIdempotencia(clave, venta, local.getId()));
+        }
+
+        if (request.getCodigoReserva() != null) {
+            reservaStockService.consumirAlConfirmar(request.getCodigoReserva());
+        }
+
+        outboxService.ventaRegistrada(venta);
+        eventosLocal.ventaRegistrada(venta);
+        return venta;
     }
 
-    // Crear detalle de venta y actualizar stock
-    private DetalleVenta crearDetalleVenta(Venta venta, ItemVentaRequest item) {
+    // Items de la venta cuando el pedido solo trae la reserva (también lo usa VentaLoteService)
+    static List<ItemVentaRequest> itemsDeReserva(ReservaStockService.Reserva reserva) {
+        List<ItemVentaRequest> items = new ArrayList<>();
+        reserva.getItems().forEach((productoId, cantidad) -> {
+            ItemVentaRequest item = new ItemVentaRequest();
+            item.setProductoId(productoId);
+            item.setCantidad(cantidad);
+            items.add(item);
+        });
+        return items;
+    }
+
+    // Verificar y reducir el stock de un producto (lanza excepción si no alcanza)
+    private ProductoLocal descontarStock(Venta venta, Long productoId, int cantidad, int retenidoPropio) {
         // Buscar el producto en el local
         Optional<ProductoLocal> productoLocalOpt = productoLocalRepository
-                .findByProductoIdAndLocalId(item.getProductoId(), venta.getLocal().getId());
+                .findByProductoIdAndLocalId(productoId, venta.getLocal().getId());
 
         if (productoLocalOpt.isEmpty()) {
-            throw new RuntimeException("Producto con ID " + item.getProductoId() + " no está disponible en este local");
+            throw new RuntimeException("Producto con ID " + productoId + " no está disponible en este local");
         }
 
         ProductoLocal productoLocal = productoLocalOpt.get();
+        movimientoStockService.descontar(productoLocal, cantidad, retenidoPropio,
+                MovimientoInventario.Motivo.VENTA, venta.getNumeroFactura());
+        return productoLocal;
+    }
 
-        // Verificar stock suficiente
-        if (!productoLocal.tieneStockSuficiente(item.getCantidad())) {
-            throw new RuntimeException("Stock insuficiente para el producto: " + productoLocal.getProducto().getNombre() +
-                    ". Stock disponible: " + productoLocal.getStock() + ", solicitado: " + item.getCantidad());
-        }
-
+    // Crear detalle de venta (el stock ya se descontó)
+    private DetalleVenta crearDetalleVenta(Venta venta, ItemVentaRequest item, ProductoLocal productoLocal) {
         // Crear detalle de venta
         BigDecimal precioUnitario = item.getPrecioUnitario() != null ?
                 item.getPrecioUnitario() : productoLocal.getPrecioVenta();
@@ -115,8 +228,6 @@ public class VentaService {
         // Calcular subtotal
         detalle.calcularSubtotal();
 
-        // Reducir stock automáticamente
-        productoLocal.reducirStock(item.getCantidad());
         productoLocalRepository.save(productoLocal);
 
         return detalleVentaRepository.save(detalle);
@@ -167,7 +278,7 @@ public class VentaService {
 
     // Cancelar venta (devolver stock)
     public Venta cancelarVenta(Long ventaId, Long usuarioId, String motivo) {
-        Optional<Venta> ventaOpt = ventaRepository.findById(ventaId);
+        Optional<Venta> ventaOpt = ventaRepository.findByIdParaActualizar(ventaId);
         if (ventaOpt.isEmpty()) {
             throw new RuntimeException("Venta no encontrada con ID: " + ventaId);
         }
@@ -180,21 +291,35 @@ public class VentaService {
         if (venta.getEstado() == Venta.EstadoVenta.CANCELADA) {
             throw new RuntimeException("La venta ya está cancelada");
         }
+        if (venta.getEstado() == Venta.EstadoVenta.DEVUELTA) {
+            throw new RuntimeException("La venta ya fue devuelta en su totalidad");
+        }
 
-        // Devolver stock de todos los items
-        List<DetalleVenta> detalles = detalleVentaRepository.findByVentaId(ventaId);
-        for (DetalleVenta detalle : detalles) {
-            ProductoLocal productoLocal = detalle.getProductoLocal();
-            productoLocal.aumentarStock(detalle.getCantidad());
-            productoLocalRepository.save(productoLocal);
+        // Devolver el stock de lo que no se devolvió antes, en un solo lote
+        Map<ProductoLocal, Integer> reposicion = new LinkedHashMap<>();
+        List<OutboxService.ItemVendido> anulados = new ArrayList<>();
+        for (DetalleVenta detalle : detalleVentaRepository.findByVentaIdConProducto(ventaId)) {
+            if (detalle.cantidadPendienteDeDevolver() > 0) {
+                reposicion.merge(detalle.getProductoLocal(), detalle.cantidadPendienteDeDevolver(), Integer::sum);
+                anulados.add(new OutboxService.ItemVendido(detalle.getProductoLocal().getProducto().getId(),
+                        detalle.getProductoLocal().getId(), detalle.cantidadPendienteDeDevolver(),
+                        detalle.getSubtotal().subtract(detalle.getMontoDevuelto() != null
+                                ? detalle.getMontoDevuelto() : BigDecimal.ZERO)));
+            }
         }
+        movimientoStockService.reponer(reposicion, MovimientoInventario.Motivo.CANCELACION, venta.getNumeroFactura());
 
         // Actualizar estado de la venta
         venta.setEstado(Venta.EstadoVenta.CANCELADA);
         venta.setObservaciones((venta.getObservaciones() != null ? venta.getObservaciones() + " | " : "") +
                 "CANCELADA: " + motivo);
 
-        return ventaRepository.save(venta);
+        venta = ventaRepository.save(venta);
+        outboxService.registrar(venta.getLocal().getId(), EventoOutbox.Tipo.VENTA_CANCELADA, venta.getId(),
+                new OutboxService.DatosVenta(venta.getId(), venta.getNumeroFactura(), venta.getTotal(),
+                        venta.getFechaVenta(), anulados));
+        eventosLocal.ventaCancelada(venta);
+        return venta;
     }
 
     // Obtener estadísticas de ventas por local
@@ -232,6 +357,8 @@ public class VentaService {
         private BigDecimal descuento;
         private BigDecimal impuestos;
         private String observaciones;
+        private String claveIdempotencia;
+        private String codigoReserva;
 
         // Getters y Setters
         public Long getLocalId() { return localId; }
@@ -251,6 +378,12 @@ public class VentaService {
 
         public String getObservaciones() { return observaciones; }
         public void setObservaciones(String observaciones) { this.observaciones = observaciones; }
+
+        public String getClaveIdempotencia() { return claveIdempotencia; }
+        public void setClaveIdempotencia(String claveIdempotencia) { this.claveIdempotencia = claveIdempotencia; }
+
+        public String getCodigoReserva() { return codigoReserva; }
+        public void setCodigoReserva(String codigoReserva) { this.codigoReserva = codigoReserva; }
     }
 
     public static class ItemVentaRequest {
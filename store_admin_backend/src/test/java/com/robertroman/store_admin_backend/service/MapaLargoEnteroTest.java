@@ -0,0 +1,70 @@
+package com.robertroman.store_admin_backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MapaLargoEnteroTest {
+
+    @Test
+    void conservaTodasLasClavesAlAgrandarse() {
+        CanastaService.MapaLargoEntero mapa = new CanastaService.MapaLargoEntero(16);
+
+        // Muy por encima del 75% de los 16 lugares iniciales: se agranda varias veces
+        for (long clave = 1; clave <= 5_000; clave++) {
+            mapa.poner(clave, (int) clave * 3);
+        }
+
+        assertThat(mapa.tamano()).isEqualTo(5_000);
+        for (long clave = 1; clave <= 5_000; clave++) {
+            assertThat(mapa.obtener(clave, -1)).isEqualTo((int) clave * 3);
+        }
+        assertThat(mapa.obtener(5_001, -1)).isEqualTo(-1);
+    }
+
+    @Test
+    void sumaSobreClavesQueColisionan() {
+        // Pares (a, b) codificados como en los conteos: comparten los bits bajos y chocan en la tabla
+        CanastaService.MapaLargoEntero mapa = new CanastaService.MapaLargoEntero(16);
+        Map<Long, Integer> esperado = new HashMap<>();
+        for (long a = 0; a < 40; a++) {
+            for (long b = a + 1; b < 40; b += 7) {
+                long clave = (a << 32) | b;
+                int veces = (int) (a % 3) + 1;
+                for (int i = 0; i < veces; i++) {
+                    mapa.sumar(clave, 2);
+                }
+                esperado.merge(clave, veces * 2, Integer::sum);
+            }
+        }
+
+        Map<Long, Integer> recorrido = new HashMap<>();
+        mapa.recorrer((clave, valor) -> assertThat(recorrido.put(clave, valor)).isNull());
+
+        assertThat(mapa.tamano()).isEqualTo(esperado.size());
+        assertThat(recorrido).isEqualTo(esperado);
+        esperado.forEach((clave, valor) -> assertThat(mapa.obtener(clave, 0)).isEqualTo(valor));
+    }
+
+    @Test
+    void ponerPisaElValorSinSumarUnaEntrada() {
+        CanastaService.MapaLargoEntero mapa = new CanastaService.MapaLargoEntero(16);
+
+        mapa.sumar(7, 5);
+        mapa.poner(7, 1);
+
+        assertThat(mapa.tamano()).isEqualTo(1);
+        assertThat(mapa.obtener(7, 0)).isEqualTo(1);
+    }
+
+    @Test
+    void rechazaLaClaveReservada() {
+        CanastaService.MapaLargoEntero mapa = new CanastaService.MapaLargoEntero(16);
+
+        assertThatThrownBy(() -> mapa.sumar(0, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,213 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.entity.EventoOutbox;
+import com.robertroman.store_admin_backend.entity.Producto;
+import com.robertroman.store_admin_backend.repository.DetalleVentaRepository;
+import com.robertroman.store_admin_backend.repository.DevolucionRepository;
+import com.robertroman.store_admin_backend.repository.ProductoRepository;
+import com.robertroman.store_admin_backend.repository.VentaRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MasVendidosEnVivoServiceTest {
+
+    private static final Long LOCAL = 1L;
+    private static final Long USUARIO = 5L;
+    private static final int CAPACIDAD = 10;
+
+    // Lo que el outbox "leería" de cada evento
+    private final Map<EventoOutbox, OutboxService.DatosVenta> datosPorEvento = new IdentityHashMap<>();
+
+    private DetalleVentaRepository detalleVentaRepository;
+    private DevolucionRepository devolucionRepository;
+    private ProductoRepository productoRepository;
+    private VentaRepository ventaRepository;
+    private MasVendidosEnVivoService servicio;
+    private long proximoEvento = 1;
+
+    @BeforeEach
+    void preparar() {
+        OutboxService outboxService = mock(OutboxService.class);
+        when(outboxService.leer(any(EventoOutbox.class), eq(OutboxService.DatosVenta.class)))
+                .thenAnswer(invocacion -> datosPorEvento.get(invocacion.<EventoOutbox>getArgument(0)));
+        detalleVentaRepository = mock(DetalleVentaRepository.class);
+        devolucionRepository = mock(DevolucionRepository.class);
+        productoRepository = mock(ProductoRepository.class);
+        ventaRepository = mock(VentaRepository.class);
+
+        servicio = new MasVendidosEnVivoService();
+        ReflectionTestUtils.setField(servicio, "outboxService", outboxService);
+        ReflectionTestUtils.setField(servicio, "detalleVentaRepository", detalleVentaRepository);
+        ReflectionTestUtils.setField(servicio, "devolucionRepository", devolucionRepository);
+        ReflectionTestUtils.setField(servicio, "productoRepository", productoRepository);
+        ReflectionTestUtils.setField(servicio, "ventaRepository", ventaRepository);
+        ReflectionTestUtils.setField(servicio, "localService", mock(LocalService.class));
+        ReflectionTestUtils.setField(servicio, "capacidad", CAPACIDAD);
+    }
+
+    @Test
+    void lasCuentasRespetanLaCotaDeErrorYLosMasVendidosQuedanAdentro() {
+        // Resumen vacío al empezar el día
+        assertThat(servicio.obtenerMasVendidosHoy(LOCAL, CAPACIDAD, USUARIO)).isEmpty();
+
+        // 60 productos con ventas muy desparejas (cuanto menor el ID, más se vende)
+        Random random = new Random(42);
+        Map<Long, Long> real = new HashMap<>();
+        long total = 0;
+        for (long venta = 1; venta <= 3_000; venta++) {
+            long productoId = 1 + (long) (60 * Math.pow(random.nextDouble(), 3));
+            int cantidad = 1 + random.nextInt(3);
+            servicio.manejar(evento(EventoOutbox.Tipo.VENTA_REGISTRADA, venta, venta, Map.of(productoId, cantidad)));
+            real.merge(productoId, (long) cantidad, Long::sum);
+            total += cantidad;
+        }
+
+        List<MasVendidosEnVivoService.ProductoEnVivo> top = servicio.obtenerMasVendidosHoy(LOCAL, CAPACIDAD, USUARIO);
+
+        long cota = total / CAPACIDAD;
+        for (MasVendidosEnVivoService.ProductoEnVivo producto : top) {
+            long vendido = real.getOrDefault(producto.getProductoId(), 0L);
+            assertThat(producto.getErrorMaximo()).isLessThanOrEqualTo(cota);
+            assertThat(producto.getCantidadEstimada()).isGreaterThanOrEqualTo(vendido);
+            assertThat(producto.getCantidadEstimada() - producto.getErrorMaximo()).isLessThanOrEqualTo(vendido);
+        }
+
+        // Todo producto que supera N/capacidad tiene que aparecer
+        Set<Long> pesados = real.entrySet().stream()
+                .filter(entry -> entry.getValue() > cota)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+        assertThat(pesados).isNotEmpty();
+        assertThat(top).extracting(MasVendidosEnVivoService.ProductoEnVivo::getProductoId).containsAll(pesados);
+    }
+
+    @Test
+    void laCargaInicialEntraAcotadaYNoSeVuelveASumarPorElOutbox() {
+        // Venta 1 ya confirmada en la base: 15 productos, más que la capacidad
+        List<Object[]> filas = new ArrayList<>();
+        for (long productoId = 1; productoId <= 15; productoId++) {
+            filas.add(new Object[]{1L, productoId, 100L - productoId, "Producto " + productoId});
+        }
+        when(ventaRepository.findUltimoIdByLocal(LOCAL)).thenReturn(1L);
+        when(detalleVentaRepository.findVendidoPorVentaHasta(eq(LOCAL), any(), any(), eq(1L))).thenReturn(filas);
+
+        List<MasVendidosEnVivoService.ProductoEnVivo> top = servicio.obtenerMasVendidosHoy(LOCAL, 20, USUARIO);
+        // Solo los 10 de más cuenta, con cuenta exacta
+        assertThat(top).hasSize(CAPACIDAD);
+        assertThat(top).extracting(MasVendidosEnVivoService.ProductoEnVivo::getProductoId)
+                .containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+        assertThat(top).allSatisfy(producto -> assertThat(producto.getErrorMaximo()).isZero());
+        // Los nombres vinieron con la carga
+        assertThat(top.get(0).getNombre()).isEqualTo("Producto 1");
+        verify(productoRepository, never()).findAllById(any());
+
+        // El outbox entrega la misma venta: ya estaba en la carga
+        servicio.manejar(evento(EventoOutbox.Tipo.VENTA_REGISTRADA, 1L, 1L, Map.of(1L, 99)));
+        assertThat(cantidadDe(1L)).isEqualTo(99);
+    }
+
+    @Test
+    void cuentaCadaVentaUnaSolaVezYNoDescuentaLoDeVentasQueNoLlegaron() {
+        servicio.obtenerMasVendidosHoy(LOCAL, CAPACIDAD, USUARIO);
+
+        servicio.manejar(evento(EventoOutbox.Tipo.VENTA_REGISTRADA, 1L, 1L, Map.of(7L, 5)));
+        servicio.manejar(evento(EventoOutbox.Tipo.VENTA_REGISTRADA, 1L, 1L, Map.of(7L, 5)));
+        servicio.manejar(evento(EventoOutbox.Tipo.VENTA_REGISTRADA, 2L, 2L, Map.of(7L, 4)));
+        assertThat(cantidadDe(7L)).isEqualTo(9);
+
+        // Venta que nunca llegó
+        servicio.manejar(evento(EventoOutbox.Tipo.VENTA_CANCELADA, 3L, 3L, Map.of(7L, 3)));
+        servicio.manejar(evento(EventoOutbox.Tipo.DEVOLUCION_REGISTRADA, 30L, 3L, Map.of(7L, 1)));
+        assertThat(cantidadDe(7L)).isEqualTo(9);
+
+        // Devolución repetida de una venta contada: descuenta una vez
+        servicio.manejar(evento(EventoOutbox.Tipo.DEVOLUCION_REGISTRADA, 20L, 2L, Map.of(7L, 1)));
+        servicio.manejar(evento(EventoOutbox.Tipo.DEVOLUCION_REGISTRADA, 20L, 2L, Map.of(7L, 1)));
+        assertThat(cantidadDe(7L)).isEqualTo(8);
+
+        // Cancelación repetida: descuenta una vez
+        servicio.manejar(evento(EventoOutbox.Tipo.VENTA_CANCELADA, 1L, 1L, Map.of(7L, 5)));
+        servicio.manejar(evento(EventoOutbox.Tipo.VENTA_CANCELADA, 1L, 1L, Map.of(7L, 5)));
+        assertThat(cantidadDe(7L)).isEqualTo(3);
+    }
+
+    @Test
+    void toleraCancelacionesYDevolucionesQueLleganAntesQueSuVenta() {
+        servicio.obtenerMasVendidosHoy(LOCAL, CAPACIDAD, USUARIO);
+        servicio.manejar(evento(EventoOutbox.Tipo.VENTA_REGISTRADA, 1L, 1L, Map.of(7L, 10)));
+
+        // La cancelación de la venta 2 llega antes que la venta: la venta ya no se cuenta
+        servicio.manejar(evento(EventoOutbox.Tipo.VENTA_CANCELADA, 2L, 2L, Map.of(7L, 4)));
+        servicio.manejar(evento(EventoOutbox.Tipo.VENTA_REGISTRADA, 2L, 2L, Map.of(7L, 4)));
+        assertThat(cantidadDe(7L)).isEqualTo(10);
+
+        // La devolución de la venta 3 llega antes que la venta: se descuenta cuando la venta llega
+        servicio.manejar(evento(EventoOutbox.Tipo.DEVOLUCION_REGISTRADA, 30L, 3L, Map.of(7L, 2)));
+        assertThat(cantidadDe(7L)).isEqualTo(10);
+        servicio.manejar(evento(EventoOutbox.Tipo.VENTA_REGISTRADA, 3L, 3L, Map.of(7L, 5)));
+        assertThat(cantidadDe(7L)).isEqualTo(13);
+
+        // Repetida después de aplicarse: no descuenta de nuevo
+        servicio.manejar(evento(EventoOutbox.Tipo.DEVOLUCION_REGISTRADA, 30L, 3L, Map.of(7L, 2)));
+        assertThat(cantidadDe(7L)).isEqualTo(13);
+    }
+
+    @Test
+    void lasVentasQueLleganDuranteLaCargaNoSePierdenNiSeCuentanDosVeces() {
+        when(ventaRepository.findUltimoIdByLocal(LOCAL)).thenReturn(1L);
+        when(detalleVentaRepository.findVendidoPorVentaHasta(eq(LOCAL), any(), any(), eq(1L))).thenAnswer(invocacion -> {
+            // Mientras se lee la base: llega la venta 1 (incluida en la carga) y la 2 (confirmada después)
+            servicio.manejar(evento(EventoOutbox.Tipo.VENTA_REGISTRADA, 1L, 1L, Map.of(7L, 5)));
+            servicio.manejar(evento(EventoOutbox.Tipo.VENTA_REGISTRADA, 2L, 2L, Map.of(8L, 3)));
+            List<Object[]> filas = new ArrayList<>();
+            filas.add(new Object[]{1L, 7L, 5L, "Yerba"});
+            return filas;
+        });
+        Producto azucar = new Producto();
+        azucar.setId(8L);
+        azucar.setNombre("Azúcar");
+        when(productoRepository.findAllById(List.of(8L))).thenReturn(List.of(azucar));
+
+        List<MasVendidosEnVivoService.ProductoEnVivo> top = servicio.obtenerMasVendidosHoy(LOCAL, CAPACIDAD, USUARIO);
+
+        assertThat(top).extracting(MasVendidosEnVivoService.ProductoEnVivo::getCantidadEstimada).containsExactly(5L, 3L);
+        assertThat(top).extracting(MasVendidosEnVivoService.ProductoEnVivo::getNombre).containsExactly("Yerba", "Azúcar");
+
+        // El nombre consultado queda guardado
+        servicio.obtenerMasVendidosHoy(LOCAL, CAPACIDAD, USUARIO);
+        verify(productoRepository, times(1)).findAllById(any());
+    }
+
+    private long cantidadDe(Long productoId) {
+        return servicio.obtenerMasVendidosHoy(LOCAL, CAPACIDAD, USUARIO).stream()
+                .filter(producto -> producto.getProductoId().equals(productoId))
+                .findFirst()
+                .map(MasVendidosEnVivoService.ProductoEnVivo::getCantidadEstimada)
+                .orElse(0L);
+    }
+
+    private EventoOutbox evento(EventoOutbox.Tipo tipo, Long agregadoId, Long ventaId, Map<Long, Integer> cantidades) {
+        EventoOutbox evento = new EventoOutbox();
+        evento.setId(proximoEvento++);
+        evento.setLocalId(LOCAL);
+        evento.setTipo(tipo);
+        evento.setAgregadoId(agregadoId);
+
+        List<OutboxService.ItemVendido> items = new ArrayList<>();
+        cantidades.forEach((productoId, cantidad) ->
+                items.add(new OutboxService.ItemVendido(productoId, productoId, cantidad, BigDecimal.ONE)));
+        datosPorEvento.put(evento, new OutboxService.DatosVenta(ventaId, "V-" + ventaId, BigDecimal.TEN,
+                LocalDateTime.now(), items));
+        return evento;
+    }
+}
@@ -0,0 +1,199 @@
+package com.robertroman.store_admin_backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.sql.ResultSet;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MotorStockServiceTest {
+
+    private static final Long LOCAL = 1L;
+
+    // Stock de productos_locales según la "base"
+    private final Map<Long, Integer> base = new ConcurrentHashMap<>();
+    private final AtomicInteger lecturas = new AtomicInteger();
+
+    private NamedParameterJdbcTemplate jdbc;
+    private JdbcTemplate jdbcPlano;
+    private MotorStockService motor;
+
+    @BeforeEach
+    void preparar() throws Exception {
+        jdbc = mock(NamedParameterJdbcTemplate.class);
+        jdbcPlano = mock(JdbcTemplate.class);
+        when(jdbc.getJdbcTemplate()).thenReturn(jdbcPlano);
+        doAnswer(invocacion -> {
+            lecturas.incrementAndGet();
+            MapSqlParameterSource parametros = invocacion.getArgument(1);
+            RowCallbackHandler handler = invocacion.getArgument(2);
+            for (Object id : (Collection<?>) parametros.getValue("ids")) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getLong("id")).thenReturn((Long) id);
+                when(rs.getInt("stock")).thenReturn(base.get((Long) id));
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbc).query(anyString(), any(SqlParameterSource.class), any(RowCallbackHandler.class));
+
+        motor = new MotorStockService(jdbc, true, 2, 60_000, 300_000);
+        base.put(10L, 10);
+        base.put(20L, 5);
+        base.put(30L, 8);
+    }
+
+    @AfterEach
+    void cerrar() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        motor.destroy();
+    }
+
+    @Test
+    void laReservaSeEscribeAntesDelCommitEnOrdenDeIdYSeConfirmaDespues() {
+        iniciarTransaccion();
+        Map<Long, Integer> cantidades = new LinkedHashMap<>();
+        cantidades.put(30L, 2);
+        cantidades.put(10L, 3);
+        assertThat(motor.reservar(LOCAL, cantidades, Map.of())).isNull();
+
+        // Nada en la base hasta el commit; lo reservado ya no está disponible para otros
+        verify(jdbcPlano, never()).batchUpdate(anyString(), anyList());
+        assertThat(motor.stockDisponible(LOCAL, 10L)).isEqualTo(7);
+        assertThat(motor.stockConfirmado(LOCAL, 10L)).isEqualTo(10);
+
+        TransactionSynchronizationUtils.triggerBeforeCommit(false);
+        List<Object[]> escritos = loteEscrito();
+        assertThat(escritos).extracting(fila -> fila[2]).containsExactly(10L, 30L);
+        assertThat(escritos).extracting(fila -> fila[0]).containsExactly(-3, -2);
+
+        terminarTransaccion(TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(motor.stockConfirmado(LOCAL, 10L)).isEqualTo(7);
+        assertThat(motor.stockDisponible(LOCAL, 30L)).isEqualTo(6);
+    }
+
+    @Test
+    void elRollbackLiberaLoReservadoSinEscribir() {
+        iniciarTransaccion();
+        assertThat(motor.reservar(LOCAL, Map.of(20L, 5), Map.of())).isNull();
+        assertThat(motor.stockDisponible(LOCAL, 20L)).isZero();
+
+        terminarTransaccion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verify(jdbcPlano, never()).batchUpdate(anyString(), anyList());
+        assertThat(motor.stockDisponible(LOCAL, 20L)).isEqualTo(5);
+        assertThat(motor.stockConfirmado(LOCAL, 20L)).isEqualTo(5);
+    }
+
+    @Test
+    void noReservaNadaSiUnProductoNoAlcanza() {
+        Map<Long, Integer> cantidades = new LinkedHashMap<>();
+        cantidades.put(10L, 1);
+        cantidades.put(20L, 6);
+
+        assertThat(motor.reservar(LOCAL, cantidades, Map.of())).isEqualTo(20L);
+        // Lo retenido por reservas de canastos tampoco se vende
+        assertThat(motor.reservar(LOCAL, Map.of(10L, 8), Map.of(10L, 3))).isEqualTo(10L);
+
+        assertThat(motor.stockDisponible(LOCAL, 10L)).isEqualTo(10);
+        verify(jdbcPlano, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void invalidarEsperaALasTransaccionesEnCursoYDespuesRecargaDeLaBase() {
+        iniciarTransaccion();
+        assertThat(motor.reservar(LOCAL, Map.of(10L, 4), Map.of())).isNull();
+
+        // Escritura por fuera del motor mientras la venta sigue abierta
+        base.put(10L, 50);
+        motor.invalidar(LOCAL, List.of(10L));
+
+        TransactionSynchronizationUtils.triggerBeforeCommit(false);
+        base.put(10L, 46);
+        terminarTransaccion(TransactionSynchronization.STATUS_COMMITTED);
+
+        // El estado se desalojó al terminar la venta: se vuelve a leer el valor de la base (la
+        // confirmación corre en la franja, así que la lectura puede repetirse si se le adelanta)
+        int lecturasAntes = lecturas.get();
+        assertThat(motor.stockConfirmado(LOCAL, 10L)).isEqualTo(46);
+        assertThat(lecturas.get()).isGreaterThan(lecturasAntes);
+    }
+
+    @Test
+    void invalidarSinTransaccionesEnCursoDesalojaEnElMomento() {
+        assertThat(motor.stockConfirmado(LOCAL, 20L)).isEqualTo(5);
+        int lecturasAntes = lecturas.get();
+
+        base.put(20L, 12);
+        motor.invalidar(LOCAL, List.of(20L));
+
+        assertThat(motor.stockConfirmado(LOCAL, 20L)).isEqualTo(12);
+        assertThat(lecturas.get()).isEqualTo(lecturasAntes + 1);
+    }
+
+    @Test
+    void conResultadoDesconocidoRecargaLosProductosMovidos() {
+        iniciarTransaccion();
+        assertThat(motor.reservar(LOCAL, Map.of(30L, 3), Map.of())).isNull();
+        TransactionSynchronizationUtils.triggerBeforeCommit(false);
+
+        // El commit pudo haber llegado a la base o no
+        base.put(30L, 5);
+        terminarTransaccion(TransactionSynchronization.STATUS_UNKNOWN);
+
+        assertThat(motor.stockConfirmado(LOCAL, 30L)).isEqualTo(5);
+        assertThat(motor.stockDisponible(LOCAL, 30L)).isEqualTo(5);
+    }
+
+    @Test
+    void laFijacionPisaLoMovidoAntesEnLaMismaTransaccion() {
+        when(jdbcPlano.queryForObject(anyString(), eq(Integer.class), eq(25), any(), eq(20L))).thenReturn(5);
+
+        iniciarTransaccion();
+        assertThat(motor.reservar(LOCAL, Map.of(20L, 2), Map.of())).isNull();
+        motor.fijar(LOCAL, 20L, 25);
+        assertThat(motor.stockDisponible(LOCAL, 20L)).isEqualTo(25);
+
+        TransactionSynchronizationUtils.triggerBeforeCommit(false);
+        // Solo la fijación: el descuento de la venta no se escribe encima
+        verify(jdbcPlano, never()).batchUpdate(anyString(), anyList());
+        verify(jdbcPlano).queryForObject(anyString(), eq(Integer.class), eq(25), any(), eq(20L));
+
+        terminarTransaccion(TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(motor.stockConfirmado(LOCAL, 20L)).isEqualTo(25);
+    }
+
+    private void iniciarTransaccion() {
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    private void terminarTransaccion(int estado) {
+        List<TransactionSynchronization> sincronizaciones = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationUtils.invokeAfterCompletion(sincronizaciones, estado);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> loteEscrito() {
+        ArgumentCaptor<List<Object[]>> lote = ArgumentCaptor.forClass(List.class);
+        verify(jdbcPlano).batchUpdate(anyString(), lote.capture());
+        return lote.getValue();
+    }
+}
@@ -0,0 +1,96 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.entity.Producto;
+import com.robertroman.store_admin_backend.entity.ProductoLocal;
+import com.robertroman.store_admin_backend.repository.ProductoLocalRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReservaStockServiceTest {
+
+    private static final Long LOCAL = 1L;
+    private static final Long PRODUCTO = 10L;
+    private static final Long USUARIO = 5L;
+
+    private RetencionesStock retenciones;
+    private ReservaStockService servicio;
+
+    @BeforeEach
+    void preparar() {
+        retenciones = new RetencionesStock();
+        ProductoLocalRepository productoLocalRepository = mock(ProductoLocalRepository.class);
+        MovimientoStockService movimientoStockService = mock(MovimientoStockService.class);
+        Producto producto = new Producto();
+        producto.setNombre("Yerba");
+        ProductoLocal productoLocal = new ProductoLocal();
+        productoLocal.setProducto(producto);
+        when(productoLocalRepository.findByProductoIdAndLocalId(PRODUCTO, LOCAL)).thenReturn(Optional.of(productoLocal));
+        when(movimientoStockService.stockActual(any())).thenReturn(10);
+
+        servicio = new ReservaStockService(mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(servicio, "retenciones", retenciones);
+        ReflectionTestUtils.setField(servicio, "productoLocalRepository", productoLocalRepository);
+        ReflectionTestUtils.setField(servicio, "movimientoStockService", movimientoStockService);
+        ReflectionTestUtils.setField(servicio, "localService", mock(LocalService.class));
+        ReflectionTestUtils.setField(servicio, "ttlPorDefectoSegundos", 900L);
+        ReflectionTestUtils.setField(servicio, "ttlMaximoSegundos", 3600L);
+    }
+
+    @Test
+    void elBarridoLiberaLaReservaVencida() throws InterruptedException {
+        ReservaStockService.Reserva reserva = servicio.crear(LOCAL, List.of(item(4)), 1L, USUARIO);
+        assertThat(retenciones.retenido(LOCAL, PRODUCTO)).isEqualTo(4);
+
+        // Antes de vencer el barrido no la toca
+        servicio.barrerVencidas();
+        assertThat(retenciones.retenido(LOCAL, PRODUCTO)).isEqualTo(4);
+
+        Thread.sleep(1_100);
+        servicio.barrerVencidas();
+
+        assertThat(retenciones.retenido(LOCAL, PRODUCTO)).isZero();
+        assertThatThrownBy(() -> servicio.obtener(reserva.getCodigo(), USUARIO))
+                .hasMessage("La reserva no existe o está vencida");
+    }
+
+    @Test
+    void elVencimientoViejoNoLiberaUnaReservaRenovada() throws InterruptedException {
+        ReservaStockService.Reserva reserva = servicio.crear(LOCAL, List.of(item(4)), 1L, USUARIO);
+
+        // Renovar con más cantidad: el vencimiento original sigue en la cola
+        servicio.actualizarItem(reserva.getCodigo(), PRODUCTO, 6, 60L, USUARIO);
+
+        Thread.sleep(1_100);
+        servicio.barrerVencidas();
+
+        assertThat(retenciones.retenido(LOCAL, PRODUCTO)).isEqualTo(6);
+        assertThat(servicio.obtener(reserva.getCodigo(), USUARIO).getItems()).containsEntry(PRODUCTO, 6);
+    }
+
+    @Test
+    void noRetieneMasQueElStockDisponible() {
+        servicio.crear(LOCAL, List.of(item(7)), null, USUARIO);
+
+        assertThatThrownBy(() -> servicio.crear(LOCAL, List.of(item(4)), null, USUARIO))
+                .hasMessage("Stock insuficiente para reservar el producto: Yerba. Disponible: 3, solicitado: 4");
+        assertThat(retenciones.retenido(LOCAL, PRODUCTO)).isEqualTo(7);
+    }
+
+    private ReservaStockService.ItemReserva item(int cantidad) {
+        ReservaStockService.ItemReserva item = new ReservaStockService.ItemReserva();
+        item.setProductoId(PRODUCTO);
+        item.setCantidad(cantidad);
+        return item;
+    }
+}
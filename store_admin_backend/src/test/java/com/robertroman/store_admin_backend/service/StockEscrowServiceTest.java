@@ -0,0 +1,96 @@
+package com.robertroman.store_admin_backend.service;
+
+import com.robertroman.store_admin_backend.entity.ProductoLocal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class StockEscrowServiceTest {
+
+    private static final Long ID = 7L;
+
+    private JdbcTemplate jdbcTemplate;
+    private StockEscrowService escrow;
+    private ProductoLocal productoLocal;
+
+    @BeforeEach
+    void preparar() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        escrow = new StockEscrowService();
+        ReflectionTestUtils.setField(escrow, "jdbcTemplate", jdbcTemplate);
+
+        productoLocal = new ProductoLocal();
+        productoLocal.setId(ID);
+        productoLocal.setParticionesEscrow(3);
+    }
+
+    @Test
+    void descuentaDeUnaParticionSinBloquearLasDemas() {
+        when(jdbcTemplate.update(anyString(), anyInt(), eq(ID), anyInt(), anyInt())).thenReturn(1);
+
+        assertThat(escrow.descontar(productoLocal, 2)).isTrue();
+
+        verify(jdbcTemplate, times(1)).update(anyString(), eq(2), eq(ID), anyInt(), eq(2));
+        verify(jdbcTemplate, never()).query(anyString(), any(RowMapper.class), eq(ID));
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void siNingunaParticionAlcanzaRebalanceaConElTotal() {
+        // 3 + 2 + 0 = 5: ninguna partición sola cubre 4, pero el total sí
+        when(jdbcTemplate.update(anyString(), anyInt(), eq(ID), anyInt(), anyInt())).thenReturn(0);
+        particiones(new int[]{0, 3}, new int[]{1, 2}, new int[]{2, 0});
+
+        assertThat(escrow.descontar(productoLocal, 4)).isTrue();
+
+        // Se probaron las tres antes de bloquear
+        verify(jdbcTemplate, times(3)).update(anyString(), eq(4), eq(ID), anyInt(), eq(4));
+        List<Object[]> reparto = repartoEscrito();
+        assertThat(reparto).extracting(fila -> fila[0]).containsExactly(1, 0, 0);
+        assertThat(reparto).extracting(fila -> fila[2]).containsExactly(0, 1, 2);
+        assertThat(reparto).allSatisfy(fila -> assertThat(fila[1]).isEqualTo(ID));
+    }
+
+    @Test
+    void elRebalanceoRepartePartesIgualesConElRestoAlPrincipio() {
+        productoLocal.setParticionesEscrow(4);
+        when(jdbcTemplate.update(anyString(), anyInt(), eq(ID), anyInt(), anyInt())).thenReturn(0);
+        particiones(new int[]{0, 4}, new int[]{1, 4}, new int[]{2, 4}, new int[]{3, 4});
+
+        assertThat(escrow.descontar(productoLocal, 5)).isTrue();
+
+        // Quedan 11: 3 + 3 + 3 + 2
+        assertThat(repartoEscrito()).extracting(fila -> fila[0]).containsExactly(3, 3, 3, 2);
+    }
+
+    @Test
+    void siElTotalNoAlcanzaNoTocaLasParticiones() {
+        when(jdbcTemplate.update(anyString(), anyInt(), eq(ID), anyInt(), anyInt())).thenReturn(0);
+        particiones(new int[]{0, 1}, new int[]{1, 1}, new int[]{2, 1});
+
+        assertThat(escrow.descontar(productoLocal, 4)).isFalse();
+
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void particiones(int[]... filas) {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(ID))).thenReturn(List.of(filas));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> repartoEscrito() {
+        ArgumentCaptor<List<Object[]>> lote = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), lote.capture());
+        return lote.getValue();
+    }
+}